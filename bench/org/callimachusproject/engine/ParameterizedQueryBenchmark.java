@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.engine;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParameterizedQueryBenchmark {
+	private static final String EXAMPLE_COM = "http://example.com/";
+	private static final String SPARQL = "PREFIX rdfs:<http://www.w3.org/2000/01/rdf-schema#>\n"
+			+ "SELECT * { ?thing rdfs:label \"$label\" }";
+	private final Map<String, String[]> parameters = Collections.singletonMap(
+			"label", new String[] { "Thing50" });
+	private final ParameterizedQueryParser parser = ParameterizedQueryParser
+			.newInstance();
+	private ParameterizedQuery query;
+	private SailRepository repository;
+	private RepositoryConnection con;
+
+	@Setup
+	public void setUp() throws Exception {
+		query = parser.parseQuery(SPARQL, EXAMPLE_COM);
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		con = repository.getConnection();
+		ValueFactory vf = con.getValueFactory();
+		for (int i = 0; i < 100; i++) {
+			con.add(vf.createURI("urn:test:thing" + i), RDFS.LABEL,
+					vf.createLiteral("Thing" + i));
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		con.close();
+		repository.shutDown();
+	}
+
+	@Benchmark
+	public ParameterizedQuery parse() throws Exception {
+		return parser.parseQuery(SPARQL, EXAMPLE_COM);
+	}
+
+	@Benchmark
+	public void evaluate(Blackhole bh) throws Exception {
+		TupleQueryResult result = query.evaluate(parameters, con);
+		try {
+			while (result.hasNext()) {
+				bh.consume(result.next());
+			}
+		} finally {
+			result.close();
+		}
+	}
+
+}
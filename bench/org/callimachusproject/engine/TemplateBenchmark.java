@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.engine;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLEventReader;
+
+import org.apache.http.client.HttpClient;
+import org.callimachusproject.client.HttpClientFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+/**
+ * Parses a template and renders it (RDFaProducer) against a
+ * MemoryStore-backed repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TemplateBenchmark {
+	private static final String SYSTEM_ID = "http://example.com/";
+	private static final String TEMPLATE = "<html xmlns='http://www.w3.org/1999/xhtml'\n"
+			+ " xmlns:rdf='http://www.w3.org/1999/02/22-rdf-syntax-ns#'\n"
+			+ " xmlns:rdfs='http://www.w3.org/2000/01/rdf-schema#'>\n"
+			+ "<body><ul>\n"
+			+ "<li resource='?item' typeof='rdfs:Resource'>\n"
+			+ "<span property='rdfs:label'/>\n"
+			+ "<a rel='rdfs:seeAlso' href='?see'><span property='rdfs:comment'/></a>\n"
+			+ "</li></ul></body></html>";
+	private final HttpClient client = HttpClientFactory.getInstance()
+			.createHttpClient(SYSTEM_ID);
+	private TemplateEngine engine;
+	private Template template;
+	private SailRepository repository;
+	private RepositoryConnection con;
+
+	@Setup
+	public void setUp() throws Exception {
+		engine = TemplateEngine.newInstance(client);
+		template = engine.getTemplate(new StringReader(TEMPLATE), SYSTEM_ID);
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		con = repository.getConnection();
+		ValueFactory vf = con.getValueFactory();
+		for (int i = 0; i < 100; i++) {
+			URI item = vf.createURI(SYSTEM_ID + "item" + i);
+			URI see = vf.createURI(SYSTEM_ID + "see" + i);
+			con.add(item, RDF.TYPE, RDFS.RESOURCE);
+			con.add(item, RDFS.LABEL, vf.createLiteral("Item " + i));
+			con.add(item, RDFS.SEEALSO, see);
+			con.add(see, RDFS.COMMENT, vf.createLiteral("See also " + i));
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		con.close();
+		repository.shutDown();
+	}
+
+	@Benchmark
+	public Template getTemplate() throws Exception {
+		return engine.getTemplate(new StringReader(TEMPLATE), SYSTEM_ID);
+	}
+
+	@Benchmark
+	public void render(Blackhole bh) throws Exception {
+		TupleQueryResult results = template.evaluate(con);
+		XMLEventReader reader = template.render(results);
+		try {
+			while (reader.hasNext()) {
+				bh.consume(reader.nextEvent());
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+}
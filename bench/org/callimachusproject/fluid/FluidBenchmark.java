@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.fluid;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openrdf.model.Model;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDFS;
+
+/**
+ * Converts between Java types and media types through {@link FluidBuilder}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FluidBenchmark {
+	private static final String SYSTEM_ID = "http://example.com/";
+	private final FluidBuilder fb = FluidFactory.getInstance().builder();
+	private final Model model = new LinkedHashModel();
+	private byte[] turtle;
+
+	@Setup
+	public void setUp() throws Exception {
+		ValueFactory vf = ValueFactoryImpl.getInstance();
+		for (int i = 0; i < 100; i++) {
+			URI subj = vf.createURI(SYSTEM_ID + "item" + i);
+			model.add(subj, RDFS.LABEL, vf.createLiteral("Item " + i));
+		}
+		turtle = fb.consume(model, SYSTEM_ID, Model.class, "text/turtle")
+				.asString("text/turtle").getBytes("UTF-8");
+	}
+
+	@Benchmark
+	public String stringToText() throws Exception {
+		return fb.consume("Hello World!", SYSTEM_ID, String.class,
+				"text/plain").asString("text/plain");
+	}
+
+	@Benchmark
+	public String modelToTurtle() throws Exception {
+		return fb.consume(model, SYSTEM_ID, Model.class, "text/turtle")
+				.asString("text/turtle");
+	}
+
+	@Benchmark
+	public Object turtleToModel() throws Exception {
+		return fb.stream(new ByteArrayInputStream(turtle), SYSTEM_ID,
+				"text/turtle").as(Model.class, "text/turtle");
+	}
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.form;
+
+import info.aduna.io.FileUtil;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.callimachusproject.engine.events.TriplePattern;
+import org.callimachusproject.engine.model.AbsoluteTermFactory;
+import org.callimachusproject.engine.model.IRI;
+import org.callimachusproject.engine.model.Node;
+import org.callimachusproject.form.helpers.EntityUpdater;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.StatementImpl;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.impl.GraphQueryResultImpl;
+import org.openrdf.query.parser.ParsedUpdate;
+import org.openrdf.repository.object.ObjectConnection;
+import org.openrdf.repository.object.ObjectRepository;
+import org.openrdf.repository.object.config.ObjectRepositoryFactory;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+/**
+ * The steps of a form edit save, as in calliEditResource, for an update
+ * that adds 500 blank node friends: analyze parses and checks the delete
+ * clause, authorize checks the insert clause of the parsed update and apply
+ * executes it against a MemoryStore.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EditSaveBenchmark {
+	private static final String FOAF = "http://xmlns.com/foaf/0.1/";
+	private static final String PREFIX = "PREFIX foaf:<" + FOAF + ">\n";
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+	private final URI me = vf.createURI("http://example.com/me");
+	private final Statement named = new StatementImpl(me,
+			vf.createURI(FOAF, "name"), vf.createLiteral("me"));
+	private String input;
+	private ParsedUpdate parsed;
+	private EntityUpdater analyzed;
+	private File dataDir;
+	private ObjectRepository repository;
+	private ObjectConnection con;
+
+	@Setup
+	public void prepare() throws Exception {
+		StringBuilder sb = new StringBuilder(PREFIX);
+		sb.append("DELETE { <> foaf:name 'me' } INSERT { <> foaf:name 'you' .\n");
+		for (int i = 0; i < 500; i++) {
+			sb.append("<> foaf:knows [ foaf:name 'friend").append(i)
+					.append("'; foaf:mbox <mailto:friend").append(i)
+					.append("@example.com> ] .\n");
+		}
+		sb.append("} WHERE { <> foaf:name 'me' }");
+		input = sb.toString();
+		analyzed = analyze();
+		parsed = analyzed.getParsedUpdate();
+		dataDir = File.createTempFile(EditSaveBenchmark.class.getSimpleName(), "");
+		dataDir.delete();
+		dataDir.mkdirs();
+		ObjectRepositoryFactory orf = new ObjectRepositoryFactory();
+		repository = orf.getRepository(orf.getConfig());
+		repository.setDelegate(new SailRepository(new MemoryStore()));
+		repository.setDataDir(dataDir);
+		repository.initialize();
+		con = repository.getConnection();
+	}
+
+	@Setup(Level.Invocation)
+	public void resetResource() throws Exception {
+		con.clear();
+		con.add(named);
+	}
+
+	@TearDown
+	public void shutDown() throws Exception {
+		con.close();
+		repository.shutDown();
+		FileUtil.deltree(dataDir);
+	}
+
+	@Benchmark
+	public EntityUpdater analyze() throws Exception {
+		EntityUpdater update = new EntityUpdater(me);
+		update.acceptDelete(new GraphQueryResultImpl(
+				Collections.<String, String> emptyMap(),
+				Collections.singleton(named)));
+		acceptEditPatterns(update);
+		update.analyzeUpdate(input);
+		return update;
+	}
+
+	@Benchmark
+	public EntityUpdater authorize() throws Exception {
+		EntityUpdater update = new EntityUpdater(me);
+		acceptEditPatterns(update);
+		update.analyzeUpdate(parsed);
+		return update;
+	}
+
+	@Benchmark
+	public void apply() throws Exception {
+		analyzed.executeUpdate(input, con);
+	}
+
+	private void acceptEditPatterns(EntityUpdater update) {
+		AbsoluteTermFactory tf = AbsoluteTermFactory.newInstance();
+		IRI subj = tf.iri(me.stringValue());
+		Node friend = tf.node();
+		update.acceptInsert(new TriplePattern(subj, tf.iri(FOAF + "name"), tf.node()));
+		update.acceptInsert(new TriplePattern(subj, tf.iri(FOAF + "knows"), friend));
+		update.acceptInsert(new TriplePattern(friend, tf.iri(FOAF + "name"), tf.node()));
+		update.acceptInsert(new TriplePattern(friend, tf.iri(FOAF + "mbox"), tf.node()));
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.io;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Moves 16 MiB through a 64 KiB AsyncPipe to a consumer thread, waiting for
+ * capacity whenever the pipe is full.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AsyncPipeBenchmark {
+	private static final int SIZE = 16 * 1024 * 1024;
+	private final byte[] chunk = new byte[4096];
+	private ExecutorService executor;
+
+	@Setup
+	public void startConsumer() {
+		new Random(42).nextBytes(chunk);
+		executor = Executors.newSingleThreadExecutor();
+	}
+
+	@TearDown
+	public void stopConsumer() {
+		executor.shutdownNow();
+	}
+
+	@Benchmark
+	public long transfer() throws Exception {
+		final AsyncPipe pipe = new AsyncPipe(65536);
+		Future<Long> consumer = executor.submit(new Callable<Long>() {
+			public Long call() throws Exception {
+				ReadableByteChannel source = pipe.source();
+				ByteBuffer dst = ByteBuffer.allocate(8192);
+				long total = 0;
+				int read;
+				while ((read = source.read(dst)) >= 0) {
+					total += read;
+					dst.clear();
+				}
+				return total;
+			}
+		});
+		final ByteBuffer src = ByteBuffer.wrap(chunk);
+		AsyncPipe.Sink sink = new AsyncPipe.Sink() {
+			public int read(ByteBuffer dst) {
+				int n = 0;
+				while (dst.hasRemaining()) {
+					if (!src.hasRemaining()) {
+						src.clear();
+					}
+					int len = Math.min(src.remaining(), dst.remaining());
+					dst.put(chunk, src.position(), len);
+					src.position(src.position() + len);
+					n += len;
+				}
+				return n;
+			}
+		};
+		long produced = 0;
+		while (produced < SIZE) {
+			produced += pipe.sink(sink);
+			if (!pipe.hasAvailableCapacity()) {
+				final CountDownLatch resumed = new CountDownLatch(1);
+				pipe.onAvailableCapacity(new Runnable() {
+					public void run() {
+						resumed.countDown();
+					}
+				});
+				resumed.await();
+			}
+		}
+		pipe.close();
+		return consumer.get();
+	}
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reads a 16 MiB part of a multipart message in 64 KiB blocks and one byte
+ * at a time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MultipartParserBenchmark {
+	private static final String BOUNDARY = "----------1234567890abcdef";
+	private final byte[] buf = new byte[65536];
+	private byte[] multipart;
+
+	@Setup
+	public void createMessage() throws IOException {
+		byte[] payload = new byte[16 * 1024 * 1024];
+		new Random(42).nextBytes(payload);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length + 256);
+		out.write(("--" + BOUNDARY + "\r\n").getBytes("ISO-8859-1"));
+		out.write("Content-Type: application/octet-stream\r\n\r\n".getBytes("ISO-8859-1"));
+		out.write(payload);
+		out.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes("ISO-8859-1"));
+		multipart = out.toByteArray();
+	}
+
+	@Benchmark
+	public long readBlocks() throws IOException {
+		MultipartParser parser = new MultipartParser(new ByteArrayInputStream(
+				multipart));
+		InputStream part = parser.next();
+		long total = 0;
+		int read;
+		while ((read = part.read(buf)) >= 0) {
+			total += read;
+		}
+		return total;
+	}
+
+	@Benchmark
+	public long readBytes() throws IOException {
+		MultipartParser parser = new MultipartParser(new ByteArrayInputStream(
+				multipart));
+		InputStream part = parser.next();
+		long total = 0;
+		while (part.read() >= 0) {
+			total++;
+		}
+		return total;
+	}
+
+}
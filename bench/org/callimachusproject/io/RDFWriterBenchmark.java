@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.io;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.rio.RDFWriter;
+
+/**
+ * Serializes 1000 statements to a discarding stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RDFWriterBenchmark {
+	private static final String SYSTEM_ID = "http://example.com/";
+	private static final OutputStream NULL = new OutputStream() {
+		public void write(int b) {
+			// discard
+		}
+
+		public void write(byte[] b, int off, int len) {
+			// discard
+		}
+	};
+	private final XMLOutputFactory factory = XMLOutputFactory.newInstance();
+	private final List<Statement> statements = new ArrayList<Statement>();
+
+	@Setup
+	public void setUp() {
+		ValueFactory vf = ValueFactoryImpl.getInstance();
+		for (int i = 0; i < 250; i++) {
+			URI subj = vf.createURI(SYSTEM_ID + "item" + i);
+			statements.add(vf.createStatement(subj, RDF.TYPE, RDFS.RESOURCE));
+			statements.add(vf.createStatement(subj, RDFS.LABEL, vf.createLiteral("Item " + i)));
+			statements.add(vf.createStatement(subj, RDFS.COMMENT, vf.createLiteral("An <escaped> & \"quoted\" comment\n" + i)));
+			statements.add(vf.createStatement(subj, RDFS.SEEALSO, vf.createURI(SYSTEM_ID + "item" + (i + 1))));
+		}
+	}
+
+	@Benchmark
+	public void turtle() throws Exception {
+		write(new TurtleStreamWriter(NULL, SYSTEM_ID));
+	}
+
+	@Benchmark
+	public void arrangedTurtle() throws Exception {
+		write(new ArrangedWriter(new TurtleStreamWriter(NULL, SYSTEM_ID)));
+	}
+
+	@Benchmark
+	public void subjectOrderedTurtle() throws Exception {
+		ArrangedWriter writer = new ArrangedWriter(new TurtleStreamWriter(
+				NULL, SYSTEM_ID));
+		writer.setSubjectOrdered(true);
+		write(writer);
+	}
+
+	@Benchmark
+	public void rdfxml() throws Exception {
+		XMLStreamWriter xml = factory.createXMLStreamWriter(NULL, "UTF-8");
+		write(new RDFXMLStreamWriter(xml, SYSTEM_ID));
+		xml.close();
+	}
+
+	private void write(RDFWriter writer) throws Exception {
+		writer.startRDF();
+		writer.handleNamespace("rdfs", RDFS.NAMESPACE);
+		for (Statement st : statements) {
+			writer.handleStatement(st);
+		}
+		writer.endRDF();
+	}
+
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.load;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.Authenticator;
+import java.net.PasswordAuthentication;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.callimachusproject.server.util.LatencyHistogram;
+import org.callimachusproject.test.TemporaryServer;
+import org.callimachusproject.test.TemporaryServerFactory;
+import org.callimachusproject.test.WebResource;
+
+/**
+ * Drives a mixed workload at a {@link TemporaryServer} from concurrent client
+ * sessions over localhost and reports throughput, latency percentiles and
+ * errors for each kind of request. Configured with system properties:
+ * 
+ * <dl>
+ * <dt>load.clients</dt>
+ * <dd>number of concurrent client sessions (16)</dd>
+ * <dt>load.warmup</dt>
+ * <dd>seconds to run before measuring (30)</dd>
+ * <dt>load.duration</dt>
+ * <dd>seconds to measure (60)</dd>
+ * <dt>load.mix</dt>
+ * <dd>relative weight of each operation
+ * (page=40,query=20,create=10,edit=10,upload=10,digest=10)</dd>
+ * <dt>load.seed.size</dt>
+ * <dd>number of concepts and files created before the run, at least one
+ * concept per client (50)</dd>
+ * <dt>load.upload.size</dt>
+ * <dd>bytes in each uploaded file (16384)</dd>
+ * <dt>load.random</dt>
+ * <dd>random seed, so runs issue the same sequence of operations (1)</dd>
+ * <dt>load.report</dt>
+ * <dd>CSV file to append the results to</dd>
+ * <dt>load.max.error.rate</dt>
+ * <dd>fail if more than this fraction of requests fail (0.01)</dd>
+ * <dt>load.min.throughput</dt>
+ * <dd>fail if fewer requests per second complete (0, disabled)</dd>
+ * </dl>
+ * 
+ * The process exits with status 1 if a threshold is not met.
+ */
+public class LoadTest {
+	private static final String PREFIX = "PREFIX rdfs:<http://www.w3.org/2000/01/rdf-schema#>\n"
+			+ "PREFIX calli:<http://callimachusproject.org/rdf/2009/framework#>\n"
+			+ "PREFIX skos:<http://www.w3.org/2004/02/skos/core#>\n";
+	private static final String QUERY = PREFIX
+			+ "SELECT ?concept ?label { ?concept a skos:Concept; skos:prefLabel ?label } LIMIT 20";
+
+	enum Operation {
+		/** template and RDFa rendering of a resource page */
+		page,
+		/** SPARQL endpoint query */
+		query,
+		/** form create of a new concept */
+		create,
+		/** form edit of a seeded concept */
+		edit,
+		/** file upload into the seeded folder */
+		upload,
+		/** authenticated page using a new Digest handshake each time */
+		digest
+	}
+
+	public static void main(String[] args) throws Exception {
+		LoadTest test = new LoadTest();
+		TemporaryServer server = TemporaryServerFactory.getInstance().createServer();
+		server.start();
+		boolean passed;
+		try {
+			test.seed(server);
+			test.run();
+			test.report(System.out);
+			String report = System.getProperty("load.report");
+			if (report != null && report.length() > 0) {
+				File file = new File(report);
+				file.getParentFile().mkdirs();
+				PrintWriter writer = new PrintWriter(new FileWriter(file, true));
+				try {
+					test.report(writer);
+				} finally {
+					writer.close();
+				}
+			}
+			passed = test.isPassed(System.err);
+		} finally {
+			server.stop();
+			server.destroy();
+		}
+		System.exit(passed ? 0 : 1);
+	}
+
+	private final int clients = Integer.getInteger("load.clients", 16);
+	private final int warmup = Integer.getInteger("load.warmup", 30);
+	private final int duration = Integer.getInteger("load.duration", 60);
+	private final int seedSize = Integer.getInteger("load.seed.size", 50);
+	private final int uploadSize = Integer.getInteger("load.upload.size", 16384);
+	private final long randomSeed = Long.getLong("load.random", 1);
+	private final double maxErrorRate = Double.parseDouble(System.getProperty("load.max.error.rate", "0.01"));
+	private final double minThroughput = Double.parseDouble(System.getProperty("load.min.throughput", "0"));
+	private final Operation[] mix = parseMix(System.getProperty("load.mix",
+			"page=40,query=20,create=10,edit=10,upload=10,digest=10"));
+	private final Map<Operation, LatencyHistogram> latencies = new EnumMap<Operation, LatencyHistogram>(Operation.class);
+	private final Map<Operation, AtomicLong> errors = new EnumMap<Operation, AtomicLong>(Operation.class);
+	private final AtomicInteger created = new AtomicInteger();
+	private final List<String> concepts = new ArrayList<String>();
+	private final List<String> files = new ArrayList<String>();
+	private CredentialsProvider credentials;
+	private String folder;
+	private String describedby;
+	private String endpoint;
+	private byte[] upload;
+	private volatile boolean stopping;
+	private long measured;
+
+	public LoadTest() {
+		for (Operation op : Operation.values()) {
+			latencies.put(op, new LatencyHistogram());
+			errors.put(op, new AtomicLong());
+		}
+	}
+
+	/**
+	 * Creates a folder with concepts and files for the workload to use.
+	 */
+	public void seed(final TemporaryServer server) throws Exception {
+		Authenticator.setDefault(new Authenticator() {
+			protected PasswordAuthentication getPasswordAuthentication() {
+				return new PasswordAuthentication(server.getUsername(),
+						server.getPassword());
+			}
+		});
+		credentials = new BasicCredentialsProvider();
+		credentials.setCredentials(AuthScope.ANY,
+				new UsernamePasswordCredentials(server.getUsername(),
+						new String(server.getPassword())));
+		String origin = server.getOrigin();
+		WebResource home = new WebResource(server.getRepository()
+				.getCallimachusUrl(origin, "/"));
+		String slug = "load-test-" + Long.toString(System.currentTimeMillis(), 36) + "/";
+		WebResource dir = home.createFolder(slug);
+		folder = dir.toString();
+		describedby = dir.link("describedby").toString();
+		endpoint = home.sparqlEndpoint().toString();
+		upload = new byte[uploadSize];
+		Random random = new Random(randomSeed);
+		for (int i = 0; i < upload.length; i++) {
+			upload[i] = (byte) ('a' + random.nextInt(26));
+		}
+		for (int i = 0, n = Math.max(seedSize, clients); i < n; i++) {
+			WebResource concept = new WebResource(describedby).create(
+					"application/sparql-update", createConcept("concept" + i)
+							.getBytes("UTF-8"));
+			concepts.add(concept.toString());
+			WebResource file = dir.create("file" + i + ".txt", "text/plain", upload);
+			files.add(file.toString());
+		}
+	}
+
+	/**
+	 * Runs the workload through the warmup period and then measures it for
+	 * the configured duration.
+	 */
+	public void run() throws Exception {
+		CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+				.setDefaultCredentialsProvider(credentials)
+				.setMaxConnPerRoute(clients).setMaxConnTotal(clients).build();
+		client.start();
+		try {
+			CountDownLatch done = new CountDownLatch(clients);
+			for (int i = 0; i < clients; i++) {
+				new Session(client, new Random(randomSeed + i), i, done).next();
+			}
+			Thread.sleep(TimeUnit.SECONDS.toMillis(warmup));
+			for (Operation op : Operation.values()) {
+				latencies.get(op).reset();
+				errors.get(op).set(0);
+			}
+			long start = System.nanoTime();
+			Thread.sleep(TimeUnit.SECONDS.toMillis(duration));
+			measured = System.nanoTime() - start;
+			stopping = true;
+			done.await(60, TimeUnit.SECONDS);
+		} finally {
+			client.close();
+		}
+	}
+
+	public void report(Appendable out) throws IOException {
+		double seconds = measured / 1000000000.0;
+		out.append("operation,requests,errors,throughput,mean,p50,p90,p99,max\n");
+		long total = 0;
+		long failed = 0;
+		for (Operation op : Operation.values()) {
+			LatencyHistogram histogram = latencies.get(op);
+			long count = histogram.getCount();
+			long error = errors.get(op).get();
+			total += count;
+			failed += error;
+			out.append(op.name()).append(',');
+			out.append(Long.toString(count)).append(',');
+			out.append(Long.toString(error)).append(',');
+			out.append(String.format("%.1f", count / seconds)).append(',');
+			out.append(Long.toString(histogram.getMean())).append(',');
+			out.append(Long.toString(histogram.getPercentile(50))).append(',');
+			out.append(Long.toString(histogram.getPercentile(90))).append(',');
+			out.append(Long.toString(histogram.getPercentile(99))).append(',');
+			out.append(Long.toString(histogram.getMaximum())).append('\n');
+		}
+		out.append("total,").append(Long.toString(total)).append(',');
+		out.append(Long.toString(failed)).append(',');
+		out.append(String.format("%.1f", total / seconds)).append("\n\n");
+	}
+
+	public boolean isPassed(Appendable out) throws IOException {
+		long total = 0;
+		long failed = 0;
+		for (Operation op : Operation.values()) {
+			total += latencies.get(op).getCount();
+			failed += errors.get(op).get();
+		}
+		double throughput = total / (measured / 1000000000.0);
+		boolean passed = true;
+		if (failed > (total + failed) * maxErrorRate) {
+			out.append("Too many errors: ").append(Long.toString(failed))
+					.append(" of ").append(Long.toString(total + failed))
+					.append('\n');
+			passed = false;
+		}
+		if (throughput < minThroughput) {
+			out.append("Throughput too low: ")
+					.append(String.format("%.1f", throughput))
+					.append(" < ").append(Double.toString(minThroughput))
+					.append('\n');
+			passed = false;
+		}
+		return passed;
+	}
+
+	/**
+	 * A simulated user that issues its next request when the previous one
+	 * completes.
+	 */
+	private class Session implements FutureCallback<HttpResponse> {
+		private final CloseableHttpAsyncClient client;
+		private final Random random;
+		private final String concept;
+		private final CountDownLatch done;
+		private final HttpClientContext context = HttpClientContext.create();
+		private String label;
+		private String editing;
+		private Operation op;
+		private long started;
+
+		Session(CloseableHttpAsyncClient client, Random random, int id,
+				CountDownLatch done) {
+			this.client = client;
+			this.random = random;
+			this.concept = concepts.get(id % concepts.size());
+			this.label = "concept" + (id % concepts.size());
+			this.done = done;
+		}
+
+		void next() {
+			if (stopping) {
+				done.countDown();
+				return;
+			}
+			op = mix[random.nextInt(mix.length)];
+			try {
+				HttpUriRequest req = request(op);
+				HttpClientContext ctx = context;
+				if (op == Operation.digest) {
+					ctx = HttpClientContext.create();
+				}
+				started = System.nanoTime();
+				client.execute(req, ctx, this);
+			} catch (Exception e) {
+				errors.get(op).incrementAndGet();
+				done.countDown();
+			}
+		}
+
+		public void completed(HttpResponse result) {
+			long elapsed = System.nanoTime() - started;
+			int code = result.getStatusLine().getStatusCode();
+			if (code >= 400) {
+				errors.get(op).incrementAndGet();
+			} else {
+				latencies.get(op).record(elapsed, TimeUnit.NANOSECONDS);
+				if (op == Operation.edit) {
+					label = editing;
+				}
+			}
+			next();
+		}
+
+		public void failed(Exception ex) {
+			errors.get(op).incrementAndGet();
+			next();
+		}
+
+		public void cancelled() {
+			errors.get(op).incrementAndGet();
+			next();
+		}
+
+		private HttpUriRequest request(Operation op) throws IOException {
+			switch (op) {
+			case page:
+				return get(random.nextBoolean() ? folder + "?view"
+						: concepts.get(random.nextInt(concepts.size())) + "?view",
+						"text/html");
+			case query:
+				return get(endpoint + "?query=" + URLEncoder.encode(QUERY, "UTF-8"),
+						"application/sparql-results+xml");
+			case create:
+				String name = "created" + created.getAndIncrement();
+				return post(describedby, "application/sparql-update",
+						createConcept(name).getBytes("UTF-8"));
+			case edit:
+				editing = "edited" + random.nextInt();
+				String update = PREFIX + "DELETE {\n<" + concept
+						+ "> skos:prefLabel \"" + label + "\"\n} WHERE {\n<"
+						+ concept + "> skos:prefLabel \"" + label
+						+ "\"\n};\nINSERT {\n<" + concept
+						+ "> skos:prefLabel \"" + editing + "\"\n} WHERE {}";
+				HttpPost edit = post(concept + "?edit",
+						"application/sparql-update", update.getBytes("UTF-8"));
+				edit.setHeader("Accept", "text/uri-list");
+				return edit;
+			case upload:
+				HttpPost post = post(folder, "text/plain", upload);
+				post.setHeader("Slug", "upload" + created.getAndIncrement() + ".txt");
+				return post;
+			case digest:
+				return get(files.get(random.nextInt(files.size())) + "?edit",
+						"text/html");
+			default:
+				throw new AssertionError(op);
+			}
+		}
+
+		private HttpGet get(String url, String accept) {
+			HttpGet get = new HttpGet(url);
+			get.setHeader("Accept", accept);
+			return get;
+		}
+
+		private HttpPost post(String url, String type, byte[] body) {
+			HttpPost post = new HttpPost(url);
+			post.setEntity(entity(type, body));
+			return post;
+		}
+
+		private ByteArrayEntity entity(String type, byte[] body) {
+			ByteArrayEntity entity = new ByteArrayEntity(body);
+			entity.setContentType(type);
+			return entity;
+		}
+	}
+
+	private String createConcept(String name) {
+		return "BASE <" + folder + ">\n" + PREFIX + "INSERT DATA {\n<" + name
+				+ "> a skos:Concept, </callimachus/Concept>;\nskos:prefLabel \""
+				+ name + "\" }";
+	}
+
+	private Operation[] parseMix(String spec) {
+		List<Operation> list = new ArrayList<Operation>();
+		for (String entry : spec.split("\\s*,\\s*")) {
+			if (entry.length() == 0)
+				continue;
+			String[] pair = entry.split("\\s*=\\s*", 2);
+			Operation op = Operation.valueOf(pair[0]);
+			int weight = pair.length > 1 ? Integer.parseInt(pair[1]) : 1;
+			for (int i = 0; i < weight; i++) {
+				list.add(op);
+			}
+		}
+		if (list.isEmpty())
+			throw new IllegalArgumentException("Empty load.mix");
+		return list.toArray(new Operation[list.size()]);
+	}
+
+}
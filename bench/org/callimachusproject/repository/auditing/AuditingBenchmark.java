@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.callimachusproject.repository.auditing;
+
+import java.util.concurrent.TimeUnit;
+
+import org.callimachusproject.sail.auditing.AuditingSail;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+/**
+ * Adds 20000 audited triples about 2000 subjects in one transaction to an
+ * empty MemoryStore.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AuditingBenchmark {
+	private static final String NS = "http://example.com/";
+	private AuditingRepository repo;
+
+	@Setup(Level.Invocation)
+	public void createRepository() throws Exception {
+		repo = new AuditingRepository(new SailRepository(new AuditingSail(
+				new MemoryStore())));
+		repo.initialize();
+	}
+
+	@TearDown(Level.Invocation)
+	public void shutDown() throws Exception {
+		repo.shutDown();
+	}
+
+	@Benchmark
+	public void addBulk() throws Exception {
+		ValueFactory vf = repo.getValueFactory();
+		URI knows = vf.createURI("http://xmlns.com/foaf/0.1/knows");
+		AuditingRepositoryConnection con = repo.getConnection();
+		try {
+			con.begin();
+			for (int i = 0; i < 2000; i++) {
+				URI subj = vf.createURI(NS, "person" + i);
+				for (int j = 0; j < 10; j++) {
+					con.add(subj, knows, vf.createURI(NS, "person" + (i + j + 1)));
+				}
+			}
+			con.commit();
+		} finally {
+			con.close();
+		}
+	}
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.repository.trace;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The cost of a small call made directly, through a tracer that samples one
+ * call in a hundred and through a tracer that traces every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TracerServiceBenchmark {
+	public interface Service {
+		int work(String input);
+	}
+
+	public static class ServiceImpl implements Service {
+		public int work(String input) {
+			int hash = 0;
+			for (int i = 0; i < 200; i++) {
+				hash = 31 * hash + (input + i).hashCode();
+			}
+			return hash;
+		}
+	}
+
+	private final Service plain = new ServiceImpl();
+	private Service sampled;
+	private Service traced;
+
+	@Setup
+	public void createTracers() {
+		sampled = tracer(0.01).trace(new ServiceImpl(), Service.class);
+		traced = tracer(1).trace(new ServiceImpl(), Service.class);
+	}
+
+	@Benchmark
+	public int untraced() {
+		return plain.work("a");
+	}
+
+	@Benchmark
+	public int sampled() {
+		return sampled.work("a");
+	}
+
+	@Benchmark
+	public int traced() {
+		return traced.work("a");
+	}
+
+	private TracerService tracer(double rate) {
+		TracerService service = new TracerService(getClass().getClassLoader());
+		service.setTracingPackages(Service.class.getName());
+		service.setSamplingRate(rate);
+		return service;
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.rewrite;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SubstitutionBenchmark {
+	private static final String INPUT = "http://example.com/callimachus/1.3/types/Page?view&lang=en";
+	private static final int LARGE_TABLE = 2000;
+	private final Map<String, String> variables = Collections.singletonMap("q", "query");
+	private final String[] uris = new String[1024];
+	private Substitution[] table;
+	private Substitution[] large;
+	private int next;
+
+	@Setup
+	public void compileTable() {
+		table = new Substitution[100];
+		for (int i = 0; i < table.length - 1; i++) {
+			table[i] = Substitution.compile("^http://example.org/" + i + "/(.*)", "/" + i + "/{1}");
+		}
+		table[table.length - 1] = Substitution.compile("^http://example.com/(?<path>[^?]*)\\?(.*)", "/{path}?{2}");
+		large = new Substitution[LARGE_TABLE];
+		for (int i = 0; i < large.length; i++) {
+			large[i] = Substitution.compile("^http://example.com/site" + i
+					+ "/(?<path>.*)$ http://backend" + i
+					+ ".example.com/{+path}{?q}");
+		}
+		for (int i = 0; i < uris.length; i++) {
+			uris[i] = "http://example.com/site" + (i * 7 % LARGE_TABLE) + "/page/" + i;
+		}
+	}
+
+	@Benchmark
+	public Substitution compile() {
+		return Substitution.compile("^http://example.com/(?<path>[^?]*)\\?(.*)", "/{path}?{2}");
+	}
+
+	@Benchmark
+	public CharSequence replace() {
+		return table[table.length - 1].replace(INPUT);
+	}
+
+	@Benchmark
+	public CharSequence rewriteTable() {
+		for (Substitution substitution : table) {
+			CharSequence result = substitution.replace(INPUT);
+			if (result != null)
+				return result;
+		}
+		return null;
+	}
+
+	@Benchmark
+	public CharSequence rewriteLargeTable() {
+		String uri = uris[next++ & 1023];
+		for (Substitution substitution : large) {
+			CharSequence result = substitution.replace(uri, variables);
+			if (result != null)
+				return result;
+		}
+		return null;
+	}
+
+}
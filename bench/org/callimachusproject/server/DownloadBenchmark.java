@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.server;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Authenticator;
+import java.net.PasswordAuthentication;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.callimachusproject.test.TemporaryServer;
+import org.callimachusproject.test.TemporaryServerFactory;
+import org.callimachusproject.test.WebResource;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Downloads a large file from a {@link TemporaryServer} with different
+ * connection buffer sizes and direct buffer memory. The heap bytes allocated
+ * and the connection buffers that fell back to the heap are reported as
+ * secondary rates next to the throughput. A buffer memory of zero leaves
+ * every connection buffer on the heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DownloadBenchmark {
+	private static final int FILE_SIZE = 4 * 1024 * 1024;
+
+	@Param({ "8192", "32768" })
+	public int bufferSize;
+
+	@Param({ "0", "67108864" })
+	public long bufferMemory;
+
+	private TemporaryServer server;
+	private CloseableHttpClient client;
+	private WebResource file;
+	private final byte[] buf = new byte[FILE_SIZE];
+
+	/**
+	 * Heap bytes allocated by all threads of this JVM and heap buffers used
+	 * by the server, while downloading.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters
+	public static class Allocations {
+		public long allocatedBytes;
+		public long heapBuffers;
+
+		@Setup(Level.Iteration)
+		public void clean() {
+			allocatedBytes = 0;
+			heapBuffers = 0;
+		}
+	}
+
+	@Setup
+	public void start() throws Exception {
+		server = TemporaryServerFactory.getInstance().createServer();
+		server.start();
+		Authenticator.setDefault(new Authenticator() {
+			protected PasswordAuthentication getPasswordAuthentication() {
+				return new PasswordAuthentication(server.getUsername(),
+						server.getPassword());
+			}
+		});
+		for (WebServer web : WebServer.getInstances()) {
+			web.setBufferSize(bufferSize);
+			web.setBufferMemory(bufferMemory);
+		}
+		byte[] upload = new byte[FILE_SIZE];
+		Arrays.fill(upload, (byte) 'a');
+		String origin = server.getOrigin();
+		WebResource home = new WebResource(server.getRepository()
+				.getCallimachusUrl(origin, "/"));
+		String slug = "download-" + Long.toString(System.currentTimeMillis(), 36) + ".txt";
+		file = home.create(slug, "text/plain", upload);
+		BasicCredentialsProvider credentials = new BasicCredentialsProvider();
+		credentials.setCredentials(AuthScope.ANY,
+				new UsernamePasswordCredentials(server.getUsername(),
+						new String(server.getPassword())));
+		client = HttpClients.custom()
+				.setDefaultCredentialsProvider(credentials).build();
+	}
+
+	@TearDown
+	public void stop() throws Exception {
+		client.close();
+		file.delete();
+		Authenticator.setDefault(null);
+		server.stop();
+	}
+
+	@Benchmark
+	public long download(Allocations allocations) throws Exception {
+		long allocated = getAllocatedBytes();
+		long heap = getHeapBufferCount();
+		try {
+			return fetch();
+		} finally {
+			allocations.allocatedBytes += getAllocatedBytes() - allocated;
+			allocations.heapBuffers += getHeapBufferCount() - heap;
+		}
+	}
+
+	private long fetch() throws Exception {
+		HttpGet get = new HttpGet(file.toString());
+		get.setHeader("Accept", "text/plain");
+		get.setHeader("Cache-Control", "no-cache");
+		HttpResponse resp = client.execute(get);
+		HttpEntity entity = resp.getEntity();
+		try {
+			int code = resp.getStatusLine().getStatusCode();
+			if (code >= 400)
+				throw new IllegalStateException(resp.getStatusLine() + " " + file);
+			long length = 0;
+			InputStream in = entity.getContent();
+			try {
+				for (int read = in.read(buf); read >= 0; read = in.read(buf)) {
+					length += read;
+				}
+			} finally {
+				in.close();
+			}
+			return length;
+		} finally {
+			EntityUtils.consume(entity);
+		}
+	}
+
+	private long getHeapBufferCount() {
+		long heap = 0;
+		for (WebServer web : WebServer.getInstances()) {
+			heap += web.getHeapBufferCount();
+		}
+		return heap;
+	}
+
+	/**
+	 * Heap bytes allocated by all live threads of this JVM, which includes
+	 * the server's I/O dispatch and worker threads.
+	 */
+	private long getAllocatedBytes() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long total = 0;
+		for (long bytes : threads.getThreadAllocatedBytes(threads
+				.getAllThreadIds())) {
+			if (bytes > 0) {
+				total += bytes;
+			}
+		}
+		return total;
+	}
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.callimachusproject.client.HttpClientFactory;
+import org.callimachusproject.test.TemporaryServer;
+import org.callimachusproject.test.TemporaryServerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Round-trips requests through the full WebServer chain of a
+ * {@link TemporaryServer} over localhost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WebServerBenchmark {
+	private TemporaryServer server;
+	private CloseableHttpClient client;
+	private String home;
+
+	@Setup
+	public void start() throws Exception {
+		server = TemporaryServerFactory.getInstance().createServer();
+		server.start();
+		home = server.getRepository().getCallimachusUrl(server.getOrigin(), "/");
+		if (home == null) {
+			home = server.getOrigin() + "/";
+		}
+		client = HttpClientFactory.getInstance().createHttpClient(server.getOrigin());
+	}
+
+	@TearDown
+	public void stop() throws Exception {
+		client.close();
+		server.stop();
+	}
+
+	@Benchmark
+	public int homePage() throws Exception {
+		return get(home, "text/html");
+	}
+
+	@Benchmark
+	public int describe() throws Exception {
+		return get(home + "?describe", "text/turtle");
+	}
+
+	private int get(String url, String accept) throws Exception {
+		HttpGet get = new HttpGet(url);
+		get.setHeader("Accept", accept);
+		HttpResponse resp = client.execute(get);
+		try {
+			int code = resp.getStatusLine().getStatusCode();
+			if (code >= 400)
+				throw new IllegalStateException(resp.getStatusLine() + " " + url);
+			return code;
+		} finally {
+			EntityUtils.consume(resp.getEntity());
+		}
+	}
+
+}
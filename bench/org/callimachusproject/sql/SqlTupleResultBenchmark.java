@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.sql;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Reads a million rows from an in-memory Derby table through
+ * {@link SqlTupleResult}, using the tmp/derby.jar the build downloads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SqlTupleResultBenchmark {
+	private static final String DRIVER_JAR = "tmp/derby.jar";
+	private static final String DRIVER_CLASSNAME = "org.apache.derby.jdbc.EmbeddedDriver";
+	private static final String JDBC_URL = "jdbc:derby:memory:SqlTupleResultBenchmark;create=true";
+	private static final int ROWS = 1000000;
+	private Driver driver;
+	private Connection conn;
+
+	@Setup
+	public void insert() throws Exception {
+		File jar = new File(DRIVER_JAR);
+		if (!jar.exists())
+			throw new FileNotFoundException(jar.getAbsolutePath());
+		ClassLoader cl = new URLClassLoader(new URL[] { jar.toURI().toURL() });
+		driver = (Driver) Class.forName(DRIVER_CLASSNAME, true, cl).newInstance();
+		conn = driver.connect(JDBC_URL, new Properties());
+		Statement stmt = conn.createStatement();
+		try {
+			stmt.execute("CREATE TABLE testdata (id INTEGER, label VARCHAR(64), amount DECIMAL(10,2), note VARCHAR(64))");
+		} finally {
+			stmt.close();
+		}
+		conn.setAutoCommit(false);
+		PreparedStatement insert = conn
+				.prepareStatement("INSERT INTO testdata (id, label, amount) VALUES (?, ?, ?)");
+		try {
+			for (int i = 0; i < ROWS; i++) {
+				insert.setInt(1, i);
+				insert.setString(2, "row " + i);
+				insert.setBigDecimal(3, BigDecimal.valueOf(i, 2));
+				insert.addBatch();
+				if (i % 1000 == 999) {
+					insert.executeBatch();
+				}
+			}
+			insert.executeBatch();
+			conn.commit();
+		} finally {
+			insert.close();
+			conn.setAutoCommit(true);
+		}
+	}
+
+	@TearDown
+	public void drop() throws Exception {
+		Statement stmt = conn.createStatement();
+		try {
+			stmt.execute("DROP TABLE testdata");
+		} finally {
+			stmt.close();
+		}
+		conn.close();
+	}
+
+	@Benchmark
+	public int iterateRows() throws Exception {
+		Connection con = driver.connect(JDBC_URL, new Properties());
+		Statement stmt = con.createStatement();
+		SqlTupleResult result = new SqlTupleResult(
+				stmt.executeQuery("SELECT * FROM testdata"), stmt, con);
+		int count = 0;
+		try {
+			while (result.hasNext()) {
+				result.next();
+				count++;
+			}
+		} finally {
+			result.close();
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Closest prefix lookups of host names in a map of 5000 reversed host
+ * patterns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PrefixMapBenchmark {
+	private final PrefixMap<String> map = new PrefixMap<String>();
+	private final String[] hosts = new String[1024];
+	private int next;
+
+	@Setup
+	public void fillMap() {
+		Random random = new Random(42);
+		List<String> keys = hostPatterns(random, 5000);
+		for (String key : keys) {
+			map.put(key, key);
+		}
+		for (int i = 0; i < hosts.length; i++) {
+			hosts[i] = keys.get(random.nextInt(keys.size())) + "www." + i
+					+ ".";
+		}
+	}
+
+	@Benchmark
+	public String getClosest() {
+		return map.getClosest(hosts[next++ & 1023]);
+	}
+
+	private List<String> hostPatterns(Random random, int size) {
+		String[] tlds = { "com", "org", "net", "edu", "ca", "uk" };
+		List<String> keys = new ArrayList<String>(size);
+		keys.add(".");
+		for (String tld : tlds) {
+			keys.add("." + tld + ".");
+		}
+		while (keys.size() < size) {
+			String parent = keys.get(1 + random.nextInt(keys.size() - 1));
+			keys.add(parent + "d" + random.nextInt(1000) + ".");
+		}
+		return keys;
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.xproc;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.HttpClient;
+import org.callimachusproject.client.HttpClientFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Pipes a JSON array of 20000 small objects through the deserialize-json
+ * step, and through deserialize-json followed by serialize-json. The jsonx
+ * flavor is converted by the streaming JSONtoJSONX and JSONXtoJSON, the
+ * marklogic flavor by calabash.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JsonStepBenchmark {
+	private static final String DECLARE = "    <p:declare-step type='calli:deserialize-json'>\n"
+			+ "        <p:input port='source' sequence='true' primary='true' />\n"
+			+ "        <p:option name='content-type'/>\n"
+			+ "        <p:option name='encoding'/>\n"
+			+ "        <p:option name='charset'/>\n"
+			+ "        <p:option name='flavor'/>\n"
+			+ "        <p:output port='result' sequence='true' />\n"
+			+ "    </p:declare-step>\n"
+			+ "    <p:declare-step type='calli:serialize-json'>\n"
+			+ "        <p:input port='source' sequence='true' primary='true' />\n"
+			+ "        <p:option name='content-type'/>\n"
+			+ "        <p:output port='result' sequence='true' />\n"
+			+ "    </p:declare-step>\n";
+	private static final String PIPELINE = "<p:pipeline version='1.0'\n"
+			+ "xmlns:p='http://www.w3.org/ns/xproc'\n"
+			+ "xmlns:calli='http://callimachusproject.org/rdf/2009/framework#'>\n"
+			+ "<p:serialization port='result' media-type='application/json' method='text' />\n"
+			+ DECLARE
+			+ "<calli:deserialize-json encoding='base64' charset='UTF-8' flavor='%s' />\n"
+			+ "%s</p:pipeline>\n";
+
+	@Param({ "jsonx", "marklogic" })
+	public String flavor;
+	private final HttpClient client = HttpClientFactory.getInstance()
+			.createHttpClient("http://example.com/");
+	private byte[] json;
+	private Pipeline deserialize;
+	private Pipeline roundTrip;
+
+	@Setup
+	public void prepare() throws Exception {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < 20000; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("{\"id\":").append(i).append(",\"name\":\"item ")
+					.append(i).append("\",\"tags\":[\"a\",\"b\"],\"ok\":true}");
+		}
+		json = sb.append(']').toString().getBytes("UTF-8");
+		PipelineFactory pf = PipelineFactory.newInstance();
+		deserialize = pf.createPipeline(new StringReader(String.format(
+				PIPELINE, flavor, "<p:count/>\n")), "http://example.com/",
+				client);
+		roundTrip = pf.createPipeline(new StringReader(String.format(
+				PIPELINE, flavor, "<calli:serialize-json/>\n")),
+				"http://example.com/", client);
+	}
+
+	@Benchmark
+	public String deserialize() throws Exception {
+		return pipe(deserialize);
+	}
+
+	@Benchmark
+	public String roundTrip() throws Exception {
+		return pipe(roundTrip);
+	}
+
+	private String pipe(Pipeline pipeline) throws Exception {
+		return pipeline.pipeStreamOf(new ByteArrayInputStream(json),
+				"http://example.com/", "application/json;charset=UTF-8")
+				.asString();
+	}
+
+}
@@ -45,9 +45,13 @@ import org.callimachusproject.management.CalliServer.ServerListener;
 import org.callimachusproject.management.JVMSummary;
 import org.callimachusproject.management.LogEmitter;
 import org.callimachusproject.repository.CalliRepository;
+import org.callimachusproject.repository.auditing.AuditingRepository;
 import org.callimachusproject.server.WebServer;
+import org.callimachusproject.sql.DriverConnectionPoolManager;
+import org.callimachusproject.sql.SqlResultCache;
 import org.callimachusproject.util.CallimachusConf;
 import org.callimachusproject.util.CallimachusPolicy;
+import org.callimachusproject.util.DomainNameSystemResolver;
 import org.callimachusproject.util.SystemProperties;
 import org.openrdf.repository.manager.LocalRepositoryManager;
 import org.openrdf.repository.manager.RepositoryProvider;
@@ -179,10 +183,16 @@ public class Server {
 						CalliRepository repository) {
 					unregisterMBean(repositoryID, CalliRepository.class);
 					registerMBean(repositoryID, repository, CalliRepository.class);
+					AuditingRepository auditing = repository.getAuditingRepository();
+					if (auditing != null) {
+						unregisterMBean(repositoryID, AuditingRepository.class);
+						registerMBean(repositoryID, auditing, AuditingRepository.class);
+					}
 				}
 
 				public void repositoryShutDown(String repositoryID) {
 					unregisterMBean(repositoryID, CalliRepository.class);
+					unregisterMBean(repositoryID, AuditingRepository.class);
 				}
 
 				public void webServiceStarted(WebServer server) {
@@ -196,6 +206,9 @@ public class Server {
 			registerMBean(node, CalliServer.class);
 			registerMBean(new JVMSummary(), JVMSummary.class);
 			registerMBean(new LogEmitter(), LogEmitter.class);
+			registerMBean(DomainNameSystemResolver.getInstance(), DomainNameSystemResolver.class);
+			registerMBean(SqlResultCache.getInstance(), SqlResultCache.class);
+			registerMBean(DriverConnectionPoolManager.getInstance(), DriverConnectionPoolManager.class);
 			File etc = new File(baseDir, "etc");
 			registerMBean(new CalliKeyStore(etc), CalliKeyStore.class);
 			if (!line.has("trust")) {
@@ -244,6 +257,9 @@ public class Server {
 			unregisterMBean(CalliServer.class);
 			unregisterMBean(JVMSummary.class);
 			unregisterMBean(LogEmitter.class);
+			unregisterMBean(DomainNameSystemResolver.class);
+			unregisterMBean(SqlResultCache.class);
+			unregisterMBean(DriverConnectionPoolManager.class);
 			unregisterMBean(CalliKeyStore.class);
 			ManagedExecutors.getInstance().cleanup();
 		}
@@ -251,6 +251,7 @@ public class ServerMonitor {
 		executeVMCommand(vm, "heapHisto", dir + "heap-" + stamp + ".histo");
 		// dump callimachus info
 		connectionDump(mbsc, dir + "server-" + stamp + ".csv");
+		stageTimingDump(mbsc, dir + "stages-" + stamp + ".csv");
 		poolDump(mbsc, dir + "pool-" + stamp + ".tdump");
 		traceDump(mbsc, dir + "trace-" + stamp + ".txt");
 		summaryDump(mbsc, dir + "summary-" + stamp + ".txt");
@@ -315,6 +316,18 @@ public class ServerMonitor {
 		}
 	}
 
+	private void stageTimingDump(MBeanServerConnection mbsc, String filename)
+			throws MalformedObjectNameException, IOException {
+		for (ObjectName name : getObjectNames(WebServer.class, mbsc)) {
+			WebServerMXBean server = JMX.newMXBeanProxy(mbsc, name,
+					WebServerMXBean.class);
+			if (server.isStageTiming()) {
+				server.stageTimingDumpToFile(filename);
+				info(filename);
+			}
+		}
+	}
+
 	private Set<ObjectName> getObjectNames(Class<?> mclass,
 			MBeanServerConnection mbsc) throws IOException,
 			MalformedObjectNameException {
@@ -91,6 +91,8 @@ public class Setup {
 		commands.option("k", "backups").arg("directory")
 				.desc("Backup directory");
 		commands.option("K", "no-backup").desc("Disable automatic backup");
+		commands.option("i", "incremental-backup")
+				.desc("Only store files changed since the previous backup (restoring needs the earlier backups)");
 		commands.option("G", "no-upgrade")
 				.desc("Disables upgrading stored data (new users and repository config may still be modified)");
 		commands.option("u", "user").optional("name")
@@ -181,6 +183,7 @@ public class Setup {
 				}
 				if (line.has("backups") && !line.has("no-backup")) {
 					backup = new BackupTool(new File(line.get("backups")));
+					backup.setIncremental(line.has("incremental-backup"));
 				}
 				upgrade = !line.has("no-upgrade");
 				if (line.has("user") || line.has("email")) {
@@ -419,7 +419,7 @@ public class AuthorizationManager {
 				if (via.length() > 0) {
 					via.append(",");
 				}
-				via.append("1.1 ").append(dnsResolver.reverse(ip));
+				via.append("1.1 ").append(dnsResolver.cachedReverse(ip));
 			}
 		}
 		for (String hd : request.getVaryHeaders("Via")) {
@@ -431,7 +431,7 @@ public class AuthorizationManager {
 		if (via.length() > 0) {
 			via.append(",");
 		}
-		via.append("1.1 ").append(dnsResolver.reverse(clientAddr));
+		via.append("1.1 ").append(dnsResolver.cachedReverse(clientAddr));
 		return via.toString();
 	}
 
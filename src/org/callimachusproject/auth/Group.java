@@ -32,19 +32,21 @@ public class Group {
 	private static final String CALLI_EVERYONEFROM = CALLI + "everyoneFrom";
 	private static final String CALLI_NOBODYFROM = CALLI + "nobodyFrom";
 	private static final String CALLI_MEMBER = CALLI + "member";
+	private static final int ANONYMOUS = 1;
+	private static final int EVERYONE = 2;
+	private static final int NOBODY = 4;
 	private static final Group notGroup = new Group();
 	private static final Group publicGroup = new Group();
 	static {
-		publicGroup.anonymousFrom.put(".", ".");
+		publicGroup.put(publicGroup.anonymousFrom, ANONYMOUS, ".");
 	}
 
 	private final PrefixMap<String> anonymousFrom = new PrefixMap<String>();
 	private final PrefixMap<String> everyoneFrom = new PrefixMap<String>();
 	private final PrefixMap<String> nobodyFrom = new PrefixMap<String>();
+	/** bit mask of the sets that contain each key */
+	private final PrefixMap<Integer> fromSets = new PrefixMap<Integer>();
 	private final TreeSet<String> members = new TreeSet<String>();
-	@SuppressWarnings("unchecked")
-	private final PrefixMap<String>[] sets = new PrefixMap[]{anonymousFrom,
-			everyoneFrom, nobodyFrom};
 
 	private Group() {
 		super();
@@ -59,13 +61,13 @@ public class Group {
 				String pred = st.getPredicate().stringValue();
 				if (CALLI_ANONYMOUSFROM.equals(pred)) {
 					String key = key(st.getObject().stringValue());
-					anonymousFrom.put(key, key);
+					put(anonymousFrom, ANONYMOUS, key);
 				} else if (CALLI_EVERYONEFROM.equals(pred)) {
 					String key = key(st.getObject().stringValue());
-					everyoneFrom.put(key, key);
+					put(everyoneFrom, EVERYONE, key);
 				} else if (CALLI_NOBODYFROM.equals(pred)) {
 					String key = key(st.getObject().stringValue());
-					nobodyFrom.put(key, key);
+					put(nobodyFrom, NOBODY, key);
 				} else if (CALLI_MEMBER.equals(pred)) {
 					members.add(st.getObject().stringValue());
 				}
@@ -83,7 +85,7 @@ public class Group {
 	}
 
 	public boolean isAnonymousAllowed(String from) {
-		return isAllowed(from, anonymousFrom);
+		return isAllowed(from, ANONYMOUS);
 	}
 
 	public boolean isEveryoneAllowed() {
@@ -91,7 +93,7 @@ public class Group {
 	}
 
 	public boolean isEveryoneAllowed(String from) {
-		return isAllowed(from, everyoneFrom);
+		return isAllowed(from, EVERYONE);
 	}
 
 	public boolean isMember(String user, String from) {
@@ -102,21 +104,18 @@ public class Group {
 		return members.contains(user);
 	}
 
-	private boolean isAllowed(String host, PrefixMap<String> set) {
-		String key = key(host);
-		String allow = set.getClosest(key);
-		return allow != null && allow.length() >= denyFrom(key).length();
+	/**
+	 * Allowed if the longest matching key of all the sets is in the given set.
+	 */
+	private boolean isAllowed(String host, int set) {
+		Integer closest = fromSets.getClosest(key(host));
+		return closest != null && (closest & set) != 0;
 	}
 
-	private String denyFrom(String key) {
-		String deny = null;
-		for (PrefixMap<String> set : sets) {
-			String from = set.getClosest(key);
-			if (deny == null || from != null && from.length() > deny.length()) {
-				deny = from;
-			}
-		}
-		return deny;
+	private void put(PrefixMap<String> set, int flag, String key) {
+		set.put(key, key);
+		Integer sets = fromSets.get(key);
+		fromSets.put(key, sets == null ? flag : sets | flag);
 	}
 
 	public String toString() {
@@ -199,12 +198,16 @@ public class Group {
 	private String key(String dns) {
 		StringBuilder sb = new StringBuilder(dns.length() + 2);
 		sb.append('.');
-		String[] tokens = dns.split("\\.");
-		for (int i=tokens.length -1 ;i>=0;i--) {
-			if (tokens[i].length() > 0) {
-				sb.append(tokens[i].toLowerCase());
+		int end = dns.length();
+		while (end > 0) {
+			int start = dns.lastIndexOf('.', end - 1) + 1;
+			if (start < end) {
+				for (int i = start; i < end; i++) {
+					sb.append(Character.toLowerCase(dns.charAt(i)));
+				}
 				sb.append('.');
 			}
+			end = start - 1;
 		}
 		return sb.toString();
 	}
@@ -16,12 +16,26 @@
  */
 package org.callimachusproject.behaviours;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import org.callimachusproject.concurrent.ManagedExecutors;
 import org.callimachusproject.engine.model.TermFactory;
 import org.callimachusproject.io.CarOutputStream;
 import org.callimachusproject.io.ChannelUtil;
@@ -37,10 +51,11 @@ import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.GraphQueryResult;
-import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.RepositoryResult;
 import org.openrdf.repository.object.ObjectConnection;
+import org.openrdf.repository.object.ObjectRepository;
 import org.openrdf.repository.object.RDFObject;
 import org.openrdf.rio.RDFWriter;
 import org.slf4j.Logger;
@@ -53,6 +68,14 @@ public abstract class FolderSupport implements RDFObject {
 	private static final String PREFIX = "PREFIX owl:<http://www.w3.org/2002/07/owl#>\n" +
 			"PREFIX prov:<http://www.w3.org/ns/prov#>\n" +
 			"PREFIX calli:<http://callimachusproject.org/rdf/2009/framework#>\n";
+	private static final int EXPORT_THREADS = Runtime.getRuntime()
+			.availableProcessors() + 1;
+	/** Number of entries prepared ahead of the archive writer */
+	private static final int READ_AHEAD = EXPORT_THREADS * 4;
+	/** Larger entries are written by the archive writer instead of read ahead */
+	private static final int READ_AHEAD_LIMIT = 256 * 1024;
+	private static final ExecutorService executor = ManagedExecutors
+			.getInstance().newFixedThreadPool(EXPORT_THREADS, "FolderExport");
 	private final Logger logger = LoggerFactory.getLogger(FolderSupport.class);
 
 	/**
@@ -63,13 +86,21 @@ public abstract class FolderSupport implements RDFObject {
 	}
 
 	public InputStream exportFolder() throws IOException {
+		return exportFolder(null);
+	}
+
+	/**
+	 * Exports the components of this folder in name order, resuming after
+	 * the given component name when a previous export was interrupted.
+	 */
+	public InputStream exportFolder(final String after) throws IOException {
 		final String baseURI = this.getResource().stringValue();
 		final ObjectConnection con = this.getObjectConnection();
 		return new ProducerStream(new OutputProducer(){
 			public void produce(OutputStream outputStream) throws IOException {
             try {
 				CarOutputStream carStream = new CarOutputStream(outputStream);
-				exportComponents(baseURI, con, carStream);
+				exportComponents(baseURI, after, con, carStream);
 				carStream.finish();
 			} catch (OpenRDFException e) {
 				logger.error(e.toString(), e);
@@ -123,93 +154,192 @@ public abstract class FolderSupport implements RDFObject {
 			+ "OPTIONAL { ?component prov:wasGeneratedBy/prov:endedAtTime ?lastmod }\n"
 			+ "OPTIONAL { ?component a [calli:mediaType ?fileType] }\n"
 			+ "OPTIONAL { ?component a calli:Folder BIND (true AS ?folder) }\n"
-			+ "OPTIONAL { ?component a owl:Class BIND (true AS ?class)}" + "}")
+			+ "OPTIONAL { ?component a owl:Class BIND (true AS ?class)}" + "}\n"
+			+ "ORDER BY ?component")
 	protected abstract TupleQueryResult loadComponents()
 			throws OpenRDFException;
 
-	private void exportComponents(String baseURI, ObjectConnection con,
-			CarOutputStream carStream) throws IOException, OpenRDFException,
-			URISyntaxException {
+	private void exportComponents(String baseURI, String after,
+			ObjectConnection con, CarOutputStream carStream)
+			throws IOException, OpenRDFException, URISyntaxException {
 		boolean exportFolder = isFolderMetadataPresent();
-		Set<String> writtenNames = new java.util.HashSet<String>();
-		TupleQueryResult components = loadComponents();
-		while (components.hasNext()) {
-			BindingSet result = components.next();
-			URI component = (URI) result.getValue("component");
-			String entryId = component.stringValue();
-			if (entryId.indexOf(baseURI) != 0)
-				continue;
-			String name = entryId.substring(baseURI.length());
-			if (!writtenNames.add(name))
-				continue;
-			writeEntry(name, component, carStream, result, exportFolder, con);
+		List<Namespace> namespaces = new ArrayList<Namespace>();
+		RepositoryResult<Namespace> ns = con.getNamespaces();
+		try {
+			while (ns.hasNext()) {
+				namespaces.add(ns.next());
+			}
+		} finally {
+			ns.close();
+		}
+		ConnectionPool pool = new ConnectionPool(con.getRepository());
+		Deque<Future<ExportEntry>> pending = new ArrayDeque<Future<ExportEntry>>(READ_AHEAD);
+		try {
+			Set<String> writtenNames = new HashSet<String>();
+			TupleQueryResult components = loadComponents();
+			try {
+				while (components.hasNext()) {
+					BindingSet result = components.next();
+					URI component = (URI) result.getValue("component");
+					String entryId = component.stringValue();
+					if (entryId.indexOf(baseURI) != 0)
+						continue;
+					String name = entryId.substring(baseURI.length());
+					if (after != null && name.compareTo(after) <= 0)
+						continue;
+					if (!writtenNames.add(name))
+						continue;
+					if (pending.size() >= READ_AHEAD) {
+						writeEntry(pending.poll(), carStream, con);
+					}
+					pending.add(executor.submit(new ExportTask(name, component,
+							result, exportFolder, namespaces, pool)));
+				}
+			} finally {
+				components.close();
+			}
+			while (!pending.isEmpty()) {
+				writeEntry(pending.poll(), carStream, con);
+			}
+		} finally {
+			for (Future<ExportEntry> future : pending) {
+				future.cancel(true);
+			}
+			pool.close();
 		}
 	}
 
-	private void writeEntry(String name, URI component,
-			CarOutputStream carStream, BindingSet result, boolean exportFolder,
-			ObjectConnection con) throws IOException, OpenRDFException,
-			URISyntaxException {
-		Literal lastmod = (Literal) result.getValue("lastmod");
-		Literal fileType = (Literal) result.getValue("fileType");
-		boolean isFolder = result.hasBinding("folder");
-		boolean isClass = result.hasBinding("class");
-		String entryId = component.stringValue();
-		InputStream content;
-		long time;
-		if (lastmod != null) {
-			time = lastmod.calendarValue().toGregorianCalendar().getTimeInMillis();
-		} else {
-			time = java.lang.System.currentTimeMillis();
-		}
-		if (name.lastIndexOf('/') == name.length() - 1 && isFolder) {
-			// # Export Folder
-			if (exportFolder) {
-				// # Export Folder Triples
-				OutputStream entry = carStream.writeResourceEntry(name, time, TURTLE);
-				writeTriples(component, con, entry, entryId);
-				exportFolder = true;
-			} else {
-				carStream.writeFolderEntry(name, time).close();
+	private void writeEntry(Future<ExportEntry> future,
+			CarOutputStream carStream, ObjectConnection con)
+			throws IOException, OpenRDFException, URISyntaxException {
+		ExportEntry entry;
+		try {
+			entry = future.get();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException(e.toString());
+		} catch (ExecutionException e) {
+			try {
+				throw e.getCause();
+			} catch (IOException cause) {
+				throw cause;
+			} catch (OpenRDFException cause) {
+				throw cause;
+			} catch (URISyntaxException cause) {
+				throw cause;
+			} catch (RuntimeException cause) {
+				throw cause;
+			} catch (Error cause) {
+				throw cause;
+			} catch (Throwable cause) {
+				throw new IOException(cause);
 			}
-		} else if (fileType != null
-				&& (content = con.getBlobObject(component).openInputStream()) != null) {
-			// # Export File
+		}
+		entry.write(carStream, con);
+	}
+
+	/**
+	 * Prepares an archive entry on a worker thread with its own connection.
+	 */
+	private static class ExportTask implements Callable<ExportEntry> {
+		private final String name;
+		private final URI component;
+		private final BindingSet result;
+		private final boolean exportFolder;
+		private final List<Namespace> namespaces;
+		private final ConnectionPool pool;
+
+		ExportTask(String name, URI component, BindingSet result,
+				boolean exportFolder, List<Namespace> namespaces,
+				ConnectionPool pool) {
+			this.name = name;
+			this.component = component;
+			this.result = result;
+			this.exportFolder = exportFolder;
+			this.namespaces = namespaces;
+			this.pool = pool;
+		}
+
+		public ExportEntry call() throws Exception {
+			ObjectConnection con = pool.borrow();
 			try {
-				OutputStream entryStream = carStream.writeFileEntry(name, time,
-						fileType.stringValue());
+				return prepareEntry(con);
+			} finally {
+				pool.release(con);
+			}
+		}
+
+		private ExportEntry prepareEntry(ObjectConnection con)
+				throws IOException, OpenRDFException, URISyntaxException {
+			Literal lastmod = (Literal) result.getValue("lastmod");
+			Literal fileType = (Literal) result.getValue("fileType");
+			boolean isFolder = result.hasBinding("folder");
+			boolean isClass = result.hasBinding("class");
+			InputStream content;
+			long time;
+			if (lastmod != null) {
+				time = lastmod.calendarValue().toGregorianCalendar().getTimeInMillis();
+			} else {
+				time = java.lang.System.currentTimeMillis();
+			}
+			if (name.lastIndexOf('/') == name.length() - 1 && isFolder) {
+				// # Export Folder
+				if (exportFolder) {
+					// # Export Folder Triples
+					return prepareTriples(ExportEntry.RESOURCE, time, con);
+				} else {
+					return new ExportEntry(ExportEntry.FOLDER, name, time, null, null, null, null);
+				}
+			} else if (fileType != null
+					&& (content = con.getBlobObject(component).openInputStream()) != null) {
+				// # Export File
 				try {
-					ChannelUtil.transfer(content, entryStream);
+					String type = fileType.stringValue();
+					ReadAheadBuffer buf = new ReadAheadBuffer();
+					try {
+						ChannelUtil.transfer(content, buf);
+					} catch (IOException e) {
+						if (!buf.isOverflow())
+							throw e;
+						// too large to hold, let the writer stream it
+						return new ExportEntry(ExportEntry.FILE, name, time, type, null, component, null);
+					}
+					return new ExportEntry(ExportEntry.FILE, name, time, type, buf.toByteArray(), null, null);
 				} finally {
-					entryStream.close();
+					content.close();
 				}
-			} finally {
-				content.close();
+			} else if (isClass) {
+				// # Export Schema
+				return prepareTriples(ExportEntry.SCHEMA, time, con);
+			} else {
+				// # Export Triples
+				return prepareTriples(ExportEntry.RESOURCE, time, con);
 			}
-		} else if (isClass) {
-			// # Export Schema
-			OutputStream entry = carStream.writeSchemaEntry(name, time, TURTLE);
-			writeTriples(component, con, entry, entryId);
-		} else {
-			// # Export Triples
-			OutputStream entry = carStream.writeResourceEntry(name, time, TURTLE);
-			writeTriples(component, con, entry, entryId);
 		}
-	}
 
-	private void writeTriples(URI component, ObjectConnection con,
-			OutputStream resourceEntry, String entryId)
-			throws OpenRDFException, URISyntaxException, IOException,
-			QueryEvaluationException {
-		try {
+		private ExportEntry prepareTriples(int kind, long time,
+				ObjectConnection con) throws OpenRDFException,
+				URISyntaxException, IOException {
+			ReadAheadBuffer buf = new ReadAheadBuffer();
+			try {
+				writeTriples(buf, con);
+			} catch (OpenRDFException | IOException e) {
+				if (!buf.isOverflow())
+					throw e;
+				// too large to hold, let the writer render it again
+				return new ExportEntry(kind, name, time, TURTLE, null, null, this);
+			}
+			return new ExportEntry(kind, name, time, TURTLE, buf.toByteArray(), null, null);
+		}
+
+		void writeTriples(OutputStream out, ObjectConnection con)
+				throws OpenRDFException, URISyntaxException, IOException {
 			GraphQueryResult triples = new DescribeResult(component, con);
 			try {
 				TurtleStreamWriterFactory xf = new TurtleStreamWriterFactory();
-				RDFWriter writer = xf.createWriter(resourceEntry, entryId);
+				xf.setSubjectOrdered(true);
+				RDFWriter writer = xf.createWriter(out, component.stringValue());
 				writer.startRDF();
-				RepositoryResult<Namespace> namespaces = con.getNamespaces();
-				while (namespaces.hasNext()) {
-					Namespace ns = namespaces.next();
+				for (Namespace ns : namespaces) {
 					writer.handleNamespace(ns.getPrefix(), ns.getName());
 				}
 				while (triples.hasNext()) {
@@ -223,8 +353,169 @@ public abstract class FolderSupport implements RDFObject {
 			} finally {
 				triples.close();
 			}
-		} finally {
-			resourceEntry.close();
+		}
+	}
+
+	/**
+	 * Holds at most {@link FolderSupport#READ_AHEAD_LIMIT} bytes, so the
+	 * entries waiting for the archive writer have a bounded footprint.
+	 */
+	private static class ReadAheadBuffer extends OutputStream {
+		private final ByteArrayOutputStream buf = new ByteArrayOutputStream(8192);
+		private boolean overflow;
+
+		boolean isOverflow() {
+			return overflow;
+		}
+
+		byte[] toByteArray() {
+			return buf.toByteArray();
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			ensureCapacity(1);
+			buf.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			ensureCapacity(len);
+			buf.write(b, off, len);
+		}
+
+		private void ensureCapacity(int len) throws IOException {
+			if (buf.size() + len > READ_AHEAD_LIMIT) {
+				overflow = true;
+				throw new IOException("Entry exceeds the read ahead limit");
+			}
+		}
+	}
+
+	/**
+	 * A prepared archive entry that is written in order by a single thread.
+	 */
+	private static class ExportEntry {
+		static final int FOLDER = 0;
+		static final int RESOURCE = 1;
+		static final int SCHEMA = 2;
+		static final int FILE = 3;
+		private final int kind;
+		private final String name;
+		private final long time;
+		private final String type;
+		private final byte[] content;
+		private final URI blob;
+		private final ExportTask triples;
+
+		ExportEntry(int kind, String name, long time, String type,
+				byte[] content, URI blob, ExportTask triples) {
+			this.kind = kind;
+			this.name = name;
+			this.time = time;
+			this.type = type;
+			this.content = content;
+			this.blob = blob;
+			this.triples = triples;
+		}
+
+		void write(CarOutputStream carStream, ObjectConnection con)
+				throws IOException, OpenRDFException, URISyntaxException {
+			OutputStream entry;
+			switch (kind) {
+			case FOLDER:
+				carStream.writeFolderEntry(name, time).close();
+				return;
+			case SCHEMA:
+				entry = carStream.writeSchemaEntry(name, time, type);
+				break;
+			case FILE:
+				entry = carStream.writeFileEntry(name, time, type);
+				break;
+			default:
+				entry = carStream.writeResourceEntry(name, time, type);
+			}
+			try {
+				if (content != null) {
+					entry.write(content);
+				} else if (blob != null) {
+					InputStream in = con.getBlobObject(blob).openInputStream();
+					if (in != null) {
+						try {
+							ChannelUtil.transfer(in, entry);
+						} finally {
+							in.close();
+						}
+					}
+				} else if (triples != null) {
+					triples.writeTriples(entry, con);
+				}
+			} finally {
+				entry.close();
+			}
+		}
+	}
+
+	/**
+	 * Read-only connections for the export workers, since an
+	 * {@link ObjectConnection} must not be shared between threads. Once
+	 * closed, idle connections are closed at once and borrowed connections
+	 * are closed as they are released, so a cancelled task that is still
+	 * running keeps its connection until it finishes.
+	 */
+	private static class ConnectionPool {
+		private final ObjectRepository repository;
+		private final BlockingQueue<ObjectConnection> idle = new ArrayBlockingQueue<ObjectConnection>(EXPORT_THREADS);
+		private boolean closed;
+
+		ConnectionPool(ObjectRepository repository) {
+			this.repository = repository;
+		}
+
+		ObjectConnection borrow() throws RepositoryException {
+			synchronized (this) {
+				if (closed)
+					throw new RepositoryException("Export has been closed");
+				ObjectConnection con = idle.poll();
+				if (con != null)
+					return con;
+			}
+			ObjectConnection con = repository.getConnection();
+			synchronized (this) {
+				if (!closed)
+					return con;
+			}
+			close(con);
+			throw new RepositoryException("Export has been closed");
+		}
+
+		void release(ObjectConnection con) {
+			synchronized (this) {
+				if (!closed && idle.offer(con))
+					return;
+			}
+			close(con);
+		}
+
+		void close() {
+			List<ObjectConnection> unused = new ArrayList<ObjectConnection>(EXPORT_THREADS);
+			synchronized (this) {
+				closed = true;
+				idle.drainTo(unused);
+			}
+			for (ObjectConnection con : unused) {
+				close(con);
+			}
+		}
+
+		private void close(ObjectConnection con) {
+			try {
+				if (con.isOpen()) {
+					con.close();
+				}
+			} catch (RepositoryException e) {
+				LoggerFactory.getLogger(FolderSupport.class).warn(e.toString(), e);
+			}
 		}
 	}
 
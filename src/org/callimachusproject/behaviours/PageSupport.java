@@ -59,6 +59,7 @@ import org.openrdf.model.vocabulary.DCTERMS;
 import org.openrdf.query.BooleanQuery;
 import org.openrdf.query.GraphQueryResult;
 import org.openrdf.query.impl.MapBindingSet;
+import org.openrdf.query.parser.ParsedUpdate;
 import org.openrdf.repository.object.ObjectConnection;
 import org.openrdf.repository.object.ObjectFactory;
 import org.openrdf.repository.object.RDFObject;
@@ -165,7 +166,7 @@ public abstract class PageSupport implements CalliObject {
 			update.executeUpdate(sparqlUpdate, con);
 	
 			// insert clause uses triples that can be edited
-			verifyInsertClause(sparqlUpdate, resource, con);
+			verifyInsertClause(update.getParsedUpdate(), resource, con);
 	
 			ObjectFactory of = con.getObjectFactory();
 			for (URI partner : update.getPartners()) {
@@ -215,14 +216,14 @@ public abstract class PageSupport implements CalliObject {
 		}
 	}
 
-	private void verifyInsertClause(String sparqlUpdate, URI resource,
+	private void verifyInsertClause(ParsedUpdate parsed, URI resource,
 			ObjectConnection con) throws RDFParseException, IOException,
-			TemplateException, OpenRDFException {
+			TemplateException, OpenRDFException, RDFHandlerException {
 		EntityUpdater postUpdate = new EntityUpdater(resource);
 		postUpdate.acceptInsert(loadEditTriples(resource, con));
 		postUpdate.acceptInsert(changeNoteOf(resource));
 		postUpdate.acceptInsert(modified(resource));
-		postUpdate.analyzeUpdate(sparqlUpdate);
+		postUpdate.analyzeUpdate(parsed);
 	}
 
 	private GraphQueryResult loadEditTriples(URI resource, ObjectConnection con)
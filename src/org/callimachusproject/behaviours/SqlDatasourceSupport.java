@@ -16,7 +16,6 @@
  */
 package org.callimachusproject.behaviours;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -30,7 +29,6 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -52,16 +50,13 @@ import org.callimachusproject.concepts.SqlDatasource;
 import org.callimachusproject.io.CharsetDetector;
 import org.callimachusproject.server.exceptions.BadRequest;
 import org.callimachusproject.server.exceptions.NotFound;
+import org.callimachusproject.sql.BulkLoader;
 import org.callimachusproject.sql.DriverConnectionPoolManager;
 import org.callimachusproject.sql.PoolableDriverConnection;
+import org.callimachusproject.sql.SqlResultCache;
 import org.callimachusproject.sql.SqlTupleResult;
 import org.callimachusproject.traits.CalliObject;
 import org.openrdf.OpenRDFException;
-import org.openrdf.model.Literal;
-import org.openrdf.model.URI;
-import org.openrdf.model.Value;
-import org.openrdf.model.datatypes.XMLDatatypeUtil;
-import org.openrdf.query.BindingSet;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.TupleQueryResult;
 import org.openrdf.repository.object.RDFObject;
@@ -72,30 +67,41 @@ public abstract class SqlDatasourceSupport implements SqlDatasource,
 		CalliObject {
 	private static final Pattern HOST_POST_REGEX = Pattern
 			.compile("([\\w\\-\\.]+):(\\d+)");
-	private static final DriverConnectionPoolManager manager = new DriverConnectionPoolManager();
+	private static final DriverConnectionPoolManager manager = DriverConnectionPoolManager.getInstance();
+	private static final SqlResultCache cache = SqlResultCache.getInstance();
 	private static final Map<String, List<Driver>> drivers = new HashMap<>();
-	private static final int BATCH_SIZE = 1000;
 
 	private final Logger logger = LoggerFactory
 			.getLogger(SqlDatasourceSupport.class);
 
 	public void reset() throws SQLException {
 		String name = this.getResource().stringValue();
-		synchronized (manager) {
-			manager.deregisterDriver(name);
-			deregisterLoadedDrivers(name);
+		try {
+			synchronized (manager) {
+				manager.deregisterDriver(name);
+				deregisterLoadedDrivers(name);
+			}
+		} finally {
+			cache.invalidate(name);
 		}
 	}
 
 	public TupleQueryResult selectTable(String tablename) throws SQLException,
 			IOException, OpenRDFException, DatatypeConfigurationException {
+		String name = this.getResource().stringValue();
+		String sql = "SELECT * FROM \"" + tablename + "\"";
+		long maxAge = getResultMaxAge();
+		TupleQueryResult results = maxAge > 0 ? cache.get(name, sql) : null;
+		if (results != null)
+			return results;
+		long generation = cache.getGeneration(name);
 		Connection conn = null;
-		TupleQueryResult results = null;
 		try {
 			conn = getConnection();
 			conn.setAutoCommit(false);
 			verifyTableExists(tablename, conn);
-			results = evaluateSql("SELECT * FROM \"" + tablename + "\"", conn);
+			results = cache.cache(name, sql, generation, maxAge,
+					evaluateSql(sql, conn));
 		} finally {
 			if (results == null) {
 				if (conn != null) {
@@ -116,6 +122,7 @@ public abstract class SqlDatasourceSupport implements SqlDatasource,
 			conn.commit();
 		} finally {
 			conn.close();
+			invalidateResults();
 		}
 	}
 
@@ -130,19 +137,56 @@ public abstract class SqlDatasourceSupport implements SqlDatasource,
 			conn.commit();
 		} finally {
 			conn.close();
+			invalidateResults();
 		}
 	}
 
 	public void loadIntoTable(TupleQueryResult rows, String tablename)
 			throws SQLException, OpenRDFException, IOException {
+		loadIntoTable(rows, tablename, 1);
+	}
+
+	/**
+	 * Loads the rows using up to the given number of connections at once,
+	 * but no more than the available processors or the connection pool
+	 * allows. When more than one connection is used, each batch of rows is
+	 * committed on its own and rows may be inserted out of order.
+	 */
+	public void loadIntoTable(TupleQueryResult rows, String tablename,
+			int threads) throws SQLException, OpenRDFException, IOException {
+		if (threads <= 0)
+			throw new BadRequest("Threads must be a positive number");
+		threads = Math.min(threads, Runtime.getRuntime().availableProcessors());
 		Connection conn = getConnection();
 		try {
 			conn.setAutoCommit(false);
 			verifyTableExists(tablename, conn);
-			loadIntoTable(rows, tablename, conn);
-			conn.commit();
+			int max = intOrNeg(this.getCalliMaxActive());
+			if (max > 0) {
+				threads = Math.min(threads, max - 1);
+			}
+			if (threads <= 1) {
+				loadIntoTable(rows, tablename, conn);
+				conn.commit();
+			} else {
+				BulkLoader loader = createBulkLoader(rows, tablename, conn);
+				List<Connection> workers = new ArrayList<Connection>(threads);
+				try {
+					for (int i = 0; i < threads; i++) {
+						Connection worker = getConnection();
+						workers.add(worker);
+						worker.setAutoCommit(false);
+					}
+					loader.loadInParallel(rows, workers);
+				} finally {
+					for (Connection worker : workers) {
+						worker.close();
+					}
+				}
+			}
 		} finally {
 			conn.close();
+			invalidateResults();
 		}
 	}
 
@@ -153,16 +197,23 @@ public abstract class SqlDatasourceSupport implements SqlDatasource,
 			executeSql(parse(content, contentType), conn);
 		} finally {
 			conn.close();
+			invalidateResults();
 		}
 	}
 
 	public TupleQueryResult evaluateSql(String sql) throws SQLException,
 			IOException, OpenRDFException, DatatypeConfigurationException {
+		String name = this.getResource().stringValue();
+		long maxAge = getResultMaxAge();
+		TupleQueryResult results = maxAge > 0 ? cache.get(name, sql) : null;
+		if (results != null)
+			return results;
+		long generation = cache.getGeneration(name);
 		Connection conn = null;
-		TupleQueryResult results = null;
 		try {
 			conn = getConnection();
-			results = evaluateSql(sql, conn);
+			results = cache.cache(name, sql, generation, maxAge,
+					evaluateSql(sql, conn));
 		} finally {
 			if (results == null) {
 				if (conn != null) {
@@ -173,14 +224,42 @@ public abstract class SqlDatasourceSupport implements SqlDatasource,
 		return results;
 	}
 
+	private void invalidateResults() {
+		cache.invalidate(this.getResource().stringValue());
+	}
+
+	/**
+	 * Milliseconds results of this datasource may be reused for, zero if
+	 * they are not cached.
+	 */
+	private long getResultMaxAge() {
+		Number seconds = this.getCalliResultMaxAge();
+		if (seconds == null || seconds.longValue() <= 0)
+			return 0;
+		return seconds.longValue() * 1000;
+	}
+
+	/**
+	 * Reads the rows through a forward-only cursor, a fetch size at a time,
+	 * using the statement this connection may have already prepared.
+	 */
 	private TupleQueryResult evaluateSql(String sql, Connection conn)
 			throws SQLException, IOException, DatatypeConfigurationException {
-		Statement stmt = null;
+		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		TupleQueryResult results = null;
 		try {
-			stmt = conn.createStatement();
-			rs = stmt.executeQuery(sql);
+			int fetchSize = manager.getFetchSize();
+			if (fetchSize > 0 && conn.getAutoCommit()) {
+				// some drivers only use a cursor outside of auto-commit
+				conn.setAutoCommit(false);
+			}
+			stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY);
+			if (fetchSize > 0) {
+				stmt.setFetchSize(fetchSize);
+			}
+			rs = stmt.executeQuery();
 			results = asTupleQueryResult(rs, stmt, conn);
 		} finally {
 			if (results == null) {
@@ -217,12 +296,8 @@ public abstract class SqlDatasourceSupport implements SqlDatasource,
 		Charset charset = type.getCharset();
 		if (charset != null)
 			return charset;
-		ByteArrayInputStream in = new ByteArrayInputStream(content);
-		try {
-			return new CharsetDetector().detect(in);
-		} finally {
-			in.close();
-		}
+		int len = Math.min(content.length, CharsetDetector.SAMPLE_SIZE);
+		return new CharsetDetector().detect(content, len, len < content.length);
 	}
 
 	private Connection getConnection() throws SQLException, OpenRDFException,
@@ -369,34 +444,24 @@ public abstract class SqlDatasourceSupport implements SqlDatasource,
 
 	private void loadIntoTable(TupleQueryResult rows, String tablename,
 			Connection conn) throws QueryEvaluationException, SQLException {
+		createBulkLoader(rows, tablename, conn).loadInTransaction(rows, conn);
+	}
+
+	private BulkLoader createBulkLoader(TupleQueryResult rows,
+			String tablename, Connection conn) throws QueryEvaluationException,
+			SQLException {
 		List<String> columns = rows.getBindingNames();
 		Map<String, Integer> columnTypes = getColumnTypes(tablename, conn);
-		PreparedStatement insert = prepareInsert(columns, tablename, conn);
-		try {
-			for (int count = 1; rows.hasNext(); count++) {
-				BindingSet row = rows.next();
-				for (int i = 0, n = columns.size(); i < n; i++) {
-					String column = columns.get(i);
-					Integer type = columnTypes.get(column);
-					Value value = row.getValue(column);
-					int col = i + 1;
-					setValue(insert, col, value, type);
-				}
-				insert.addBatch();
-				if (count % BATCH_SIZE == 0) {
-					insert.executeBatch();
-				}
-			}
-			insert.executeBatch();
-		} finally {
-			insert.close();
+		String sql = getInsertSql(columns, tablename, columnTypes.keySet());
+		int[] types = new int[columns.size()];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = columnTypes.get(columns.get(i));
 		}
+		return new BulkLoader(tablename, sql, columns, types);
 	}
 
-	private PreparedStatement prepareInsert(List<String> columns,
-			String tablename, Connection conn) throws SQLException,
-			QueryEvaluationException {
-		Set<String> columnNames = getColumnTypes(tablename, conn).keySet();
+	private String getInsertSql(List<String> columns, String tablename,
+			Set<String> columnNames) {
 		StringBuilder sb = new StringBuilder();
 		sb.append("INSERT INTO \"").append(tablename);
 		sb.append("\" (\"");
@@ -414,7 +479,7 @@ public abstract class SqlDatasourceSupport implements SqlDatasource,
 		}
 		sb.setLength(sb.length() - 1);
 		sb.append(")");
-		return conn.prepareStatement(sb.toString());
+		return sb.toString();
 	}
 
 	private Map<String, Integer> getColumnTypes(String tablename,
@@ -431,26 +496,4 @@ public abstract class SqlDatasourceSupport implements SqlDatasource,
 		}
 		return columnNames;
 	}
-
-	private void setValue(PreparedStatement insert, int col, Value value,
-			Integer type) throws SQLException {
-		if (value == null) {
-			insert.setNull(col, type);
-		} else if (value instanceof Literal) {
-			Literal lit = (Literal) value;
-			URI datatype = lit.getDatatype();
-			if (datatype == null) {
-				insert.setString(col, value.stringValue());
-			} else if (XMLDatatypeUtil.isCalendarDatatype(datatype)) {
-				GregorianCalendar cal = lit.calendarValue()
-						.toGregorianCalendar();
-				insert.setDate(col, new java.sql.Date(cal.getTimeInMillis()),
-						cal);
-			} else {
-				insert.setString(col, value.stringValue());
-			}
-		} else {
-			insert.setString(col, value.stringValue());
-		}
-	}
 }
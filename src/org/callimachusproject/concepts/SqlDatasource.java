@@ -73,4 +73,11 @@ public interface SqlDatasource {
 	@Iri("http://callimachusproject.org/rdf/2009/framework#validationQuery")
 	void setCalliValidationQuery(String calliValidationQuery);
 
+	/** Seconds query results may be reused for, results are not reused when absent */
+	@Iri("http://callimachusproject.org/rdf/2009/framework#resultMaxAge")
+	Number getCalliResultMaxAge();
+	/** Seconds query results may be reused for, results are not reused when absent */
+	@Iri("http://callimachusproject.org/rdf/2009/framework#resultMaxAge")
+	void setCalliResultMaxAge(Number calliResultMaxAge);
+
 }
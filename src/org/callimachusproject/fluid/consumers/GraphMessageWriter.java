@@ -45,6 +45,7 @@ import org.callimachusproject.fluid.FluidBuilder;
 import org.callimachusproject.fluid.FluidType;
 import org.callimachusproject.fluid.consumers.helpers.MessageWriterBase;
 import org.callimachusproject.io.ChannelUtil;
+import org.callimachusproject.io.DescribeResult;
 import org.callimachusproject.io.TurtleStreamWriterFactory;
 import org.openrdf.OpenRDFException;
 import org.openrdf.model.Literal;
@@ -97,7 +98,7 @@ public class GraphMessageWriter extends
 			QueryEvaluationException {
 		RDFFormat rdfFormat = factory.getRDFFormat();
 		RDFWriter writer = getWriter(ChannelUtil.newOutputStream(out), charset,
-				factory, base);
+				factory, base, result instanceof DescribeResult);
 		// writer.setBaseURI(base);
 		writer.startRDF();
 
@@ -173,10 +174,11 @@ public class GraphMessageWriter extends
 	}
 
 	private RDFWriter getWriter(OutputStream out, Charset charset,
-			RDFWriterFactory factory, String systemId) {
+			RDFWriterFactory factory, String systemId, boolean subjectOrdered) {
 		if (RDFFormat.TURTLE.equals(factory.getRDFFormat()) && systemId != null) {
 			try {
 				TurtleStreamWriterFactory tf = new TurtleStreamWriterFactory();
+				tf.setSubjectOrdered(subjectOrdered);
 				if (charset == null)
 					return tf.createWriter(out, systemId);
 				return tf.createWriter(new OutputStreamWriter(out, charset), systemId);
@@ -38,6 +38,7 @@ import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.QueryLanguage;
 import org.openrdf.query.TupleQuery;
 import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.parser.ParsedUpdate;
 import org.openrdf.repository.object.ObjectConnection;
 import org.openrdf.rio.RDFHandlerException;
 
@@ -111,6 +112,22 @@ public class EntityUpdater {
 		verify();
 	}
 
+	/**
+	 * Verifies an update that was already parsed, without parsing it again.
+	 */
+	public void analyzeUpdate(ParsedUpdate parsed) throws RDFHandlerException {
+		analyzer.analyzeUpdate(parsed);
+		verify();
+	}
+
+	/**
+	 * The update read by {@link #parseUpdate(InputStream)} or
+	 * {@link #analyzeUpdate(String)}.
+	 */
+	public ParsedUpdate getParsedUpdate() {
+		return analyzer.getParsedUpdate();
+	}
+
 	public void executeUpdate(String sparqlUpdate, ObjectConnection con)
 			throws BadRequest, OpenRDFException {
 		Set<Resource> nodes = selectBlankNodes(analyzer, con);
@@ -80,6 +80,7 @@ public class TripleAnalyzer extends QueryModelVisitorBase<RDFHandlerException> {
 	private TripleVerifier verifier = new TripleVerifier();
 	private boolean complicated;
 	private boolean modify;
+	private ParsedUpdate parsed;
 
 	public String parseUpdate(InputStream in, String systemId)
 			throws RDFHandlerException, IOException, MalformedQueryException {
@@ -88,10 +89,20 @@ public class TripleAnalyzer extends QueryModelVisitorBase<RDFHandlerException> {
 		return input;
 	}
 
-	public void analyzeUpdate(String input, String systemId)
+	public ParsedUpdate analyzeUpdate(String input, String systemId)
 			throws MalformedQueryException, RDFHandlerException {
 		SPARQLParser parser = new SPARQLParser();
 		ParsedUpdate parsed = parser.parseUpdate(input, systemId);
+		analyzeUpdate(parsed);
+		return parsed;
+	}
+
+	/**
+	 * Analyzes an update that has already been parsed, such as one returned
+	 * from {@link #getParsedUpdate()} of another analyzer.
+	 */
+	public void analyzeUpdate(ParsedUpdate parsed) throws RDFHandlerException {
+		this.parsed = parsed;
 		if (parsed.getUpdateExprs().isEmpty())
 			throw new RDFHandlerException("No input");
 		for (UpdateExpr updateExpr : parsed.getUpdateExprs()) {
@@ -109,6 +120,13 @@ public class TripleAnalyzer extends QueryModelVisitorBase<RDFHandlerException> {
 		}
 	}
 
+	/**
+	 * The most recently analyzed update.
+	 */
+	public ParsedUpdate getParsedUpdate() {
+		return parsed;
+	}
+
 	public void acceptDelete(RDFEventReader reader) throws RDFParseException {
 		deleteVerifier.accept(reader);
 	}
@@ -16,18 +16,22 @@
  */
 package org.callimachusproject.io;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
+import org.callimachusproject.util.SystemProperties;
 import org.openrdf.model.BNode;
 import org.openrdf.model.Literal;
 import org.openrdf.model.Resource;
@@ -41,13 +45,30 @@ import org.openrdf.rio.RDFWriter;
 import org.openrdf.rio.RioSetting;
 import org.openrdf.rio.WriterConfig;
 
+/**
+ * Groups statements by subject, sorting each subject's statements, and nests
+ * blank nodes under the statement that references them. Only a bounded
+ * window of subjects is held in memory: once the window is full the oldest
+ * subject is written out. The default window is set by the
+ * org.callimachusproject.io.arrangedWindow system property. When the
+ * statements are known to arrive ordered by subject, every pending subject
+ * (other than blank nodes that may yet be referenced) is written as soon as
+ * the next subject that is not a blank node is seen. Namespaces are trimmed
+ * to those used by the statements only when the whole document fit in the
+ * window; otherwise every declared namespace is written before the first
+ * statement, since later subjects may still use any of them.
+ */
 public class ArrangedWriter implements RDFWriter { 
-	private static int MAX_QUEUE_SIZE = 100;
+	private static final int MAX_QUEUE_SIZE = 4096;
 	private final RDFWriter delegate;
+	private final int window;
+	private boolean subjectOrdered;
+	private Resource lastSubject;
 	private int queueSize = 0;
-	private final Deque<Resource> stack = new LinkedList<Resource>();
+	private boolean written;
 	private final Map<String, String> prefixes = new TreeMap<String, String>();
 	private final Map<Resource, Set<Statement>> statements = new LinkedHashMap<Resource, Set<Statement>>();
+	private final Map<BNode, Integer> references = new HashMap<BNode, Integer>();
 	private final Comparator<Statement> comparator = new Comparator<Statement>() {
 		public int compare(Statement s1, Statement s2) {
 			URI p1 = s1.getPredicate();
@@ -77,7 +98,36 @@ public class ArrangedWriter implements RDFWriter {
 	};
 
 	public ArrangedWriter(RDFWriter delegate) {
+		this(delegate, SystemProperties.getArrangedWriterWindow());
+	}
+
+	/**
+	 * @param window
+	 *            the maximum number of distinct subjects held back before the
+	 *            oldest subject is written
+	 */
+	public ArrangedWriter(RDFWriter delegate, int window) {
+		assert window > 0;
 		this.delegate = delegate;
+		this.window = window;
+	}
+
+	public int getWindow() {
+		return window;
+	}
+
+	public boolean isSubjectOrdered() {
+		return subjectOrdered;
+	}
+
+	/**
+	 * Indicates that all statements about a subject will be handled before
+	 * any statement about the next subject, so a subject can be written as
+	 * soon as a different subject is seen. Statements about blank nodes may
+	 * be interleaved, as in a {@link DescribeResult}.
+	 */
+	public void setSubjectOrdered(boolean subjectOrdered) {
+		this.subjectOrdered = subjectOrdered;
 	}
 
 	public void setWriterConfig(WriterConfig config) {
@@ -101,7 +151,9 @@ public class ArrangedWriter implements RDFWriter {
 	}
 
 	public void endRDF() throws RDFHandlerException {
-		trimNamespaces();
+		if (!written) {
+			trimNamespaces();
+		}
 		flushStatements();
 		delegate.endRDF();
 	}
@@ -121,43 +173,30 @@ public class ArrangedWriter implements RDFWriter {
 
 	public synchronized void handleStatement(Statement st)
 			throws RDFHandlerException {
+		Resource subj = st.getSubject();
+		if (subjectOrdered && !(subj instanceof BNode)) {
+			if (lastSubject != null && !lastSubject.equals(subj)) {
+				flushCompleted(subj);
+			}
+			lastSubject = subj;
+		}
 		store(st);
-		while (queueSize > MAX_QUEUE_SIZE) {
-			flushNamespaces();
-			delegate.handleStatement(nextStatement());
+		while (statements.size() > window || queueSize > MAX_QUEUE_SIZE) {
+			flushSubject(nextSubject());
 		}
 	}
 
-	private synchronized Statement nextStatement() {
-		if (statements.isEmpty())
-			return null;
-		Iterator<Statement> set = null;
-		while (set == null) {
-			Set<Statement> stmts = statements.get(stack.peekLast());
-			if (stmts == null) {
-				stack.pollLast();
-			} else {
-				set = stmts.iterator();
+	private synchronized Resource nextSubject() {
+		Resource first = null;
+		for (Resource subj : statements.keySet()) {
+			if (first == null) {
+				first = subj;
 			}
-			if (stack.isEmpty()) {
-				set = statements.values().iterator().next().iterator();
-			}
-		}
-		Statement next = set.next();
-		queueSize--;
-		set.remove();
-		if (set.hasNext()) {
-			if (!next.getSubject().equals(stack.peekLast())) {
-				stack.addLast(next.getSubject());
-			}
-		} else {
-			statements.remove(next.getSubject());
-		}
-		Value obj = next.getObject();
-		if (obj instanceof BNode && statements.containsKey(obj)) {
-			stack.addLast((BNode) obj);
+			if (!references.containsKey(subj))
+				return subj;
 		}
-		return next;
+		// every pending subject is a referenced blank node (a cycle)
+		return first;
 	}
 
 	private synchronized void store(Statement st) {
@@ -166,22 +205,85 @@ public class ArrangedWriter implements RDFWriter {
 			statements.put(st.getSubject(), set = new TreeSet<Statement>(
 					comparator));
 		}
-		set.add(st);
-		queueSize++;
+		if (set.add(st)) {
+			queueSize++;
+			Value obj = st.getObject();
+			if (obj instanceof BNode) {
+				Integer count = references.get(obj);
+				references.put((BNode) obj, count == null ? 1 : count + 1);
+			}
+		}
+	}
+
+	private synchronized void release(BNode obj) {
+		Integer count = references.remove(obj);
+		if (count != null && count > 1) {
+			references.put(obj, count - 1);
+		}
+	}
+
+	/**
+	 * Writes all pending subjects, except the current subject and blank
+	 * nodes that a later subject might still reference.
+	 */
+	private synchronized void flushCompleted(Resource current)
+			throws RDFHandlerException {
+		if (statements.isEmpty())
+			return;
+		List<Resource> pending = new ArrayList<Resource>(statements.keySet());
+		for (Resource subj : pending) {
+			if (!(subj instanceof BNode) && !subj.equals(current)
+					&& statements.containsKey(subj)) {
+				flushSubject(subj);
+			}
+		}
 	}
 
 	private synchronized void flushStatements() throws RDFHandlerException {
-		if (!statements.isEmpty()) {
-			flushNamespaces();
-			Statement st;
-			while ((st = nextStatement()) != null) {
-				delegate.handleStatement(st);
+		while (!statements.isEmpty()) {
+			flushSubject(nextSubject());
+		}
+		queueSize = 0;
+		references.clear();
+	}
+
+	/**
+	 * Writes the statements of the given subject, followed immediately by the
+	 * statements of any pending blank node it references, depth first.
+	 */
+	private synchronized void flushSubject(Resource subject)
+			throws RDFHandlerException {
+		if (!statements.containsKey(subject))
+			return;
+		flushNamespaces();
+		written = true;
+		Set<Statement> root = statements.remove(subject);
+		queueSize -= root.size();
+		Deque<Iterator<Statement>> stack = new ArrayDeque<Iterator<Statement>>();
+		stack.addLast(root.iterator());
+		while (!stack.isEmpty()) {
+			Iterator<Statement> iter = stack.peekLast();
+			if (!iter.hasNext()) {
+				stack.pollLast();
+				continue;
+			}
+			Statement st = iter.next();
+			delegate.handleStatement(st);
+			Value obj = st.getObject();
+			if (obj instanceof BNode) {
+				release((BNode) obj);
+				Set<Statement> nested = statements.remove(obj);
+				if (nested != null) {
+					queueSize -= nested.size();
+					stack.addLast(nested.iterator());
+				}
 			}
-			queueSize = 0;
 		}
 	}
 
 	private synchronized void flushNamespaces() throws RDFHandlerException {
+		if (prefixes.isEmpty())
+			return;
 		Map<String, String> namespaces = new TreeMap<String, String>();
 		for (Map.Entry<String, String> e : prefixes.entrySet()) {
 			namespaces.put(e.getValue(), e.getKey());
@@ -21,7 +21,17 @@ import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Single producer, single consumer byte pipe between the I/O reactor, which
+ * calls {@link #sink(ReadableByteChannel)}, and a blocking reader of
+ * {@link #source()}. The data is kept in a ring buffer with atomic read and
+ * write positions; a waiting reader is parked until data arrives and the
+ * reactor is called back once half of the buffer is free again.
+ */
 public class AsyncPipe {
 	public abstract static class Sink implements ReadableByteChannel {
 		private boolean closed;
@@ -47,20 +57,27 @@ public class AsyncPipe {
 		}
 	};
 
-	private final ByteBuffer buf;
-	private Throwable error;
-	private boolean closed;
-	private Runnable action;
+	private final byte[] data;
+	private final int capacity;
+	/** total bytes consumed, only advanced by the reader */
+	private final AtomicLong head = new AtomicLong();
+	/** total bytes produced, only advanced by the reactor */
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicReference<Runnable> action = new AtomicReference<Runnable>();
+	private volatile Thread waiter;
+	private volatile Throwable error;
+	private volatile boolean closed;
 
 	public AsyncPipe() {
 		this(65536);
 	}
 
 	public AsyncPipe(int capacity) {
-		this.buf = ByteBuffer.allocate(capacity);
+		this.capacity = capacity;
+		this.data = new byte[capacity];
 	}
 
-	public synchronized boolean isOpen() {
+	public boolean isOpen() {
 		return !closed;
 	}
 
@@ -69,9 +86,9 @@ public class AsyncPipe {
 	 * consumed or {@link #sink(ReadableByteChannel)} is called) and
 	 * {@link #sink(ReadableByteChannel)} will sink to nil.
 	 */
-	public synchronized void close() {
+	public void close() {
 		closed = true;
-		this.notifyAll();
+		wakeup();
 		capacityAvailable();
 	}
 
@@ -79,39 +96,59 @@ public class AsyncPipe {
 	 * Source operations will fail with an IOException with the given throwable as
 	 * the cause and the pipe will be closed.
 	 */
-	public synchronized void fail(Throwable e) {
+	public void fail(Throwable e) {
 		error = e;
 		close();
 	}
 
-	public synchronized boolean hasAvailableCapacity() {
-		if (closed || buf.hasRemaining())
-			return true;
-		try {
-			this.wait(100);
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-		}
-		return closed || buf.hasRemaining();
+	/**
+	 * If the pipe is closed or has room for more data, never blocks.
+	 */
+	public boolean hasAvailableCapacity() {
+		return closed || free() > 0;
 	}
 
-	public synchronized void onAvailableCapacity(Runnable action) {
-		if (closed || buf.hasRemaining()) {
+	/**
+	 * Runs the action now if there is capacity available, otherwise once the
+	 * reader has freed half of the buffer or the pipe is closed.
+	 */
+	public void onAvailableCapacity(Runnable action) {
+		if (hasAvailableCapacity()) {
 			action.run();
 		} else {
-			this.action = action;
+			this.action.set(action);
+			// the reader may have drained the buffer before the action was set
+			if (hasAvailableCapacity()) {
+				capacityAvailable();
+			}
 		}
 	}
 
 	/**
 	 * Read n bytes from in into the internal buffer
 	 */
-	public synchronized int sink(ReadableByteChannel in) throws IOException {
-		if (closed) {
-			buf.clear();
-		}
+	public int sink(ReadableByteChannel in) throws IOException {
 		try {
-			return in.read(buf);
+			if (closed)
+				return in.read(ByteBuffer.allocate(Math.min(capacity, 8192)));
+			long t = tail.get();
+			int free = capacity - (int) (t - head.get());
+			if (free <= 0)
+				return 0;
+			int offset = (int) (t % capacity);
+			int first = Math.min(free, capacity - offset);
+			int n = in.read(ByteBuffer.wrap(data, offset, first));
+			if (n == first && free > first) {
+				int m = in.read(ByteBuffer.wrap(data, 0, free - first));
+				if (m > 0) {
+					n += m;
+				}
+			}
+			if (n > 0) {
+				tail.set(t + n);
+				wakeup();
+			}
+			return n;
 		} catch (Error e) {
 			fail(e);
 			throw e;
@@ -121,15 +158,13 @@ public class AsyncPipe {
 		} catch (RuntimeException e) {
 			fail(e);
 			throw e;
-		} finally {
-			this.notifyAll();
 		}
 	}
 
 	/**
 	 * Blocking read bytes from the internal buffer
 	 */
-	public synchronized ReadableByteChannel source() {
+	public ReadableByteChannel source() {
 		return new ReadableByteChannel() {
 			private boolean closed;
 
@@ -143,80 +178,92 @@ public class AsyncPipe {
 			}
 
 			public int read(final ByteBuffer dst) throws IOException {
-				synchronized (AsyncPipe.this) {
-					int n = 0;
-					while (n == 0) {
-						n = source(new Source() {
-							public int write(ByteBuffer src) throws IOException {
-								return copy(src, dst);
-							}
-						});
-						if (n == 0) {
-							try {
-								AsyncPipe.this.wait();
-							} catch (InterruptedException e) {
-								InterruptedIOException ie = new InterruptedIOException(
-										e.toString());
-								ie.initCause(e);
-								throw ie;
-							}
-						}
-					}
-					return n;
-				}
-			}
-
-			private int copy(ByteBuffer src, ByteBuffer dst) {
-				int n = src.remaining();
-				int limit = dst.remaining();
-				if (n <= limit) {
-					dst.put(src);
-				} else {
-					n = limit;
-					for (int i = 0; i < n; i++) {
-						dst.put(src.get());
+				if (!dst.hasRemaining())
+					return 0;
+				Source out = new Source() {
+					public int write(ByteBuffer src) throws IOException {
+						int n = Math.min(src.remaining(), dst.remaining());
+						int limit = src.limit();
+						src.limit(src.position() + n);
+						dst.put(src);
+						src.limit(limit);
+						return n;
 					}
+				};
+				int n;
+				while ((n = source(out)) == 0) {
+					await();
 				}
 				return n;
 			}
 		};
 	}
 
-	synchronized void abort() {
+	void abort() {
 		close();
-		buf.clear();
+		head.set(tail.get());
 		capacityAvailable();
 	}
 
 	/**
 	 * Write n bytes to out from the internal buffer
 	 */
-	synchronized int source(WritableByteChannel out) throws IOException {
-		if (error != null) {
-			try {
-				throw new IOException(error);
-			} finally {
-				error = null;
-			}
+	int source(WritableByteChannel out) throws IOException {
+		Throwable e = error;
+		if (e != null) {
+			error = null;
+			throw new IOException(e);
 		}
-		if (closed && buf.position() == 0)
-			return -1;
-		buf.flip();
-		int n = out.write(buf);
-		buf.compact();
-		if (buf.remaining() >= buf.capacity() / 2) {
+		long h = head.get();
+		int available = (int) (tail.get() - h);
+		if (available == 0)
+			return closed && tail.get() == h ? -1 : 0;
+		int offset = (int) (h % capacity);
+		int first = Math.min(available, capacity - offset);
+		int n = out.write(ByteBuffer.wrap(data, offset, first));
+		if (n == first && available > first) {
+			n += out.write(ByteBuffer.wrap(data, 0, available - first));
+		}
+		head.set(h + n);
+		if (free() >= capacity / 2) {
 			capacityAvailable();
 		}
 		return n;
 	}
 
-	private synchronized void capacityAvailable() {
-		if (action != null) {
-			try {
-				action.run();
-			} finally {
-				action = null;
+	private int free() {
+		return capacity - (int) (tail.get() - head.get());
+	}
+
+	/**
+	 * Parks the reading thread until the reactor adds data or closes the pipe.
+	 */
+	private void await() throws InterruptedIOException {
+		waiter = Thread.currentThread();
+		try {
+			// check again after publishing the waiter to avoid a lost wakeup
+			if (!closed && error == null && tail.get() == head.get()) {
+				LockSupport.park(this);
 			}
+			if (Thread.interrupted()) {
+				throw new InterruptedIOException("Interrupted while waiting for data");
+			}
+		} finally {
+			waiter = null;
+		}
+	}
+
+	private void wakeup() {
+		Thread thread = waiter;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	private void capacityAvailable() {
+		Runnable runnable = action.getAndSet(null);
+		if (runnable != null) {
+			runnable.run();
 		}
 	}
 
@@ -25,6 +25,13 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
 import javax.activation.FileTypeMap;
@@ -32,6 +39,7 @@ import javax.activation.MimetypesFileTypeMap;
 
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.callimachusproject.concurrent.ManagedExecutors;
 import org.openrdf.model.URI;
 import org.openrdf.model.impl.LinkedHashModel;
 import org.openrdf.model.impl.URIImpl;
@@ -46,25 +54,74 @@ import org.openrdf.rio.helpers.StatementCollector;
 
 public class CarInputStream implements Closeable {
 	private static final int RDFS_PEEK_SIZE = 1024 * 1024;
+	/** Larger entries are streamed from the archive when read ahead */
+	private static final int READ_AHEAD_LIMIT = 1024 * 1024;
 	private static final Pattern FILE_NAME = Pattern
 			.compile("[^/]+\\.[a-zA-Z]+$");
 	private final ZipArchiveInputStream zipStream;
 	private final FileTypeMap mimetypes;
+	private final BlockingQueue<ReadAheadEntry> ahead;
+	private final Future<?> reader;
+	private final CountDownLatch readerDone;
+	private final AtomicBoolean readerStarted = new AtomicBoolean();
+	private volatile boolean closing;
 	private ZipArchiveEntry entry;
 	private MetaTypeExtraField entryMetaType;
 	private String entryType;
 	private BufferedInputStream entryStream;
+	private ReadAheadEntry current;
 
 	public CarInputStream(InputStream in) throws IOException {
+		this(in, 0);
+	}
+
+	/**
+	 * Reads the archive using another thread to inflate and classify up to
+	 * <code>readAhead</code> entries, while the current entry is processed.
+	 */
+	public CarInputStream(InputStream in, int readAhead) throws IOException {
 		zipStream = new ZipArchiveInputStream(in);
 		mimetypes = MimetypesFileTypeMap.getDefaultFileTypeMap();
+		if (readAhead > 0) {
+			ahead = new ArrayBlockingQueue<ReadAheadEntry>(readAhead);
+			readerDone = new CountDownLatch(1);
+			reader = ManagedExecutors.getInstance().getParserThreadPool()
+					.submit(new Runnable() {
+						public void run() {
+							readAhead();
+						}
+					});
+		} else {
+			ahead = null;
+			reader = null;
+			readerDone = null;
+		}
 	}
 
 	public void close() throws IOException {
+		closing = true;
+		if (reader != null) {
+			reader.cancel(true);
+			if (readerStarted.compareAndSet(false, true)) {
+				// cancelled before it ran
+				readerDone.countDown();
+			}
+			synchronized (this) {
+				if (current != null) {
+					current.release();
+				}
+			}
+			ReadAheadEntry next;
+			while ((next = ahead.poll()) != null) {
+				next.release();
+			}
+		}
 		zipStream.close();
 	}
 
 	public synchronized String readEntryName() throws IOException {
+		if (ahead != null)
+			return readAheadEntry().name;
 		if (entry == null) {
 			entry = next();
 		}
@@ -74,37 +131,209 @@ public class CarInputStream implements Closeable {
 	}
 
 	public synchronized long getEntryTime() throws IOException {
+		if (ahead != null)
+			return current == null ? -1 : current.time;
 		if (entry == null)
 			return -1;
 		return entry.getTime();
 	}
 
 	public synchronized String getEntryType() throws IOException {
+		if (ahead != null)
+			return current == null ? null : current.type;
 		return entryType;
 	}
 
 	public synchronized boolean isFolderEntry() throws IOException {
-		return MetaTypeExtraField.FOLDER == entryMetaType;
+		return MetaTypeExtraField.FOLDER == getEntryMetaType();
 	}
 
 	public synchronized boolean isResourceEntry() throws IOException {
-		return MetaTypeExtraField.RDF == entryMetaType;
+		return MetaTypeExtraField.RDF == getEntryMetaType();
 	}
 
 	public synchronized boolean isSchemaEntry() throws IOException {
-		return MetaTypeExtraField.RDFS == entryMetaType;
+		return MetaTypeExtraField.RDFS == getEntryMetaType();
 	}
 
 	public synchronized boolean isFileEntry() throws IOException {
-		return MetaTypeExtraField.FILE == entryMetaType;
+		return MetaTypeExtraField.FILE == getEntryMetaType();
 	}
 
 	public synchronized InputStream getEntryStream() throws IOException {
+		if (ahead != null)
+			return current == null ? null : current.getStream();
 		if (entryStream == null)
 			return null;
 		return entryStream;
 	}
 
+	private MetaTypeExtraField getEntryMetaType() {
+		if (ahead != null)
+			return current == null ? null : current.metaType;
+		return entryMetaType;
+	}
+
+	private ReadAheadEntry readAheadEntry() throws IOException {
+		if (current == null) {
+			try {
+				current = ahead.take();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException(e.toString());
+			}
+		}
+		if (current.exception != null)
+			throw new IOException(current.exception);
+		return current;
+	}
+
+	private synchronized void closeEntry(ReadAheadEntry closed) {
+		if (current == closed && closed.name != null) {
+			current = null;
+		}
+		closed.release();
+	}
+
+	/**
+	 * Waits for the read ahead thread, if any, to stop.
+	 * 
+	 * @return false if it is still running after the timeout
+	 */
+	boolean awaitReadAhead(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return readerDone == null || readerDone.await(timeout, unit);
+	}
+
+	private void readAhead() {
+		try {
+			if (!readerStarted.compareAndSet(false, true))
+				return;
+			while (!closing) {
+				ZipArchiveEntry next = next();
+				if (next == null) {
+					enqueue(new ReadAheadEntry(null, -1, null, null, null, null));
+					return;
+				}
+				BufferedInputStream in = entryStream;
+				byte[] buf = new byte[(int) Math.min(READ_AHEAD_LIMIT,
+						next.getSize() >= 0 ? next.getSize() + 1 : 8192)];
+				int len = 0;
+				int read;
+				while ((read = in.read(buf, len, buf.length - len)) >= 0) {
+					len += read;
+					if (len == buf.length) {
+						if (buf.length >= READ_AHEAD_LIMIT)
+							break;
+						byte[] grow = new byte[Math.min(READ_AHEAD_LIMIT, buf.length * 2)];
+						System.arraycopy(buf, 0, grow, 0, len);
+						buf = grow;
+					}
+				}
+				if (read < 0) {
+					if (!enqueue(new ReadAheadEntry(next.getName(), next.getTime(),
+							entryType, entryMetaType, new ByteArrayInputStream(
+									buf, 0, len), null)))
+						return;
+					in.close();
+				} else {
+					// too large to hold in memory; hand over the live stream
+					InputStream remaining = new SequenceInputStream(
+							new ByteArrayInputStream(buf, 0, len), in);
+					CountDownLatch closed = new CountDownLatch(1);
+					if (!enqueue(new ReadAheadEntry(next.getName(), next.getTime(),
+							entryType, entryMetaType, remaining, closed)))
+						return;
+					while (!closed.await(1, TimeUnit.SECONDS)) {
+						if (closing)
+							return;
+					}
+					in.close();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			fail(e);
+		} catch (RuntimeException e) {
+			fail(e);
+		} finally {
+			readerDone.countDown();
+		}
+	}
+
+	/**
+	 * Waits for room in the queue, but gives up once this stream is closed.
+	 * 
+	 * @return false if the entry was dropped because this stream was closed
+	 */
+	private boolean enqueue(ReadAheadEntry entry) throws InterruptedException {
+		while (!ahead.offer(entry, 1, TimeUnit.SECONDS)) {
+			if (closing) {
+				entry.release();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void fail(Exception e) {
+		try {
+			enqueue(new ReadAheadEntry(e));
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private class ReadAheadEntry {
+		final String name;
+		final long time;
+		final String type;
+		final MetaTypeExtraField metaType;
+		final Exception exception;
+		private final InputStream content;
+		private final CountDownLatch closed;
+		private InputStream stream;
+
+		ReadAheadEntry(String name, long time, String type,
+				MetaTypeExtraField metaType, InputStream content,
+				CountDownLatch closed) {
+			this.name = name;
+			this.time = time;
+			this.type = type;
+			this.metaType = metaType;
+			this.content = content;
+			this.closed = closed;
+			this.exception = null;
+		}
+
+		ReadAheadEntry(Exception exception) {
+			this.name = null;
+			this.time = -1;
+			this.type = null;
+			this.metaType = null;
+			this.content = null;
+			this.closed = null;
+			this.exception = exception;
+		}
+
+		synchronized InputStream getStream() {
+			if (stream == null && content != null) {
+				stream = new FilterInputStream(content) {
+					public void close() throws IOException {
+						closeEntry(ReadAheadEntry.this);
+					}
+				};
+			}
+			return stream;
+		}
+
+		void release() {
+			if (closed != null) {
+				closed.countDown();
+			}
+		}
+	}
+
 	private ZipArchiveEntry next() throws IOException {
 		if (Thread.interrupted())
 			throw new InterruptedIOException();
@@ -17,13 +17,18 @@
  */
 package org.callimachusproject.io;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 
 import org.mozilla.intl.chardet.nsDetector;
@@ -39,6 +44,14 @@ import org.slf4j.LoggerFactory;
  */
 public class CharsetDetector implements nsICharsetDetectionObserver {
 	static final Charset ASCII = Charset.forName("US-ASCII");
+	static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+	/** Number of bytes sampled from the start of a stream */
+	public static final int SAMPLE_SIZE = 8192;
+	private static final Pattern XML_DECL = Pattern
+			.compile("^<\\?xml\\s[^>]*encoding\\s*=\\s*[\"']([A-Za-z0-9._:\\-]+)[\"']");
+	private static final Pattern META_CHARSET = Pattern.compile(
+			"<meta\\s[^>]*charset\\s*=\\s*[\"']?([A-Za-z0-9._:\\-]+)",
+			Pattern.CASE_INSENSITIVE);
 	private Logger logger = LoggerFactory.getLogger(CharsetDetector.class);
 
 	private Charset charset;
@@ -58,12 +71,61 @@ public class CharsetDetector implements nsICharsetDetectionObserver {
 			in = new GZIPInputStream(in);
 		}
 		try {
-			return detect(in);
+			byte[] sample = new byte[SAMPLE_SIZE];
+			int len = fill(in, sample);
+			return detect(sample, len, len == sample.length);
 		} finally {
 			in.close();
 		}
 	}
 
+	/**
+	 * Samples the start of the stream to detect its character set and
+	 * returns a {@link Reader} that decodes the whole stream, including the
+	 * sampled bytes, but excluding any byte order mark.
+	 */
+	public Reader createReader(InputStream in) throws IOException {
+		return createReader(in, SAMPLE_SIZE);
+	}
+
+	public Reader createReader(InputStream in, int sampleSize)
+			throws IOException {
+		BufferedInputStream buffer = new BufferedInputStream(in, sampleSize);
+		buffer.mark(sampleSize);
+		byte[] sample = new byte[sampleSize];
+		int len = fill(buffer, sample);
+		buffer.reset();
+		Charset bom = detectByteOrderMark(sample, len);
+		if (bom != null) {
+			long skip = byteOrderMarkLength(sample, len);
+			while (skip > 0) {
+				skip -= buffer.skip(skip);
+			}
+			return new InputStreamReader(buffer, bom);
+		}
+		Charset detected = detect(sample, len, len == sampleSize);
+		return new InputStreamReader(buffer, detected);
+	}
+
+	/**
+	 * Detects the character set of the given sample from the start of a
+	 * stream. A byte order mark takes precedence, followed by an XML or HTML
+	 * encoding declaration, before falling back to heuristics.
+	 * 
+	 * @param truncated
+	 *            if the sample is only the start of a longer stream
+	 */
+	public Charset detect(byte[] sample, int len, boolean truncated) {
+		Charset bom = detectByteOrderMark(sample, len);
+		if (bom != null)
+			return bom;
+		Charset declared = detectDeclaration(sample, len);
+		if (declared != null)
+			return declared;
+		int end = truncated ? completeLength(sample, len) : len;
+		return detectHeuristically(sample, end);
+	}
+
 	public Charset detect(InputStream in) throws IOException {
 		boolean ascii = true;
 		nsDetector det = new nsDetector();
@@ -82,6 +144,21 @@ public class CharsetDetector implements nsICharsetDetectionObserver {
 			}
 		}
 		det.Done();
+		return probableCharset(det, ascii);
+	}
+
+	private Charset detectHeuristically(byte[] buf, int len) {
+		nsDetector det = new nsDetector();
+		det.Init(this);
+		boolean ascii = det.isAscii(buf, len);
+		if (!ascii) {
+			det.DoIt(buf, len, false);
+		}
+		det.Done();
+		return probableCharset(det, ascii);
+	}
+
+	private Charset probableCharset(nsDetector det, boolean ascii) {
 		if (charset == null && ascii) {
 			charset = ASCII;
 		} else if (charset == null) {
@@ -122,4 +199,83 @@ public class CharsetDetector implements nsICharsetDetectionObserver {
 			}
 		}
 	}
+
+	private int fill(InputStream in, byte[] sample) throws IOException {
+		int len = 0;
+		while (len < sample.length) {
+			int read = in.read(sample, len, sample.length - len);
+			if (read < 0)
+				break;
+			len += read;
+		}
+		return len;
+	}
+
+	private Charset detectByteOrderMark(byte[] b, int len) {
+		if (len >= 3 && (b[0] & 0xFF) == 0xEF && (b[1] & 0xFF) == 0xBB
+				&& (b[2] & 0xFF) == 0xBF)
+			return Charset.forName("UTF-8");
+		if (len >= 4 && b[0] == 0 && b[1] == 0 && (b[2] & 0xFF) == 0xFE
+				&& (b[3] & 0xFF) == 0xFF)
+			return forName("UTF-32BE");
+		if (len >= 4 && (b[0] & 0xFF) == 0xFF && (b[1] & 0xFF) == 0xFE
+				&& b[2] == 0 && b[3] == 0)
+			return forName("UTF-32LE");
+		if (len >= 2 && (b[0] & 0xFF) == 0xFE && (b[1] & 0xFF) == 0xFF)
+			return Charset.forName("UTF-16BE");
+		if (len >= 2 && (b[0] & 0xFF) == 0xFF && (b[1] & 0xFF) == 0xFE)
+			return Charset.forName("UTF-16LE");
+		return null;
+	}
+
+	private int byteOrderMarkLength(byte[] b, int len) {
+		Charset bom = detectByteOrderMark(b, len);
+		if (bom == null)
+			return 0;
+		String name = bom.name();
+		if (name.startsWith("UTF-32"))
+			return 4;
+		if (name.startsWith("UTF-16"))
+			return 2;
+		return 3;
+	}
+
+	private Charset detectDeclaration(byte[] sample, int len) {
+		String head = new String(sample, 0, len, ISO_8859_1);
+		Matcher xml = XML_DECL.matcher(head);
+		if (xml.find())
+			return forName(xml.group(1));
+		Matcher meta = META_CHARSET.matcher(head);
+		if (meta.find())
+			return forName(meta.group(1));
+		return null;
+	}
+
+	/**
+	 * Excludes a trailing UTF-8 sequence that was cut off by the end of the
+	 * sample, so it does not count against UTF-8.
+	 */
+	private int completeLength(byte[] b, int len) {
+		for (int i = len - 1; i >= 0 && i >= len - 4; i--) {
+			int c = b[i] & 0xFF;
+			if (c < 0x80)
+				return len;
+			if (c >= 0xC0) {
+				int size = c >= 0xF0 ? 4 : c >= 0xE0 ? 3 : 2;
+				return i + size > len ? i : len;
+			}
+		}
+		return len;
+	}
+
+	private Charset forName(String name) {
+		try {
+			return Charset.forName(name);
+		} catch (IllegalCharsetNameException e) {
+			this.logger.warn(e.toString(), e);
+		} catch (UnsupportedCharsetException e) {
+			this.logger.warn(e.toString(), e);
+		}
+		return null;
+	}
 }
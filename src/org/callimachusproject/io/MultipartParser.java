@@ -17,31 +17,70 @@
  */
 package org.callimachusproject.io;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Parses multipart inputsteams into multiple streamed serial inputstreams.
+ * The input is read in blocks into a reusable buffer and each boundary is
+ * found using a Boyer-Moore-Horspool search, so part streams can return whole
+ * spans of the buffer at a time.
  * 
  * @author James Leigh
  * 
  */
 public class MultipartParser {
-	private byte[] boundary = null;
-	private byte[] buffer = null;
+	private static final int BUFFER_SIZE = 65536;
+	/** CRLF--boundary */
+	private final byte[] delimiter;
+	private final int[] skip = new int[256];
+	private final InputStream in;
+	private final ReadableByteChannel channel;
+	private final byte[] buf;
+	private int pos;
+	private int limit;
+	private boolean eof;
+	/** buf[pos..clear) is known to be part content */
+	private int clear;
+	/** start of the delimiter in buf or -1 if not yet found */
+	private int delim = -1;
 	private boolean fileEnd = false;
-	private InputStream in = null;
 	private boolean partEnd = false;
 	private StringBuilder headers;
 
 	public MultipartParser(InputStream in) throws IOException {
-		this.boundary = readBoundary(in);
-		this.in = (in.markSupported() ? in : new LatencyInputStream(in,
-				boundary.length + 4));
-		this.buffer = new byte[boundary.length];
+		this(in, null);
+	}
+
+	public MultipartParser(ReadableByteChannel channel) throws IOException {
+		this(null, channel);
+	}
+
+	private MultipartParser(InputStream in, ReadableByteChannel channel)
+			throws IOException {
+		this.in = in;
+		this.channel = channel;
+		this.buf = new byte[BUFFER_SIZE];
+		byte[] boundary = readBoundary();
+		this.delimiter = new byte[boundary.length + 4];
+		delimiter[0] = '\r';
+		delimiter[1] = '\n';
+		delimiter[2] = '-';
+		delimiter[3] = '-';
+		System.arraycopy(boundary, 0, delimiter, 4, boundary.length);
+		if (delimiter.length * 2 > buf.length)
+			throw new IOException("Multipart boundary is too long");
+		int last = delimiter.length - 1;
+		for (int i = 0; i < skip.length; i++) {
+			skip[i] = delimiter.length;
+		}
+		for (int i = 0; i < last; i++) {
+			skip[delimiter[i] & 0xff] = last - i;
+		}
 		this.partEnd = true;
 		this.fileEnd = false;
 	}
@@ -52,7 +91,11 @@ public class MultipartParser {
 	 * @throws IOException
 	 */
 	public void close() throws IOException {
-		in.close();
+		if (channel != null) {
+			channel.close();
+		} else {
+			in.close();
+		}
 	}
 
 	/**
@@ -95,103 +138,204 @@ public class MultipartParser {
 		partEnd = false;
 		if (!readHeaders())
 			return null;
+		clear = pos;
+		delim = -1;
 		return new InputStream() {
 			public int read() throws IOException {
-				int ch;
-				if (partEnd)
+				if (span() < 0)
 					return -1;
-				switch (ch = in.read()) {
-				case '\r':
-					in.mark(boundary.length + 3);
-					int c1 = in.read();
-					int c2 = in.read();
-					int c3 = in.read();
-					if ((c1 == '\n') && (c2 == '-') && (c3 == '-')) {
-						if (!readBoundaryBytes()) {
-							in.reset();
-							return ch;
-						}
-						for (int i = 0; i < boundary.length; i++) {
-							if (buffer[i] != boundary[i]) {
-								in.reset();
-								return ch;
-							}
-						}
-						partEnd = true;
-						ch = in.read();
-						if (ch == '\r') {
-							ch = in.read();
-							assert ch == '\n';
-						} else if (ch == '-') {
-							if (in.read() == '-')
-								fileEnd = true;
-						} else {
-							fileEnd = (ch == -1);
-						}
-						return -1;
-					} else {
-						in.reset();
-						return ch;
-					}
-				case -1:
-					fileEnd = true;
+				return buf[pos++] & 0xff;
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (len == 0)
+					return 0;
+				int n = span();
+				if (n < 0)
 					return -1;
-				default:
-					return ch;
-				}
+				n = Math.min(n, len);
+				System.arraycopy(buf, pos, b, off, n);
+				pos += n;
+				return n;
 			}
 
-			public void close() throws IOException {
-				while (read() != -1)
-					;
+			public long skip(long n) throws IOException {
+				if (n <= 0)
+					return 0;
+				int span = span();
+				if (span < 0)
+					return 0;
+				int skipped = (int) Math.min(span, n);
+				pos += skipped;
+				return skipped;
 			}
 
-			private final boolean readBoundaryBytes() throws IOException {
-				int pos = 0;
-				while (pos < buffer.length) {
-					int got = in.read(buffer, pos, buffer.length - pos);
-					if (got < 0)
-						return false;
-					pos += got;
+			public int available() {
+				if (partEnd)
+					return 0;
+				return clear - pos;
+			}
+
+			public void close() throws IOException {
+				while (span() >= 0) {
+					pos = clear;
 				}
-				return true;
 			}
 		};
 	}
 
-	private byte[] readBoundary(InputStream in) throws IOException {
+	/**
+	 * Number of part content bytes available in the buffer at pos.
+	 * 
+	 * @return a positive number or -1 at the end of the part
+	 */
+	private int span() throws IOException {
+		if (partEnd)
+			return -1;
+		while (pos == clear) {
+			if (pos == delim) {
+				endPart();
+				return -1;
+			}
+			if (!scan()) {
+				fileEnd = true;
+				partEnd = true;
+				return -1;
+			}
+		}
+		return clear - pos;
+	}
+
+	/**
+	 * Moves clear forward to the next delimiter or to the last position in the
+	 * buffer where a delimiter cannot start, reading more input as needed.
+	 * 
+	 * @return false if there is no more input
+	 */
+	private boolean scan() throws IOException {
+		while (true) {
+			int found = search(clear, limit);
+			if (found >= 0) {
+				delim = found;
+				clear = found;
+				return true;
+			}
+			int safe = eof ? limit : limit - delimiter.length + 1;
+			if (safe > clear) {
+				clear = safe;
+				return true;
+			}
+			if (eof)
+				return false;
+			fill();
+		}
+	}
+
+	private int search(int from, int to) {
+		byte[] pattern = delimiter;
+		int last = pattern.length - 1;
+		int i = from;
+		while (i + last < to) {
+			int j = last;
+			while (buf[i + j] == pattern[j]) {
+				if (j == 0)
+					return i;
+				j--;
+			}
+			i += skip[buf[i + last] & 0xff];
+		}
+		return -1;
+	}
+
+	private void endPart() throws IOException {
+		pos += delimiter.length;
+		delim = -1;
+		partEnd = true;
+		int ch = readByte();
+		if (ch == '\r') {
+			ch = readByte();
+			assert ch == '\n';
+		} else if (ch == '-') {
+			if (readByte() == '-')
+				fileEnd = true;
+		} else {
+			fileEnd = (ch == -1);
+		}
+	}
+
+	/**
+	 * Compacts the buffer and reads more input into it.
+	 */
+	private void fill() throws IOException {
+		if (eof)
+			return;
+		if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, limit - pos);
+			limit -= pos;
+			clear -= pos;
+			if (delim >= 0) {
+				delim -= pos;
+			}
+			pos = 0;
+		}
+		int read;
+		do {
+			if (channel != null) {
+				read = channel.read(ByteBuffer.wrap(buf, limit, buf.length
+						- limit));
+			} else {
+				read = in.read(buf, limit, buf.length - limit);
+			}
+		} while (read == 0);
+		if (read < 0) {
+			eof = true;
+		} else {
+			limit += read;
+		}
+	}
+
+	private int readByte() throws IOException {
+		while (pos >= limit) {
+			if (eof)
+				return -1;
+			fill();
+		}
+		return buf[pos++] & 0xff;
+	}
+
+	private byte[] readBoundary() throws IOException {
 		int ch;
-		ch = in.read();
+		ch = readByte();
 		assert ch == '-';
-		ch = in.read();
+		ch = readByte();
 		assert ch == '-';
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		while ((ch = in.read()) != '\r' && ch != -1) {
-			baos.write(ch);
+		StringBuilder sb = new StringBuilder();
+		while ((ch = readByte()) != '\r' && ch != -1) {
+			sb.append((char) ch);
 		}
 		assert ch != -1;
-		ch = in.read();
+		ch = readByte();
 		assert ch == '\n';
-		return baos.toByteArray();
+		return sb.toString().getBytes("ISO-8859-1");
 	}
 
 	private boolean readHeaders() throws IOException {
 		headers = new StringBuilder();
-		if (read(in, headers) == '\r' && read(in, headers) == '\n')
+		if (read(headers) == '\r' && read(headers) == '\n')
 			return true;
-		int ch = read(in, headers);
+		int ch = read(headers);
 		while (ch != -1) {
-			ch = read(in, headers);
-			if (ch == '\r' && read(in, headers) == '\n'
-					&& read(in, headers) == '\r' && read(in, headers) == '\n') {
+			ch = read(headers);
+			if (ch == '\r' && read(headers) == '\n'
+					&& read(headers) == '\r' && read(headers) == '\n') {
 				return true;
 			}
 		}
 		return false;
 	}
 
-	private int read(InputStream in, StringBuilder sb) throws IOException {
-		int read = in.read();
+	private int read(StringBuilder sb) throws IOException {
+		int read = readByte();
 		if (read != -1) {
 			sb.append((char) read);
 		}
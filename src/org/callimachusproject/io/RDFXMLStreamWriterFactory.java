@@ -29,6 +29,7 @@ import org.openrdf.rio.RDFWriter;
 
 public class RDFXMLStreamWriterFactory {
 	private final XMLOutputFactory xf;
+	private boolean subjectOrdered;
 
 	public RDFXMLStreamWriterFactory() {
 		xf = XMLOutputFactory.newFactory();
@@ -43,18 +44,37 @@ public class RDFXMLStreamWriterFactory {
 		return RDFFormat.RDFXML;
 	}
 
+	public boolean isSubjectOrdered() {
+		return subjectOrdered;
+	}
+
+	/**
+	 * If statements given to the created writers are grouped by subject, as
+	 * in a {@link DescribeResult}, so that each subject is written as soon
+	 * as it is complete.
+	 */
+	public void setSubjectOrdered(boolean subjectOrdered) {
+		this.subjectOrdered = subjectOrdered;
+	}
+
 	public RDFWriter createWriter(OutputStream out, String systemId) throws XMLStreamException, URISyntaxException {
 		XMLStreamWriter writer = xf.createXMLStreamWriter(out);
-		return new ArrangedWriter(new RDFXMLStreamWriter(writer, systemId));
+		return arrange(new RDFXMLStreamWriter(writer, systemId));
 	}
 
 	public RDFWriter createWriter(Writer out, String systemId) throws XMLStreamException, URISyntaxException {
 		XMLStreamWriter writer = xf.createXMLStreamWriter(out);
-		return new ArrangedWriter(new RDFXMLStreamWriter(writer, systemId));
+		return arrange(new RDFXMLStreamWriter(writer, systemId));
 	}
 
 	public RDFWriter createWriter(XMLStreamWriter writer, String systemId) throws XMLStreamException, URISyntaxException {
-		return new ArrangedWriter(new RDFXMLStreamWriter(writer, systemId));
+		return arrange(new RDFXMLStreamWriter(writer, systemId));
+	}
+
+	private RDFWriter arrange(RDFWriter writer) {
+		ArrangedWriter arranged = new ArrangedWriter(writer);
+		arranged.setSubjectOrdered(subjectOrdered);
+		return arranged;
 	}
 
 }
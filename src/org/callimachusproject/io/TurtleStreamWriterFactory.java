@@ -26,18 +26,38 @@ import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFWriter;
 
 public class TurtleStreamWriterFactory {
+	private boolean subjectOrdered;
 
 	public RDFFormat getRDFFormat() {
 		return RDFFormat.TURTLE;
 	}
 
+	public boolean isSubjectOrdered() {
+		return subjectOrdered;
+	}
+
+	/**
+	 * If statements given to the created writers are grouped by subject, as
+	 * in a {@link DescribeResult}, so that each subject is written as soon
+	 * as it is complete.
+	 */
+	public void setSubjectOrdered(boolean subjectOrdered) {
+		this.subjectOrdered = subjectOrdered;
+	}
+
 	public RDFWriter createWriter(OutputStream out, String systemId) throws URISyntaxException {
 		OutputStreamWriter writer = new OutputStreamWriter(out, Charset.forName("UTF-8"));
 		return createWriter(writer, systemId);
 	}
 
 	public RDFWriter createWriter(Writer writer, String systemId) throws URISyntaxException {
-		return new ArrangedWriter(new TurtleStreamWriter(writer, systemId));
+		return arrange(new TurtleStreamWriter(writer, systemId));
+	}
+
+	private RDFWriter arrange(RDFWriter writer) {
+		ArrangedWriter arranged = new ArrangedWriter(writer);
+		arranged.setSubjectOrdered(subjectOrdered);
+		return arranged;
 	}
 
 }
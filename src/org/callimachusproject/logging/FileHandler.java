@@ -29,6 +29,13 @@ import java.nio.channels.FileLock;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.Hashtable;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.*;
 import java.util.zip.GZIPOutputStream;
 
@@ -70,6 +77,20 @@ import java.util.zip.GZIPOutputStream;
  * <li>java.util.logging.FileHandler.append specifies whether this
  * <code>FileHandler</code> should append onto existing files, defaults to
  * false.</li>
+ * <li>java.util.logging.FileHandler.async specifies whether records should be
+ * queued and written by a background thread, defaults to false.</li>
+ * <li>java.util.logging.FileHandler.queue specifies the maximum number of
+ * records waiting to be written in async mode, defaults to 4096.</li>
+ * <li>java.util.logging.FileHandler.flushSize specifies how many records may
+ * be written in async mode before the output is flushed, defaults to
+ * 256.</li>
+ * <li>java.util.logging.FileHandler.flushInterval specifies the maximum
+ * milliseconds a written record may wait before the output is flushed in
+ * async mode, defaults to 1000.</li>
+ * <li>java.util.logging.FileHandler.overflow specifies what happens when the
+ * async queue is full: "block" waits for space, "drop-debug" drops records
+ * below <code>Level.INFO</code> and waits for the rest, "drop-all" drops any
+ * record, defaults to "drop-debug".</li>
  * </ul>
  * </p>
  * <p>
@@ -116,6 +137,34 @@ public class FileHandler extends StreamHandler {
 
     private static final String DEFAULT_PATTERN = "%h/java%u.log"; //$NON-NLS-1$
 
+    private static final boolean DEFAULT_ASYNC = false;
+
+    private static final int DEFAULT_QUEUE = 4096;
+
+    private static final int DEFAULT_FLUSH_SIZE = 256;
+
+    private static final int DEFAULT_FLUSH_INTERVAL = 1000;
+
+    private static final String DEFAULT_OVERFLOW = "drop-debug"; //$NON-NLS-1$
+
+    /**
+     * What an async <code>FileHandler</code> does when its queue is full
+     */
+    public enum Overflow {
+        BLOCK, DROP_DEBUG, DROP_ALL;
+
+        static Overflow parse(String value, Overflow defaultValue) {
+            if (value == null)
+                return defaultValue;
+            String name = value.trim().replace('-', '_').toUpperCase(Locale.US);
+            for (Overflow overflow : values()) {
+                if (overflow.name().equals(name))
+                    return overflow;
+            }
+            return defaultValue;
+        }
+    }
+
     // maintain all file locks hold by this process
     private static final Hashtable<String, FileLock> allLocks = new Hashtable<String, FileLock>();
 
@@ -153,6 +202,32 @@ public class FileHandler extends StreamHandler {
     // current unique ID
     int uniqueID = -1;
 
+    // whether records are written by the writer thread
+    private boolean async;
+
+    // records written by the writer thread before a flush is forced
+    private int flushSize;
+
+    // nanoseconds a written record may remain unflushed
+    private long flushInterval;
+
+    // policy for records published while the queue is full
+    private Overflow overflow;
+
+    // records waiting for the writer thread
+    private final Queue<LogRecord> queue = new ConcurrentLinkedQueue<LogRecord>();
+
+    // remaining capacity of the queue
+    private Semaphore space;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private Thread writer;
+
+    private volatile boolean idle;
+
+    private volatile boolean closed;
+
     /**
      * Construct a <code>FileHandler</code> using <code>LogManager</code>
      * properties or their default value
@@ -172,6 +247,9 @@ public class FileHandler extends StreamHandler {
         manager.checkAccess();
         initProperties();
         initOutputFiles();
+        if (async) {
+            startWriter();
+        }
     }
 
     private void initOutputFiles() throws FileNotFoundException, IOException {
@@ -244,6 +322,137 @@ public class FileHandler extends StreamHandler {
         count = count < 1 ? DEFAULT_COUNT : count;
         limit = limit < 0 ? DEFAULT_LIMIT : limit;
         files = new File[count];
+        async = getBooleanProperty(className + ".async", DEFAULT_ASYNC);
+        int queueSize = getIntProperty(className + ".queue", DEFAULT_QUEUE);
+        space = new Semaphore(queueSize < 1 ? DEFAULT_QUEUE : queueSize);
+        flushSize = getIntProperty(className + ".flushSize", DEFAULT_FLUSH_SIZE);
+        flushSize = flushSize < 1 ? DEFAULT_FLUSH_SIZE : flushSize;
+        int interval = getIntProperty(className + ".flushInterval",
+                DEFAULT_FLUSH_INTERVAL);
+        interval = interval < 1 ? DEFAULT_FLUSH_INTERVAL : interval;
+        flushInterval = TimeUnit.MILLISECONDS.toNanos(interval);
+        overflow = Overflow.parse(manager.getProperty(className + ".overflow"),
+                Overflow.parse(DEFAULT_OVERFLOW, Overflow.BLOCK));
+    }
+
+    private void startWriter() {
+        writer = new Thread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, "FileHandler " + fileName);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Writes queued records until this handler is closed, flushing after
+     * flushSize records or once the oldest unflushed record is flushInterval
+     * old.
+     */
+    void drain() {
+        int pending = 0;
+        long firstPending = 0;
+        while (true) {
+            LogRecord record = queue.poll();
+            if (record != null) {
+                space.release();
+                write(record);
+                if (pending++ == 0) {
+                    firstPending = System.nanoTime();
+                }
+                if (pending >= flushSize
+                        || System.nanoTime() - firstPending >= flushInterval) {
+                    flush();
+                    pending = 0;
+                }
+            } else if (closed) {
+                if (pending > 0) {
+                    flush();
+                }
+                return;
+            } else {
+                idle = true;
+                if (queue.isEmpty() && !closed) {
+                    if (pending == 0) {
+                        LockSupport.park(this);
+                    } else {
+                        long wait = firstPending + flushInterval
+                                - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(this, wait);
+                        }
+                        if (queue.isEmpty()
+                                && System.nanoTime() - firstPending >= flushInterval) {
+                            flush();
+                            pending = 0;
+                        }
+                    }
+                }
+                idle = false;
+            }
+        }
+    }
+
+    private void enqueue(LogRecord record) {
+        if (!space.tryAcquire()) {
+            switch (overflow) {
+            case DROP_ALL:
+                dropped.incrementAndGet();
+                return;
+            case DROP_DEBUG:
+                if (record.getLevel().intValue() < Level.INFO.intValue()) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                // fall through
+            case BLOCK:
+                space.acquireUninterruptibly();
+            }
+        }
+        // capture the caller before the record leaves this thread
+        record.getSourceMethodName();
+        queue.offer(record);
+        if (idle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void write(LogRecord record) {
+        super.publish(record);
+        rotate();
+    }
+
+    private void rotate() {
+        if (limit > 0 && output.getLength() >= limit) {
+            AccessController.doPrivileged(new PrivilegedAction<Object>() {
+                public Object run() {
+                    findNextGeneration();
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * @return <code>true</code> if records are written by a background thread
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * @return number of records discarded because the async queue was full
+     */
+    public long getDroppedRecords() {
+        return dropped.get();
+    }
+
+    /**
+     * @return number of records waiting to be written by the async writer
+     */
+    public int getQueueDepth() {
+        return async ? queue.size() : 0;
     }
 
     void findNextGeneration() {
@@ -433,6 +642,24 @@ public class FileHandler extends StreamHandler {
      */
     @Override
     public void close() {
+        if (writer != null) {
+            closed = true;
+            LockSupport.unpark(writer);
+            boolean interrupted = false;
+            while (writer.isAlive()) {
+                try {
+                    writer.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            // release any publisher that was blocked when the writer stopped
+            queue.clear();
+            space.release(Short.MAX_VALUE);
+        }
         // release locks
         super.close();
         allLocks.remove(fileName);
@@ -455,15 +682,12 @@ public class FileHandler extends StreamHandler {
      */
     @Override
     public void publish(LogRecord record) {
-        super.publish(record);
-        flush();
-        if (limit > 0 && output.getLength() >= limit) {
-            AccessController.doPrivileged(new PrivilegedAction<Object>() {
-                public Object run() {
-                    findNextGeneration();
-                    return null;
-                }
-            });
+        if (!async) {
+            super.publish(record);
+            flush();
+            rotate();
+        } else if (!closed && isLoggable(record)) {
+            enqueue(record);
         }
     }
 
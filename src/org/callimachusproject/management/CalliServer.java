@@ -296,6 +296,39 @@ public class CalliServer implements CalliServerMXBean {
 		}
 	}
 
+	public int getHttpBufferSize() throws IOException {
+		return conf.getHttpBufferSize();
+	}
+
+	public synchronized void setHttpBufferSize(int bytes) throws IOException {
+		conf.setHttpBufferSize(bytes);
+		if (server != null) {
+			configureBuffers(server);
+		}
+	}
+
+	public int getHttpFragmentSize() throws IOException {
+		return conf.getHttpFragmentSize();
+	}
+
+	public synchronized void setHttpFragmentSize(int bytes) throws IOException {
+		conf.setHttpFragmentSize(bytes);
+		if (server != null) {
+			configureBuffers(server);
+		}
+	}
+
+	public long getHttpBufferMemory() throws IOException {
+		return conf.getHttpBufferMemory();
+	}
+
+	public synchronized void setHttpBufferMemory(long bytes) throws IOException {
+		conf.setHttpBufferMemory(bytes);
+		if (server != null) {
+			configureBuffers(server);
+		}
+	}
+
 	public boolean isStartingInProgress() {
 		return starting > 0;
 	}
@@ -768,10 +801,18 @@ public class CalliServer implements CalliServerMXBean {
 			HttpClientFactory.getInstance().setProxy(host, server);
 		}
 		server.setName(getServerName());
+		configureBuffers(server);
 		server.listen(getPortArray(), getSSLPortArray());
 		return server;
 	}
 
+	private void configureBuffers(WebServer server) throws IOException {
+		server.setBufferSize(conf.getHttpBufferSize());
+		server.setFragmentSize(conf.getHttpFragmentSize());
+		long memory = conf.getHttpBufferMemory();
+		server.setBufferMemory(memory > 0 ? memory : WebServer.DEFAULT_BUFFER_MEMORY);
+	}
+
 	synchronized CalliRepository getRepository(String repositoryID)
 			throws IOException, OpenRDFException {
 		Map<String, String> map = conf.getOriginRepositoryIDs();
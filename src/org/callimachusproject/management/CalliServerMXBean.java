@@ -48,6 +48,18 @@ public interface CalliServerMXBean {
 
 	void setSSLPorts(String ports) throws IOException;
 
+	int getHttpBufferSize() throws IOException;
+
+	void setHttpBufferSize(int bytes) throws IOException;
+
+	int getHttpFragmentSize() throws IOException;
+
+	void setHttpFragmentSize(int bytes) throws IOException;
+
+	long getHttpBufferMemory() throws IOException;
+
+	void setHttpBufferMemory(long bytes) throws IOException;
+
 	boolean isStartingInProgress();
 
 	boolean isStoppingInProgress();
@@ -18,7 +18,10 @@ package org.callimachusproject.management;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.IdentityHashMap;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -29,6 +32,7 @@ import java.util.logging.Logger;
 import javax.management.Notification;
 import javax.management.NotificationBroadcasterSupport;
 
+import org.callimachusproject.logging.FileHandler;
 import org.callimachusproject.logging.LogMessageFormatter;
 
 public class LogEmitter extends NotificationBroadcasterSupport implements LogEmitterMXBean {
@@ -114,6 +118,42 @@ public class LogEmitter extends NotificationBroadcasterSupport implements LogEmi
 		setLoggerLevel(fragment, Level.WARNING);
 	}
 
+	@Override
+	public long getLogRecordsDropped() {
+		long dropped = 0;
+		for (FileHandler handler : getFileHandlers()) {
+			dropped += handler.getDroppedRecords();
+		}
+		return dropped;
+	}
+
+	@Override
+	public int getLogQueueDepth() {
+		int depth = 0;
+		for (FileHandler handler : getFileHandlers()) {
+			depth += handler.getQueueDepth();
+		}
+		return depth;
+	}
+
+	private Collection<FileHandler> getFileHandlers() {
+		Collection<FileHandler> set = Collections
+				.newSetFromMap(new IdentityHashMap<FileHandler, Boolean>());
+		LogManager manager = LogManager.getLogManager();
+		Enumeration<String> names = manager.getLoggerNames();
+		while (names.hasMoreElements()) {
+			Logger logger = manager.getLogger(names.nextElement());
+			if (logger == null)
+				continue;
+			for (Handler handler : logger.getHandlers()) {
+				if (handler instanceof FileHandler) {
+					set.add((FileHandler) handler);
+				}
+			}
+		}
+		return set;
+	}
+
 	private void setLoggerLevel(String fragment, Level level) {
 		boolean found = false;
 		Enumeration<String> names = LogManager.getLogManager().getLoggerNames();
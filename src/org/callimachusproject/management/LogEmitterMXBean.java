@@ -28,4 +28,8 @@ public interface LogEmitterMXBean {
 
 	void logWarn(String prefix);
 
+	long getLogRecordsDropped();
+
+	int getLogQueueDepth();
+
 }
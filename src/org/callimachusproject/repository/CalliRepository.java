@@ -160,6 +160,10 @@ public class CalliRepository extends RepositoryWrapper implements CalliRepositor
 		return auth;
 	}
 
+	public AuditingRepository getAuditingRepository() {
+		return auditing;
+	}
+
 	public DatasourceManager getDatasourceManager() {
 		return datasources;
 	}
@@ -279,6 +283,16 @@ public class CalliRepository extends RepositoryWrapper implements CalliRepositor
 		}
 	}
 
+	@Override
+	public double getTraceSamplingRate() {
+		return service.getSamplingRate();
+	}
+
+	@Override
+	public void setTraceSamplingRate(double rate) {
+		service.setSamplingRate(rate);
+	}
+
 	@Override
 	public boolean isLoggingCalls() {
 		return isTracingCalls() && service.getLogger(RepositoryConnection.class).isTraceEnabled();
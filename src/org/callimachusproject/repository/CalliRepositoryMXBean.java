@@ -62,6 +62,10 @@ public interface CalliRepositoryMXBean {
 
 	void setTracingCalls(boolean trace);
 
+	double getTraceSamplingRate();
+
+	void setTraceSamplingRate(double rate);
+
 	boolean isLoggingCalls();
 
 	void setLoggingCalls(boolean trace);
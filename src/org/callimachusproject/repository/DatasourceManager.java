@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.callimachusproject.sql.SqlResultCache;
 import org.openrdf.OpenRDFException;
 import org.openrdf.model.URI;
 import org.openrdf.repository.Repository;
@@ -66,6 +67,7 @@ public class DatasourceManager {
 		}
 		manager.addRepositoryConfig(new RepositoryConfig(repositoryId, uri
 				.stringValue(), config));
+		SqlResultCache.getInstance().invalidate(uri.stringValue());
 	}
 
 	public boolean isDatasourcePresent(URI uri) throws OpenRDFException {
@@ -101,6 +103,7 @@ public class DatasourceManager {
 			shutDownDatasource(uri);
 		}
 		manager.removeRepository(getRepositoryId(uri));
+		SqlResultCache.getInstance().invalidate(uri.stringValue());
 	}
 
 	public synchronized void shutDown() throws OpenRDFException {
@@ -39,10 +39,12 @@ import java.util.GregorianCalendar;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
@@ -53,7 +55,9 @@ import org.callimachusproject.repository.auditing.helpers.ActivityTagFactory;
 import org.openrdf.OpenRDFException;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
+import org.openrdf.model.Literal;
 import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
 import org.openrdf.query.MalformedQueryException;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.QueryLanguage;
@@ -71,7 +75,8 @@ import org.openrdf.repository.sparql.SPARQLRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class AuditingRepository extends ContextAwareRepository {
+public class AuditingRepository extends ContextAwareRepository implements
+		AuditingRepositoryMXBean {
 	private static class PureTask implements Runnable {
 		private WeakReference<AuditingRepository> ref;
 		public PureTask(AuditingRepository repository) {
@@ -118,17 +123,21 @@ public class AuditingRepository extends ContextAwareRepository {
 			+ "FILTER EXISTS { GRAPH ?obsolete { ?s ?p ?o } }\n\t"
 			+ "}\n"
 			+ "}";
-	private static final String PURGE_EARLIER = "PREFIX rdf:<http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n"
-			+ "PREFIX prov:<http://www.w3.org/ns/prov#>\n"
+	private static final String SELECT_EARLIER = "PREFIX prov:<http://www.w3.org/ns/prov#>\n"
 			+ "PREFIX audit:<http://www.openrdf.org/rdf/2012/auditing#>\n"
-			+ "DELETE {\n\t"
-			+ "GRAPH ?obsolete { ?subject ?predicate ?object }\n"
-			+ "} WHERE {\n\t"
+			+ "SELECT DISTINCT ?obsolete ?endedAtTime {\n\t"
 			+ "?obsolete a audit:ObsoleteBundle\n\t"
 			+ "OPTIONAL { ?obsolete prov:wasGeneratedBy [prov:endedAtTime ?endedAtTime] }\n\t"
 			+ "FILTER (!bound(?endedAtTime) || ?endedAtTime <= $earlier)\n\t"
-			+ "FILTER NOT EXISTS { ?obsolete a audit:RecentBundle }\n\t"
-			+ "GRAPH ?obsolete { ?subject ?predicate ?object }\n" + "}";
+			+ "FILTER NOT EXISTS { ?obsolete a audit:RecentBundle }\n"
+			+ "} ORDER BY ?endedAtTime LIMIT ";
+	private static final String COUNT_OBSOLETE = "PREFIX audit:<http://www.openrdf.org/rdf/2012/auditing#>\n"
+			+ "SELECT (count(DISTINCT ?obsolete) AS ?count) {\n\t"
+			+ "?obsolete a audit:ObsoleteBundle\n\t"
+			+ "FILTER NOT EXISTS { ?obsolete a audit:RecentBundle }\n"
+			+ "}";
+	private static final String PURGE_BUNDLE = "DELETE WHERE {\n\t"
+			+ "GRAPH $obsolete { ?subject ?predicate ?object }\n" + "}";
 	private static final String TRIM_EARLIER = "PREFIX rdf:<http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n"
 			+ "PREFIX prov:<http://www.w3.org/ns/prov#>\n"
 			+ "PREFIX audit:<http://www.openrdf.org/rdf/2012/auditing#>\n"
@@ -167,6 +176,14 @@ public class AuditingRepository extends ContextAwareRepository {
 	private Boolean transactional;
 	private ActivityFactory activityFactory;
 	private boolean auditingRemoval = true;
+	private volatile int purgeBatchSize = 64;
+	private volatile long purgeTimeBudget = 60000;
+	private volatile long purgeLatencyThreshold = 1000;
+	private volatile long commitLatency;
+	private final AtomicLong purgedBundles = new AtomicLong();
+	private final AtomicLong purgeBackOffs = new AtomicLong();
+	private volatile long lastPurgeDuration;
+	private volatile long lastPurgeEnded;
 
 	public AuditingRepository() {
 		super();
@@ -224,6 +241,83 @@ public class AuditingRepository extends ContextAwareRepository {
 		this.maxRecent = maxRecent;
 	}
 
+	public int getPurgeBatchSize() {
+		return purgeBatchSize;
+	}
+
+	public void setPurgeBatchSize(int purgeBatchSize) {
+		this.purgeBatchSize = purgeBatchSize > 0 ? purgeBatchSize : 1;
+	}
+
+	public long getPurgeTimeBudget() {
+		return purgeTimeBudget;
+	}
+
+	public void setPurgeTimeBudget(long milliseconds) {
+		this.purgeTimeBudget = milliseconds;
+	}
+
+	public long getPurgeLatencyThreshold() {
+		return purgeLatencyThreshold;
+	}
+
+	public void setPurgeLatencyThreshold(long milliseconds) {
+		this.purgeLatencyThreshold = milliseconds;
+	}
+
+	public long getCommitLatency() {
+		return commitLatency;
+	}
+
+	public long getPurgedBundleCount() {
+		return purgedBundles.get();
+	}
+
+	public long getPurgeBackOffCount() {
+		return purgeBackOffs.get();
+	}
+
+	public long getLastPurgeDuration() {
+		return lastPurgeDuration;
+	}
+
+	public String getLastPurgeEnded() {
+		if (lastPurgeEnded == 0)
+			return null;
+		GregorianCalendar cal = new GregorianCalendar();
+		cal.setTimeInMillis(lastPurgeEnded);
+		return datatypeFactory.newXMLGregorianCalendar(cal).toXMLFormat();
+	}
+
+	public long getObsoleteBundleCount() throws OpenRDFException {
+		RepositoryConnection con = super.getConnection();
+		try {
+			TupleQueryResult result = con.prepareTupleQuery(SPARQL,
+					COUNT_OBSOLETE).evaluate();
+			try {
+				if (!result.hasNext())
+					return 0;
+				Value count = result.next().getValue("count");
+				return count instanceof Literal ? ((Literal) count).longValue() : 0;
+			} finally {
+				result.close();
+			}
+		} finally {
+			con.close();
+		}
+	}
+
+	public void purgeObsoleteBundles() {
+		if (purgeAfter != null) {
+			executor.submit(new Callable<Void>() {
+				public Void call() {
+					purge(false);
+					return null;
+				}
+			});
+		}
+	}
+
 	public boolean isTransactional() {
 		if (transactional != null)
 			return transactional;
@@ -340,6 +434,10 @@ public class AuditingRepository extends ContextAwareRepository {
 		return con;
 	}
 
+	void commitLatency(long milliseconds) {
+		commitLatency = (commitLatency * 7 + milliseconds) / 8;
+	}
+
 	synchronized void addRecentBundles(Collection<URI> recentBundles)
 			throws RepositoryException {
 		recent.addAll(recentBundles);
@@ -372,7 +470,7 @@ public class AuditingRepository extends ContextAwareRepository {
 		Date earlier = new Date(now);
 		purgeAfter.negate().addTo(earlier);
 		try {
-			long length = purgeObsolete(earlier);
+			long length = purgeObsolete(earlier, delay);
 			if (delay && puringTask != null) {
 				synchronized (puringTask) {
 					puringTask.wait(length);
@@ -419,37 +517,88 @@ public class AuditingRepository extends ContextAwareRepository {
 		}
 	}
 
-	private long purgeObsolete(Date earlier) throws RepositoryException,
-			MalformedQueryException, UpdateExecutionException {
+	private long purgeObsolete(Date earlier, boolean delay)
+			throws OpenRDFException, InterruptedException {
 		ScheduledFuture<?> task = executor.schedule(new Runnable() {
 			public void run() {
 				logger.info("Purging obsolete bundles");
 			}
 		}, 1, TimeUnit.SECONDS);
 		long begin = System.currentTimeMillis();
+		long deadline = purgeTimeBudget > 0 ? begin + purgeTimeBudget : Long.MAX_VALUE;
+		int count = 0;
 		RepositoryConnection con = super.getConnection();
 		try {
-			purgeObsolete(earlier, con);
+			while (puringTask == null || !puringTask.isCancelled()) {
+				long start = System.currentTimeMillis();
+				int purged = purgeObsolete(earlier, purgeBatchSize, con);
+				purgedBundles.addAndGet(purged);
+				count += purged;
+				long now = System.currentTimeMillis();
+				if (purged < purgeBatchSize)
+					break;
+				if (now >= deadline) {
+					logger.info("Purge time budget exceeded, remaining obsolete bundles will be purged later");
+					break;
+				}
+				if (commitLatency > purgeLatencyThreshold) {
+					purgeBackOffs.incrementAndGet();
+					if (!delay || puringTask == null)
+						break;
+					synchronized (puringTask) {
+						puringTask.wait(Math.min(deadline - now, 2 * (now - start) + 1));
+					}
+				}
+			}
 		} finally {
 			con.close();
 		}
 		long end = System.currentTimeMillis();
+		lastPurgeDuration = end - begin;
+		lastPurgeEnded = end;
 		if (!task.cancel(false)) {
-			logger.info("Purged the obsolete bundles in {} seconds", (end - begin) / 1000.0);
+			logger.info("Purged {} obsolete bundles in {} seconds", count, (end - begin) / 1000.0);
 		}
 		return end - begin;
 	}
 
-	private void purgeObsolete(Date earlier, RepositoryConnection con)
-			throws RepositoryException, MalformedQueryException,
-			UpdateExecutionException {
+	private int purgeObsolete(Date earlier, int limit, RepositoryConnection con)
+			throws OpenRDFException {
 		GregorianCalendar cal = new GregorianCalendar(1970, 0, 1);
 		cal.setTime(earlier);
 		XMLGregorianCalendar xgc = datatypeFactory.newXMLGregorianCalendar(cal);
 		ValueFactory vf = con.getValueFactory();
-		Update update = con.prepareUpdate(QueryLanguage.SPARQL, PURGE_EARLIER);
-		update.setBinding("earlier", vf.createLiteral(xgc));
-		update.execute();
+		TupleQuery qry = con.prepareTupleQuery(SPARQL, SELECT_EARLIER + limit);
+		qry.setBinding("earlier", vf.createLiteral(xgc));
+		Set<URI> obsolete = new LinkedHashSet<URI>(limit);
+		TupleQueryResult result = qry.evaluate();
+		try {
+			while (result.hasNext()) {
+				BindingSet bindings = result.next();
+				Value bundle = bindings.getValue("obsolete");
+				if (bundle instanceof URI) {
+					obsolete.add((URI) bundle);
+				}
+			}
+		} finally {
+			result.close();
+		}
+		if (obsolete.isEmpty())
+			return 0;
+		con.begin();
+		try {
+			Update update = con.prepareUpdate(SPARQL, PURGE_BUNDLE);
+			for (URI bundle : obsolete) {
+				update.setBinding("obsolete", bundle);
+				update.execute();
+			}
+			con.commit();
+		} finally {
+			if (con.isActive()) {
+				con.rollback();
+			}
+		}
+		return obsolete.size();
 	}
 
 	private void trimEarlier(Date earlier) throws RepositoryException,
@@ -38,18 +38,24 @@ import java.util.Map;
 import java.util.Set;
 
 import org.callimachusproject.repository.auditing.helpers.BasicGraphPatternVisitor;
+import org.callimachusproject.repository.auditing.helpers.ProvenanceBuffer;
 import org.openrdf.model.BNode;
 import org.openrdf.model.Literal;
 import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.ValueFactory;
 import org.openrdf.model.vocabulary.RDF;
 import org.openrdf.query.BindingSet;
+import org.openrdf.query.BooleanQuery;
 import org.openrdf.query.Dataset;
+import org.openrdf.query.GraphQuery;
 import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.Query;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
 import org.openrdf.query.Update;
 import org.openrdf.query.UpdateExecutionException;
 import org.openrdf.query.algebra.Add;
@@ -65,19 +71,24 @@ import org.openrdf.query.algebra.QueryModelNode;
 import org.openrdf.query.algebra.StatementPattern;
 import org.openrdf.query.algebra.UpdateExpr;
 import org.openrdf.query.algebra.Var;
+import org.openrdf.query.impl.AbstractParserUpdate;
 import org.openrdf.query.parser.ParsedUpdate;
 import org.openrdf.query.parser.QueryParser;
 import org.openrdf.query.parser.QueryParserUtil;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.RepositoryResult;
 import org.openrdf.repository.contextaware.ContextAwareConnection;
 
 /**
  * RepositoryConnection that exposes the activityFactory property for a connection.
+ * Provenance statements are buffered and written to the delegate in batches,
+ * before any read, update, or commit through this connection.
  */
 public class AuditingRepositoryConnection extends ContextAwareConnection {
 
 	private static final int MAX_SIZE = 1024;
+	private static final int BATCH_SIZE = 1024;
 	private static final String RECENT_BUNDLE = "http://www.openrdf.org/rdf/2012/auditing#RecentBundle";
 	private static final String GENERATED = "http://www.w3.org/ns/prov#generated";
 	private static final String WAS_GENERATED_BY = "http://www.w3.org/ns/prov#wasGeneratedBy";
@@ -131,6 +142,9 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 	private final URI provGenerated;
 	private final URI provSpecializationOf;
 	private final URI provWasGeneratedBy;
+	private final ProvenanceBuffer provenance = new ProvenanceBuffer(BATCH_SIZE);
+	private URI lastBundle;
+	private Resource lastSubject;
 	private Map<URI, URI> uncommittedBundles = new LinkedHashMap<URI, URI>();
 	private ActivityFactory activityFactory;
 	private URI insertContext;
@@ -192,9 +206,12 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 
 	@Override
 	public void commit() throws RepositoryException {
+		long start = System.currentTimeMillis();
 		Map<URI,URI> recentBundles = finalizeBundles();
+		flushProvenance();
 		super.commit();
 		closeBundle(recentBundles);
+		getRepository().commitLatency(System.currentTimeMillis() - start);
 	}
 
 	@Override
@@ -209,6 +226,66 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 		getRepository().cleanup();
 	}
 
+	@Override
+	public RepositoryResult<Statement> getStatements(Resource subj, URI pred,
+			Value obj, boolean includeInferred, Resource... contexts)
+			throws RepositoryException {
+		flushProvenance();
+		return super.getStatements(subj, pred, obj, includeInferred, contexts);
+	}
+
+	@Override
+	public boolean hasStatement(Resource subj, URI pred, Value obj,
+			boolean includeInferred, Resource... contexts)
+			throws RepositoryException {
+		flushProvenance();
+		return super.hasStatement(subj, pred, obj, includeInferred, contexts);
+	}
+
+	@Override
+	public boolean hasStatement(Statement st, boolean includeInferred,
+			Resource... contexts) throws RepositoryException {
+		flushProvenance();
+		return super.hasStatement(st, includeInferred, contexts);
+	}
+
+	@Override
+	public long size(Resource... contexts) throws RepositoryException {
+		flushProvenance();
+		return super.size(contexts);
+	}
+
+	@Override
+	public Query prepareQuery(QueryLanguage ql, String query, String baseURI)
+			throws MalformedQueryException, RepositoryException {
+		flushProvenance();
+		return super.prepareQuery(ql, query, baseURI);
+	}
+
+	@Override
+	public TupleQuery prepareTupleQuery(QueryLanguage ql, String query,
+			String baseURI) throws MalformedQueryException,
+			RepositoryException {
+		flushProvenance();
+		return super.prepareTupleQuery(ql, query, baseURI);
+	}
+
+	@Override
+	public GraphQuery prepareGraphQuery(QueryLanguage ql, String query,
+			String baseURI) throws MalformedQueryException,
+			RepositoryException {
+		flushProvenance();
+		return super.prepareGraphQuery(ql, query, baseURI);
+	}
+
+	@Override
+	public BooleanQuery prepareBooleanQuery(QueryLanguage ql, String query,
+			String baseURI) throws MalformedQueryException,
+			RepositoryException {
+		flushProvenance();
+		return super.prepareBooleanQuery(ql, query, baseURI);
+	}
+
 	@Override
 	public Update prepareUpdate(String query) throws MalformedQueryException,
 			RepositoryException {
@@ -238,7 +315,13 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 						try {
 							BindingSet bindings = prepared.getBindings();
 							Dataset dataset = prepared.getDataset();
-							if (dataset != null) {
+							if (dataset != null
+									&& prepared instanceof AbstractParserUpdate) {
+								// reuse the algebra instead of parsing again
+								ParsedUpdate parsed = ((AbstractParserUpdate) prepared)
+										.getParsedUpdate();
+								activity(parsed, bindings, dataset);
+							} else if (dataset != null) {
 								activity(ql, update, baseURI, bindings, dataset);
 							}
 						} catch (MalformedQueryException e) {
@@ -246,6 +329,7 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 						} catch (QueryEvaluationException e) {
 							// ignore
 						}
+						flushProvenance();
 						prepared.execute();
 						if (autoCommit) {
 							commit();
@@ -302,9 +386,15 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 	@Override
 	protected void addWithoutCommit(Resource subject, URI predicate,
 			Value object, Resource... contexts) throws RepositoryException {
-		activity(getInsertContext(), true, subject);
+		URI bundle = getInsertContext();
+		if (bundle == null || !bundle.equals(lastBundle)
+				|| !subject.equals(lastSubject)) {
+			activity(bundle, true, subject);
+			lastBundle = bundle;
+			lastSubject = subject;
+		}
 		for (Resource ctx : contexts) {
-			activity(getInsertContext(), true, ctx);
+			activity(bundle, true, ctx);
 		}
 		getDelegate().add(subject, predicate, object, contexts);
 	}
@@ -319,7 +409,9 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 			Value object, Resource... contexts) throws RepositoryException {
 		Resource[] defRemove = getRemoveContexts();
 		URI activityGraph = getInsertContext();
+		lastSubject = null;
 		activity(activityGraph, false, subject);
+		flushProvenance();
 		if (contexts == null) {
 			getDelegate().remove(subject, predicate, object, contexts);
 		} else if (contexts.length > 0) {
@@ -422,7 +514,12 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 			throws MalformedQueryException, RepositoryException,
 			QueryEvaluationException {
 		QueryParser parser = QueryParserUtil.createParser(ql);
-		ParsedUpdate parsed = parser.parseUpdate(update, baseURI);
+		activity(parser.parseUpdate(update, baseURI), bindings, dataset);
+	}
+
+	private void activity(ParsedUpdate parsed, BindingSet bindings,
+			Dataset dataset) throws RepositoryException,
+			QueryEvaluationException {
 		for (UpdateExpr expr : parsed.getUpdateExprs()) {
 			if (expr instanceof Modify) {
 				QueryModelNode deleteExpr = ((Modify) expr).getDeleteExpr();
@@ -535,8 +632,8 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 		if (bundle == null)
 			return;
 		URI activity = uncommittedBundles.get(bundle);
-		RepositoryConnection con = getDelegate();
 		if (activity == null) {
+			RepositoryConnection con = getDelegate();
 			activity = getActivityURI(bundle);
 			if (activity == null)
 				return;
@@ -545,7 +642,7 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 			if (activityFactory != null) {
 				activityFactory.activityStarted(activity, bundle, con);
 			}
-			con.add(bundle, provWasGeneratedBy, activity, bundle);
+			provenance(bundle, provWasGeneratedBy, activity, bundle);
 		}
 		if (subject instanceof URI && !isBundledEntity(bundle, activity, subject)) {
 			Map<URI, Boolean> entities = modifiedEntities.get(bundle);
@@ -559,10 +656,10 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 			}
 			if (inserted && wasInserted != Boolean.TRUE) {
 				entities.put(entity, Boolean.TRUE);
-				con.add(entity, provWasGeneratedBy, activity, bundle);
+				provenance(entity, provWasGeneratedBy, activity, bundle);
 			} else if (wasInserted == null) {
 				entities.put(entity, inserted ? Boolean.TRUE : Boolean.FALSE);
-				generated(activity, entity, bundle, bundle, con);
+				generated(activity, entity, bundle, bundle);
 			}
 		}
 	}
@@ -580,19 +677,30 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 		return activityURI = af.createActivityURI(bundle, vf);
 	}
 
-	private void generated(URI activity, URI entity, URI targetGraph, URI bundle,
-			RepositoryConnection con) throws RepositoryException {
+	private void generated(URI activity, URI entity, URI targetGraph,
+			URI bundle) throws RepositoryException {
 		ValueFactory vf = getValueFactory();
 		String target = targetGraph.stringValue();
 		if (target.indexOf('#') > 0) {
-			con.add(activity, provGenerated, entity, bundle);
+			provenance(activity, provGenerated, entity, bundle);
 		} else {
 			URI gen = vf.createURI(target + "#!" + entity.stringValue());
-			con.add(activity, provGenerated, gen, bundle);
-			con.add(gen, provSpecializationOf, entity, bundle);
+			provenance(activity, provGenerated, gen, bundle);
+			provenance(gen, provSpecializationOf, entity, bundle);
+		}
+	}
+
+	private void provenance(Resource subj, URI pred, Value obj, URI bundle)
+			throws RepositoryException {
+		if (provenance.add(subj, pred, obj, bundle, getValueFactory())) {
+			flushProvenance();
 		}
 	}
 
+	private synchronized void flushProvenance() throws RepositoryException {
+		provenance.flush(getDelegate());
+	}
+
 	private boolean isBundledEntity(URI bundle, URI activity, Resource entity) {
 		if (bundle.equals(entity) || activity.equals(entity))
 			return true;
@@ -611,25 +719,32 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 		uncommittedBundles = new LinkedHashMap<URI,URI>(size);
 		for (Map.Entry<URI, URI> e : recentBundles.entrySet()) {
 			addMetadata(e.getValue(), e.getKey());
-			if (getRepository().isTransactional()) {
+		}
+		if (getRepository().isTransactional()) {
+			for (Map.Entry<URI, URI> e : recentBundles.entrySet()) {
 				finalizeBundle(e.getValue(), e.getKey());
 			}
 		}
 		uncommittedBundles.clear();
 		modifiedGraphs.clear();
 		modifiedEntities.clear();
+		lastBundle = null;
+		lastSubject = null;
 		return recentBundles;
 	}
 
 	private synchronized void reset() {
 		uncommittedBundles = new LinkedHashMap<URI, URI>(uncommittedBundles.size());
+		provenance.clear();
+		lastBundle = null;
+		lastSubject = null;
 		modifiedGraphs.clear();
 		modifiedEntities.clear();
 	}
 
 	private void addMetadata(URI activity, URI bundle) throws RepositoryException {
 		URI recentBundle = getValueFactory().createURI(RECENT_BUNDLE);
-		getDelegate().add(bundle, RDF.TYPE, recentBundle, bundle);
+		provenance(bundle, RDF.TYPE, recentBundle, bundle);
 	}
 
 	private void finalizeBundle(URI activity, URI bundle)
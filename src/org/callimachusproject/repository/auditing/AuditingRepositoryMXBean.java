@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.callimachusproject.repository.auditing;
+
+import org.openrdf.OpenRDFException;
+
+/**
+ * Management interface for the progress of purging obsolete activity graphs.
+ */
+public interface AuditingRepositoryMXBean {
+
+	/**
+	 * The maximum number of obsolete bundles to remove in a single
+	 * transaction.
+	 */
+	int getPurgeBatchSize();
+
+	void setPurgeBatchSize(int purgeBatchSize);
+
+	/**
+	 * The number of milliseconds a single purge run may take before the
+	 * remaining obsolete bundles are left for the next run.
+	 */
+	long getPurgeTimeBudget();
+
+	void setPurgeTimeBudget(long milliseconds);
+
+	/**
+	 * The average commit time (in milliseconds) above which purging backs off
+	 * between batches.
+	 */
+	long getPurgeLatencyThreshold();
+
+	void setPurgeLatencyThreshold(long milliseconds);
+
+	/**
+	 * Moving average of foreground commit times in milliseconds.
+	 */
+	long getCommitLatency();
+
+	long getPurgedBundleCount();
+
+	long getPurgeBackOffCount();
+
+	long getLastPurgeDuration();
+
+	String getLastPurgeEnded();
+
+	/**
+	 * The number of obsolete bundles that are waiting to be purged.
+	 */
+	long getObsoleteBundleCount() throws OpenRDFException;
+
+	void purgeObsoleteBundles();
+
+}
@@ -32,6 +32,8 @@ import static org.callimachusproject.repository.auditing.config.AuditingSchema.A
 import static org.callimachusproject.repository.auditing.config.AuditingSchema.MAX_RECENT;
 import static org.callimachusproject.repository.auditing.config.AuditingSchema.MIN_RECENT;
 import static org.callimachusproject.repository.auditing.config.AuditingSchema.PURGE_AFTER;
+import static org.callimachusproject.repository.auditing.config.AuditingSchema.PURGE_BATCH_SIZE;
+import static org.callimachusproject.repository.auditing.config.AuditingSchema.PURGE_TIME_BUDGET;
 import static org.callimachusproject.repository.auditing.config.AuditingSchema.TRANSACTIONAL;
 
 import javax.xml.datatype.DatatypeConfigurationException;
@@ -58,6 +60,8 @@ public class AuditingRepositoryConfig extends ContextAwareConfig {
 	private int minRecent;
 	private int maxRecent;
 	private Duration purgeAfter;
+	private int purgeBatchSize;
+	private Duration purgeTimeBudget;
 	private Boolean transactional;
 
 	public String getNamespace() {
@@ -92,6 +96,22 @@ public class AuditingRepositoryConfig extends ContextAwareConfig {
 		this.purgeAfter = purgeAfter;
 	}
 
+	public int getPurgeBatchSize() {
+		return purgeBatchSize;
+	}
+
+	public void setPurgeBatchSize(int purgeBatchSize) {
+		this.purgeBatchSize = purgeBatchSize;
+	}
+
+	public Duration getPurgeTimeBudget() {
+		return purgeTimeBudget;
+	}
+
+	public void setPurgeTimeBudget(Duration purgeTimeBudget) {
+		this.purgeTimeBudget = purgeTimeBudget;
+	}
+
 	public Boolean getTransactional() {
 		return transactional;
 	}
@@ -113,6 +133,13 @@ public class AuditingRepositoryConfig extends ContextAwareConfig {
 			model.add(self, PURGE_AFTER,
 					vf.createLiteral(purgeAfter.toString(), XMLSchema.DURATION));
 		}
+		if (purgeBatchSize > 0) {
+			model.add(self, PURGE_BATCH_SIZE, vf.createLiteral(purgeBatchSize));
+		}
+		if (purgeTimeBudget != null) {
+			model.add(self, PURGE_TIME_BUDGET,
+					vf.createLiteral(purgeTimeBudget.toString(), XMLSchema.DURATION));
+		}
 		if (transactional != null) {
 			model.add(self, TRANSACTIONAL, vf.createLiteral(transactional));
 		}
@@ -142,6 +169,19 @@ public class AuditingRepositoryConfig extends ContextAwareConfig {
 				throw new RepositoryConfigException(e);
 			}
 		}
+		lit = model.filter(implNode, PURGE_BATCH_SIZE, null).objectLiteral();
+		if (lit != null) {
+			setPurgeBatchSize(lit.intValue());
+		}
+		lit = model.filter(implNode, PURGE_TIME_BUDGET, null).objectLiteral();
+		if (lit != null) {
+			try {
+				DatatypeFactory df = DatatypeFactory.newInstance();
+				setPurgeTimeBudget(df.newDuration(lit.stringValue()));
+			} catch (DatatypeConfigurationException e) {
+				throw new RepositoryConfigException(e);
+			}
+		}
 		lit = model.filter(implNode, TRANSACTIONAL, null).objectLiteral();
 		if (lit != null) {
 			setTransactional(lit.booleanValue());
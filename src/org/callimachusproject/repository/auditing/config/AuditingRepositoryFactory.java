@@ -28,6 +28,8 @@
  */
 package org.callimachusproject.repository.auditing.config;
 
+import java.util.Date;
+
 import org.callimachusproject.repository.auditing.AuditingRepository;
 import org.callimachusproject.repository.auditing.helpers.ActivitySequenceFactory;
 import org.callimachusproject.repository.auditing.helpers.ActivityTagFactory;
@@ -97,6 +99,13 @@ public class AuditingRepositoryFactory extends ContextAwareFactory {
 		repo.setMinRecent(config.getMinRecent());
 		repo.setMaxRecent(config.getMaxRecent());
 		repo.setPurgeAfter(config.getPurgeAfter());
+		if (config.getPurgeBatchSize() > 0) {
+			repo.setPurgeBatchSize(config.getPurgeBatchSize());
+		}
+		if (config.getPurgeTimeBudget() != null) {
+			repo.setPurgeTimeBudget(config.getPurgeTimeBudget()
+					.getTimeInMillis(new Date()));
+		}
 		repo.setTransactional(config.getTransactional());
 		return repo;
 	}
@@ -47,6 +47,8 @@ public class AuditingSchema {
 	public static final URI MIN_RECENT = new URIImpl(NAMESPACE + "minimumRecentActivities");
 	public static final URI MAX_RECENT = new URIImpl(NAMESPACE + "maximumRecentActivities");
 	public static final URI PURGE_AFTER = new URIImpl(NAMESPACE + "purgeObsoleteActivitiesAfter");
+	public static final URI PURGE_BATCH_SIZE = new URIImpl(NAMESPACE + "purgeObsoleteActivitiesInBatchesOf");
+	public static final URI PURGE_TIME_BUDGET = new URIImpl(NAMESPACE + "purgeObsoleteActivitiesWithin");
 	public static final URI TRANSACTIONAL = new URIImpl(NAMESPACE + "isTransactional");
 
 	private AuditingSchema() {
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.callimachusproject.repository.auditing.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+
+/**
+ * Collects the provenance statements of a transaction so they can be written
+ * to the underlying store in a single add operation, instead of one call per
+ * modified entity.
+ */
+public class ProvenanceBuffer {
+	private final int capacity;
+	private final List<Statement> statements;
+
+	public ProvenanceBuffer(int capacity) {
+		this.capacity = capacity;
+		this.statements = new ArrayList<Statement>(capacity);
+	}
+
+	public boolean isEmpty() {
+		return statements.isEmpty();
+	}
+
+	public int size() {
+		return statements.size();
+	}
+
+	/**
+	 * @return true if the buffer is full and should be flushed
+	 */
+	public boolean add(Resource subj, URI pred, Value obj, URI bundle,
+			ValueFactory vf) {
+		statements.add(vf.createStatement(subj, pred, obj, bundle));
+		return statements.size() >= capacity;
+	}
+
+	public void flush(RepositoryConnection con) throws RepositoryException {
+		if (statements.isEmpty())
+			return;
+		try {
+			con.add(statements);
+		} finally {
+			statements.clear();
+		}
+	}
+
+	public void clear() {
+		statements.clear();
+	}
+
+}
@@ -17,11 +17,12 @@
 package org.callimachusproject.repository.trace;
 
 import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MethodCall extends AbstractTrace {
-	private static final Map<String, Integer> variables = new HashMap<String, Integer>();
+	private static final ConcurrentMap<String, AtomicInteger> variables = new ConcurrentHashMap<String, AtomicInteger>();
 
 	private final TracerService service;
 	private final TraceAggregate aggregate;
@@ -137,15 +138,14 @@ public class MethodCall extends AbstractTrace {
 
 	@Override
 	protected String getVariableSuffix(String name) {
-		synchronized (variables) {
-			Integer count = variables.get(name);
-			if (count == null) {
-				variables.put(name, count = 1);
-			} else {
-				variables.put(name, count += 1);
+		AtomicInteger count = variables.get(name);
+		if (count == null) {
+			AtomicInteger existing = variables.putIfAbsent(name, count = new AtomicInteger());
+			if (existing != null) {
+				count = existing;
 			}
-			return count.toString();
 		}
+		return Integer.toString(count.incrementAndGet());
 	}
 
 	@Override
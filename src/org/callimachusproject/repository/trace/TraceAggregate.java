@@ -17,17 +17,17 @@
 package org.callimachusproject.repository.trace;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class TraceAggregate implements Trace {
-	private final TraceAnalyser analyser;
 	private final TraceAggregate previous;
 	private final CommonTrace trace;
 	private final int revision;
-	private long total;
-	private int invocations;
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicInteger invocations = new AtomicInteger();
 
-	public TraceAggregate(TraceAnalyser analyser, TraceAggregate previous, CommonTrace trace, int revision) {
-		this.analyser = analyser;
+	public TraceAggregate(TraceAggregate previous, CommonTrace trace, int revision) {
 		this.previous = previous;
 		this.trace = trace;
 		this.revision = revision;
@@ -63,26 +63,24 @@ public class TraceAggregate implements Trace {
 		return revision;
 	}
 
-	public synchronized long getTotal() {
-		return total;
+	public long getTotal() {
+		return total.get();
 	}
 
-	public synchronized long getAverage() {
-		return getTotal() / getInvocations();
+	public long getAverage() {
+		int count = getInvocations();
+		if (count == 0)
+			return 0;
+		return getTotal() / count;
 	}
 
-	public synchronized int getInvocations() {
-		return invocations;
+	public int getInvocations() {
+		return invocations.get();
 	}
 
 	public void spent(long duration) {
-		increment(duration);
-		analyser.update(this);
-	}
-
-	private synchronized void increment(long duration) {
-		total += duration;
-		invocations++;
+		total.addAndGet(duration);
+		invocations.incrementAndGet();
 	}
 
 }
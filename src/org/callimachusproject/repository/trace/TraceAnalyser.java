@@ -16,162 +16,203 @@
  */
 package org.callimachusproject.repository.trace;
 
-import java.lang.ref.Reference;
-import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Aggregates traced calls by their common form. Counters are updated without
+ * locking; the top traces are ranked from a snapshot of the counters that is
+ * recomputed at most once per refresh period.
+ */
 public class TraceAnalyser {
 	private static final int MAX_TOP = 100;
-	private static final int MAX_RECENT = 1024;
-
-	private int revision;
-	private long minTotalTime;
-	private long minAverageTime;
-	private final List<TraceAggregate> topTotalTime = new ArrayList<TraceAggregate>();
-	private final List<TraceAggregate> topAverageTime = new ArrayList<TraceAggregate>();
-	private final Map<CommonTrace, Reference<TraceAggregate>> weak = new WeakHashMap<CommonTrace, Reference<TraceAggregate>>();
-	private final Map<CommonTrace, TraceAggregate> recent = new LinkedHashMap<CommonTrace, TraceAggregate>(
-			MAX_RECENT, 0.75f, true) {
-		private static final long serialVersionUID = -2803868296652610315L;
-
-		protected boolean removeEldestEntry(
-				java.util.Map.Entry<CommonTrace, TraceAggregate> eldest) {
-			if (size() < MAX_RECENT)
-				return false;
-			weak.put(eldest.getKey(),
-					new WeakReference<TraceAggregate>(eldest.getValue()));
-			return true;
-		}
-	};
-	private final Comparator<TraceAggregate> byTotal = new Comparator<TraceAggregate>() {
-		public int compare(TraceAggregate o1, TraceAggregate o2) {
-			long t1 = o1.getTotal();
-			long t2 = o2.getTotal();
-			TraceAggregate p1 = o1;
-			while ((p1 = p1.getPreviousTrace()) != null) {
-				t1 += p1.getTotal();
-			}
-			TraceAggregate p2 = o2;
-			while ((p2 = p2.getPreviousTrace()) != null) {
-				t2 += p2.getTotal();
-			}
-			if (t1 > t2)
+	private static final int MAX_AGGREGATES = 4096;
+	private static final long REFRESH_PERIOD = TimeUnit.SECONDS.toNanos(1);
+	private static final Comparator<Ranked> byScore = new Comparator<Ranked>() {
+		public int compare(Ranked o1, Ranked o2) {
+			if (o1.score < o2.score)
 				return -1;
-			if (t1 == t2)
+			if (o1.score == o2.score)
 				return 0;
 			return 1;
 		}
 	};
-	private final Comparator<TraceAggregate> byAverage = new Comparator<TraceAggregate>() {
-		public int compare(TraceAggregate o1, TraceAggregate o2) {
-			long t1 = o1.getAverage();
-			long t2 = o2.getAverage();
-			TraceAggregate p1 = o1;
-			while ((p1 = p1.getPreviousTrace()) != null) {
-				t1 += p1.getAverage();
-			}
-			TraceAggregate p2 = o2;
-			while ((p2 = p2.getPreviousTrace()) != null) {
-				t2 += p2.getAverage();
-			}
-			if (t1 > t2)
-				return -1;
-			if (t1 == t2)
-				return 0;
-			return 1;
+
+	private static class Ranked {
+		final TraceAggregate aggregate;
+		final long score;
+
+		Ranked(TraceAggregate aggregate, long score) {
+			this.aggregate = aggregate;
+			this.score = score;
 		}
-	};
+	}
+
+	private static class Snapshot {
+		final long computed;
+		final int revision;
+		final TraceAggregate[] byTotal;
+		final TraceAggregate[] byAverage;
+
+		Snapshot(long computed, int revision, TraceAggregate[] byTotal,
+				TraceAggregate[] byAverage) {
+			this.computed = computed;
+			this.revision = revision;
+			this.byTotal = byTotal;
+			this.byAverage = byAverage;
+		}
+	}
+
+	private final ConcurrentMap<CommonTrace, TraceAggregate> aggregates = new ConcurrentHashMap<CommonTrace, TraceAggregate>();
+	private final AtomicBoolean pruning = new AtomicBoolean();
+	private volatile int revision;
+	private volatile Snapshot snapshot;
 
-	public synchronized Trace[] getTracesByTotalTime() {
-		return topTotalTime.toArray(new Trace[topTotalTime.size()]);
+	public Trace[] getTracesByTotalTime() {
+		TraceAggregate[] top = getSnapshot().byTotal;
+		return Arrays.copyOf(top, top.length, Trace[].class);
 	}
 
-	public synchronized Trace[] getTracesByAverageTime() {
-		return topAverageTime.toArray(new Trace[topAverageTime.size()]);
+	public Trace[] getTracesByAverageTime() {
+		TraceAggregate[] top = getSnapshot().byAverage;
+		return Arrays.copyOf(top, top.length, Trace[].class);
 	}
 
 	public synchronized void reset() {
-		minTotalTime = 0;
-		minAverageTime = 0;
-		topTotalTime.clear();
-		topAverageTime.clear();
-		weak.clear();
-		recent.clear();
 		revision++;
+		aggregates.clear();
+		snapshot = null;
 	}
 
 	public TraceAggregate getAggregate(TraceAggregate previous,
 			Class<?> returnType, String methodName, Class<?>[] types,
 			Object... args) {
-		CommonTrace common;
 		CommonTrace trace = null;
 		if (previous != null) {
 			trace = previous.getTrace();
 		}
-		common = new CommonTrace(trace, returnType, methodName, types, args);
-		return getAggregate(previous, common);
+		CommonTrace common = new CommonTrace(trace, returnType, methodName,
+				types, args);
+		TraceAggregate aggregate = aggregates.get(common);
+		if (aggregate != null)
+			return aggregate;
+		aggregate = new TraceAggregate(previous, common, revision);
+		TraceAggregate existing = aggregates.putIfAbsent(common, aggregate);
+		if (existing != null)
+			return existing;
+		if (aggregates.size() > MAX_AGGREGATES) {
+			prune(aggregate);
+		}
+		return aggregate;
 	}
 
-	public void update(TraceAggregate aggregate) {
-		long total = aggregate.getTotal();
-		long average = aggregate.getAverage();
-		recordTotal(aggregate, total);
-		recordAverage(aggregate, average);
+	private Snapshot getSnapshot() {
+		Snapshot snap = snapshot;
+		long now = System.nanoTime();
+		if (snap != null && snap.revision == revision
+				&& now - snap.computed < REFRESH_PERIOD)
+			return snap;
+		return refresh(now, false);
 	}
 
-	private synchronized TraceAggregate getAggregate(TraceAggregate previous,
-			CommonTrace common) {
-		TraceAggregate aggregate = recent.get(common);
-		if (aggregate != null) {
-			return aggregate;
+	private synchronized Snapshot refresh(long now, boolean force) {
+		Snapshot snap = snapshot;
+		int rev = revision;
+		if (!force && snap != null && snap.revision == rev
+				&& now - snap.computed < REFRESH_PERIOD)
+			return snap;
+		PriorityQueue<Ranked> totals = new PriorityQueue<Ranked>(MAX_TOP + 1,
+				byScore);
+		PriorityQueue<Ranked> averages = new PriorityQueue<Ranked>(
+				MAX_TOP + 1, byScore);
+		for (TraceAggregate aggregate : aggregates.values()) {
+			if (aggregate.getRevision() != rev
+					|| aggregate.getInvocations() == 0)
+				continue;
+			offer(totals, new Ranked(aggregate, getCumulativeTotal(aggregate)));
+			offer(averages, new Ranked(aggregate,
+					getCumulativeAverage(aggregate)));
 		}
-		Reference<TraceAggregate> ref = weak.get(common);
-		if (ref != null) {
-			aggregate = ref.get();
+		snap = new Snapshot(now, rev, sort(totals), sort(averages));
+		snapshot = snap;
+		return snap;
+	}
+
+	/**
+	 * Drops the least invoked aggregates, down to three quarters of the
+	 * limit, keeping memory bounded when many distinct calls are traced. The
+	 * current top traces and the given aggregate, which has just been added
+	 * and not yet recorded, are always kept.
+	 */
+	private void prune(TraceAggregate inserted) {
+		if (!pruning.compareAndSet(false, true))
+			return;
+		try {
+			Snapshot snap = refresh(System.nanoTime(), true);
+			Set<TraceAggregate> keep = new HashSet<TraceAggregate>();
+			Collections.addAll(keep, snap.byTotal);
+			Collections.addAll(keep, snap.byAverage);
+			keep.add(inserted);
+			List<Ranked> candidates = new ArrayList<Ranked>(aggregates.size());
+			for (TraceAggregate aggregate : aggregates.values()) {
+				if (!keep.contains(aggregate)) {
+					candidates.add(new Ranked(aggregate, aggregate.getInvocations()));
+				}
+			}
+			Collections.sort(candidates, byScore);
+			int excess = aggregates.size() - MAX_AGGREGATES * 3 / 4;
+			for (int i = 0; i < excess && i < candidates.size(); i++) {
+				TraceAggregate aggregate = candidates.get(i).aggregate;
+				aggregates.remove(aggregate.getTrace(), aggregate);
+			}
+		} finally {
+			pruning.set(false);
 		}
-		if (aggregate == null) {
-			aggregate = new TraceAggregate(this, previous, common, revision);
+	}
+
+	private void offer(PriorityQueue<Ranked> heap, Ranked ranked) {
+		if (heap.size() < MAX_TOP) {
+			heap.offer(ranked);
+		} else if (byScore.compare(heap.peek(), ranked) < 0) {
+			heap.poll();
+			heap.offer(ranked);
 		}
-		recent.put(common, aggregate);
-		if (ref != null) {
-			weak.remove(common);
+	}
+
+	private TraceAggregate[] sort(PriorityQueue<Ranked> heap) {
+		List<Ranked> list = new ArrayList<Ranked>(heap);
+		Collections.sort(list, Collections.reverseOrder(byScore));
+		TraceAggregate[] result = new TraceAggregate[list.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = list.get(i).aggregate;
 		}
-		return aggregate;
+		return result;
 	}
 
-	private synchronized void recordTotal(TraceAggregate aggregate, long total) {
-		if (total > minTotalTime && aggregate.getRevision() == revision) {
-			if (!topTotalTime.contains(aggregate)) {
-				topTotalTime.add(aggregate);
-				Collections.sort(topTotalTime, byTotal);
-				if (topTotalTime.size() > MAX_TOP) {
-					TraceAggregate last = topTotalTime
-							.remove(topTotalTime.size() - 1);
-					minTotalTime = last.getTotal();
-				}
-			}
+	private long getCumulativeTotal(TraceAggregate aggregate) {
+		long total = 0;
+		for (TraceAggregate p = aggregate; p != null; p = p.getPreviousTrace()) {
+			total += p.getTotal();
 		}
+		return total;
 	}
 
-	private synchronized void recordAverage(TraceAggregate aggregate,
-			long average) {
-		if (average > minAverageTime && aggregate.getRevision() == revision) {
-			if (!topAverageTime.contains(aggregate)) {
-				topAverageTime.add(aggregate);
-				Collections.sort(topAverageTime, byAverage);
-				if (topAverageTime.size() > MAX_TOP) {
-					TraceAggregate last = topAverageTime.remove(topAverageTime
-							.size() - 1);
-					minAverageTime = last.getTotal();
-				}
-			}
+	private long getCumulativeAverage(TraceAggregate aggregate) {
+		long average = 0;
+		for (TraceAggregate p = aggregate; p != null; p = p.getPreviousTrace()) {
+			average += p.getAverage();
 		}
+		return average;
 	}
 
 }
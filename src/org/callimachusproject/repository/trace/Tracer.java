@@ -50,7 +50,13 @@ public class Tracer implements InvocationHandler {
 
 	public Object invoke(Object proxy, Method method, Object[] args)
 			throws Throwable {
-		if (service.isTraceEnabled(declaredType.getName())) {
+		if (!service.isTraceEnabled(declaredType.getName())) {
+			return invokeCall(null, method, args, true);
+		} else if (returnedFrom == null && !logger.isTraceEnabled()
+				&& !service.isSampled()) {
+			// calls on returned objects follow the sample of their factory
+			return invokeCall(null, method, args, false);
+		} else {
 			Method imethod = getInterfaceMethod(method);
 			MethodCall call = new MethodCall(service, returnedFrom, imethod, args);
 			try {
@@ -58,15 +64,13 @@ public class Tracer implements InvocationHandler {
 					logger.trace(assign);
 				}
 				call.calling();
-				return invokeCall(call, imethod, args);
+				return invokeCall(call, imethod, args, true);
 			} catch (Throwable t) {
 				throw call.threw(t);
 			} finally {
 				call.done();
 				logger.trace(call.toString());
 			}
-		} else {
-			return invokeCall(null, method, args);
 		}
 	}
 
@@ -87,10 +91,10 @@ public class Tracer implements InvocationHandler {
 	}
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private Object invokeCall(MethodCall call, Method method, Object[] args) throws Throwable {
+	private Object invokeCall(MethodCall call, Method method, Object[] args, boolean traceReturn) throws Throwable {
 		try {
 			Class type = method.getReturnType();
-			if (!type.isPrimitive() && service.isTraceEnabled(type.getName())) {
+			if (traceReturn && !type.isPrimitive() && service.isTraceEnabled(type.getName())) {
 				return service.trace(call, method.invoke(target, args), type);
 			} else {
 				return method.invoke(target, args);
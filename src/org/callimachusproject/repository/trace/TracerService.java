@@ -17,10 +17,15 @@
 package org.callimachusproject.repository.trace;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,29 +38,71 @@ public class TracerService {
 		return new TracerService(Thread.currentThread().getContextClassLoader());
 	}
 
+	/** placeholder for types that have no {@link TracerFactory} */
+	private static final TracerFactory UNTRACEABLE = new TracerFactory() {
+		public <T> T trace(MethodCall returnedFrom, T target, Class<T> cls,
+				TracerService service) {
+			return target;
+		}
+	};
+
 	private final ServiceLoader<TracerProvider> loader;
-	private final Map<Class<?>, TracerFactory> factories = new HashMap<Class<?>, TracerFactory>();
+	private final ConcurrentMap<Class<?>, TracerFactory> factories = new ConcurrentHashMap<Class<?>, TracerFactory>();
 	private final TraceAnalyser analyser = new TraceAnalyser();
-	private final List<MethodCall> active = new ArrayList<MethodCall>();
-	private String[] prefixEnabled = new String[0];
+	private final Map<Thread, Deque<MethodCall>> active = new ConcurrentHashMap<Thread, Deque<MethodCall>>();
+	private final ThreadLocal<Deque<MethodCall>> stack = new ThreadLocal<Deque<MethodCall>>() {
+		protected Deque<MethodCall> initialValue() {
+			return new ConcurrentLinkedDeque<MethodCall>();
+		}
+	};
+	private volatile String[] prefixEnabled = new String[0];
+	private volatile double samplingRate = 1.0;
 
 	public TracerService(ClassLoader cl) {
 		loader = ServiceLoader.load(TracerProvider.class, cl);
 	}
 
-	public synchronized String[] getTracingPackages() {
+	public String[] getTracingPackages() {
 		return prefixEnabled;
 	}
 
-	public synchronized void setTracingPackages(String... prefix) {
+	public void setTracingPackages(String... prefix) {
 		prefixEnabled = prefix;
 	}
 
+	/**
+	 * @return fraction of traced calls that are timed and aggregated
+	 */
+	public double getSamplingRate() {
+		return samplingRate;
+	}
+
+	/**
+	 * @param rate
+	 *            fraction of traced calls, between 0 and 1, that are timed and
+	 *            aggregated; the objects returned from unsampled calls are not
+	 *            traced
+	 */
+	public void setSamplingRate(double rate) {
+		if (rate < 0 || rate > 1 || Double.isNaN(rate))
+			throw new IllegalArgumentException("Sampling rate must be between 0 and 1: " + rate);
+		samplingRate = rate;
+	}
+
+	/**
+	 * @return true if the next traced call should be timed and aggregated
+	 */
+	public boolean isSampled() {
+		double rate = samplingRate;
+		return rate >= 1 || rate > 0
+				&& ThreadLocalRandom.current().nextDouble() < rate;
+	}
+
 	public Logger getLogger(Class<?> declaredType) {
 		return LoggerFactory.getLogger(declaredType);
 	}
 
-	public synchronized boolean isTraceEnabled(String name) {
+	public boolean isTraceEnabled(String name) {
 		for (String prefix : prefixEnabled) {
 			if (name.startsWith(prefix))
 				return true;
@@ -76,20 +123,47 @@ public class TracerService {
 	}
 
 	public Trace[] getActiveCallTraces() {
-		synchronized (active) {
-			return active.toArray(new Trace[active.size()]);
+		List<Trace> list = new ArrayList<Trace>();
+		Iterator<Map.Entry<Thread, Deque<MethodCall>>> iter = active.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry<Thread, Deque<MethodCall>> e = iter.next();
+			if (!e.getKey().isAlive()) {
+				iter.remove();
+			} else {
+				list.addAll(e.getValue());
+			}
 		}
+		return list.toArray(new Trace[list.size()]);
+	}
+
+	/**
+	 * @return the number of threads with a traced call in progress
+	 */
+	int getActiveThreadCount() {
+		return active.size();
 	}
 
 	public void enter(MethodCall call) {
-		synchronized (active) {
-			active.add(call);
+		Deque<MethodCall> calls = stack.get();
+		if (calls.isEmpty()) {
+			active.put(Thread.currentThread(), calls);
 		}
+		calls.addLast(call);
 	}
 
 	public void exit(MethodCall call) {
-		synchronized (active) {
-			active.remove(call);
+		Deque<MethodCall> calls = stack.get();
+		if (calls.removeLastOccurrence(call)) {
+			if (calls.isEmpty()) {
+				// other threads leave the entry, so they cannot race with enter
+				active.remove(Thread.currentThread());
+			}
+			return;
+		}
+		// call was completed by a different thread than it started on
+		for (Deque<MethodCall> other : active.values()) {
+			if (other.removeLastOccurrence(call))
+				return;
 		}
 	}
 
@@ -107,13 +181,17 @@ public class TracerService {
 	public TracerFactory getTracerFactory(Class<?> cls) {
 		if (cls.isPrimitive())
 			return null;
-		synchronized (factories) {
-			if (factories.containsKey(cls))
-				return factories.get(cls);
-			TracerFactory factory = lookupTracerFactory(cls);
-			factories.put(cls, factory);
-			return factory;
+		TracerFactory factory = factories.get(cls);
+		if (factory == null) {
+			factory = lookupTracerFactory(cls);
+			if (factory == null) {
+				factory = UNTRACEABLE;
+			}
+			factories.putIfAbsent(cls, factory);
 		}
+		if (factory == UNTRACEABLE)
+			return null;
+		return factory;
 	}
 
 	private TracerFactory lookupTracerFactory(Class<?> cls) {
@@ -80,11 +80,59 @@ public class Substitution {
 		}
 	}
 
+	/** A literal run or a single {expression} of the template */
+	private static final class Segment {
+		final String literal;
+		final Expansion ex;
+		final Variable[] variables;
+
+		Segment(String literal) {
+			this.literal = literal;
+			this.ex = null;
+			this.variables = null;
+		}
+
+		Segment(Expansion ex, Variable[] variables) {
+			this.literal = null;
+			this.ex = ex;
+			this.variables = variables;
+		}
+	}
+
+	private static final class Variable {
+		final String name;
+		final int maxLength;
+		final boolean explode;
+		/** name of a named group in the regex */
+		final boolean groupName;
+		/** numbered group in the regex, or -1 */
+		final int group;
+
+		Variable(String name, int maxLength, boolean explode,
+				boolean groupName) {
+			this.name = name;
+			this.maxLength = maxLength;
+			this.explode = explode;
+			this.groupName = groupName;
+			if (name.length() < 3 && NUMERIC.matcher(name).matches()) {
+				this.group = Integer.parseInt(name);
+			} else {
+				this.group = -1;
+			}
+		}
+	}
+
 	private final String regex;
 	private final Pattern pattern;
 	private final String template;
 	private final List<String> groupNames;
 	private final Set<String> variables = new LinkedHashSet<String>();
+	private final Segment[] segments;
+	private final boolean literal;
+	/** literal text every match must begin with */
+	private final String prefix;
+	/** if the prefix must be at the start of the input */
+	private final boolean anchored;
 
 	public static Substitution compile(String regex, String template,
 			String flags) {
@@ -115,14 +163,13 @@ public class Substitution {
 		this.template = template;
 		this.groupNames = extractGroupNames(regex);
 		this.pattern = Pattern.compile(regex, flags(flags));
-		Matcher m = EXPRESSIONS.matcher(template);
-		while (m.find()) {
-			String expr = m.group();
-			Matcher v = VARIABLE.matcher(expr);
-			while (v.find()) {
-				variables.add(v.group(1));
-			}
-		}
+		this.literal = template.indexOf('{') < 0;
+		this.segments = parseTemplate(template);
+		int f = pattern.flags();
+		boolean simple = (f & (Pattern.CASE_INSENSITIVE | Pattern.COMMENTS | Pattern.LITERAL)) == 0;
+		this.anchored = simple && regex.startsWith("^")
+				&& (f & Pattern.MULTILINE) == 0;
+		this.prefix = simple ? literalPrefix(regex) : "";
 	}
 
 	public String toString() {
@@ -150,30 +197,72 @@ public class Substitution {
 	}
 
 	public CharSequence replace(CharSequence input, Map<String, ?> variables) {
-		if (template.indexOf('{') < 0)
+		if (literal)
 			return template;
+		if (!startsWithPrefix(input))
+			return null;
 		Matcher m = pattern.matcher(input);
 		if (!m.find())
 			return null;
 		return substitute(m, variables);
 	}
 
+	private boolean startsWithPrefix(CharSequence input) {
+		if (prefix.length() == 0)
+			return true;
+		String str = input.toString();
+		if (anchored)
+			return str.startsWith(prefix);
+		return str.contains(prefix);
+	}
+
 	private CharSequence substitute(Matcher m, Map<String, ?> variables) {
 		StringBuilder sb = new StringBuilder(255);
+		for (Segment segment : segments) {
+			if (segment.literal != null) {
+				sb.append(segment.literal);
+			} else {
+				CharSequence value = values(segment, m, variables);
+				if (value != null) {
+					sb.append(segment.ex.prefix).append(value);
+				}
+			}
+		}
+		return sb;
+	}
+
+	private Segment[] parseTemplate(String template) {
+		List<Segment> segments = new ArrayList<Segment>();
+		StringBuilder text = new StringBuilder();
 		for (int i = 0, n = template.length(); i < n; i++) {
 			String expr = getExpression(template, i);
 			if (expr != null) {
-				Expansion ex = getExpansion(expr);
-				CharSequence value = values(expr, m, variables, ex);
-				if (value != null) {
-					sb.append(ex.prefix).append(value);
+				if (text.length() > 0) {
+					segments.add(new Segment(text.toString()));
+					text.setLength(0);
 				}
+				List<Variable> vars = new ArrayList<Variable>();
+				Matcher v = VARIABLE.matcher(expr);
+				while (v.find()) {
+					String name = v.group(1);
+					String max = v.group(2);
+					int maxLength = max.length() == 0 ? Integer.MAX_VALUE : Integer.parseInt(max);
+					boolean explode = "*".equals(v.group(3));
+					boolean group = groupNames.contains(name);
+					vars.add(new Variable(name, maxLength, explode, group));
+					variables.add(name);
+				}
+				segments.add(new Segment(getExpansion(expr), vars
+						.toArray(new Variable[vars.size()])));
 				i += expr.length() - 1;
 			} else {
-				sb.append(template.charAt(i));
+				text.append(template.charAt(i));
 			}
 		}
-		return sb;
+		if (text.length() > 0) {
+			segments.add(new Segment(text.toString()));
+		}
+		return segments.toArray(new Segment[segments.size()]);
 	}
 
 	private String getExpression(String template, int i) {
@@ -199,44 +288,59 @@ public class Substitution {
 		return Expansion.SIMPLE;
 	}
 
-	private CharSequence values(String expression, Matcher regex,
-			Map<String, ?> variables, Expansion ex) {
+	/**
+	 * The literal characters at the start of the regex that any match must
+	 * contain, or the empty string if the regex has alternatives.
+	 */
+	private String literalPrefix(String regex) {
+		if (regex.indexOf('|') >= 0)
+			return "";
+		int start = regex.startsWith("^") ? 1 : 0;
+		int end = start;
+		while (end < regex.length() && "\\[](){}.*+?^$|".indexOf(regex.charAt(end)) < 0) {
+			end++;
+		}
+		if (end < regex.length() && "?*{".indexOf(regex.charAt(end)) >= 0) {
+			// last character is optional or repeated
+			end--;
+		}
+		if (end <= start)
+			return "";
+		return regex.substring(start, end);
+	}
+
+	private CharSequence values(Segment segment, Matcher regex,
+			Map<String, ?> variables) {
+		Expansion ex = segment.ex;
 		StringBuilder sb = null;
-		Matcher m = VARIABLE.matcher(expression);
-		while (m.find()) {
-			String name = m.group(1);
-			String max = m.group(2);
-			int maxLength = max.length() == 0 ? Integer.MAX_VALUE : Integer.parseInt(max);
-			boolean explode = "*".equals(m.group(3));
-			CharSequence value = value(name, regex, variables, maxLength, explode, ex);
+		for (Variable var : segment.variables) {
+			CharSequence value = value(var, regex, variables, ex);
 			if (value != null) {
 				if (sb == null) {
 					sb = new StringBuilder();
 				} else {
 					sb.append(ex.separator);
 				}
-				if (ex.encode) {
-					sb.append(value);
-				} else {
-					sb.append(value);
-				}
+				sb.append(value);
 			}
 		}
 		return sb;
 	}
 
-	private CharSequence value(String name, Matcher regex,
-			Map<String, ?> variables, int maxLength, boolean explode,
-			Expansion ex) {
-		if (groupNames.contains(name)) {
+	private CharSequence value(Variable var, Matcher regex,
+			Map<String, ?> variables, Expansion ex) {
+		String name = var.name;
+		int maxLength = var.maxLength;
+		boolean explode = var.explode;
+		if (var.groupName) {
 			try {
 				return inline(name, regex.group(name), maxLength, ex);
 			} catch (IllegalArgumentException e) {
 				// check qs parameter
 			}
 		}
-		if (name.length() < 3 && NUMERIC.matcher(name).matches()) {
-			int g = Integer.parseInt(name);
+		if (var.group >= 0) {
+			int g = var.group;
 			if (regex.groupCount() >= g)
 				return inline(name, regex.group(g), maxLength, ex);
 		}
@@ -43,6 +43,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
@@ -57,7 +58,6 @@ import org.apache.http.HttpException;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpInetConnection;
 import org.apache.http.HttpRequest;
-import org.apache.http.HttpRequestFactory;
 import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpResponseInterceptor;
@@ -74,19 +74,20 @@ import org.apache.http.impl.client.cache.CacheConfig;
 import org.apache.http.impl.client.cache.FileResourceFactory;
 import org.apache.http.impl.execchain.ClientExecChain;
 import org.apache.http.impl.nio.DefaultHttpServerIODispatch;
+import org.apache.http.impl.nio.DefaultNHttpServerConnection;
 import org.apache.http.impl.nio.DefaultNHttpServerConnectionFactory;
 import org.apache.http.impl.nio.SSLNHttpServerConnectionFactory;
 import org.apache.http.impl.nio.codecs.DefaultHttpRequestParserFactory;
 import org.apache.http.impl.nio.reactor.DefaultListeningIOReactor;
 import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.nio.NHttpConnection;
+import org.apache.http.nio.NHttpConnectionFactory;
 import org.apache.http.nio.NHttpServerConnection;
 import org.apache.http.nio.protocol.HttpAsyncService;
 import org.apache.http.nio.reactor.IOEventDispatch;
 import org.apache.http.nio.reactor.IOReactorExceptionHandler;
 import org.apache.http.nio.reactor.IOReactorStatus;
-import org.apache.http.nio.util.ByteBufferAllocator;
-import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.reactor.IOSession;
 import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpProcessor;
@@ -130,8 +131,10 @@ import org.callimachusproject.server.helpers.CalliContext;
 import org.callimachusproject.server.helpers.Exchange;
 import org.callimachusproject.server.helpers.PooledExecChain;
 import org.callimachusproject.server.helpers.ResponseBuilder;
+import org.callimachusproject.server.helpers.TimedExecChain;
 import org.callimachusproject.server.util.AnyHttpMethodRequestFactory;
 import org.callimachusproject.server.util.InlineExecutorService;
+import org.callimachusproject.server.util.PooledDirectByteBufferAllocator;
 import org.callimachusproject.util.DomainNameSystemResolver;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceManager;
 import org.slf4j.Logger;
@@ -148,6 +151,8 @@ public class WebServer implements WebServerMXBean, IOReactorExceptionHandler, Cl
 	protected static final String DEFAULT_NAME = Version.getInstance().getVersion();
 	private static final int MAX_QUEUE_SIZE = 32;
 	private static final String ENVELOPE_TYPE = "message/x-response";
+	private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+	public static final long DEFAULT_BUFFER_MEMORY = 64 * 1024 * 1024;
 	private static NamedThreadFactory executor = new NamedThreadFactory("WebServer", false);
 	private static final Set<WebServer> instances = new HashSet<WebServer>();
 	private static final InetAddress LOCALHOST = DomainNameSystemResolver.getInstance().getLocalHost();
@@ -202,60 +207,70 @@ public class WebServer implements WebServerMXBean, IOReactorExceptionHandler, Cl
 	private int timeout = 0;
 	private final HttpResponseInterceptor[] interceptors;
 	private final Runnable schemaListener;
+	private final List<TimedExecChain> stages = new ArrayList<TimedExecChain>();
+	private final PooledDirectByteBufferAllocator allocator = new PooledDirectByteBufferAllocator(DEFAULT_BUFFER_MEMORY);
+	private final DefaultHttpRequestParserFactory requestParser = new DefaultHttpRequestParserFactory(
+			null, new AnyHttpMethodRequestFactory());
+	private SSLContext sslcontext;
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	private int fragmentSize = -1;
+	volatile NHttpConnectionFactory<DefaultNHttpServerConnection> connections;
+	volatile NHttpConnectionFactory<DefaultNHttpServerConnection> sslconnections;
 
 	public WebServer(File cacheDir)
 			throws IOException, NoSuchAlgorithmException {
 		cacheDir.mkdirs();
 		// exec in handling thread
-		ClientExecChain handler = new InvokeHandler();
-		handler = new NotFoundHandler(handler);
-		handler = new AlternativeHandler(handler);
-		handler = new GZipFilter(handler);
+		ClientExecChain handler = timed(new InvokeHandler());
+		handler = timed(new NotFoundHandler(handler));
+		handler = timed(new AlternativeHandler(handler));
+		handler = timed(new GZipFilter(handler));
 		// exec in triaging thread
-		AsyncExecChain filter = new PooledExecChain(handler, handling);
-		filter = new ExpectContinueHandler(filter);
-		filter = new OptionsHandler(filter);
-		filter = links = new LinksFilter(filter);
-		filter = new ContentHeadersFilter(filter);
-		filter = remoteCache = new ModifiedSinceHandler(filter);
-		filter = new UnmodifiedSinceHandler(filter);
-		filter = authCache = new AuthenticationHandler(filter);
-		filter = new ResponseExceptionHandler(filter);
-		filter = transaction = new TransactionHandler(filter, closing);
-		filter = env = new HttpResponseFilter(filter);
-		filter = new TraceHandler(filter);
+		AsyncExecChain filter = timed("HttpHandling", new PooledExecChain(handler, handling));
+		filter = timed(new ExpectContinueHandler(filter));
+		filter = timed(new OptionsHandler(filter));
+		filter = timed(links = new LinksFilter(filter));
+		filter = timed(new ContentHeadersFilter(filter));
+		filter = timed(remoteCache = new ModifiedSinceHandler(filter));
+		filter = timed(new UnmodifiedSinceHandler(filter));
+		filter = timed(authCache = new AuthenticationHandler(filter));
+		filter = timed(new ResponseExceptionHandler(filter));
+		filter = timed(transaction = new TransactionHandler(filter, closing));
+		filter = timed(env = new HttpResponseFilter(filter));
+		filter = timed(new TraceHandler(filter));
 		// exec in i/o thread
-		filter = new PooledExecChain(filter, triaging);
-		filter = cache = new CacheHandler(filter, new FileResourceFactory(cacheDir), getDefaultCacheConfig());
-		filter = new GUnzipFilter(filter);
-		filter = new MD5ValidationFilter(filter);
-		filter = new SecureChannelFilter(filter);
-		chain = filter = new AccessLog(filter);
+		filter = timed("HttpTriaging", new PooledExecChain(filter, triaging));
+		filter = timed(cache = new CacheHandler(filter, new FileResourceFactory(cacheDir), getDefaultCacheConfig()));
+		filter = timed(new GUnzipFilter(filter));
+		filter = timed(new MD5ValidationFilter(filter));
+		filter = timed(new SecureChannelFilter(filter));
+		chain = filter = timed(new AccessLog(filter));
 		service = new AsyncRequestHandler(chain);
 		interceptors = new HttpResponseInterceptor[] { new ResponseDate(),
 				new ResponseContent(true), new ResponseConnControl(),
 				name = new ServerNameFilter(DEFAULT_NAME),
 				new HeadRequestFilter() };
-		HttpRequestFactory rfactory = new AnyHttpMethodRequestFactory();
-		HeapByteBufferAllocator allocator = new HeapByteBufferAllocator();
 		IOReactorConfig config = createIOReactorConfig();
-		// Create server-side I/O event dispatch
-		dispatch = createIODispatch(rfactory, allocator);
-		// Create server-side I/O reactor
-		server = new DefaultListeningIOReactor(config);
-		server.setExceptionHandler(this);
 		if (System.getProperty("javax.net.ssl.keyStore") != null) {
 			try {
-				SSLContext sslcontext = SSLContext.getDefault();
-				// Create server-side I/O event dispatch
-				ssldispatch = createSSLDispatch(sslcontext, rfactory, allocator);
-				// Create server-side I/O reactor
-				sslserver = new DefaultListeningIOReactor(config);
-				sslserver.setExceptionHandler(this);
+				sslcontext = SSLContext.getDefault();
 			} catch (NoSuchAlgorithmException e) {
 				logger.warn(e.toString(), e);
 			}
 		}
+		configureConnections();
+		// Create server-side I/O event dispatch
+		dispatch = createIODispatch();
+		// Create server-side I/O reactor
+		server = new DefaultListeningIOReactor(config);
+		server.setExceptionHandler(this);
+		if (sslcontext != null) {
+			// Create server-side I/O event dispatch
+			ssldispatch = createSSLDispatch();
+			// Create server-side I/O reactor
+			sslserver = new DefaultListeningIOReactor(config);
+			sslserver.setExceptionHandler(this);
+		}
 		this.setEnvelopeType(ENVELOPE_TYPE);
 		schemaListener = new Runnable() {
 			public String toString() {
@@ -369,6 +384,103 @@ public class WebServer implements WebServerMXBean, IOReactorExceptionHandler, Cl
 		});
 	}
 
+	public synchronized int getBufferSize() {
+		return bufferSize;
+	}
+
+	public synchronized void setBufferSize(int bytes) {
+		this.bufferSize = bytes > 0 ? bytes : DEFAULT_BUFFER_SIZE;
+		configureConnections();
+	}
+
+	public synchronized int getFragmentSize() {
+		return fragmentSize;
+	}
+
+	public synchronized void setFragmentSize(int bytes) {
+		this.fragmentSize = bytes > 0 ? bytes : -1;
+		configureConnections();
+	}
+
+	public long getBufferMemory() {
+		return allocator.getMaxMemory();
+	}
+
+	public void setBufferMemory(long bytes) {
+		allocator.setMaxMemory(bytes);
+	}
+
+	public long getBufferMemoryReserved() {
+		return allocator.getReservedMemory();
+	}
+
+	public long getBufferMemoryUsed() {
+		return allocator.getUsedMemory();
+	}
+
+	public long getHeapBufferCount() {
+		return allocator.getFallbackCount();
+	}
+
+	public int getCacheCoalescingWait() {
+		return cache.getCoalescingWait();
+	}
+
+	public void setCacheCoalescingWait(int milliseconds) {
+		cache.setCoalescingWait(milliseconds);
+	}
+
+	public long getCacheCoalescedRequests() {
+		return cache.getCoalescedRequests();
+	}
+
+	public long getCacheForwardedRequests() {
+		return cache.getForwardedRequests();
+	}
+
+	public boolean isStageTiming() {
+		for (TimedExecChain stage : stages) {
+			if (stage.isEnabled())
+				return true;
+		}
+		return false;
+	}
+
+	public void setStageTiming(boolean timing) {
+		for (TimedExecChain stage : stages) {
+			stage.setEnabled(timing);
+		}
+	}
+
+	public void resetStageTiming() {
+		for (TimedExecChain stage : stages) {
+			stage.reset();
+		}
+	}
+
+	public String[] getStageTimingSummary() {
+		List<String> lines = new ArrayList<String>();
+		for (TimedExecChain stage : stages) {
+			lines.addAll(Arrays.asList(stage.getSummary()));
+		}
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	public void stageTimingDumpToFile(String outputFile) throws IOException {
+		PrintWriter writer = new PrintWriter(new FileWriter(outputFile, true));
+		try {
+			writer.println("stage,timing,count,mean,p50,p90,p99,max");
+			for (String line : getStageTimingSummary()) {
+				writer.println(line);
+			}
+			writer.println();
+			writer.println();
+		} finally {
+			writer.close();
+		}
+		logger.info("Stage timing dump: {}", outputFile);
+	}
+
 	public void resetConnections() throws IOException {
 		NHttpConnection[] connections = getOpenConnections();
 		for (int i = 0; i < connections.length; i++) {
@@ -767,27 +879,58 @@ public class WebServer implements WebServerMXBean, IOReactorExceptionHandler, Cl
 		logger.info("Connection dump: {}", outputFile);
 	}
 
-	private DefaultHttpServerIODispatch createIODispatch(
-			HttpRequestFactory requestFactory, ByteBufferAllocator allocator) {
+	private ClientExecChain timed(ClientExecChain handler) {
+		TimedExecChain timed = new TimedExecChain(handler.getClass().getSimpleName(), handler);
+		stages.add(0, timed);
+		return timed;
+	}
+
+	private AsyncExecChain timed(AsyncExecChain filter) {
+		return timed(filter.getClass().getSimpleName(), filter);
+	}
+
+	private AsyncExecChain timed(String stage, AsyncExecChain filter) {
+		TimedExecChain timed = new TimedExecChain(stage, filter);
+		stages.add(0, timed);
+		return timed;
+	}
+
+	private DefaultHttpServerIODispatch createIODispatch() {
 		HttpAsyncService handler;
-		DefaultNHttpServerConnectionFactory factory;
-		ConnectionConfig params = getDefaultConnectionConfig();
 		handler = createProtocolHandler(getHttpProcessor("http"), service);
-		DefaultHttpRequestParserFactory rparser = new DefaultHttpRequestParserFactory(null, requestFactory);
-		factory = new DefaultNHttpServerConnectionFactory(allocator, rparser, null, params);
-		return new DefaultHttpServerIODispatch(handler, factory);
+		return new DefaultHttpServerIODispatch(handler,
+				new NHttpConnectionFactory<DefaultNHttpServerConnection>() {
+					public DefaultNHttpServerConnection createConnection(
+							IOSession session) {
+						return connections.createConnection(session);
+					}
+				});
 	}
 
-	private DefaultHttpServerIODispatch createSSLDispatch(
-			SSLContext sslcontext, HttpRequestFactory requestFactory,
-			ByteBufferAllocator allocator) {
+	private DefaultHttpServerIODispatch createSSLDispatch() {
 		HttpAsyncService handler;
-		SSLNHttpServerConnectionFactory factory;
-		ConnectionConfig params = getDefaultConnectionConfig();
 		handler = createProtocolHandler(getHttpProcessor("https"), service);
-		DefaultHttpRequestParserFactory rparser = new DefaultHttpRequestParserFactory(null, requestFactory);
-		factory = new SSLNHttpServerConnectionFactory(sslcontext, null, rparser, null, allocator, params);
-		return new DefaultHttpServerIODispatch(handler, factory);
+		return new DefaultHttpServerIODispatch(handler,
+				new NHttpConnectionFactory<DefaultNHttpServerConnection>() {
+					public DefaultNHttpServerConnection createConnection(
+							IOSession session) {
+						return sslconnections.createConnection(session);
+					}
+				});
+	}
+
+	/**
+	 * Replaces the connection factories, so that connections accepted from
+	 * now on use the current buffer settings.
+	 */
+	private synchronized void configureConnections() {
+		ConnectionConfig params = getConnectionConfig();
+		connections = new DefaultNHttpServerConnectionFactory(allocator,
+				requestParser, null, params);
+		if (sslcontext != null) {
+			sslconnections = new SSLNHttpServerConnectionFactory(sslcontext,
+					null, requestParser, null, allocator, params);
+		}
 	}
 
 	private ImmutableHttpProcessor getHttpProcessor(final String protocol) {
@@ -800,8 +943,9 @@ public class WebServer implements WebServerMXBean, IOReactorExceptionHandler, Cl
 				} }, interceptors);
 	}
 
-	private ConnectionConfig getDefaultConnectionConfig() {
-		return ConnectionConfig.DEFAULT;
+	private ConnectionConfig getConnectionConfig() {
+		return ConnectionConfig.custom().setBufferSize(bufferSize)
+				.setFragmentSizeHint(fragmentSize).build();
 	}
 
 	private IOReactorConfig createIOReactorConfig() {
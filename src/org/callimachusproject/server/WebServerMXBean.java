@@ -52,6 +52,69 @@ public interface WebServerMXBean {
 
 	void connectionDumpToFile(String outputFile) throws IOException;
 
+	/**
+	 * Bytes of each connection's input and output buffer, for connections
+	 * accepted afterwards.
+	 */
+	int getBufferSize();
+
+	void setBufferSize(int bytes);
+
+	/**
+	 * Content chunks larger than this many bytes are written to the socket
+	 * directly rather than through the connection buffer, negative to use
+	 * the buffer size.
+	 */
+	int getFragmentSize();
+
+	void setFragmentSize(int bytes);
+
+	/**
+	 * Maximum bytes of pooled direct memory for connection buffers.
+	 */
+	long getBufferMemory();
+
+	void setBufferMemory(long bytes);
+
+	long getBufferMemoryReserved();
+
+	long getBufferMemoryUsed();
+
+	/**
+	 * Number of connection buffers allocated on the heap, because they were
+	 * too large or the direct memory was exhausted.
+	 */
+	long getHeapBufferCount();
+
+	/**
+	 * Maximum milliseconds a cache miss waits for an identical request already
+	 * in progress, zero to disable.
+	 */
+	int getCacheCoalescingWait();
+
+	void setCacheCoalescingWait(int milliseconds);
+
+	long getCacheCoalescedRequests();
+
+	/**
+	 * Number of requests the server side cache passed on to the origin.
+	 */
+	long getCacheForwardedRequests();
+
+	boolean isStageTiming();
+
+	void setStageTiming(boolean timing);
+
+	void resetStageTiming();
+
+	/**
+	 * CSV lines of stage,timing,count,mean,p50,p90,p99,max in microseconds,
+	 * outermost stage first.
+	 */
+	String[] getStageTimingSummary();
+
+	void stageTimingDumpToFile(String outputFile) throws IOException;
+
 	void poke();
 
 	void resetCache() throws Exception;
@@ -19,6 +19,7 @@ package org.callimachusproject.server.chain;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.http.Header;
 import org.apache.http.HttpHost;
@@ -37,9 +38,11 @@ import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
 import org.apache.http.nio.reactor.IOReactorStatus;
 import org.apache.http.params.HttpParams;
 import org.apache.http.protocol.HttpContext;
+import org.callimachusproject.concurrent.ManagedExecutors;
 import org.callimachusproject.server.AsyncExecChain;
 import org.callimachusproject.server.helpers.AutoClosingAsyncClient;
 import org.callimachusproject.server.helpers.CalliContext;
+import org.callimachusproject.server.helpers.CoalescingExecChain;
 import org.callimachusproject.server.helpers.ResponseCallback;
 import org.callimachusproject.server.util.HTTPDateFormat;
 import org.slf4j.Logger;
@@ -91,31 +94,79 @@ public class CacheHandler implements AsyncExecChain {
 		public Future<HttpResponse> execute(HttpHost target,
 				final HttpRequest request, final HttpContext context,
 				FutureCallback<HttpResponse> callback) {
+			forwarded.incrementAndGet();
 			return delegate.execute(target, request, context, callback);
 		}
 	}
 
+	private static final int DEFAULT_COALESCING_WAIT = 10000;
+
 	private final Logger logger = LoggerFactory.getLogger(CacheHandler.class);
 	private final HTTPDateFormat modifiedformat = new HTTPDateFormat();
 	private final AsyncExecChain delegate;
 	private final ResourceFactory resourceFactory;
 	private final CacheConfig config;
 	private final Map<HttpHost, HttpAsyncClient> clients = new HashMap<HttpHost, HttpAsyncClient>();
+	private final CoalescingExecChain coalescing;
+	private final AtomicLong forwarded = new AtomicLong();
 
 	public CacheHandler(AsyncExecChain delegate, ResourceFactory resourceFactory, CacheConfig config) {
 		this.delegate = delegate;
 		this.resourceFactory = resourceFactory;
 		this.config = config;
+		this.coalescing = new CoalescingExecChain(new AsyncExecChain() {
+			public Future<HttpResponse> execute(HttpHost target,
+					HttpRequest request, HttpContext context,
+					FutureCallback<HttpResponse> callback) {
+				return executeCached(target, request, context, callback);
+			}
+		}, ManagedExecutors.getInstance().getTimeoutThreadPool(),
+				DEFAULT_COALESCING_WAIT);
 	}
 
 	public synchronized void reset() {
 		clients.clear();
+		coalescing.reset();
+	}
+
+	/**
+	 * @return maximum milliseconds a cache miss waits for an identical
+	 *         request already in progress
+	 */
+	public int getCoalescingWait() {
+		return coalescing.getWait();
+	}
+
+	/**
+	 * @param wait
+	 *            maximum milliseconds a cache miss waits for an identical
+	 *            request already in progress, zero to disable coalescing
+	 */
+	public void setCoalescingWait(int wait) {
+		coalescing.setWait(wait);
+	}
+
+	public long getCoalescedRequests() {
+		return coalescing.getCoalesced();
+	}
+
+	/**
+	 * @return number of requests the cache passed on to the origin
+	 */
+	public long getForwardedRequests() {
+		return forwarded.get();
 	}
 
 	@Override
 	public Future<HttpResponse> execute(HttpHost target,
 			final HttpRequest request, final HttpContext context,
 			FutureCallback<HttpResponse> callback) {
+		return coalescing.execute(target, request, context, callback);
+	}
+
+	Future<HttpResponse> executeCached(HttpHost target,
+			final HttpRequest request, final HttpContext context,
+			FutureCallback<HttpResponse> callback) {
 		if (config.isHeuristicCachingEnabled()) {
 			return getClient(target).execute(target, request, context,
 					new ResponseCallback(callback) {
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.server.helpers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.protocol.HttpContext;
+import org.callimachusproject.server.AsyncExecChain;
+
+/**
+ * Holds back concurrent GET and HEAD requests that are identical to a request
+ * already in progress, until that first request completes or the wait bound
+ * elapses. Intended to sit in front of a caching client: the waiting requests
+ * are then executed and served from the response the first request stored.
+ * Requests are only held back for the same target, request-URI, credentials
+ * and content negotiation headers; the cache below still performs its own
+ * Vary matching. Requests whose previous response could not be stored by a
+ * shared cache are no longer held back.
+ */
+public class CoalescingExecChain implements AsyncExecChain {
+	private static final String[] KEY_HEADERS = { "Accept", "Accept-Charset",
+			"Accept-Encoding", "Accept-Language", "Authorization", "Cookie",
+			"Range" };
+	private static final int MAX_UNSHARED = 1024;
+
+	private final AsyncExecChain delegate;
+	private final ScheduledExecutorService timer;
+	private final Map<String, List<Waiting>> inflight = new HashMap<String, List<Waiting>>();
+	private final Map<String, Boolean> unshared = Collections
+			.synchronizedMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+					return size() > MAX_UNSHARED;
+				}
+			});
+	private final AtomicLong coalesced = new AtomicLong();
+	private volatile int wait;
+
+	/**
+	 * @param wait
+	 *            maximum milliseconds an identical request waits for the
+	 *            first, zero to disable
+	 */
+	public CoalescingExecChain(AsyncExecChain delegate,
+			ScheduledExecutorService timer, int wait) {
+		this.delegate = delegate;
+		this.timer = timer;
+		this.wait = wait;
+	}
+
+	public int getWait() {
+		return wait;
+	}
+
+	public void setWait(int wait) {
+		this.wait = wait;
+	}
+
+	/**
+	 * @return number of requests that waited for an identical request
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	public void reset() {
+		unshared.clear();
+	}
+
+	@Override
+	public Future<HttpResponse> execute(HttpHost target, HttpRequest request,
+			HttpContext context, FutureCallback<HttpResponse> callback) {
+		final int wait = this.wait;
+		final String key = wait > 0 ? getKey(target, request) : null;
+		if (key == null || unshared.containsKey(key))
+			return delegate.execute(target, request, context, callback);
+		Waiting waiting;
+		synchronized (inflight) {
+			List<Waiting> list = inflight.get(key);
+			if (list == null) {
+				inflight.put(key, new ArrayList<Waiting>());
+				waiting = null;
+			} else {
+				waiting = new Waiting(target, request, context, callback);
+				list.add(waiting);
+			}
+		}
+		if (waiting == null)
+			return executeFirst(key, target, request, context, callback);
+		coalesced.incrementAndGet();
+		try {
+			waiting.setTimeout(timer.schedule(waiting, wait,
+					TimeUnit.MILLISECONDS));
+		} catch (RejectedExecutionException e) {
+			waiting.run();
+		}
+		return waiting.future;
+	}
+
+	private Future<HttpResponse> executeFirst(final String key,
+			HttpHost target, HttpRequest request, HttpContext context,
+			FutureCallback<HttpResponse> callback) {
+		final boolean authorized = request.containsHeader("Authorization");
+		try {
+			return delegate.execute(target, request, context,
+					new ResponseCallback(callback) {
+						public void completed(HttpResponse result) {
+							if (!isShared(result, authorized)) {
+								unshared.put(key, Boolean.TRUE);
+							}
+							try {
+								super.completed(result);
+							} finally {
+								release(key);
+							}
+						}
+
+						public void failed(Exception ex) {
+							try {
+								super.failed(ex);
+							} finally {
+								release(key);
+							}
+						}
+
+						public void cancelled() {
+							try {
+								super.cancelled();
+							} finally {
+								release(key);
+							}
+						}
+					});
+		} catch (RuntimeException e) {
+			release(key);
+			throw e;
+		} catch (Error e) {
+			release(key);
+			throw e;
+		}
+	}
+
+	void release(String key) {
+		List<Waiting> list;
+		synchronized (inflight) {
+			list = inflight.remove(key);
+		}
+		if (list != null) {
+			for (Waiting waiting : list) {
+				waiting.run();
+			}
+		}
+	}
+
+	private String getKey(HttpHost target, HttpRequest request) {
+		String method = request.getRequestLine().getMethod();
+		if (!"GET".equals(method) && !"HEAD".equals(method))
+			return null;
+		if (request instanceof HttpEntityEnclosingRequest)
+			return null;
+		for (Header hd : request.getHeaders("Cache-Control")) {
+			String value = hd.getValue().toLowerCase(Locale.US);
+			if (value.contains("no-cache") || value.contains("no-store"))
+				return null;
+		}
+		if (request.containsHeader("Pragma"))
+			return null;
+		StringBuilder sb = new StringBuilder();
+		sb.append(method).append(' ').append(target).append(' ');
+		sb.append(request.getRequestLine().getUri());
+		for (String name : KEY_HEADERS) {
+			for (Header hd : request.getHeaders(name)) {
+				sb.append('\n').append(name).append(": ").append(hd.getValue());
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * If the response could have been stored by a shared cache, so that a
+	 * waiting request will not need to go to the origin.
+	 */
+	private boolean isShared(HttpResponse response, boolean authorized) {
+		switch (response.getStatusLine().getStatusCode()) {
+		case 200:
+		case 203:
+		case 300:
+		case 301:
+		case 303:
+		case 410:
+			break;
+		default:
+			return false;
+		}
+		for (Header hd : response.getHeaders("Vary")) {
+			if (hd.getValue().contains("*"))
+				return false;
+		}
+		boolean explicit = false;
+		for (Header hd : response.getHeaders("Cache-Control")) {
+			String value = hd.getValue().toLowerCase(Locale.US);
+			if (value.contains("no-store") || value.contains("private")
+					|| value.contains("no-cache"))
+				return false;
+			if (value.contains("public") || value.contains("s-maxage")
+					|| value.contains("must-revalidate")) {
+				explicit = true;
+			}
+		}
+		return !authorized || explicit;
+	}
+
+	private final class Waiting implements Runnable {
+		private final AtomicBoolean dispatched = new AtomicBoolean();
+		final HttpHost target;
+		final HttpRequest request;
+		final HttpContext context;
+		final BasicFuture<HttpResponse> future;
+		private volatile ScheduledFuture<?> timeout;
+
+		Waiting(HttpHost target, HttpRequest request, HttpContext context,
+				FutureCallback<HttpResponse> callback) {
+			this.target = target;
+			this.request = request;
+			this.context = context;
+			this.future = new BasicFuture<HttpResponse>(callback);
+		}
+
+		void setTimeout(ScheduledFuture<?> timeout) {
+			this.timeout = timeout;
+			if (dispatched.get()) {
+				timeout.cancel(false);
+			}
+		}
+
+		public void run() {
+			if (!dispatched.compareAndSet(false, true))
+				return;
+			ScheduledFuture<?> timeout = this.timeout;
+			if (timeout != null) {
+				timeout.cancel(false);
+			}
+			if (future.isCancelled())
+				return;
+			try {
+				delegate.execute(target, request, context,
+						new FutureCallback<HttpResponse>() {
+							public void completed(HttpResponse result) {
+								future.completed(result);
+							}
+
+							public void failed(Exception ex) {
+								future.failed(ex);
+							}
+
+							public void cancelled() {
+								future.cancel();
+							}
+						});
+			} catch (RuntimeException ex) {
+				future.failed(ex);
+			}
+		}
+	}
+
+}
@@ -268,18 +268,14 @@ public class Exchange implements Cancellable {
 			if (decoder.isCompleted()) {
 				pipe.close();
 			} else if (!pipe.hasAvailableCapacity()) {
-				synchronized (pipe) {
-					if (!pipe.hasAvailableCapacity()) {
-						logger.info("Suspend {}", request.getRequestLine());
-						ioctrl.suspendInput();
-						pipe.onAvailableCapacity(new Runnable() {
-							public void run() {
-								logger.info("Resume {}", request.getRequestLine());
-								ioctrl.requestInput();
-							}
-						});
+				logger.info("Suspend {}", request.getRequestLine());
+				ioctrl.suspendInput();
+				pipe.onAvailableCapacity(new Runnable() {
+					public void run() {
+						logger.info("Resume {}", request.getRequestLine());
+						ioctrl.requestInput();
 					}
-				}
+				});
 			}
 		}
 
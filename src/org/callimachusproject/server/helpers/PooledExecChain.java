@@ -31,6 +31,7 @@ package org.callimachusproject.server.helpers;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
@@ -39,6 +40,7 @@ import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.impl.execchain.ClientExecChain;
 import org.apache.http.protocol.HttpContext;
 import org.callimachusproject.server.AsyncExecChain;
+import org.callimachusproject.server.util.LatencyHistogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,6 +48,7 @@ public class PooledExecChain implements AsyncExecChain {
 	final Logger logger = LoggerFactory.getLogger(PooledExecChain.class);
 	final AsyncExecChain delegate;
 	private final ExecutorService executor;
+	private volatile LatencyHistogram queueWait;
 
 	public PooledExecChain(ClientExecChain delegate, ExecutorService executor) {
 		this(new BlockingExecChain(delegate), executor);
@@ -56,14 +59,33 @@ public class PooledExecChain implements AsyncExecChain {
 		this.executor = executor;
 	}
 
+	public LatencyHistogram getQueueWaitHistogram() {
+		return queueWait;
+	}
+
+	/**
+	 * @param histogram
+	 *            records how long each request waits for a pooled thread, or
+	 *            null to stop recording
+	 */
+	public void setQueueWaitHistogram(LatencyHistogram histogram) {
+		this.queueWait = histogram;
+	}
+
 	@Override
 	public Future<HttpResponse> execute(final HttpHost target,
 			final HttpRequest request, final HttpContext context,
 			final FutureCallback<HttpResponse> callback) {
 		try {
 			final DelegatingFuture future = new DelegatingFuture(callback);
+			final LatencyHistogram histogram = queueWait;
+			final long submitted = histogram == null ? 0 : System.nanoTime();
 			final Future<?> first = executor.submit(new Runnable() {
 				public void run() {
+					if (histogram != null) {
+						histogram.record(System.nanoTime() - submitted,
+								TimeUnit.NANOSECONDS);
+					}
 					try {
 						if (future.isCancelled()) {
 							future.cancelled();
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.server.helpers;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpExecutionAware;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.execchain.ClientExecChain;
+import org.apache.http.protocol.HttpContext;
+import org.callimachusproject.server.AsyncExecChain;
+import org.callimachusproject.server.util.LatencyHistogram;
+
+/**
+ * Records the time from when a request enters a stage of the exec chain until
+ * its response is produced, by response status class. The times are
+ * inclusive of the stages that follow. When the delegate is a
+ * {@link PooledExecChain} the time spent waiting for a pooled thread is also
+ * recorded. Nothing is recorded until timing is enabled.
+ * <p>
+ * Recording a blocking stage does not allocate. An async stage can only
+ * observe completion by wrapping the caller's {@link FutureCallback}, so
+ * while timing is enabled it allocates one {@link TimedCallback} per request.
+ */
+public class TimedExecChain implements AsyncExecChain, ClientExecChain {
+	private static final String[] STATUS_CLASSES = { "failed", "1xx", "2xx",
+			"3xx", "4xx", "5xx" };
+
+	private final String stage;
+	private final AsyncExecChain async;
+	private final ClientExecChain blocking;
+	private final LatencyHistogram[] byStatus = new LatencyHistogram[STATUS_CLASSES.length];
+	private final LatencyHistogram queueWait;
+	private volatile boolean enabled;
+
+	public TimedExecChain(String stage, AsyncExecChain delegate) {
+		this(stage, delegate, null);
+	}
+
+	public TimedExecChain(String stage, ClientExecChain delegate) {
+		this(stage, null, delegate);
+	}
+
+	private TimedExecChain(String stage, AsyncExecChain async,
+			ClientExecChain blocking) {
+		this.stage = stage;
+		this.async = async;
+		this.blocking = blocking;
+		for (int i = 0; i < byStatus.length; i++) {
+			byStatus[i] = new LatencyHistogram();
+		}
+		if (async instanceof PooledExecChain) {
+			queueWait = new LatencyHistogram();
+		} else {
+			queueWait = null;
+		}
+	}
+
+	public String getStage() {
+		return stage;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		if (queueWait != null) {
+			((PooledExecChain) async).setQueueWaitHistogram(enabled ? queueWait : null);
+		}
+	}
+
+	/**
+	 * @return the time spent waiting for a pooled thread or null if this
+	 *         stage does not hand off to a thread pool
+	 */
+	public LatencyHistogram getQueueWaitHistogram() {
+		return queueWait;
+	}
+
+	/**
+	 * @param status
+	 *            HTTP status code, or zero for failed or cancelled requests
+	 */
+	public LatencyHistogram getHistogram(int status) {
+		return byStatus[indexOf(status)];
+	}
+
+	public void reset() {
+		for (LatencyHistogram histogram : byStatus) {
+			histogram.reset();
+		}
+		if (queueWait != null) {
+			queueWait.reset();
+		}
+	}
+
+	/**
+	 * @return CSV lines of stage,timing,count,mean,p50,p90,p99,max in
+	 *         microseconds for each timing that has been recorded
+	 */
+	public String[] getSummary() {
+		String[] lines = new String[byStatus.length + 1];
+		int n = 0;
+		if (queueWait != null && queueWait.getCount() > 0) {
+			lines[n++] = summarize("queued", queueWait);
+		}
+		for (int i = 0; i < byStatus.length; i++) {
+			if (byStatus[i].getCount() > 0) {
+				lines[n++] = summarize(STATUS_CLASSES[i], byStatus[i]);
+			}
+		}
+		String[] result = new String[n];
+		System.arraycopy(lines, 0, result, 0, n);
+		return result;
+	}
+
+	public String toString() {
+		return stage;
+	}
+
+	@Override
+	public Future<HttpResponse> execute(HttpHost target, HttpRequest request,
+			HttpContext context, FutureCallback<HttpResponse> callback) {
+		if (!enabled)
+			return async.execute(target, request, context, callback);
+		return async.execute(target, request, context, new TimedCallback(
+				this, System.nanoTime(), callback));
+	}
+
+	@Override
+	public CloseableHttpResponse execute(HttpRoute route,
+			HttpRequestWrapper request, HttpClientContext context,
+			HttpExecutionAware execAware) throws IOException, HttpException {
+		if (!enabled)
+			return blocking.execute(route, request, context, execAware);
+		long start = System.nanoTime();
+		CloseableHttpResponse response = null;
+		try {
+			return response = blocking.execute(route, request, context,
+					execAware);
+		} finally {
+			record(start, response);
+		}
+	}
+
+	void record(long start, HttpResponse response) {
+		int status = 0;
+		if (response != null && response.getStatusLine() != null) {
+			status = response.getStatusLine().getStatusCode();
+		}
+		long duration = System.nanoTime() - start;
+		byStatus[indexOf(status)].record(duration, TimeUnit.NANOSECONDS);
+	}
+
+	private int indexOf(int status) {
+		int idx = status / 100;
+		if (idx < 1 || idx >= byStatus.length)
+			return 0;
+		return idx;
+	}
+
+	/**
+	 * Records the time of an async request when it completes.
+	 */
+	private static class TimedCallback implements FutureCallback<HttpResponse> {
+		private final TimedExecChain timed;
+		private final long start;
+		private final FutureCallback<HttpResponse> callback;
+
+		TimedCallback(TimedExecChain timed, long start,
+				FutureCallback<HttpResponse> callback) {
+			this.timed = timed;
+			this.start = start;
+			this.callback = callback;
+		}
+
+		public void completed(HttpResponse result) {
+			timed.record(start, result);
+			if (callback != null) {
+				callback.completed(result);
+			}
+		}
+
+		public void failed(Exception ex) {
+			timed.record(start, null);
+			if (callback != null) {
+				callback.failed(ex);
+			}
+		}
+
+		public void cancelled() {
+			timed.record(start, null);
+			if (callback != null) {
+				callback.cancelled();
+			}
+		}
+	}
+
+	private String summarize(String timing, LatencyHistogram histogram) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(stage).append(",").append(timing).append(",");
+		sb.append(histogram.getCount()).append(",");
+		sb.append(histogram.getMean()).append(",");
+		sb.append(histogram.getPercentile(50)).append(",");
+		sb.append(histogram.getPercentile(90)).append(",");
+		sb.append(histogram.getPercentile(99)).append(",");
+		sb.append(histogram.getMaximum());
+		return sb.toString();
+	}
+
+}
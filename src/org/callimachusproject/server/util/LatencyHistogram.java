@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.server.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory histogram of latencies in microseconds. Buckets are linear
+ * within each power of two (log-linear), so every recorded value is within
+ * 1/{@value #SUB_BUCKETS} of its bucket bound. Recording is lock-free and does
+ * not allocate.
+ */
+public class LatencyHistogram {
+	/** number of linear buckets in each power of two */
+	public static final int SUB_BUCKETS = 8;
+	private static final int SUB_BITS = 3;
+	/** largest tracked power of two, about 19 hours in microseconds */
+	private static final int MAX_MAGNITUDE = 36;
+	private static final int BUCKETS = (MAX_MAGNITUDE - SUB_BITS + 2)
+			* SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long duration, TimeUnit unit) {
+		recordMicroseconds(unit.toMicros(duration));
+	}
+
+	public void recordMicroseconds(long micros) {
+		if (micros < 0) {
+			micros = 0;
+		}
+		counts.incrementAndGet(indexOf(micros));
+		total.incrementAndGet();
+		sum.addAndGet(micros);
+		long m;
+		while (micros > (m = max.get())) {
+			if (max.compareAndSet(m, micros))
+				break;
+		}
+	}
+
+	public long getCount() {
+		return total.get();
+	}
+
+	public long getMaximum() {
+		return max.get();
+	}
+
+	public long getMean() {
+		long count = getCount();
+		if (count == 0)
+			return 0;
+		return sum.get() / count;
+	}
+
+	/**
+	 * @param percentile
+	 *            between 0 and 100
+	 * @return the upper bound, in microseconds, of the bucket that includes
+	 *         the given percentile or zero if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long count = getCount();
+		if (count == 0)
+			return 0;
+		long rank = (long) Math.ceil(count * Math.min(percentile, 100) / 100);
+		if (rank < 1) {
+			rank = 1;
+		}
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank)
+				return Math.min(upperBoundOf(i), getMaximum());
+		}
+		return getMaximum();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		total.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getCount()).append(" × ");
+		sb.append("p50 ").append(getPercentile(50)).append("µs, ");
+		sb.append("p90 ").append(getPercentile(90)).append("µs, ");
+		sb.append("p99 ").append(getPercentile(99)).append("µs, ");
+		sb.append("max ").append(getMaximum()).append("µs");
+		return sb.toString();
+	}
+
+	static int indexOf(long micros) {
+		if (micros < SUB_BUCKETS)
+			return (int) micros;
+		int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+		if (magnitude > MAX_MAGNITUDE)
+			return BUCKETS - 1;
+		int sub = (int) (micros >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (magnitude - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	static long upperBoundOf(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int magnitude = index / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = index % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (magnitude - SUB_BITS)) - 1;
+	}
+
+}
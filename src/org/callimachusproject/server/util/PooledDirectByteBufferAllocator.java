@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.server.util;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.nio.util.ByteBufferAllocator;
+
+/**
+ * Allocates direct buffers as slices of larger direct slabs, in power of two
+ * size classes from {@value #MIN_SIZE} to {@value #MAX_SIZE} bytes. The slabs
+ * are never freed and together are kept within a memory budget. HttpCore does
+ * not release the buffers it allocates, so a slice's space is reused once the
+ * slice has been garbage collected. Larger requests, and requests once the
+ * budget is reached, are served with heap buffers. Pooled buffers are not
+ * zeroed.
+ */
+public class PooledDirectByteBufferAllocator implements ByteBufferAllocator {
+	public static final int MIN_SIZE = 1024;
+	public static final int MAX_SIZE = 64 * 1024;
+	private static final int MIN_SHIFT = 10;
+	private static final int CLASSES = 7;
+	private static final int SLAB_SIZE = 256 * 1024;
+
+	private static final class Region {
+		final ByteBuffer slab;
+		final int offset;
+		final int size;
+
+		Region(ByteBuffer slab, int offset, int size) {
+			this.slab = slab;
+			this.offset = offset;
+			this.size = size;
+		}
+
+		ByteBuffer slice(int capacity) {
+			ByteBuffer dup = slab.duplicate();
+			dup.limit(offset + capacity);
+			dup.position(offset);
+			return dup.slice();
+		}
+	}
+
+	private static final class Lease extends PhantomReference<ByteBuffer> {
+		final Region region;
+
+		Lease(ByteBuffer buffer, Region region, ReferenceQueue<ByteBuffer> queue) {
+			super(buffer, queue);
+			this.region = region;
+		}
+	}
+
+	private final ReferenceQueue<ByteBuffer> queue = new ReferenceQueue<ByteBuffer>();
+	private final Set<Lease> leased = Collections
+			.newSetFromMap(new ConcurrentHashMap<Lease, Boolean>());
+	private final Queue<Region>[] free;
+	private final ByteBuffer[] slabs = new ByteBuffer[CLASSES];
+	private final int[] carved = new int[CLASSES];
+	private final AtomicLong reserved = new AtomicLong();
+	private final AtomicLong used = new AtomicLong();
+	private final AtomicLong pooled = new AtomicLong();
+	private final AtomicLong fallbacks = new AtomicLong();
+	private volatile long maxMemory;
+
+	@SuppressWarnings("unchecked")
+	public PooledDirectByteBufferAllocator(long maxMemory) {
+		this.maxMemory = maxMemory;
+		free = new Queue[CLASSES];
+		for (int i = 0; i < CLASSES; i++) {
+			free[i] = new ConcurrentLinkedQueue<Region>();
+		}
+	}
+
+	/**
+	 * @return maximum bytes of direct memory the slabs may occupy
+	 */
+	public long getMaxMemory() {
+		return maxMemory;
+	}
+
+	/**
+	 * @param maxMemory
+	 *            maximum bytes of direct memory for new slabs, zero to only
+	 *            reuse the slabs already allocated
+	 */
+	public void setMaxMemory(long maxMemory) {
+		this.maxMemory = maxMemory;
+	}
+
+	/**
+	 * @return bytes of direct memory allocated to slabs
+	 */
+	public long getReservedMemory() {
+		return reserved.get();
+	}
+
+	/**
+	 * @return bytes of slab space held by buffers not yet garbage collected
+	 */
+	public long getUsedMemory() {
+		reclaim();
+		return used.get();
+	}
+
+	/**
+	 * @return number of buffers served from the slabs
+	 */
+	public long getPooledCount() {
+		return pooled.get();
+	}
+
+	/**
+	 * @return number of buffers served from the heap
+	 */
+	public long getFallbackCount() {
+		return fallbacks.get();
+	}
+
+	@Override
+	public ByteBuffer allocate(int capacity) {
+		reclaim();
+		int cls = sizeClass(capacity);
+		if (cls < CLASSES) {
+			Region region = free[cls].poll();
+			if (region == null) {
+				region = carve(cls);
+			}
+			if (region != null) {
+				ByteBuffer buffer = region.slice(capacity);
+				leased.add(new Lease(buffer, region, queue));
+				used.addAndGet(region.size);
+				pooled.incrementAndGet();
+				return buffer;
+			}
+		}
+		fallbacks.incrementAndGet();
+		return ByteBuffer.allocate(capacity);
+	}
+
+	static int sizeClass(int capacity) {
+		if (capacity <= MIN_SIZE)
+			return 0;
+		int shift = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+		return shift - MIN_SHIFT;
+	}
+
+	private void reclaim() {
+		Reference<? extends ByteBuffer> ref;
+		while ((ref = queue.poll()) != null) {
+			Lease lease = (Lease) ref;
+			lease.clear();
+			if (leased.remove(lease)) {
+				Region region = lease.region;
+				used.addAndGet(-region.size);
+				free[sizeClass(region.size)].offer(region);
+			}
+		}
+	}
+
+	private Region carve(int cls) {
+		int size = MIN_SIZE << cls;
+		synchronized (slabs) {
+			ByteBuffer slab = slabs[cls];
+			if (slab == null || carved[cls] + size > SLAB_SIZE) {
+				long total = reserved.get();
+				if (total + SLAB_SIZE > maxMemory)
+					return null;
+				reserved.set(total + SLAB_SIZE);
+				slabs[cls] = slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+				carved[cls] = 0;
+			}
+			int offset = carved[cls];
+			carved[cls] = offset + size;
+			return new Region(slab, offset, size);
+		}
+	}
+}
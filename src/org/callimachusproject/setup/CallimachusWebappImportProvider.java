@@ -16,6 +16,7 @@
  */
 package org.callimachusproject.setup;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -62,10 +63,10 @@ public class CallimachusWebappImportProvider extends UpdateProvider {
 			OpenRDFException, NoSuchMethodException, InvocationTargetException {
 		WebappArchiveImporter importer = new WebappArchiveImporter(webapp, repo);
 		importer.setSchemaGraphs(getSchemaGraphs(webapp, repo));
-		InputStream in = new FileInputStream(
-				SystemProperties.getWebappCarFile());
+		File car = SystemProperties.getWebappCarFile();
+		InputStream in = new FileInputStream(car);
 		try {
-			importer.importArchive(in, webapp);
+			importer.importArchive(in, car.length(), webapp);
 		} finally {
 			in.close();
 		}
@@ -16,10 +16,17 @@
  */
 package org.callimachusproject.setup;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.apache.http.HttpHost;
 import org.apache.http.client.utils.URIUtils;
@@ -45,7 +52,7 @@ import org.openrdf.repository.object.exceptions.RDFObjectException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class WebappArchiveImporter {
+public class WebappArchiveImporter implements WebappArchiveImporterMXBean {
 	private static final String GROUP_PUBLIC = "/auth/groups/public";
 	private static final String GROUP_SUPER = "/auth/groups/super";
 	private static final String SCHEMA_GRAPH = "types/RdfSchemaGraph";
@@ -62,7 +69,12 @@ public class WebappArchiveImporter {
 			.getLogger(WebappArchiveImporter.class);
 	private final String webapp;
 	private final CalliRepository repository;
+	private final AtomicLong bytesRead = new AtomicLong();
 	private URI[] schemaGraphs;
+	private volatile String importing;
+	private volatile long bytesTotal = -1;
+	private volatile long started;
+	private volatile long ended;
 
 	public WebappArchiveImporter(String webapp, CalliRepository repository) {
 		this.webapp = webapp;
@@ -75,8 +87,61 @@ public class WebappArchiveImporter {
 
 	public void importArchive(InputStream carStream, String folder) throws IOException, OpenRDFException,
 			NoSuchMethodException, InvocationTargetException {
+		importArchive(carStream, -1, folder);
+	}
+
+	/**
+	 * @param length
+	 *            size of the archive in bytes or -1 if unknown
+	 */
+	public void importArchive(InputStream carStream, long length, String folder)
+			throws IOException, OpenRDFException, NoSuchMethodException,
+			InvocationTargetException {
 		createFolder(folder, webapp, repository);
-		importArchive(carStream, folder, webapp, repository);
+		ObjectName name = registerMBean(folder);
+		try {
+			importing = folder;
+			bytesRead.set(0);
+			bytesTotal = length;
+			started = System.currentTimeMillis();
+			ended = 0;
+			importArchive(countBytes(carStream), folder, webapp, repository);
+			ended = System.currentTimeMillis();
+			logger.info("Imported {} bytes into {} at {} KiB/s", new Object[] {
+					bytesRead.get(), folder, (int) (getBytesPerSecond() / 1024) });
+		} finally {
+			if (ended == 0) {
+				ended = System.currentTimeMillis();
+			}
+			unregisterMBean(name);
+		}
+	}
+
+	public String getFolder() {
+		return importing;
+	}
+
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	public long getBytesTotal() {
+		return bytesTotal;
+	}
+
+	public long getElapsedMillis() {
+		if (started == 0)
+			return 0;
+		if (ended == 0)
+			return System.currentTimeMillis() - started;
+		return ended - started;
+	}
+
+	public double getBytesPerSecond() {
+		long elapsed = getElapsedMillis();
+		if (elapsed <= 0)
+			return 0;
+		return bytesRead.get() * 1000.0 / elapsed;
 	}
 
 	public void removeFolder(String folder) {
@@ -140,6 +205,58 @@ public class WebappArchiveImporter {
 		}
 	}
 
+	private InputStream countBytes(InputStream in) {
+		return new FilterInputStream(in) {
+			public int read() throws IOException {
+				int read = super.read();
+				if (read >= 0) {
+					bytesRead.incrementAndGet();
+				}
+				return read;
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = super.read(b, off, len);
+				if (read > 0) {
+					bytesRead.addAndGet(read);
+				}
+				return read;
+			}
+
+			public long skip(long n) throws IOException {
+				long skipped = super.skip(n);
+				bytesRead.addAndGet(skipped);
+				return skipped;
+			}
+		};
+	}
+
+	private ObjectName registerMBean(String folder) {
+		try {
+			ObjectName name = new ObjectName("org.callimachusproject:type="
+					+ WebappArchiveImporter.class.getSimpleName() + ",name="
+					+ ObjectName.quote(folder));
+			MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			if (!mbs.isRegistered(name)) {
+				mbs.registerMBean(this, name);
+				return name;
+			}
+		} catch (JMException e) {
+			logger.debug(e.toString(), e);
+		}
+		return null;
+	}
+
+	private void unregisterMBean(ObjectName name) {
+		if (name == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		} catch (JMException e) {
+			logger.debug(e.toString(), e);
+		}
+	}
+
 	private boolean disableAuditingRemoval(RepositoryConnection con)
 			throws RepositoryException {
 		if (con instanceof AuditingRepositoryConnection) {
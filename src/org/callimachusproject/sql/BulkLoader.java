@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.callimachusproject.concurrent.ManagedExecutors;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.datatypes.XMLDatatypeUtil;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inserts query result rows into a table as a pipeline. The calling thread
+ * reads the rows into batches. A bounded queue hands them to insert workers,
+ * one per connection. The batch size grows or shrinks so that each batch
+ * takes about half a second to execute.
+ */
+public class BulkLoader {
+	private static final int INITIAL_BATCH_SIZE = 1000;
+	private static final int MIN_BATCH_SIZE = 100;
+	private static final int MAX_BATCH_SIZE = 16000;
+	private static final long TARGET_BATCH_MILLIS = 500;
+	private static final long PROGRESS_INTERVAL = 10000;
+	private static final ExecutorService executor = ManagedExecutors
+			.getInstance().newCachedPool("SqlBulkLoader");
+
+	private final Logger logger = LoggerFactory.getLogger(BulkLoader.class);
+	private final String tablename;
+	private final String insertSql;
+	private final List<String> columns;
+	private final int[] types;
+	private final AtomicLong rowCount = new AtomicLong();
+	private final AtomicLong lastProgress = new AtomicLong();
+	private volatile int batchSize = INITIAL_BATCH_SIZE;
+
+	/**
+	 * @param tablename
+	 *            name of the table used in progress messages
+	 * @param insertSql
+	 *            parameterised INSERT statement with one parameter per column
+	 * @param columns
+	 *            binding names in parameter order
+	 * @param types
+	 *            java.sql.Types of each parameter
+	 */
+	public BulkLoader(String tablename, String insertSql, List<String> columns,
+			int[] types) {
+		assert columns.size() == types.length;
+		this.tablename = tablename;
+		this.insertSql = insertSql;
+		this.columns = columns;
+		this.types = types;
+	}
+
+	public long getRowCount() {
+		return rowCount.get();
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Inserts the rows in order through the given connection, leaving the
+	 * transaction open for the caller to commit or roll back.
+	 */
+	public long loadInTransaction(TupleQueryResult rows, Connection conn)
+			throws SQLException, QueryEvaluationException {
+		List<Connection> list = new ArrayList<Connection>(1);
+		list.add(conn);
+		return load(rows, list, false);
+	}
+
+	/**
+	 * Inserts the rows through all of the given connections at once,
+	 * committing each batch as it is executed. Rows may be inserted out of
+	 * order, and batches committed before a failure remain in the table.
+	 */
+	public long loadInParallel(TupleQueryResult rows, List<Connection> conns)
+			throws SQLException, QueryEvaluationException {
+		return load(rows, conns, true);
+	}
+
+	private long load(TupleQueryResult rows, List<Connection> conns,
+			boolean commit) throws SQLException, QueryEvaluationException {
+		rowCount.set(0);
+		lastProgress.set(System.currentTimeMillis());
+		int workers = conns.size();
+		BlockingQueue<List<Value[]>> queue = new ArrayBlockingQueue<List<Value[]>>(
+				workers * 2);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+		boolean done = false;
+		try {
+			for (Connection conn : conns) {
+				futures.add(executor.submit(insert(queue, conn, commit)));
+			}
+			List<Value[]> batch = new ArrayList<Value[]>(batchSize);
+			while (rows.hasNext()) {
+				BindingSet row = rows.next();
+				Value[] values = new Value[columns.size()];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = row.getValue(columns.get(i));
+				}
+				batch.add(values);
+				if (batch.size() >= batchSize) {
+					put(queue, batch, futures);
+					batch = new ArrayList<Value[]>(batchSize);
+				}
+			}
+			if (!batch.isEmpty()) {
+				put(queue, batch, futures);
+			}
+			for (int i = 0; i < workers; i++) {
+				put(queue, new ArrayList<Value[]>(0), futures);
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+			done = true;
+			logger.info("Loaded {} rows into {}", rowCount.get(), tablename);
+			return rowCount.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException(e);
+		} catch (ExecutionException e) {
+			try {
+				throw e.getCause();
+			} catch (SQLException cause) {
+				throw cause;
+			} catch (RuntimeException cause) {
+				throw cause;
+			} catch (Error cause) {
+				throw cause;
+			} catch (Throwable cause) {
+				throw new SQLException(cause);
+			}
+		} finally {
+			if (!done) {
+				for (Future<Void> future : futures) {
+					future.cancel(true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits for room in the queue, giving up if any worker has stopped.
+	 */
+	private void put(BlockingQueue<List<Value[]>> queue, List<Value[]> batch,
+			List<Future<Void>> futures) throws InterruptedException,
+			ExecutionException {
+		while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+			for (Future<Void> future : futures) {
+				if (future.isDone()) {
+					future.get();
+					throw new ExecutionException(new SQLException(
+							"Insert worker stopped early"));
+				}
+			}
+		}
+	}
+
+	private Callable<Void> insert(final BlockingQueue<List<Value[]>> queue,
+			final Connection conn, final boolean commit) {
+		return new Callable<Void>() {
+			public Void call() throws SQLException, InterruptedException {
+				PreparedStatement insert = conn.prepareStatement(insertSql);
+				try {
+					List<Value[]> batch;
+					while (!(batch = queue.take()).isEmpty()) {
+						long start = System.currentTimeMillis();
+						for (Value[] values : batch) {
+							for (int i = 0; i < values.length; i++) {
+								setValue(insert, i + 1, values[i], types[i]);
+							}
+							insert.addBatch();
+						}
+						insert.executeBatch();
+						if (commit) {
+							conn.commit();
+						}
+						adapt(batch.size(), System.currentTimeMillis() - start);
+						progress(batch.size());
+					}
+					return null;
+				} catch (SQLException e) {
+					if (commit) {
+						conn.rollback();
+					}
+					throw e;
+				} finally {
+					insert.close();
+				}
+			}
+		};
+	}
+
+	private void adapt(int size, long millis) {
+		if (size < batchSize)
+			return;
+		if (millis < TARGET_BATCH_MILLIS / 2 && size * 2 <= MAX_BATCH_SIZE) {
+			batchSize = size * 2;
+		} else if (millis > TARGET_BATCH_MILLIS * 2
+				&& size / 2 >= MIN_BATCH_SIZE) {
+			batchSize = size / 2;
+		}
+	}
+
+	private void progress(int size) {
+		long count = rowCount.addAndGet(size);
+		long now = System.currentTimeMillis();
+		long last = lastProgress.get();
+		if (now - last >= PROGRESS_INTERVAL
+				&& lastProgress.compareAndSet(last, now)) {
+			logger.info("Loaded {} rows into {} so far", count, tablename);
+		}
+	}
+
+	private void setValue(PreparedStatement insert, int col, Value value,
+			int type) throws SQLException {
+		if (value == null) {
+			insert.setNull(col, type);
+		} else if (value instanceof Literal) {
+			Literal lit = (Literal) value;
+			URI datatype = lit.getDatatype();
+			if (datatype == null) {
+				insert.setString(col, value.stringValue());
+			} else if (XMLDatatypeUtil.isCalendarDatatype(datatype)) {
+				GregorianCalendar cal = lit.calendarValue()
+						.toGregorianCalendar();
+				insert.setDate(col, new java.sql.Date(cal.getTimeInMillis()),
+						cal);
+			} else {
+				insert.setString(col, value.stringValue());
+			}
+		} else {
+			insert.setString(col, value.stringValue());
+		}
+	}
+}
@@ -18,7 +18,10 @@ package org.callimachusproject.sql;
 
 import java.sql.Driver;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Properties;
 
@@ -27,8 +30,106 @@ import org.apache.commons.dbcp.DriverConnectionFactory;
 import org.apache.commons.pool.ObjectPool;
 import org.apache.commons.pool.impl.GenericObjectPool;
 
-public class DriverConnectionPoolManager {
+/**
+ * Keeps a pool of connections for each registered datasource. Each pooled
+ * connection keeps its recently prepared statements.
+ */
+public class DriverConnectionPoolManager implements
+		DriverConnectionPoolManagerMXBean {
+	private static final DriverConnectionPoolManager instance = new DriverConnectionPoolManager();
+
+	public static DriverConnectionPoolManager getInstance() {
+		return instance;
+	}
+
 	private final HashMap<String, ObjectPool<PoolableDriverConnection>> pools = new HashMap<>();
+	private final Map<String, PoolableDriverConnectionFactory> factories = new HashMap<>();
+	private volatile int fetchSize = 500;
+	private int statementCacheSize = 64;
+
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	public void setFetchSize(int rows) {
+		this.fetchSize = rows;
+	}
+
+	public synchronized int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	public synchronized void setStatementCacheSize(int statements) {
+		this.statementCacheSize = statements;
+		for (PoolableDriverConnectionFactory factory : factories.values()) {
+			factory.setMaxStatements(statements);
+		}
+	}
+
+	public synchronized int getPoolCount() {
+		return pools.size();
+	}
+
+	public synchronized int getActiveConnections() {
+		int active = 0;
+		for (ObjectPool<PoolableDriverConnection> pool : pools.values()) {
+			active += Math.max(0, pool.getNumActive());
+		}
+		return active;
+	}
+
+	public synchronized int getIdleConnections() {
+		int idle = 0;
+		for (ObjectPool<PoolableDriverConnection> pool : pools.values()) {
+			idle += Math.max(0, pool.getNumIdle());
+		}
+		return idle;
+	}
+
+	public synchronized long getStatementCacheHits() {
+		long hits = 0;
+		for (PoolableDriverConnectionFactory factory : factories.values()) {
+			hits += factory.getStatementRequests()
+					- factory.getStatementMisses();
+		}
+		return hits;
+	}
+
+	public synchronized long getStatementCacheMisses() {
+		long misses = 0;
+		for (PoolableDriverConnectionFactory factory : factories.values()) {
+			misses += factory.getStatementMisses();
+		}
+		return misses;
+	}
+
+	public double getStatementCacheHitRatio() {
+		long hits;
+		long misses;
+		synchronized (this) {
+			hits = getStatementCacheHits();
+			misses = getStatementCacheMisses();
+		}
+		long total = hits + misses;
+		if (total == 0)
+			return 0;
+		return (double) hits / total;
+	}
+
+	public synchronized String[] getPoolSummary() {
+		List<String> lines = new ArrayList<String>(pools.size());
+		for (Map.Entry<String, ObjectPool<PoolableDriverConnection>> e : pools
+				.entrySet()) {
+			ObjectPool<PoolableDriverConnection> pool = e.getValue();
+			PoolableDriverConnectionFactory factory = factories.get(e.getKey());
+			long requests = factory.getStatementRequests();
+			long misses = factory.getStatementMisses();
+			lines.add(e.getKey() + "," + pool.getNumActive() + ","
+					+ pool.getNumIdle() + "," + (requests - misses) + ","
+					+ misses);
+		}
+		return lines.toArray(new String[lines.size()]);
+	}
 
 	public synchronized void registerDriver(String name, Driver driver,
 			String url, Properties info, GenericObjectPool.Config config,
@@ -41,15 +142,18 @@ public class DriverConnectionPoolManager {
 		}
 		factory = new DriverConnectionFactory(driver, url, info);
 		poolable = new PoolableDriverConnectionFactory(factory, validationQuery);
+		poolable.setMaxStatements(statementCacheSize);
 		pool = new GenericObjectPool<PoolableDriverConnection>(poolable, config);
 		poolable.setPool(pool);
 		pools.put(name, pool);
+		factories.put(name, poolable);
 	}
 
 	public synchronized void deregisterDriver(String name) throws SQLException {
 		ObjectPool<PoolableDriverConnection> pool = pools.get(name);
 		if (pool != null) {
 			pools.remove(name);
+			factories.remove(name);
 			try {
 				pool.close();
 			} catch (Exception e) {
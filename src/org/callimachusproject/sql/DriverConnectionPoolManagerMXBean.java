@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.sql;
+
+public interface DriverConnectionPoolManagerMXBean {
+
+	/**
+	 * Number of rows a driver is asked to fetch at a time when reading query
+	 * results, zero leaves it to the driver.
+	 */
+	int getFetchSize();
+
+	void setFetchSize(int rows);
+
+	/**
+	 * Maximum prepared statements each pooled connection keeps, zero disables
+	 * statement caching for connections opened afterwards.
+	 */
+	int getStatementCacheSize();
+
+	void setStatementCacheSize(int statements);
+
+	int getPoolCount();
+
+	int getActiveConnections();
+
+	int getIdleConnections();
+
+	long getStatementCacheHits();
+
+	long getStatementCacheMisses();
+
+	double getStatementCacheHitRatio();
+
+	/**
+	 * CSV lines of datasource,active,idle,statementHits,statementMisses
+	 */
+	String[] getPoolSummary();
+
+}
@@ -20,6 +20,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.dbcp.ConnectionFactory;
 import org.apache.commons.pool.ObjectPool;
@@ -34,7 +35,10 @@ public class PoolableDriverConnectionFactory implements
 			.getLogger(PoolableDriverConnectionFactory.class);
 	private final ConnectionFactory factory;
 	private final String validationQuery;
+	private final AtomicLong statementRequests = new AtomicLong();
+	private final AtomicLong statementMisses = new AtomicLong();
 	private volatile ObjectPool<PoolableDriverConnection> pool = null;
+	private volatile int maxStatements;
 
 	/**
 	 * @param connFactory
@@ -49,6 +53,36 @@ public class PoolableDriverConnectionFactory implements
 		this.validationQuery = validationQuery;
 	}
 
+	/**
+	 * @return maximum prepared statements kept by each new connection
+	 */
+	public int getMaxStatements() {
+		return maxStatements;
+	}
+
+	/**
+	 * @param maxStatements
+	 *            maximum prepared statements kept by each connection created
+	 *            from now on, zero to not keep them
+	 */
+	public void setMaxStatements(int maxStatements) {
+		this.maxStatements = maxStatements;
+	}
+
+	/**
+	 * @return number of prepared statements requested from cached statements
+	 */
+	public long getStatementRequests() {
+		return statementRequests.get();
+	}
+
+	/**
+	 * @return number of prepared statements that were not already cached
+	 */
+	public long getStatementMisses() {
+		return statementMisses.get();
+	}
+
 	/**
 	 * @param pool
 	 *            the {@link ObjectPool} in which to pool those
@@ -74,6 +108,11 @@ public class PoolableDriverConnectionFactory implements
 		if (conn.isClosed()) {
 			throw new SQLException("connection closed");
 		}
+		int max = maxStatements;
+		if (max > 0) {
+			conn = new StatementCachingConnection(conn, max,
+					statementRequests, statementMisses);
+		}
 		return new PoolableDriverConnection(conn, pool);
 	}
 
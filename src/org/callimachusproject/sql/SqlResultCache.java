@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.sql;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.TupleQueryResultImpl;
+
+/**
+ * Keeps the complete results of recent SQL queries, by datasource and SQL
+ * text, for datasources that give their results a max age. Any change to a
+ * datasource made through Callimachus invalidates its results. A result is
+ * only kept if it was read to the end and it is no larger than an eighth of
+ * the cache.
+ */
+public class SqlResultCache implements SqlResultCacheMXBean {
+	private static final int ENTRY_OVERHEAD = 64;
+	private static final int VALUE_OVERHEAD = 48;
+	private static final SqlResultCache instance = new SqlResultCache();
+
+	public static SqlResultCache getInstance() {
+		return instance;
+	}
+
+	private final Map<Key, CachedResult> results = new LinkedHashMap<Key, CachedResult>(
+			16, 0.75f, true);
+	private final Map<String, Long> generations = new HashMap<String, Long>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+	private volatile long maxBytes = 32 * 1024 * 1024;
+	private volatile long timeToLive = 5 * 60 * 1000;
+	private long bytes;
+
+	SqlResultCache() {
+		// singleton, but tests use their own instances
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		synchronized (this) {
+			evict();
+		}
+	}
+
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+
+	public void setTimeToLive(long milliseconds) {
+		this.timeToLive = milliseconds;
+	}
+
+	public synchronized long getEstimatedBytes() {
+		return bytes;
+	}
+
+	public synchronized int getEntryCount() {
+		return results.size();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public double getHitRatio() {
+		long h = hits.get();
+		long total = h + misses.get();
+		if (total == 0)
+			return 0;
+		return (double) h / total;
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	public long getInvalidationCount() {
+		return invalidations.get();
+	}
+
+	/**
+	 * Removes the results of the given datasource and ignores results that
+	 * are still being read from it.
+	 */
+	public synchronized void invalidate(String datasource) {
+		invalidations.incrementAndGet();
+		generations.put(datasource, generation(datasource) + 1);
+		Iterator<Map.Entry<Key, CachedResult>> iter = results.entrySet()
+				.iterator();
+		while (iter.hasNext()) {
+			Map.Entry<Key, CachedResult> e = iter.next();
+			if (e.getKey().datasource.equals(datasource)) {
+				bytes -= e.getValue().bytes;
+				iter.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		for (String datasource : new ArrayList<String>(generations.keySet())) {
+			generations.put(datasource, generation(datasource) + 1);
+		}
+		results.clear();
+		bytes = 0;
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+		invalidations.set(0);
+	}
+
+	/**
+	 * A copy of the cached result or null if the query is not cached.
+	 */
+	public TupleQueryResult get(String datasource, String sql) {
+		Key key = new Key(datasource, sql);
+		CachedResult cached;
+		synchronized (this) {
+			cached = results.get(key);
+			if (cached != null
+					&& cached.expires < System.currentTimeMillis()) {
+				results.remove(key);
+				bytes -= cached.bytes;
+				cached = null;
+			}
+		}
+		if (cached == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return new TupleQueryResultImpl(cached.names, cached.rows);
+	}
+
+	/**
+	 * The current generation of the datasource, to be read before the query
+	 * is executed and passed to {@link #cache}.
+	 */
+	public synchronized long getGeneration(String datasource) {
+		return generation(datasource);
+	}
+
+	/**
+	 * Wraps the result so that its rows are cached when it is read to the
+	 * end and closed, unless the datasource was invalidated since the given
+	 * generation.
+	 * 
+	 * @param maxAge
+	 *            milliseconds the result may be used for, zero to not cache
+	 *            the result
+	 */
+	public TupleQueryResult cache(String datasource, String sql,
+			long generation, long maxAge, TupleQueryResult result)
+			throws QueryEvaluationException {
+		long limit = maxBytes / 8;
+		long ttl = Math.min(maxAge, timeToLive);
+		if (limit <= 0 || ttl <= 0)
+			return result;
+		Key key = new Key(datasource, sql);
+		return new CachingTupleResult(key, generation, limit, ttl, result);
+	}
+
+	synchronized void put(Key key, long generation, CachedResult cached) {
+		if (generation != generation(key.datasource))
+			return;
+		CachedResult previous = results.put(key, cached);
+		if (previous != null) {
+			bytes -= previous.bytes;
+		}
+		bytes += cached.bytes;
+		evict();
+	}
+
+	private long generation(String datasource) {
+		Long generation = generations.get(datasource);
+		return generation == null ? 0 : generation;
+	}
+
+	private void evict() {
+		Iterator<CachedResult> iter = results.values().iterator();
+		while (bytes > maxBytes && iter.hasNext()) {
+			bytes -= iter.next().bytes;
+			iter.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Collapses runs of whitespace outside of quotes and comments, so the
+	 * same query written on different lines shares a result.
+	 */
+	static String normalize(String sql) {
+		StringBuilder sb = new StringBuilder(sql.length());
+		// the character that ends the current quote or comment
+		char quote = 0;
+		boolean space = false;
+		for (int i = 0, n = sql.length(); i < n; i++) {
+			char chr = sql.charAt(i);
+			char next = i + 1 < n ? sql.charAt(i + 1) : 0;
+			if (quote == 0 && Character.isWhitespace(chr)) {
+				space = sb.length() > 0;
+				continue;
+			}
+			if (space) {
+				sb.append(' ');
+				space = false;
+			}
+			sb.append(chr);
+			if (quote == 0) {
+				if (chr == '\'' || chr == '"') {
+					quote = chr;
+				} else if (chr == '-' && next == '-') {
+					quote = '\n';
+					sb.append(next);
+					i++;
+				} else if (chr == '/' && next == '*') {
+					quote = '/';
+					sb.append(next);
+					i++;
+				}
+			} else if (quote == '/') {
+				if (chr == '*' && next == '/') {
+					quote = 0;
+					sb.append(next);
+					i++;
+				}
+			} else if (chr == quote) {
+				quote = 0;
+			}
+		}
+		return sb.toString();
+	}
+
+	static final class Key {
+		final String datasource;
+		final String sql;
+
+		Key(String datasource, String sql) {
+			this.datasource = datasource;
+			this.sql = normalize(sql);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * datasource.hashCode() + sql.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return datasource.equals(other.datasource) && sql.equals(other.sql);
+		}
+	}
+
+	static final class CachedResult {
+		final List<String> names;
+		final List<BindingSet> rows;
+		final long bytes;
+		final long expires;
+
+		CachedResult(List<String> names, List<BindingSet> rows, long bytes,
+				long expires) {
+			this.names = names;
+			this.rows = rows;
+			this.bytes = bytes;
+			this.expires = expires;
+		}
+	}
+
+	private final class CachingTupleResult implements TupleQueryResult {
+		private final Key key;
+		private final long generation;
+		private final long limit;
+		private final long ttl;
+		private final TupleQueryResult delegate;
+		private final List<String> names;
+		private List<BindingSet> rows = new ArrayList<BindingSet>();
+		private long size = ENTRY_OVERHEAD;
+		private boolean exhausted;
+
+		CachingTupleResult(Key key, long generation, long limit, long ttl,
+				TupleQueryResult delegate) throws QueryEvaluationException {
+			this.key = key;
+			this.generation = generation;
+			this.limit = limit;
+			this.ttl = ttl;
+			this.delegate = delegate;
+			this.names = delegate.getBindingNames();
+		}
+
+		public List<String> getBindingNames() {
+			return names;
+		}
+
+		public boolean hasNext() throws QueryEvaluationException {
+			boolean hasNext = delegate.hasNext();
+			if (!hasNext) {
+				exhausted = true;
+			}
+			return hasNext;
+		}
+
+		public BindingSet next() throws QueryEvaluationException {
+			BindingSet next = delegate.next();
+			if (next == null) {
+				exhausted = true;
+			} else if (rows != null) {
+				size += ENTRY_OVERHEAD;
+				for (String name : names) {
+					Value value = next.getValue(name);
+					if (value != null) {
+						size += VALUE_OVERHEAD + 2 * value.stringValue().length();
+					}
+				}
+				if (size > limit) {
+					rows = null;
+				} else {
+					rows.add(next);
+				}
+			}
+			return next;
+		}
+
+		public void remove() throws QueryEvaluationException {
+			rows = null;
+			delegate.remove();
+		}
+
+		public void close() throws QueryEvaluationException {
+			try {
+				if (exhausted && rows != null) {
+					long expires = System.currentTimeMillis() + ttl;
+					put(key, generation, new CachedResult(names, rows, size,
+							expires));
+				}
+			} finally {
+				rows = null;
+				delegate.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.sql;
+
+public interface SqlResultCacheMXBean {
+
+	/**
+	 * Estimated number of bytes all cached results may occupy, zero disables
+	 * the cache.
+	 */
+	long getMaxBytes();
+
+	void setMaxBytes(long maxBytes);
+
+	/**
+	 * Most milliseconds any result is used for, whatever the max age of its
+	 * datasource.
+	 */
+	long getTimeToLive();
+
+	void setTimeToLive(long milliseconds);
+
+	long getEstimatedBytes();
+
+	int getEntryCount();
+
+	long getHitCount();
+
+	long getMissCount();
+
+	double getHitRatio();
+
+	long getEvictionCount();
+
+	long getInvalidationCount();
+
+	void invalidate(String datasource);
+
+	void clear();
+
+}
@@ -22,7 +22,9 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.List;
 
@@ -38,15 +40,36 @@ import org.openrdf.model.vocabulary.XMLSchema;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.TupleQueryResult;
-import org.openrdf.query.impl.MapBindingSet;
+import org.openrdf.query.impl.ListBindingSet;
 
+/**
+ * Iterates over a JDBC {@link ResultSet} as SPARQL results. The column names
+ * and the conversion used for each column are read from the result metadata
+ * once, when the result is created. Like other query results, instances are
+ * not safe for use by multiple threads.
+ */
 public final class SqlTupleResult implements TupleQueryResult {
+	private static DatatypeFactory sharedDatatypeFactory;
+
+	/**
+	 * The JDK's DatatypeFactory holds no state after it is created, so one
+	 * instance is shared rather than repeating the service lookup per query.
+	 */
+	private static synchronized DatatypeFactory getDatatypeFactory()
+			throws DatatypeConfigurationException {
+		if (sharedDatatypeFactory == null) {
+			sharedDatatypeFactory = DatatypeFactory.newInstance();
+		}
+		return sharedDatatypeFactory;
+	}
+
 	private final ValueFactory vf = ValueFactoryImpl.getInstance();
 	private final ResultSet rs;
 	private final Statement stmt;
 	private final Connection conn;
-	private final ResultSetMetaData md;
 	private final DatatypeFactory df;
+	private final List<String> names;
+	private final ColumnType[] types;
 	private BindingSet next;
 
 	public SqlTupleResult(ResultSet rs, Statement stmt, Connection conn)
@@ -54,8 +77,16 @@ public final class SqlTupleResult implements TupleQueryResult {
 		this.rs = rs;
 		this.stmt = stmt;
 		this.conn = conn;
-		md = rs.getMetaData();
-		df = DatatypeFactory.newInstance();
+		this.df = getDatatypeFactory();
+		ResultSetMetaData md = rs.getMetaData();
+		int n = md.getColumnCount();
+		List<String> list = new ArrayList<String>(n);
+		types = new ColumnType[n];
+		for (int col = 1; col <= n; col++) {
+			list.add(md.getColumnName(col));
+			types[col - 1] = ColumnType.valueOf(md.getColumnType(col));
+		}
+		names = Collections.unmodifiableList(list);
 	}
 
 	@Override
@@ -72,16 +103,7 @@ public final class SqlTupleResult implements TupleQueryResult {
 	@Override
 	public List<String> getBindingNames()
 			throws QueryEvaluationException {
-		try {
-			int n = md.getColumnCount();
-			List<String> names = new ArrayList<>(n);
-			for (int col = 1; col <= n; col++) {
-				names.add(md.getColumnName(col));
-			}
-			return names;
-		} catch (SQLException e) {
-			throw new QueryEvaluationException(e.toString(), e);
-		}
+		return names;
 	}
 
 	@Override
@@ -90,25 +112,23 @@ public final class SqlTupleResult implements TupleQueryResult {
 	}
 
 	@Override
-	public synchronized BindingSet next() throws QueryEvaluationException {
-		try {
-			if (next != null)
-				return next;
-		} finally {
+	public BindingSet next() throws QueryEvaluationException {
+		if (next != null) {
+			BindingSet result = next;
 			next = null;
+			return result;
 		}
 		try {
 			if (!rs.next())
 				return null;
-			int n = md.getColumnCount();
-			MapBindingSet map = new MapBindingSet(n);
-			for (int col = 1; col <= n; col++) {
-				Value value = value(col);
-				if (value != null) {
-					map.addBinding(md.getColumnName(col), value);
+			Value[] values = new Value[types.length];
+			for (int i = 0; i < types.length; i++) {
+				String str = rs.getString(i + 1);
+				if (str != null) {
+					values[i] = types[i].value(str, rs, i + 1, vf, df);
 				}
 			}
-			return map;
+			return new ListBindingSet(names, Arrays.asList(values));
 		} catch (SQLException e) {
 			throw new QueryEvaluationException(e.toString(), e);
 		}
@@ -123,80 +143,142 @@ public final class SqlTupleResult implements TupleQueryResult {
 		}
 	}
 
-	private Value value(int col) throws SQLException {
-		int type = md.getColumnType(col);
-		String str = rs.getString(col);
-		if (str == null)
-			return null;
-		switch (type) {
-		case java.sql.Types.NULL:
-			return null;
-		case java.sql.Types.DATALINK:
-			return vf.createURI(str);
-		case java.sql.Types.BINARY:
-		case java.sql.Types.VARBINARY:
-		case java.sql.Types.BIT:
-		case java.sql.Types.BLOB:
-		case java.sql.Types.LONGVARBINARY:
-		case java.sql.Types.JAVA_OBJECT:
-			return vf.createLiteral(Hex.encodeHexString(rs.getBytes(col)), XMLSchema.HEXBINARY);
-		case java.sql.Types.DECIMAL:
-		case java.sql.Types.NUMERIC:
-			return vf.createLiteral(str, XMLSchema.DECIMAL);
-		case java.sql.Types.TINYINT:
-		case java.sql.Types.SMALLINT:
-		case java.sql.Types.INTEGER:
-		case java.sql.Types.BIGINT:
-			return vf.createLiteral(str, XMLSchema.INTEGER);
-		case java.sql.Types.DOUBLE:
-		case java.sql.Types.FLOAT:
-		case java.sql.Types.REAL:
-			return vf.createLiteral(str, XMLSchema.DOUBLE);
-		case java.sql.Types.BOOLEAN:
-			return vf.createLiteral(rs.getBoolean(col));
-		case java.sql.Types.DATE:
-			GregorianCalendar date = new GregorianCalendar();
-			date.setTime(rs.getDate(col));
-			date.clear(Calendar.AM_PM);
-			date.clear(Calendar.HOUR);
-			date.clear(Calendar.HOUR_OF_DAY);
-			date.clear(Calendar.MINUTE);
-			date.clear(Calendar.SECOND);
-			date.clear(Calendar.MILLISECOND);
-			return vf.createLiteral(df.newXMLGregorianCalendar(date));
-		case java.sql.Types.TIME:
-			GregorianCalendar time = new GregorianCalendar();
-			time.setTime(rs.getTime(col));
-			time.clear(Calendar.ERA);
-			time.clear(Calendar.YEAR);
-			time.clear(Calendar.MONTH);
-			time.clear(Calendar.WEEK_OF_YEAR);
-			time.clear(Calendar.WEEK_OF_MONTH);
-			time.clear(Calendar.DATE);
-			time.clear(Calendar.DAY_OF_MONTH);
-			time.clear(Calendar.DAY_OF_YEAR);
-			time.clear(Calendar.DAY_OF_WEEK);
-			time.clear(Calendar.DAY_OF_WEEK_IN_MONTH);
-			return vf.createLiteral(df.newXMLGregorianCalendar(time));
-		case java.sql.Types.TIMESTAMP:
-			return vf.createLiteral(rs.getTimestamp(col));
-		case java.sql.Types.SQLXML:
-			return vf.createLiteral(str, RDF.XMLLITERAL);
-		case java.sql.Types.ARRAY:
-		case java.sql.Types.CHAR:
-		case java.sql.Types.CLOB:
-		case java.sql.Types.DISTINCT:
-		case java.sql.Types.LONGNVARCHAR:
-		case java.sql.Types.NCHAR:
-		case java.sql.Types.NCLOB:
-		case java.sql.Types.NVARCHAR:
-		case java.sql.Types.OTHER:
-		case java.sql.Types.REF:
-		case java.sql.Types.ROWID:
-		case java.sql.Types.STRUCT:
-		case java.sql.Types.VARCHAR:
-		default:
-			return vf.createLiteral(str);
+	private enum ColumnType {
+		NULL {
+			Value value(String str, ResultSet rs, int col, ValueFactory vf,
+					DatatypeFactory df) {
+				return null;
+			}
+		},
+		URI {
+			Value value(String str, ResultSet rs, int col, ValueFactory vf,
+					DatatypeFactory df) {
+				return vf.createURI(str);
+			}
+		},
+		HEX_BINARY {
+			Value value(String str, ResultSet rs, int col, ValueFactory vf,
+					DatatypeFactory df) throws SQLException {
+				return vf.createLiteral(Hex.encodeHexString(rs.getBytes(col)),
+						XMLSchema.HEXBINARY);
+			}
+		},
+		DECIMAL {
+			Value value(String str, ResultSet rs, int col, ValueFactory vf,
+					DatatypeFactory df) {
+				return vf.createLiteral(str, XMLSchema.DECIMAL);
+			}
+		},
+		INTEGER {
+			Value value(String str, ResultSet rs, int col, ValueFactory vf,
+					DatatypeFactory df) {
+				return vf.createLiteral(str, XMLSchema.INTEGER);
+			}
+		},
+		DOUBLE {
+			Value value(String str, ResultSet rs, int col, ValueFactory vf,
+					DatatypeFactory df) {
+				return vf.createLiteral(str, XMLSchema.DOUBLE);
+			}
+		},
+		BOOLEAN {
+			Value value(String str, ResultSet rs, int col, ValueFactory vf,
+					DatatypeFactory df) throws SQLException {
+				return vf.createLiteral(rs.getBoolean(col));
+			}
+		},
+		DATE {
+			Value value(String str, ResultSet rs, int col, ValueFactory vf,
+					DatatypeFactory df) throws SQLException {
+				GregorianCalendar date = new GregorianCalendar();
+				date.setTime(rs.getDate(col));
+				date.clear(Calendar.AM_PM);
+				date.clear(Calendar.HOUR);
+				date.clear(Calendar.HOUR_OF_DAY);
+				date.clear(Calendar.MINUTE);
+				date.clear(Calendar.SECOND);
+				date.clear(Calendar.MILLISECOND);
+				return vf.createLiteral(df.newXMLGregorianCalendar(date));
+			}
+		},
+		TIME {
+			Value value(String str, ResultSet rs, int col, ValueFactory vf,
+					DatatypeFactory df) throws SQLException {
+				GregorianCalendar time = new GregorianCalendar();
+				time.setTime(rs.getTime(col));
+				time.clear(Calendar.ERA);
+				time.clear(Calendar.YEAR);
+				time.clear(Calendar.MONTH);
+				time.clear(Calendar.WEEK_OF_YEAR);
+				time.clear(Calendar.WEEK_OF_MONTH);
+				time.clear(Calendar.DATE);
+				time.clear(Calendar.DAY_OF_MONTH);
+				time.clear(Calendar.DAY_OF_YEAR);
+				time.clear(Calendar.DAY_OF_WEEK);
+				time.clear(Calendar.DAY_OF_WEEK_IN_MONTH);
+				return vf.createLiteral(df.newXMLGregorianCalendar(time));
+			}
+		},
+		TIMESTAMP {
+			Value value(String str, ResultSet rs, int col, ValueFactory vf,
+					DatatypeFactory df) throws SQLException {
+				return vf.createLiteral(rs.getTimestamp(col));
+			}
+		},
+		XML_LITERAL {
+			Value value(String str, ResultSet rs, int col, ValueFactory vf,
+					DatatypeFactory df) {
+				return vf.createLiteral(str, RDF.XMLLITERAL);
+			}
+		},
+		STRING {
+			Value value(String str, ResultSet rs, int col, ValueFactory vf,
+					DatatypeFactory df) {
+				return vf.createLiteral(str);
+			}
+		};
+
+		static ColumnType valueOf(int sqlType) {
+			switch (sqlType) {
+			case java.sql.Types.NULL:
+				return NULL;
+			case java.sql.Types.DATALINK:
+				return URI;
+			case java.sql.Types.BINARY:
+			case java.sql.Types.VARBINARY:
+			case java.sql.Types.BIT:
+			case java.sql.Types.BLOB:
+			case java.sql.Types.LONGVARBINARY:
+			case java.sql.Types.JAVA_OBJECT:
+				return HEX_BINARY;
+			case java.sql.Types.DECIMAL:
+			case java.sql.Types.NUMERIC:
+				return DECIMAL;
+			case java.sql.Types.TINYINT:
+			case java.sql.Types.SMALLINT:
+			case java.sql.Types.INTEGER:
+			case java.sql.Types.BIGINT:
+				return INTEGER;
+			case java.sql.Types.DOUBLE:
+			case java.sql.Types.FLOAT:
+			case java.sql.Types.REAL:
+				return DOUBLE;
+			case java.sql.Types.BOOLEAN:
+				return BOOLEAN;
+			case java.sql.Types.DATE:
+				return DATE;
+			case java.sql.Types.TIME:
+				return TIME;
+			case java.sql.Types.TIMESTAMP:
+				return TIMESTAMP;
+			case java.sql.Types.SQLXML:
+				return XML_LITERAL;
+			default:
+				return STRING;
+			}
 		}
+
+		abstract Value value(String str, ResultSet rs, int col,
+				ValueFactory vf, DatatypeFactory df) throws SQLException;
 	}
 }
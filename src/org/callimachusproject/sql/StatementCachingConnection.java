@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.sql;
+
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.dbcp.PoolingConnection;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+
+/**
+ * Keeps the prepared statements of a connection, by SQL text, so that
+ * preparing the same SQL again on this connection reuses the statement.
+ * Closing a statement returns it to this connection; the statements are
+ * closed with the connection.
+ */
+class StatementCachingConnection extends PoolingConnection {
+	private final AtomicLong requests;
+	private final AtomicLong misses;
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	StatementCachingConnection(Connection conn, int maxStatements,
+			AtomicLong requests, AtomicLong misses) {
+		super(conn);
+		this.requests = requests;
+		this.misses = misses;
+		GenericKeyedObjectPool pool = new GenericKeyedObjectPool(this);
+		pool.setMaxActive(-1);
+		pool.setMaxIdle(1);
+		pool.setMaxTotal(maxStatements);
+		pool.setWhenExhaustedAction(GenericKeyedObjectPool.WHEN_EXHAUSTED_GROW);
+		setStatementPool(pool);
+	}
+
+	@Override
+	public Object makeObject(Object key) throws Exception {
+		misses.incrementAndGet();
+		return super.makeObject(key);
+	}
+
+	@Override
+	public void activateObject(Object key, Object obj) throws Exception {
+		requests.incrementAndGet();
+		super.activateObject(key, obj);
+	}
+}
@@ -16,30 +16,77 @@
  */
 package org.callimachusproject.util;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Comparator;
+import java.util.Enumeration;
 import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.callimachusproject.concurrent.ManagedExecutors;
 import org.openrdf.repository.manager.SystemRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class BackupTool {
+/**
+ * Creates and restores zip backups of repository data directories. By default
+ * every backup stores every file and can be restored on its own. When
+ * incremental backups are enabled, a backup only stores the files that have
+ * changed since the previous backup of the same data directory and refers to
+ * the earlier backups for the rest, so restoring it needs every backup it
+ * refers to. A file is considered unchanged when its size, modification time
+ * and CRC-32 checksum all match, so unchanged files are still read once per
+ * backup. A backup that is referenced by another backup is never replaced.
+ */
+public class BackupTool implements BackupToolMXBean {
+	/** Zip entry listing every file in the backup and the label storing it */
+	private static final String MANIFEST = ".backup-manifest";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
 	private final Logger logger = LoggerFactory.getLogger(BackupTool.class);
 	private final File backupDir;
 	private volatile boolean backup;
 	private volatile boolean restore;
+	private volatile boolean incremental;
+	private volatile int restoreThreads = Runtime.getRuntime()
+			.availableProcessors();
+	private volatile String lastBackupLabel;
+	private volatile long lastBackupMillis;
+	private volatile long lastBackupBytes;
+	private volatile long lastBackupReusedBytes;
+	private volatile int lastBackupFileCount;
+	private volatile int lastBackupReusedFileCount;
+	private volatile long lastRestoreMillis;
+	private volatile long lastRestoreBytes;
 
 	public BackupTool(File backupDir) {
 		this.backupDir = backupDir;
@@ -57,26 +104,60 @@ public class BackupTool {
 		return restore;
 	}
 
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public int getRestoreThreads() {
+		return restoreThreads;
+	}
+
+	public void setRestoreThreads(int threads) {
+		this.restoreThreads = Math.max(1, threads);
+	}
+
+	public String getLastBackupLabel() {
+		return lastBackupLabel;
+	}
+
+	public long getLastBackupMillis() {
+		return lastBackupMillis;
+	}
+
+	public long getLastBackupBytes() {
+		return lastBackupBytes;
+	}
+
+	public long getLastBackupReusedBytes() {
+		return lastBackupReusedBytes;
+	}
+
+	public int getLastBackupFileCount() {
+		return lastBackupFileCount;
+	}
+
+	public int getLastBackupReusedFileCount() {
+		return lastBackupReusedFileCount;
+	}
+
+	public long getLastRestoreMillis() {
+		return lastRestoreMillis;
+	}
+
+	public long getLastRestoreBytes() {
+		return lastRestoreBytes;
+	}
+
 	public String getBackupLabels() {
-		File[] list = backupDir.listFiles();
-		if (list == null)
-			return "";
-		Arrays.sort(list, new Comparator<File>() {
-			public int compare(File o1, File o2) {
-				if (o1.lastModified() < o2.lastModified())
-					return 1;
-				if (o1.lastModified() > o2.lastModified())
-					return -1;
-				return 0;
-			}
-		});
 		StringBuilder result = new StringBuilder();
-		for (File file : list) {
+		for (File file : listBackups()) {
 			String name = file.getName();
-			if (name.endsWith(".zip") || name.endsWith(".ZIP")) {
-				String label = name.substring(0, name.length() - 4);
-				result.append(label).append(' ');
-			}
+			String label = name.substring(0, name.length() - 4);
+			result.append(label).append(' ');
 		}
 		if (result.length() == 0)
 			return "";
@@ -114,46 +195,107 @@ public class BackupTool {
 
 	synchronized void blockCreateBackup(String label, File dataDir) throws IOException {
 		backup = true;
+		ObjectName oname = registerMBean();
+		long started = System.currentTimeMillis();
 		try {
 			backupDir.mkdirs();
 			String name = label.replaceAll("\\s+", "_") + ".zip";
+			String ownLabel = name.substring(0, name.length() - 4);
 			File backup = new File(backupDir, name);
 			boolean replacing = backup.exists();
-			boolean created = false;
-			backup.getParentFile().mkdirs();
-			FileOutputStream out = new FileOutputStream(backup);
-			ZipOutputStream zos = new ZipOutputStream(out);
-			try {
-				String base = dataDir.getAbsolutePath() + "/";
-				File[] listFiles = dataDir.listFiles();
-				if (listFiles != null) {
-					for (File f : listFiles) {
-						if (!SystemRepository.ID.equals(f.getName())) {
-							if (!created && replacing) {
-								logger.warn("Replacing {}", backup);
-							} else if (!created) {
-								logger.info("Creating {}", backup);
-							}
-							created |= putEntries(base, f, zos);
-						}
+			if (replacing) {
+				List<String> dependents = findDependentLabels(ownLabel);
+				if (!dependents.isEmpty())
+					throw new IOException("Cannot replace " + backup
+							+ " as it is needed to restore " + dependents);
+			}
+			String base = dataDir.getAbsolutePath() + "/";
+			Map<String, File> files = new TreeMap<String, File>();
+			File[] listFiles = dataDir.listFiles();
+			if (listFiles != null) {
+				for (File f : listFiles) {
+					if (!SystemRepository.ID.equals(f.getName())) {
+						listFiles(base, f, files);
 					}
 				}
-			} finally {
-				if (created) {
-					zos.close();
-					logger.info("Created {}", backup);
+			}
+			if (files.isEmpty()) {
+				if (replacing && backup.delete()) {
+					logger.warn("Deleted {}", backup);
+				}
+				return;
+			}
+			Manifest previous = null;
+			if (incremental) {
+				previous = findPreviousManifest(dataDir, backup);
+			}
+			Manifest manifest = new Manifest(dataDir.getAbsolutePath());
+			List<String> changed = new ArrayList<String>(files.size());
+			long bytes = 0;
+			long reusedBytes = 0;
+			for (Map.Entry<String, File> e : files.entrySet()) {
+				File file = e.getValue();
+				long size = file.length();
+				long modified = file.lastModified();
+				ManifestEntry prior = previous == null ? null : previous
+						.get(e.getKey());
+				if (prior != null && prior.size == size
+						&& prior.modified == modified
+						&& !prior.label.equals(ownLabel)
+						&& getBackupFile(prior.label).exists()
+						&& prior.crc == checksum(file)) {
+					manifest.put(e.getKey(), prior);
+					reusedBytes += size;
 				} else {
-					out.close();
-					backup.delete();
-					if (replacing) {
-						logger.warn("Deleted {}", backup);
-					}
+					changed.add(e.getKey());
+					bytes += size;
 				}
 			}
+			if (replacing) {
+				logger.warn("Replacing {}", backup);
+			} else {
+				logger.info("Creating {}", backup);
+			}
+			File part = new File(backupDir, name + ".part");
+			ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(
+					new FileOutputStream(part), 65536));
+			try {
+				for (String path : changed) {
+					File file = files.get(path);
+					long modified = file.lastModified();
+					ZipEntry entry = putEntry(path, file, zos);
+					manifest.put(path, new ManifestEntry(ownLabel, entry
+							.getSize(), modified, entry.getCrc()));
+				}
+				zos.putNextEntry(new ZipEntry(MANIFEST));
+				Writer writer = new OutputStreamWriter(zos, UTF8);
+				manifest.write(writer);
+				writer.flush();
+				zos.closeEntry();
+			} finally {
+				zos.close();
+			}
+			if (replacing && !backup.delete() || !part.renameTo(backup)) {
+				part.delete();
+				throw new IOException("Could not create " + backup);
+			}
+			lastBackupLabel = ownLabel;
+			lastBackupBytes = bytes;
+			lastBackupReusedBytes = reusedBytes;
+			lastBackupFileCount = changed.size();
+			lastBackupReusedFileCount = files.size() - changed.size();
+			if (previous == null) {
+				logger.info("Created {}", backup);
+			} else {
+				logger.info("Created {} reusing {} of {} files", new Object[] {
+						backup, lastBackupReusedFileCount, files.size() });
+			}
 		} catch (IOException e) {
 			logger.error(e.toString(), e);
 			throw e;
 		} finally {
+			lastBackupMillis = System.currentTimeMillis() - started;
+			unregisterMBean(oname);
 			backup = false;
 			notifyAll();
 		}
@@ -162,39 +304,28 @@ public class BackupTool {
 	synchronized void blockRestoreBackup(String label, File dataDir,
 			Runnable prepare) throws IOException {
 		restore = true;
+		ObjectName oname = registerMBean();
+		long started = System.currentTimeMillis();
 		File baseDir = File.createTempFile(dataDir.getName(), ".restoring",
 				dataDir.getParentFile());
+		Map<String, ZipFile> archives = new LinkedHashMap<String, ZipFile>();
 		try {
 			String name = label + ".zip";
 			File backup = new File(backupDir, name);
 			if (!backup.exists())
-				throw new FileNotFoundException();
+				throw new FileNotFoundException(backup.getPath());
 			logger.info("Restoring {}", backup);
-			FileInputStream fis = new FileInputStream(backup);
-			ZipInputStream zis = new ZipInputStream(
-					new BufferedInputStream(fis));
-			ZipEntry entry;
-			while ((entry = zis.getNextEntry()) != null) {
-				File file = new File(baseDir, entry.getName());
-				file.getParentFile().mkdirs();
-				FileOutputStream fos = new FileOutputStream(file);
-				BufferedOutputStream dest = new BufferedOutputStream(fos, 2048);
-				try {
-					int read;
-					byte[] buf = new byte[2048];
-					while ((read = zis.read(buf)) >= 0) {
-						dest.write(buf, 0, read);
-					}
-				} finally {
-					dest.close();
-				}
-			}
-			zis.close();
+			baseDir.delete();
+			baseDir.mkdirs();
+			ZipFile zip = new ZipFile(backup);
+			archives.put(label, zip);
+			lastRestoreBytes = extractAll(zip, baseDir, archives);
 			if (prepare != null) {
 				prepare.run();
 			}
 			File tmp = File.createTempFile(dataDir.getName(), ".deleting",
 					dataDir.getParentFile());
+			tmp.delete();
 			dataDir.renameTo(tmp);
 			baseDir.renameTo(dataDir);
 			deleteAll(tmp);
@@ -203,46 +334,276 @@ public class BackupTool {
 			logger.error(e.toString(), e);
 			throw e;
 		} finally {
+			for (ZipFile zip : archives.values()) {
+				try {
+					zip.close();
+				} catch (IOException e) {
+					logger.warn(e.toString(), e);
+				}
+			}
 			if (baseDir.exists()) {
 				deleteAll(baseDir);
 			}
+			lastRestoreMillis = System.currentTimeMillis() - started;
+			unregisterMBean(oname);
 			restore = false;
 			notifyAll();
 		}
 	}
 
-	private boolean putEntries(String base, File file, ZipOutputStream zos)
-			throws IOException {
+	private long extractAll(ZipFile zip, File baseDir,
+			Map<String, ZipFile> archives) throws IOException {
+		final AtomicLong bytes = new AtomicLong();
+		Manifest manifest = readManifest(zip);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		if (manifest == null) {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				if (!entry.isDirectory()) {
+					File file = new File(baseDir, entry.getName());
+					tasks.add(extract(zip, entry, file, entry.getTime(), bytes));
+				}
+			}
+		} else {
+			for (Map.Entry<String, ManifestEntry> e : manifest.entrySet()) {
+				ManifestEntry me = e.getValue();
+				ZipFile archive = archives.get(me.label);
+				if (archive == null) {
+					File file = getBackupFile(me.label);
+					if (!file.exists())
+						throw new FileNotFoundException(file.getPath());
+					archive = new ZipFile(file);
+					archives.put(me.label, archive);
+				}
+				ZipEntry entry = archive.getEntry(e.getKey());
+				if (entry == null)
+					throw new FileNotFoundException(e.getKey() + " in "
+							+ archive.getName());
+				File file = new File(baseDir, e.getKey());
+				tasks.add(extract(archive, entry, file, me.modified, bytes));
+			}
+		}
+		int threads = Math.max(1, Math.min(restoreThreads, tasks.size()));
+		ExecutorService executor = ManagedExecutors.getInstance()
+				.newFixedThreadPool(threads, BackupTool.class.getSimpleName());
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(tasks.size());
+			for (Callable<Void> task : tasks) {
+				futures.add(executor.submit(task));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return bytes.get();
+	}
+
+	private Callable<Void> extract(final ZipFile zip, final ZipEntry entry,
+			final File file, final long modified, final AtomicLong bytes) {
+		return new Callable<Void>() {
+			public Void call() throws IOException {
+				file.getParentFile().mkdirs();
+				InputStream in = zip.getInputStream(entry);
+				try {
+					BufferedOutputStream dest = new BufferedOutputStream(
+							new FileOutputStream(file), 65536);
+					try {
+						int read;
+						byte[] buf = new byte[65536];
+						while ((read = in.read(buf)) >= 0) {
+							dest.write(buf, 0, read);
+							bytes.addAndGet(read);
+						}
+					} finally {
+						dest.close();
+					}
+				} finally {
+					in.close();
+				}
+				if (modified > 0) {
+					file.setLastModified(modified);
+				}
+				return null;
+			}
+		};
+	}
+
+	private void listFiles(String base, File file, Map<String, File> files) {
 		if (file.isFile()) {
-			String path = file.getAbsolutePath();
-			String name = path;
+			String name = file.getAbsolutePath();
 			if (name.startsWith(base)) {
 				name = name.substring(base.length());
 			}
-			ZipEntry entry = new ZipEntry(name);
-			entry.setTime(file.lastModified());
-			entry.setSize(file.length());
-			zos.putNextEntry(entry);
-			FileInputStream fis = new FileInputStream(file);
+			files.put(name, file);
+		} else {
+			File[] listFiles = file.listFiles();
+			if (listFiles != null) {
+				for (File f : listFiles) {
+					listFiles(base, f, files);
+				}
+			}
+		}
+	}
+
+	private ZipEntry putEntry(String name, File file, ZipOutputStream zos)
+			throws IOException {
+		ZipEntry entry = new ZipEntry(name);
+		entry.setTime(file.lastModified());
+		entry.setSize(file.length());
+		zos.putNextEntry(entry);
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			int read = 0;
+			byte[] buf = new byte[65536];
+			while ((read = fis.read(buf)) != -1) {
+				zos.write(buf, 0, read);
+			}
+		} finally {
+			fis.close();
+		}
+		zos.closeEntry();
+		return entry;
+	}
+
+	private long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			int read = 0;
+			byte[] buf = new byte[65536];
+			while ((read = fis.read(buf)) != -1) {
+				crc.update(buf, 0, read);
+			}
+		} finally {
+			fis.close();
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Labels of the other backups whose manifests refer to files stored in
+	 * the given backup.
+	 */
+	private List<String> findDependentLabels(String label) throws IOException {
+		List<String> dependents = new ArrayList<String>();
+		File own = getBackupFile(label);
+		for (File file : listBackups()) {
+			if (file.equals(own))
+				continue;
+			ZipFile zip = new ZipFile(file);
 			try {
-				int read = 0;
-				byte[] buf = new byte[2156];
-				while ((read = fis.read(buf)) != -1) {
-					zos.write(buf, 0, read);
+				Manifest manifest = readManifest(zip);
+				if (manifest != null && manifest.refersTo(label)) {
+					String name = file.getName();
+					dependents.add(name.substring(0, name.length() - 4));
 				}
-				return true;
 			} finally {
-				fis.close();
+				zip.close();
 			}
-		} else {
-			File[] listFiles = file.listFiles();
-			if (listFiles == null)
-				return false;
-			boolean content = false;
-			for (File f : listFiles) {
-				content |= putEntries(base, f, zos);
+		}
+		return dependents;
+	}
+
+	private Manifest findPreviousManifest(File dataDir, File replacing) {
+		String path = dataDir.getAbsolutePath();
+		for (File file : listBackups()) {
+			if (file.equals(replacing))
+				continue;
+			try {
+				ZipFile zip = new ZipFile(file);
+				try {
+					Manifest manifest = readManifest(zip);
+					if (manifest != null && path.equals(manifest.dataDir))
+						return manifest;
+				} finally {
+					zip.close();
+				}
+			} catch (IOException e) {
+				logger.warn("Could not read {}: {}", file, e.toString());
 			}
-			return content;
+		}
+		return null;
+	}
+
+	private Manifest readManifest(ZipFile zip) throws IOException {
+		ZipEntry entry = zip.getEntry(MANIFEST);
+		if (entry == null)
+			return null;
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				zip.getInputStream(entry), UTF8));
+		try {
+			return Manifest.read(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private File[] listBackups() {
+		File[] list = backupDir.listFiles();
+		if (list == null)
+			return new File[0];
+		List<File> zips = new ArrayList<File>(list.length);
+		for (File file : list) {
+			String name = file.getName();
+			if (name.endsWith(".zip") || name.endsWith(".ZIP")) {
+				zips.add(file);
+			}
+		}
+		File[] result = zips.toArray(new File[zips.size()]);
+		Arrays.sort(result, new Comparator<File>() {
+			public int compare(File o1, File o2) {
+				if (o1.lastModified() < o2.lastModified())
+					return 1;
+				if (o1.lastModified() > o2.lastModified())
+					return -1;
+				return 0;
+			}
+		});
+		return result;
+	}
+
+	private File getBackupFile(String label) {
+		return new File(backupDir, label + ".zip");
+	}
+
+	private ObjectName registerMBean() {
+		try {
+			ObjectName name = new ObjectName("org.callimachusproject:type="
+					+ BackupTool.class.getSimpleName() + ",name="
+					+ ObjectName.quote(backupDir.getAbsolutePath()));
+			MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			if (!mbs.isRegistered(name)) {
+				mbs.registerMBean(this, name);
+				return name;
+			}
+		} catch (JMException e) {
+			logger.debug(e.toString(), e);
+		}
+		return null;
+	}
+
+	private void unregisterMBean(ObjectName name) {
+		if (name == null)
+			return;
+		try {
+			MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			if (mbs.isRegistered(name)) {
+				mbs.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			logger.debug(e.toString(), e);
 		}
 	}
 
@@ -278,4 +639,76 @@ public class BackupTool {
 		sb.append(day);
 		return sb.toString();
 	}
+
+	private static class ManifestEntry {
+		final String label;
+		final long size;
+		final long modified;
+		final long crc;
+
+		ManifestEntry(String label, long size, long modified, long crc) {
+			this.label = label;
+			this.size = size;
+			this.modified = modified;
+			this.crc = crc;
+		}
+	}
+
+	/**
+	 * One line per file: label, size, modified, CRC-32, and path separated by
+	 * tabs, after a header line with the data directory.
+	 */
+	private static class Manifest extends TreeMap<String, ManifestEntry> {
+		private static final long serialVersionUID = 4436271744582376372L;
+
+		static Manifest read(BufferedReader reader) throws IOException {
+			String header = reader.readLine();
+			if (header == null || !header.startsWith("#\t"))
+				return null;
+			Manifest manifest = new Manifest(header.substring(2));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t", 5);
+				if (fields.length == 5) {
+					manifest.put(fields[4], new ManifestEntry(fields[0],
+							Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+							Long.parseLong(fields[3])));
+				}
+			}
+			return manifest;
+		}
+
+		final String dataDir;
+
+		Manifest(String dataDir) {
+			this.dataDir = dataDir;
+		}
+
+		boolean refersTo(String label) {
+			for (ManifestEntry me : values()) {
+				if (me.label.equals(label))
+					return true;
+			}
+			return false;
+		}
+
+		void write(Writer writer) throws IOException {
+			writer.write("#\t");
+			writer.write(dataDir);
+			writer.write('\n');
+			for (Map.Entry<String, ManifestEntry> e : entrySet()) {
+				ManifestEntry me = e.getValue();
+				writer.write(me.label);
+				writer.write('\t');
+				writer.write(Long.toString(me.size));
+				writer.write('\t');
+				writer.write(Long.toString(me.modified));
+				writer.write('\t');
+				writer.write(Long.toString(me.crc));
+				writer.write('\t');
+				writer.write(e.getKey());
+				writer.write('\n');
+			}
+		}
+	}
 }
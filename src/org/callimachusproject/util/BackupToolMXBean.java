@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.util;
+
+public interface BackupToolMXBean {
+
+	String getBackupLabels();
+
+	boolean isBackupInProgress();
+
+	boolean isRestoreInProgress();
+
+	/**
+	 * If new backups only store files that have changed since the previous
+	 * backup of the same data directory. An incremental backup can only be
+	 * restored while the earlier backups it refers to are kept.
+	 */
+	boolean isIncremental();
+
+	void setIncremental(boolean incremental);
+
+	int getRestoreThreads();
+
+	void setRestoreThreads(int threads);
+
+	String getLastBackupLabel();
+
+	long getLastBackupMillis();
+
+	/**
+	 * Number of uncompressed bytes written into the last backup.
+	 */
+	long getLastBackupBytes();
+
+	/**
+	 * Number of uncompressed bytes referenced from earlier backups.
+	 */
+	long getLastBackupReusedBytes();
+
+	int getLastBackupFileCount();
+
+	int getLastBackupReusedFileCount();
+
+	long getLastRestoreMillis();
+
+	long getLastRestoreBytes();
+
+}
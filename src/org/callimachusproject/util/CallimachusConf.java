@@ -47,6 +47,8 @@ import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFParser;
 import org.openrdf.rio.Rio;
 import org.openrdf.rio.helpers.StatementCollector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 public class CallimachusConf {
@@ -80,6 +82,7 @@ public class CallimachusConf {
 
 	private static final Pattern WSPACE = Pattern.compile("\\s");
 
+	private final Logger logger = LoggerFactory.getLogger(CallimachusConf.class);
 	private final File file;
 	private final File defaultFile;
 
@@ -201,6 +204,57 @@ public class CallimachusConf {
 		setProperty("SSLPORT", sb.toString());
 	}
 
+	/**
+	 * @return bytes of each HTTP connection buffer or zero for the default
+	 */
+	public int getHttpBufferSize() throws IOException {
+		return (int) getLongProperty("HTTP_BUFFER_SIZE");
+	}
+
+	public void setHttpBufferSize(int bytes) throws IOException {
+		setLongProperty("HTTP_BUFFER_SIZE", bytes);
+	}
+
+	/**
+	 * @return bytes of content written past the HTTP connection buffer or
+	 *         zero for the default
+	 */
+	public int getHttpFragmentSize() throws IOException {
+		return (int) getLongProperty("HTTP_FRAGMENT_SIZE");
+	}
+
+	public void setHttpFragmentSize(int bytes) throws IOException {
+		setLongProperty("HTTP_FRAGMENT_SIZE", bytes);
+	}
+
+	/**
+	 * @return bytes of direct memory for HTTP connection buffers or zero for
+	 *         the default
+	 */
+	public long getHttpBufferMemory() throws IOException {
+		return getLongProperty("HTTP_BUFFER_MEMORY");
+	}
+
+	public void setHttpBufferMemory(long bytes) throws IOException {
+		setLongProperty("HTTP_BUFFER_MEMORY", bytes);
+	}
+
+	private long getLongProperty(String key) throws IOException {
+		String value = getProperty(key);
+		if (value == null || value.trim().length() == 0)
+			return 0;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			logger.warn("Using the default for {}, not a number: {}", key, value);
+			return 0;
+		}
+	}
+
+	private void setLongProperty(String key, long value) throws IOException {
+		setProperty(key, value > 0 ? Long.toString(value) : null);
+	}
+
 	private synchronized String getProperty(String key) throws IOException {
 		if (!file.isFile() && !defaultFile.isFile())
 			return null;
@@ -22,9 +22,15 @@ import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.Collection;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
@@ -32,10 +38,12 @@ import javax.naming.directory.Attributes;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.InitialDirContext;
 
+import org.callimachusproject.concurrent.ManagedExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class DomainNameSystemResolver {
+public class DomainNameSystemResolver implements DomainNameSystemResolverMXBean {
+	private static final int REVERSE_CACHE_SIZE = 1024;
 	private static final DomainNameSystemResolver instance = new DomainNameSystemResolver();
 
 	public static DomainNameSystemResolver getInstance() {
@@ -44,8 +52,27 @@ public class DomainNameSystemResolver {
 
 	private final Logger logger = LoggerFactory.getLogger(DomainNameSystemResolver.class);
 	private final DirContext ictx;
+	private final Map<String, CachedName> reverseCache = new LinkedHashMap<String, CachedName>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = -3212376519745384210L;
 
-	private DomainNameSystemResolver() {
+		protected boolean removeEldestEntry(Map.Entry<String, CachedName> eldest) {
+			return size() > REVERSE_CACHE_SIZE;
+		}
+	};
+	private final Set<String> pendingReverse = new HashSet<String>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong lookups = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong lookupNanos = new AtomicLong();
+	private final AtomicLong maxLookupNanos = new AtomicLong();
+	private volatile boolean reverseBlocking = true;
+	private volatile long reverseTimeToLive = 10 * 60 * 1000;
+	private volatile long negativeTimeToLive = 60 * 1000;
+	private ExecutorService reverseExecutor;
+
+	DomainNameSystemResolver() {
 		Hashtable<String, String> env = new Hashtable<String, String>();
 		env.put("java.naming.factory.initial",
 				"com.sun.jndi.dns.DnsContextFactory");
@@ -155,6 +182,109 @@ public class DomainNameSystemResolver {
 		return set;
 	}
 
+	public boolean isReverseBlocking() {
+		return reverseBlocking;
+	}
+
+	public void setReverseBlocking(boolean blocking) {
+		this.reverseBlocking = blocking;
+	}
+
+	public long getReverseCacheTimeToLive() {
+		return reverseTimeToLive;
+	}
+
+	public void setReverseCacheTimeToLive(long milliseconds) {
+		this.reverseTimeToLive = milliseconds;
+	}
+
+	public long getReverseCacheNegativeTimeToLive() {
+		return negativeTimeToLive;
+	}
+
+	public void setReverseCacheNegativeTimeToLive(long milliseconds) {
+		this.negativeTimeToLive = milliseconds;
+	}
+
+	public int getReverseCacheSize() {
+		synchronized (reverseCache) {
+			return reverseCache.size();
+		}
+	}
+
+	public long getReverseCacheHitCount() {
+		return hits.get();
+	}
+
+	public long getReverseCacheMissCount() {
+		return misses.get();
+	}
+
+	public long getReverseLookupCount() {
+		return lookups.get();
+	}
+
+	public long getReverseLookupFailureCount() {
+		return failures.get();
+	}
+
+	public double getReverseLookupAverageMillis() {
+		long count = lookups.get();
+		if (count == 0)
+			return 0;
+		return lookupNanos.get() / 1000000.0 / count;
+	}
+
+	public long getReverseLookupMaxMillis() {
+		return maxLookupNanos.get() / 1000000;
+	}
+
+	public void resetReverseCache() {
+		synchronized (reverseCache) {
+			reverseCache.clear();
+		}
+		hits.set(0);
+		misses.set(0);
+		lookups.set(0);
+		failures.set(0);
+		lookupNanos.set(0);
+		maxLookupNanos.set(0);
+	}
+
+	/**
+	 * Same as {@link #reverse(InetAddress)}, but remembers the result. Unless
+	 * reverse lookups are blocking, an address that is not cached is returned
+	 * as is while the lookup continues in the background.
+	 */
+	public String cachedReverse(InetAddress netAddr) {
+		if (netAddr == null)
+			return null;
+		return cachedReverse(netAddr.getHostAddress());
+	}
+
+	/**
+	 * Same as {@link #reverse(String)}, but remembers the result. Unless
+	 * reverse lookups are blocking, an address that is not cached is returned
+	 * as is while the lookup continues in the background.
+	 */
+	public String cachedReverse(String ip) {
+		if (ip == null)
+			return null;
+		CachedName cached;
+		synchronized (reverseCache) {
+			cached = reverseCache.get(ip);
+		}
+		if (cached != null && cached.expires > System.currentTimeMillis()) {
+			hits.incrementAndGet();
+			return cached.name;
+		}
+		misses.incrementAndGet();
+		if (reverseBlocking)
+			return resolveReverse(ip);
+		resolveReverseLater(ip);
+		return cached == null ? ip : cached.name;
+	}
+
 	public String reverse(String ip) {
 		try {
 			return reverse(InetAddress.getByName(ip));
@@ -195,6 +325,66 @@ public class DomainNameSystemResolver {
 		return address;
 	}
 
+	private String resolveReverse(String ip) {
+		long start = System.nanoTime();
+		String name = reverse(ip);
+		long nanos = System.nanoTime() - start;
+		lookups.incrementAndGet();
+		lookupNanos.addAndGet(nanos);
+		long max = maxLookupNanos.get();
+		while (nanos > max && !maxLookupNanos.compareAndSet(max, nanos)) {
+			max = maxLookupNanos.get();
+		}
+		long ttl = reverseTimeToLive;
+		if (name == null || name.equals(ip) || name.endsWith(".in-addr.arpa")
+				|| name.endsWith(".ip6.arpa")) {
+			failures.incrementAndGet();
+			ttl = negativeTimeToLive;
+		}
+		if (name != null) {
+			long expires = System.currentTimeMillis() + ttl;
+			synchronized (reverseCache) {
+				reverseCache.put(ip, new CachedName(name, expires));
+			}
+		}
+		return name;
+	}
+
+	private void resolveReverseLater(final String ip) {
+		synchronized (pendingReverse) {
+			if (pendingReverse.size() >= REVERSE_CACHE_SIZE
+					|| !pendingReverse.add(ip))
+				return;
+		}
+		try {
+			getReverseExecutor().execute(new Runnable() {
+				public void run() {
+					try {
+						resolveReverse(ip);
+					} catch (RuntimeException e) {
+						logger.warn(e.toString(), e);
+					} finally {
+						synchronized (pendingReverse) {
+							pendingReverse.remove(ip);
+						}
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			synchronized (pendingReverse) {
+				pendingReverse.remove(ip);
+			}
+		}
+	}
+
+	private synchronized ExecutorService getReverseExecutor() {
+		if (reverseExecutor == null || reverseExecutor.isShutdown()) {
+			reverseExecutor = ManagedExecutors.getInstance().newFixedThreadPool(
+					2, DomainNameSystemResolver.class.getSimpleName());
+		}
+		return reverseExecutor;
+	}
+
 	private void addAllNames(InetAddress addr, Set<String> set) {
 		if (addr == null)
 			return;
@@ -227,4 +417,14 @@ public class DomainNameSystemResolver {
 		}
 		return null;
 	}
+
+	private static class CachedName {
+		final String name;
+		final long expires;
+
+		CachedName(String name, long expires) {
+			this.name = name;
+			this.expires = expires;
+		}
+	}
 }
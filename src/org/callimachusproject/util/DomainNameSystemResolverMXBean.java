@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.util;
+
+public interface DomainNameSystemResolverMXBean {
+
+	/**
+	 * If a reverse lookup that is not cached waits for the resolver. When
+	 * false, the address itself is used until the lookup completes in the
+	 * background.
+	 */
+	boolean isReverseBlocking();
+
+	void setReverseBlocking(boolean blocking);
+
+	/**
+	 * Milliseconds a resolved host name is cached.
+	 */
+	long getReverseCacheTimeToLive();
+
+	void setReverseCacheTimeToLive(long milliseconds);
+
+	/**
+	 * Milliseconds an address without a host name is cached.
+	 */
+	long getReverseCacheNegativeTimeToLive();
+
+	void setReverseCacheNegativeTimeToLive(long milliseconds);
+
+	int getReverseCacheSize();
+
+	long getReverseCacheHitCount();
+
+	long getReverseCacheMissCount();
+
+	long getReverseLookupCount();
+
+	long getReverseLookupFailureCount();
+
+	double getReverseLookupAverageMillis();
+
+	long getReverseLookupMaxMillis();
+
+	void resetReverseCache();
+
+}
@@ -24,6 +24,10 @@ import java.util.TreeMap;
 
 /**
  * A {@link Map} implementation that can also return the closest value.
+ * Closest lookups use a sorted array of the keys, where each key links to the
+ * longest other key that is a prefix of it, so a lookup is a binary search
+ * followed by a short walk along those links and does not allocate. The array
+ * is rebuilt on the first lookup after the keys change.
  * 
  * @see #getClosest(String)
  */
@@ -32,6 +36,7 @@ public class PrefixMap<V> extends AbstractMap<String, V> implements Cloneable,
 	private static final long serialVersionUID = -3196352714861883183L;
 
 	private final TreeMap<String, V> map;
+	private transient volatile Index<V> index;
 
 	public PrefixMap() {
 		this.map = new TreeMap<String, V>();
@@ -86,20 +91,7 @@ public class PrefixMap<V> extends AbstractMap<String, V> implements Cloneable,
 	 *             if the specified string is null
 	 */
 	public Entry<String, V> getClosestEntry(String string) {
-		Entry<String, V> entry = map.floorEntry(string);
-		if (entry == null)
-			return null;
-		String key = entry.getKey();
-		if (string == key || string.startsWith(key))
-			return entry;
-		if (string == null || string.length() == 0)
-			return null;
-		int idx = 0;
-		while (idx < string.length() && idx < key.length()
-				&& string.charAt(idx) == key.charAt(idx)) {
-			idx++;
-		}
-		return getClosestEntry(string.substring(0, idx));
+		return getIndex().getClosestEntry(string);
 	}
 
 	public V get(Object key) {
@@ -120,18 +112,22 @@ public class PrefixMap<V> extends AbstractMap<String, V> implements Cloneable,
 
 	public void putAll(Map<? extends String, ? extends V> m) {
 		map.putAll(m);
+		index = null;
 	}
 
 	public V put(String key, V value) {
+		index = null;
 		return map.put(key, value);
 	}
 
 	public V remove(Object key) {
+		index = null;
 		return map.remove(key);
 	}
 
 	public void clear() {
 		map.clear();
+		index = null;
 	}
 
 	public PrefixMap<V> clone() {
@@ -146,4 +142,67 @@ public class PrefixMap<V> extends AbstractMap<String, V> implements Cloneable,
 		return map.entrySet();
 	}
 
+	private Index<V> getIndex() {
+		Index<V> idx = index;
+		if (idx == null || idx.keys.length != map.size()) {
+			index = idx = new Index<V>(map);
+		}
+		return idx;
+	}
+
+	/**
+	 * Immutable view of the keys in sorted order. Entries are the live entries
+	 * of the backing map, so values that are replaced in place are seen.
+	 */
+	private static final class Index<V> {
+		final String[] keys;
+		final Entry<String, V>[] entries;
+		/** index of the longest key that is a proper prefix, or -1 */
+		final int[] parent;
+
+		@SuppressWarnings("unchecked")
+		Index(TreeMap<String, V> map) {
+			int n = map.size();
+			keys = new String[n];
+			entries = new Entry[n];
+			parent = new int[n];
+			int i = 0;
+			for (Entry<String, V> e : map.entrySet()) {
+				String key = e.getKey();
+				int p = i - 1;
+				while (p >= 0 && !key.startsWith(keys[p])) {
+					p = parent[p];
+				}
+				keys[i] = key;
+				entries[i] = e;
+				parent[i] = p;
+				i++;
+			}
+		}
+
+		Entry<String, V> getClosestEntry(String string) {
+			int floor = -1;
+			int low = 0;
+			int high = keys.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = keys[mid].compareTo(string);
+				if (cmp < 0) {
+					floor = mid;
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid - 1;
+				} else {
+					return entries[mid];
+				}
+			}
+			// every key that string starts with is a prefix of the floor key
+			for (int i = floor; i >= 0; i = parent[i]) {
+				if (string.startsWith(keys[i]))
+					return entries[i];
+			}
+			return null;
+		}
+	}
+
 }
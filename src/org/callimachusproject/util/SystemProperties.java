@@ -105,6 +105,14 @@ public class SystemProperties {
 		return 4000;
 	}
 
+	public static int getArrangedWriterWindow() {
+		String window = getProperty("org.callimachusproject.io.arrangedWindow");
+		if (window != null && Pattern.matches("\\d+", window)
+				&& Integer.parseInt(window) > 0)
+			return Integer.parseInt(window);
+		return 100;
+	}
+
 	private static String getProperty(String key) {
 		try {
 			return System.getProperty(key);
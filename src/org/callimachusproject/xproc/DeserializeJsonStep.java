@@ -16,6 +16,11 @@
  */
 package org.callimachusproject.xproc;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 
 import net.sf.saxon.s9api.Axis;
@@ -26,12 +31,13 @@ import net.sf.saxon.s9api.XdmNodeKind;
 import net.sf.saxon.s9api.XdmSequenceIterator;
 
 import org.apache.commons.codec.DecoderException;
-import org.apache.commons.codec.binary.Base32;
-import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base32InputStream;
+import org.apache.commons.codec.binary.Base64InputStream;
 import org.apache.commons.codec.binary.BinaryCodec;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.net.QuotedPrintableCodec;
 import org.apache.commons.codec.net.URLCodec;
+import org.json.JSONException;
 import org.json.JSONTokener;
 
 import com.xmlcalabash.core.XProcException;
@@ -111,7 +117,7 @@ public class DeserializeJsonStep implements XProcStep {
         try {
         	while (source.moreDocuments()) {
 	            XdmNode doc = source.read();
-				String text = decodeText(doc);
+				Reader text = openText(doc);
 
 		        TreeWriter tree = new TreeWriter(runtime);
 		        tree.startDocument(doc.getBaseURI());
@@ -127,8 +133,12 @@ public class DeserializeJsonStep implements XProcStep {
 		        tree.startContent();
 
 	            JSONTokener jt = new JSONTokener(text);
-	            XdmNode jsonDoc = JSONtoXML.convert(runtime.getProcessor(), jt, flavor);
-	            tree.addSubtree(jsonDoc);
+	            if (JSONtoJSONX.FLAVOR.equals(flavor)) {
+	            	new JSONtoJSONX(tree).writeValue(jt);
+	            } else {
+	            	XdmNode jsonDoc = JSONtoXML.convert(runtime.getProcessor(), jt, flavor);
+	            	tree.addSubtree(jsonDoc);
+	            }
 
 	            tree.addEndElement();
 	            tree.endDocument();
@@ -137,26 +147,41 @@ public class DeserializeJsonStep implements XProcStep {
         } catch (UnsupportedEncodingException uee) {
             throw XProcException.stepError(10, uee);
         } catch (DecoderException e) {
+            throw XProcException.dynamicError(30, step.getNode(), e, e.getMessage());
+        } catch (JSONException e) {
             throw XProcException.dynamicError(30, step.getNode(), e, e.getMessage());
 		}
     }
 
-	private String decodeText(XdmNode doc) throws UnsupportedEncodingException,
+	/**
+	 * Decodes base64 and base32 content incrementally while the JSON is
+	 * tokenized, instead of building the decoded bytes and string up front.
+	 */
+	private Reader openText(XdmNode doc) throws UnsupportedEncodingException,
 			DecoderException {
-		String text = extractText(doc);
 		if ("base64".equals(encoding)) {
-		    if (charset == null) {
-		        throw XProcException.stepError(10);
-		    }
-		    byte[] decoded = Base64.decodeBase64(text);
-		    return new String(decoded, charset);
+			if (charset == null) {
+				throw XProcException.stepError(10);
+			}
+			InputStream in = new Base64InputStream(new AsciiInputStream(extractText(doc)));
+			return new InputStreamReader(in, charset);
 		} else if ("base32".equals(encoding)) {
-		    if (charset == null) {
-		        throw XProcException.stepError(10);
-		    }
-		    byte[] decoded = new Base32().decode(text);
-		    return new String(decoded, charset);
-		} else if ("hex".equals(encoding)) {
+			if (charset == null) {
+				throw XProcException.stepError(10);
+			}
+			InputStream in = new Base32InputStream(new AsciiInputStream(extractText(doc)));
+			return new InputStreamReader(in, charset);
+		} else if (encoding == null || encoding.length() == 0) {
+			return new CharSequenceReader(extractText(doc));
+		} else {
+			return new StringReader(decodeText(doc));
+		}
+	}
+
+	private String decodeText(XdmNode doc) throws UnsupportedEncodingException,
+			DecoderException {
+		String text = extractText(doc).toString();
+		if ("hex".equals(encoding)) {
 		    if (charset == null) {
 		        throw XProcException.stepError(10);
 		    }
@@ -185,15 +210,92 @@ public class DeserializeJsonStep implements XProcStep {
 		}
 	}
 
-    private String extractText(XdmNode doc) {
-        StringBuilder content = new StringBuilder();
+    private CharSequence extractText(XdmNode doc) {
+        CharSequence single = null;
+        StringBuilder content = null;
         XdmSequenceIterator iter = doc.axisIterator(Axis.CHILD);
         while (iter.hasNext()) {
             XdmNode child = (XdmNode) iter.next();
             if (child.getNodeKind() == XdmNodeKind.ELEMENT || child.getNodeKind() == XdmNodeKind.TEXT) {
-                content.append(child.getStringValue());
+                CharSequence value = child.getUnderlyingNode().getStringValueCS();
+                if (single == null && content == null) {
+                    single = value;
+                } else {
+                    if (content == null) {
+                        content = new StringBuilder(single);
+                    }
+                    content.append(value);
+                }
             }
         }
-        return content.toString();
+        if (content != null)
+            return content;
+        if (single != null)
+            return single;
+        return "";
     }
+
+	/**
+	 * Reads the low byte of each character, as used for ASCII encodings.
+	 */
+	private static class AsciiInputStream extends InputStream {
+		private final CharSequence text;
+		private int pos;
+
+		AsciiInputStream(CharSequence text) {
+			this.text = text;
+		}
+
+		@Override
+		public int read() {
+			if (pos >= text.length())
+				return -1;
+			return text.charAt(pos++) & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0)
+				return 0;
+			int n = Math.min(len, text.length() - pos);
+			if (n <= 0)
+				return -1;
+			for (int i = 0; i < n; i++) {
+				b[off + i] = (byte) text.charAt(pos++);
+			}
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return text.length() - pos;
+		}
+	}
+
+	private static class CharSequenceReader extends Reader {
+		private final CharSequence text;
+		private int pos;
+
+		CharSequenceReader(CharSequence text) {
+			this.text = text;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) {
+			if (len == 0)
+				return 0;
+			int n = Math.min(len, text.length() - pos);
+			if (n <= 0)
+				return -1;
+			for (int i = 0; i < n; i++) {
+				cbuf[off + i] = text.charAt(pos++);
+			}
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			// nothing to release
+		}
+	}
 }
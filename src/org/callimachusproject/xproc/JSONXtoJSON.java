@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.xproc;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import net.sf.saxon.s9api.Axis;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XdmNodeKind;
+import net.sf.saxon.s9api.XdmSequenceIterator;
+
+import org.json.JSONObject;
+
+import com.xmlcalabash.core.XProcException;
+
+/**
+ * Writes jsonx elements out as JSON text while walking the document, without
+ * first building a JSONObject.
+ */
+public class JSONXtoJSON {
+	private static final String NS = JSONtoJSONX.NS;
+	private static final String PREFIX = "json";
+	private static final QName _object = new QName(PREFIX, NS, "object");
+	private static final QName _array = new QName(PREFIX, NS, "array");
+	private static final QName _string = new QName(PREFIX, NS, "string");
+	private static final QName _number = new QName(PREFIX, NS, "number");
+	private static final QName _boolean = new QName(PREFIX, NS, "boolean");
+	private static final QName _null = new QName(PREFIX, NS, "null");
+	private static final QName _name = new QName("name");
+
+	public static boolean isJSONX(XdmNode node) {
+		return node != null && node.getNodeKind() == XdmNodeKind.ELEMENT
+				&& NS.equals(node.getNodeName().getNamespaceURI());
+	}
+
+	private final PrintWriter writer;
+
+	public JSONXtoJSON(Writer writer) {
+		this(new PrintWriter(writer));
+	}
+
+	public JSONXtoJSON(PrintWriter writer) {
+		this.writer = writer;
+	}
+
+	public void writeValue(XdmNode node) {
+		writeNode(node);
+		writer.flush();
+	}
+
+	private void writeNode(XdmNode node) {
+		QName name = node.getNodeName();
+		if (_object.equals(name)) {
+			writeObject(node);
+		} else if (_array.equals(name)) {
+			writeArray(node);
+		} else if (_string.equals(name)) {
+			writer.write(JSONObject.quote(node.getStringValue()));
+		} else if (_number.equals(name) || _boolean.equals(name)) {
+			writer.write(node.getStringValue().trim());
+		} else if (_null.equals(name)) {
+			writer.write("null");
+		} else {
+			throw new XProcException("Unexpected jsonx element: " + name);
+		}
+	}
+
+	private void writeObject(XdmNode object) {
+		writer.write('{');
+		boolean first = true;
+		XdmSequenceIterator iter = object.axisIterator(Axis.CHILD);
+		while (iter.hasNext()) {
+			XdmNode child = (XdmNode) iter.next();
+			if (child.getNodeKind() == XdmNodeKind.ELEMENT) {
+				if (!first) {
+					writer.write(',');
+				}
+				first = false;
+				String key = child.getAttributeValue(_name);
+				if (key == null)
+					throw new XProcException("Missing name on jsonx member: "
+							+ child.getNodeName());
+				writer.write(JSONObject.quote(key));
+				writer.write(':');
+				writeNode(child);
+			}
+		}
+		writer.write('}');
+	}
+
+	private void writeArray(XdmNode array) {
+		writer.write('[');
+		boolean first = true;
+		XdmSequenceIterator iter = array.axisIterator(Axis.CHILD);
+		while (iter.hasNext()) {
+			XdmNode child = (XdmNode) iter.next();
+			if (child.getNodeKind() == XdmNodeKind.ELEMENT) {
+				if (!first) {
+					writer.write(',');
+				}
+				first = false;
+				writeNode(child);
+			}
+		}
+		writer.write(']');
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.xproc;
+
+import net.sf.saxon.s9api.QName;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import com.xmlcalabash.util.TreeWriter;
+
+/**
+ * Reads JSON from a {@link JSONTokener} one token at a time and writes the
+ * jsonx elements straight into a {@link TreeWriter}, without first building a
+ * JSONObject or a separate document.
+ */
+public class JSONtoJSONX {
+	public static final String FLAVOR = "jsonx";
+	static final String NS = "http://www.ibm.com/xmlns/prod/2009/jsonx";
+	private static final String PREFIX = "json";
+	private static final QName _object = new QName(PREFIX, NS, "object");
+	private static final QName _array = new QName(PREFIX, NS, "array");
+	private static final QName _string = new QName(PREFIX, NS, "string");
+	private static final QName _number = new QName(PREFIX, NS, "number");
+	private static final QName _boolean = new QName(PREFIX, NS, "boolean");
+	private static final QName _null = new QName(PREFIX, NS, "null");
+	private static final QName _name = new QName("name");
+
+	private final TreeWriter tree;
+
+	public JSONtoJSONX(TreeWriter tree) {
+		this.tree = tree;
+	}
+
+	public void writeValue(JSONTokener jt) throws JSONException {
+		writeValue(jt, null);
+	}
+
+	private void writeValue(JSONTokener jt, String name) throws JSONException {
+		char c = jt.nextClean();
+		switch (c) {
+		case '{':
+			writeObject(jt, name);
+			break;
+		case '[':
+			writeArray(jt, name);
+			break;
+		case '"':
+		case '\'':
+			writeText(_string, name, jt.nextString(c));
+			break;
+		default:
+			jt.back();
+			writeLiteral(jt, name);
+		}
+	}
+
+	private void writeObject(JSONTokener jt, String name) throws JSONException {
+		startElement(_object, name);
+		char c = jt.nextClean();
+		if (c == 0)
+			throw jt.syntaxError("A JSONObject text must end with '}'");
+		if (c != '}') {
+			jt.back();
+			while (true) {
+				String key = jt.nextValue().toString();
+				if (jt.nextClean() != ':')
+					throw jt.syntaxError("Expected a ':' after a key");
+				writeValue(jt, key);
+				c = jt.nextClean();
+				if (c == '}')
+					break;
+				if (c != ',' && c != ';')
+					throw jt.syntaxError("Expected a ',' or '}'");
+				if (jt.nextClean() == '}')
+					break;
+				jt.back();
+			}
+		}
+		tree.addEndElement();
+	}
+
+	private void writeArray(JSONTokener jt, String name) throws JSONException {
+		startElement(_array, name);
+		if (jt.nextClean() != ']') {
+			jt.back();
+			while (true) {
+				if (jt.nextClean() == ',') {
+					jt.back();
+					startElement(_null, null);
+					tree.addEndElement();
+				} else {
+					jt.back();
+					writeValue(jt, null);
+				}
+				char c = jt.nextClean();
+				if (c == ']')
+					break;
+				if (c != ',')
+					throw jt.syntaxError("Expected a ',' or ']'");
+				if (jt.nextClean() == ']')
+					break;
+				jt.back();
+			}
+		}
+		tree.addEndElement();
+	}
+
+	private void writeLiteral(JSONTokener jt, String name) throws JSONException {
+		StringBuilder sb = new StringBuilder();
+		char c = jt.next();
+		while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
+			sb.append(c);
+			c = jt.next();
+		}
+		jt.back();
+		String literal = sb.toString().trim();
+		if (literal.length() == 0)
+			throw jt.syntaxError("Missing value");
+		Object value = JSONObject.stringToValue(literal);
+		if (value == JSONObject.NULL) {
+			startElement(_null, name);
+			tree.addEndElement();
+		} else if (value instanceof Boolean) {
+			writeText(_boolean, name, value.toString());
+		} else if (value instanceof Number) {
+			writeText(_number, name, literal);
+		} else {
+			throw jt.syntaxError("Unexpected value " + literal);
+		}
+	}
+
+	private void writeText(QName element, String name, String text) {
+		startElement(element, name);
+		if (text.length() > 0) {
+			tree.addText(text);
+		}
+		tree.addEndElement();
+	}
+
+	private void startElement(QName element, String name) {
+		tree.addStartElement(element);
+		if (name != null) {
+			tree.addAttribute(_name, name);
+		}
+		tree.startContent();
+	}
+}
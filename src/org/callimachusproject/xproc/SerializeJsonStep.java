@@ -16,7 +16,6 @@
  */
 package org.callimachusproject.xproc;
 
-import java.io.PrintWriter;
 import java.io.StringWriter;
 
 import net.sf.saxon.s9api.Axis;
@@ -93,25 +92,30 @@ public class SerializeJsonStep implements XProcStep {
 			String contentType = getContentType(root);
 			XdmNode json = getJsonNode(root);
 
-			StringWriter out = new StringWriter();
-			if (json != null) {
-				PrintWriter writer = new PrintWriter(out);
-				writer.print(XMLtoJSON.convert(json));
-				writer.close();
-			}
+			String text = toJSON(json);
 
 			TreeWriter tree = new TreeWriter(runtime);
 			tree.startDocument(step.getNode().getBaseURI());
 			tree.addStartElement(XProcConstants.c_data);
 			tree.addAttribute(_content_type, contentType);
 			tree.startContent();
-			tree.addText(out.toString());
+			tree.addText(text);
 			tree.addEndElement();
 			tree.endDocument();
 			result.write(tree.getResult());
 		}
 	}
 
+	private String toJSON(XdmNode json) {
+		if (json == null)
+			return "";
+		if (!JSONXtoJSON.isJSONX(json))
+			return XMLtoJSON.convert(json);
+		StringWriter writer = new StringWriter();
+		new JSONXtoJSON(writer).writeValue(json);
+		return writer.toString();
+	}
+
 	private String getContentType(XdmNode root) {
 		if (this.contentType == null && root != null) {
 			return root.getAttributeValue(_content_type);
@@ -23,6 +23,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.openrdf.model.ValueFactory;
 import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.parser.ParsedUpdate;
 import org.openrdf.rio.RDFHandlerException;
 
 public class TestTripleAnalyzer {
@@ -157,4 +158,18 @@ public class TestTripleAnalyzer {
 		Assert.assertFalse(analyzer.isComplicated());
 	}
 
+	@Test
+	public void testReuseParsedUpdate() throws Exception {
+		String input = PREFIX + "INSERT DATA { <#me> a foaf:Person; foaf:knows [foaf:name \"you\"]}";
+		TripleAnalyzer first = new TripleAnalyzer();
+		ParsedUpdate parsed = first.analyzeUpdate(input, "http://example.com/");
+		Assert.assertSame(parsed, first.getParsedUpdate());
+		TripleAnalyzer second = new TripleAnalyzer();
+		second.analyzeUpdate(parsed);
+		Assert.assertFalse(second.isEmpty());
+		Assert.assertTrue(second.isAbout(vf.createURI("http://example.com/")));
+		Assert.assertFalse(second.isDisconnectedNodePresent());
+		Assert.assertTrue(second.isSingleton());
+	}
+
 }
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.RioSetting;
+import org.openrdf.rio.WriterConfig;
+
+public class ArrangedWriterTest {
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+	private final URI label = vf.createURI("http://example.org/label");
+	private final URI knows = vf.createURI("http://example.org/knows");
+	private final List<Statement> written = new ArrayList<Statement>();
+	private final List<String> prefixes = new ArrayList<String>();
+	private final RDFWriter recorder = new RDFWriter() {
+		public RDFFormat getRDFFormat() {
+			return RDFFormat.NTRIPLES;
+		}
+
+		public void setWriterConfig(WriterConfig config) {
+			// ignore
+		}
+
+		public WriterConfig getWriterConfig() {
+			return new WriterConfig();
+		}
+
+		public Collection<RioSetting<?>> getSupportedSettings() {
+			return Collections.emptyList();
+		}
+
+		public void startRDF() {
+			// ignore
+		}
+
+		public void endRDF() {
+			// ignore
+		}
+
+		public void handleNamespace(String prefix, String uri) {
+			prefixes.add(prefix);
+		}
+
+		public void handleStatement(Statement st) {
+			written.add(st);
+		}
+
+		public void handleComment(String comment) {
+			// ignore
+		}
+	};
+
+	@Test
+	public void testBoundedWindow() throws Exception {
+		ArrangedWriter writer = new ArrangedWriter(recorder, 10);
+		writer.startRDF();
+		for (int i = 0; i < 10000; i++) {
+			writer.handleStatement(stmt(uri(i), label, i));
+		}
+		assertEquals(10000 - 10, written.size());
+		writer.endRDF();
+		assertEquals(10000, written.size());
+	}
+
+	@Test
+	public void testSubjectsKeptTogether() throws Exception {
+		ArrangedWriter writer = new ArrangedWriter(recorder, 2);
+		writer.startRDF();
+		writer.handleStatement(stmt(uri(1), label, 1));
+		writer.handleStatement(stmt(uri(2), label, 2));
+		writer.handleStatement(stmt(uri(1), knows, uri(2)));
+		writer.handleStatement(stmt(uri(3), label, 3));
+		assertEquals(2, written.size());
+		assertEquals(uri(1), written.get(0).getSubject());
+		assertEquals(uri(1), written.get(1).getSubject());
+		writer.endRDF();
+	}
+
+	@Test
+	public void testSubjectOrdered() throws Exception {
+		ArrangedWriter writer = new ArrangedWriter(recorder);
+		writer.setSubjectOrdered(true);
+		writer.startRDF();
+		writer.handleStatement(stmt(uri(1), label, 1));
+		writer.handleStatement(stmt(uri(1), knows, uri(2)));
+		assertEquals(0, written.size());
+		writer.handleStatement(stmt(uri(2), label, 2));
+		assertEquals(2, written.size());
+		writer.endRDF();
+		assertEquals(3, written.size());
+	}
+
+	@Test
+	public void testBlankNodeNestedUnderReference() throws Exception {
+		BNode node = vf.createBNode();
+		ArrangedWriter writer = new ArrangedWriter(recorder, 2);
+		writer.setSubjectOrdered(true);
+		writer.startRDF();
+		writer.handleStatement(stmt(node, label, 0));
+		writer.handleStatement(stmt(uri(1), label, 1));
+		writer.handleStatement(stmt(uri(1), knows, node));
+		writer.handleStatement(stmt(uri(2), label, 2));
+		writer.handleStatement(stmt(uri(3), label, 3));
+		writer.endRDF();
+		assertEquals(5, written.size());
+		assertEquals(uri(1), written.get(0).getSubject());
+		assertEquals(node, written.get(1).getObject());
+		assertEquals(node, written.get(2).getSubject());
+		assertEquals(uri(2), written.get(3).getSubject());
+	}
+
+	@Test
+	public void testBlankNodeChain() throws Exception {
+		int length = 100000;
+		ArrangedWriter writer = new ArrangedWriter(recorder, 10);
+		writer.startRDF();
+		BNode head = vf.createBNode();
+		writer.handleStatement(stmt(uri(0), knows, head));
+		for (int i = 1; i < length; i++) {
+			BNode next = vf.createBNode();
+			writer.handleStatement(stmt(head, knows, next));
+			head = next;
+		}
+		writer.endRDF();
+		assertEquals(length, written.size());
+		for (int i = 1; i < length; i++) {
+			assertEquals(written.get(i - 1).getObject(), written.get(i)
+					.getSubject());
+		}
+	}
+
+	@Test
+	public void testSubjectOrderedWithNestedBlankNodes() throws Exception {
+		BNode node = vf.createBNode();
+		ArrangedWriter writer = new ArrangedWriter(recorder);
+		writer.setSubjectOrdered(true);
+		writer.startRDF();
+		writer.handleStatement(stmt(uri(1), label, 1));
+		writer.handleStatement(stmt(uri(1), knows, node));
+		writer.handleStatement(stmt(node, label, 0));
+		writer.handleStatement(stmt(uri(1), knows, uri(3)));
+		assertEquals(0, written.size());
+		writer.handleStatement(stmt(uri(2), label, 2));
+		assertEquals(4, written.size());
+		assertEquals(uri(1), written.get(0).getSubject());
+		assertEquals(uri(1), written.get(1).getSubject());
+		assertEquals(uri(1), written.get(2).getSubject());
+		assertEquals(node, written.get(3).getSubject());
+		writer.endRDF();
+		assertEquals(5, written.size());
+	}
+
+	@Test
+	public void testNamespacesTrimmedWhenDocumentFits() throws Exception {
+		ArrangedWriter writer = new ArrangedWriter(recorder, 10);
+		writer.startRDF();
+		writer.handleNamespace("ex", "http://example.org/");
+		writer.handleNamespace("unused", "http://example.com/unused#");
+		writer.handleStatement(stmt(uri(1), label, 1));
+		writer.handleStatement(stmt(uri(2), label, 2));
+		assertEquals(0, written.size());
+		writer.endRDF();
+		assertEquals(2, written.size());
+		assertEquals(Collections.singletonList("ex"), prefixes);
+	}
+
+	@Test
+	public void testNamespaceFirstUsedByLaterSubject() throws Exception {
+		URI title = vf.createURI("http://purl.org/dc/terms/title");
+		ArrangedWriter writer = new ArrangedWriter(recorder, 10);
+		writer.setSubjectOrdered(true);
+		writer.startRDF();
+		writer.handleNamespace("dcterms", "http://purl.org/dc/terms/");
+		writer.handleNamespace("ex", "http://example.org/");
+		writer.handleStatement(stmt(uri(1), label, 1));
+		writer.handleStatement(stmt(uri(2), title, 2));
+		assertEquals(1, written.size());
+		assertEquals(Arrays.asList("dcterms", "ex"), prefixes);
+		writer.endRDF();
+		assertEquals(2, written.size());
+		assertEquals(Arrays.asList("dcterms", "ex"), prefixes);
+	}
+
+	private URI uri(int i) {
+		return vf.createURI("http://example.org/" + i);
+	}
+
+	private Statement stmt(Resource subj, URI pred, int obj) {
+		return vf.createStatement(subj, pred, vf.createLiteral(obj));
+	}
+
+	private Statement stmt(Resource subj, URI pred, Value obj) {
+		return vf.createStatement(subj, pred, obj);
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncPipeTest {
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testCloseEmpty() throws Exception {
+		AsyncPipe pipe = new AsyncPipe(16);
+		pipe.close();
+		assertEquals(-1, pipe.source().read(ByteBuffer.allocate(16)));
+	}
+
+	@Test
+	public void testFail() throws Exception {
+		AsyncPipe pipe = new AsyncPipe(16);
+		pipe.fail(new IllegalStateException());
+		try {
+			pipe.source().read(ByteBuffer.allocate(16));
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	@Test
+	public void testWrapAround() throws Exception {
+		AsyncPipe pipe = new AsyncPipe(10);
+		ReadableByteChannel source = pipe.source();
+		ByteBuffer dst = ByteBuffer.allocate(7);
+		assertEquals(7, pipe.sink(sink(new byte[] { 0, 1, 2, 3, 4, 5, 6 })));
+		assertEquals(7, source.read(dst));
+		assertEquals(8, pipe.sink(sink(new byte[] { 7, 8, 9, 10, 11, 12, 13, 14 })));
+		ByteBuffer all = ByteBuffer.allocate(8);
+		assertEquals(8, source.read(all));
+		for (int i = 0; i < 8; i++) {
+			assertEquals(7 + i, all.get(i));
+		}
+	}
+
+	@Test
+	public void testCapacityCallback() throws Exception {
+		final AsyncPipe pipe = new AsyncPipe(8);
+		assertEquals(8, pipe.sink(sink(new byte[8])));
+		assertFalse(pipe.hasAvailableCapacity());
+		final CountDownLatch resumed = new CountDownLatch(1);
+		pipe.onAvailableCapacity(new Runnable() {
+			public void run() {
+				resumed.countDown();
+			}
+		});
+		assertEquals(1, resumed.getCount());
+		pipe.source().read(ByteBuffer.allocate(2));
+		assertEquals(1, resumed.getCount());
+		pipe.source().read(ByteBuffer.allocate(2));
+		assertTrue(resumed.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testSlowConsumer() throws Exception {
+		final int size = 4 * 1024 * 1024;
+		final byte[] chunk = new byte[4096];
+		new Random(42).nextBytes(chunk);
+		final AsyncPipe pipe = new AsyncPipe(65536);
+		Future<Long> consumer = executor.submit(new Callable<Long>() {
+			public Long call() throws Exception {
+				ReadableByteChannel source = pipe.source();
+				ByteBuffer dst = ByteBuffer.allocate(8192);
+				long total = 0;
+				int read;
+				while ((read = source.read(dst)) >= 0) {
+					for (int i = 0; i < read; i++) {
+						if (dst.get(i) != chunk[(int) ((total + i) % chunk.length)])
+							throw new AssertionError("Corrupt byte at " + (total + i));
+					}
+					total += read;
+					dst.clear();
+					if (total % (256 * 1024) < read) {
+						Thread.sleep(1);
+					}
+				}
+				return total;
+			}
+		});
+		final ByteBuffer src = ByteBuffer.wrap(chunk);
+		long produced = 0;
+		int stalls = 0;
+		while (produced < size) {
+			int n = pipe.sink(new AsyncPipe.Sink() {
+				public int read(ByteBuffer dst) {
+					int n = 0;
+					while (dst.hasRemaining()) {
+						if (!src.hasRemaining()) {
+							src.clear();
+						}
+						int len = Math.min(src.remaining(), dst.remaining());
+						dst.put(chunk, src.position(), len);
+						src.position(src.position() + len);
+						n += len;
+					}
+					return n;
+				}
+			});
+			produced += n;
+			if (!pipe.hasAvailableCapacity()) {
+				final CountDownLatch resumed = new CountDownLatch(1);
+				pipe.onAvailableCapacity(new Runnable() {
+					public void run() {
+						resumed.countDown();
+					}
+				});
+				stalls++;
+				assertTrue(resumed.await(10, TimeUnit.SECONDS));
+			}
+		}
+		pipe.close();
+		assertEquals(produced, consumer.get(60, TimeUnit.SECONDS).longValue());
+		assertTrue("producer never waited for the consumer", stalls > 0);
+	}
+
+	private ReadableByteChannel sink(byte[] bytes) {
+		final ByteBuffer src = ByteBuffer.wrap(bytes);
+		return new AsyncPipe.Sink() {
+			public int read(ByteBuffer dst) {
+				int n = Math.min(dst.remaining(), src.remaining());
+				src.get(dst.array(), dst.arrayOffset() + dst.position(), n);
+				dst.position(dst.position() + n);
+				return n;
+			}
+		};
+	}
+}
@@ -16,17 +16,21 @@
  */
 package org.callimachusproject.io;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -174,6 +178,44 @@ public class CarStreamTest {
 		in.close();
 	}
 
+	@Test
+	public void testReadAheadEverything() throws FileNotFoundException, IOException {
+		long now = System.currentTimeMillis() / 2000 * 2000;
+		byte[] large = new byte[3 * 1024 * 1024 + 7];
+		for (int i = 0; i < large.length; i++) {
+			large[i] = (byte) i;
+		}
+		CarOutputStream out = new CarOutputStream(new FileOutputStream(car));
+		out.writeFolderEntry("dir/", now).close();
+		OutputStream file = out.writeFileEntry("large", now, "application/octet-stream");
+		file.write(large);
+		file.close();
+		out.writeResourceEntry("resource", now, "text/plain").close();
+		out.close();
+		CarInputStream in = new CarInputStream(new FileInputStream(car), 2);
+		assertEquals("dir/", in.readEntryName());
+		assertTrue(in.isFolderEntry());
+		assertEquals(now, in.getEntryTime());
+		assertNull(in.getEntryType());
+		in.getEntryStream().close();
+		assertEquals("large", in.readEntryName());
+		assertTrue(in.isFileEntry());
+		assertEquals("application/octet-stream", in.getEntryType());
+		InputStream es1 = in.getEntryStream();
+		ByteArrayOutputStream copy = new ByteArrayOutputStream(large.length);
+		ChannelUtil.transfer(es1, copy);
+		es1.close();
+		assertArrayEquals(large, copy.toByteArray());
+		assertEquals("resource", in.readEntryName());
+		assertTrue(in.isResourceEntry());
+		assertEquals("text/plain", in.getEntryType());
+		InputStream es2 = in.getEntryStream();
+		assertEquals(-1, es2.read());
+		es2.close();
+		assertNull(in.readEntryName());
+		in.close();
+	}
+
 	@Test
 	public void testRoundTripExternalFolder() throws FileNotFoundException, IOException {
 		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(car));
@@ -239,4 +281,42 @@ public class CarStreamTest {
 		in.close();
 	}
 
+	@Test
+	public void testAbandonReadAhead() throws Exception {
+		long now = System.currentTimeMillis() / 2000 * 2000;
+		CarOutputStream out = new CarOutputStream(new FileOutputStream(car));
+		for (int i = 0; i < 40; i++) {
+			OutputStream entry = out.writeFileEntry("file" + i + ".txt", now, "text/plain");
+			entry.write(("file" + i).getBytes("UTF-8"));
+			entry.close();
+		}
+		out.close();
+		CarInputStream in = new CarInputStream(new FileInputStream(car), 4);
+		assertEquals("file0.txt", in.readEntryName());
+		in.getEntryStream().close();
+		assertEquals("file1.txt", in.readEntryName());
+		in.close();
+		assertTrue(in.awaitReadAhead(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testAbandonLargeReadAheadEntry() throws Exception {
+		long now = System.currentTimeMillis() / 2000 * 2000;
+		CarOutputStream out = new CarOutputStream(new FileOutputStream(car));
+		OutputStream small = out.writeFileEntry("small.txt", now, "text/plain");
+		small.write("small".getBytes("UTF-8"));
+		small.close();
+		OutputStream large = out.writeFileEntry("large.txt", now, "text/plain");
+		large.write(new byte[4 * 1024 * 1024]);
+		large.close();
+		out.close();
+		CarInputStream in = new CarInputStream(new FileInputStream(car), 4);
+		assertEquals("small.txt", in.readEntryName());
+		in.getEntryStream().close();
+		assertEquals("large.txt", in.readEntryName());
+		in.getEntryStream().read();
+		in.close();
+		assertTrue(in.awaitReadAhead(10, TimeUnit.SECONDS));
+	}
+
 }
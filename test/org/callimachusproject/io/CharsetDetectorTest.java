@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+public class CharsetDetectorTest {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Test
+	public void testUtf8ByteOrderMark() throws Exception {
+		byte[] text = "\uFEFFcaf\u00E9".getBytes(UTF8);
+		Reader reader = new CharsetDetector(UTF8).createReader(new ByteArrayInputStream(text));
+		assertEquals("caf\u00E9", read(reader));
+	}
+
+	@Test
+	public void testUtf16ByteOrderMark() throws Exception {
+		byte[] text = "\uFEFFcaf\u00E9".getBytes("UTF-16LE");
+		Reader reader = new CharsetDetector(UTF8).createReader(new ByteArrayInputStream(text));
+		assertEquals("caf\u00E9", read(reader));
+	}
+
+	@Test
+	public void testXmlDeclaration() throws Exception {
+		byte[] text = "<?xml version='1.0' encoding='ISO-8859-1'?><a>caf\u00E9</a>"
+				.getBytes("ISO-8859-1");
+		Reader reader = new CharsetDetector(UTF8).createReader(new ByteArrayInputStream(text));
+		assertEquals("<?xml version='1.0' encoding='ISO-8859-1'?><a>caf\u00E9</a>",
+				read(reader));
+	}
+
+	@Test
+	public void testHtmlMetaCharset() throws Exception {
+		byte[] text = "<html><head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=windows-1252\"></head></html>"
+				.getBytes("ISO-8859-1");
+		Charset charset = new CharsetDetector(UTF8).detect(text, text.length, false);
+		assertEquals(Charset.forName("windows-1252"), charset);
+	}
+
+	@Test
+	public void testAsciiUsesDefault() throws Exception {
+		byte[] text = "plain text".getBytes("US-ASCII");
+		Charset charset = new CharsetDetector(UTF8).detect(text, text.length, false);
+		assertEquals(UTF8, charset);
+	}
+
+	@Test
+	public void testSamplesOnlyTheStart() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<a>".getBytes(UTF8));
+		for (int i = 0; i < 100000; i++) {
+			out.write("caf\u00E9 ".getBytes(UTF8));
+		}
+		out.write("</a>".getBytes(UTF8));
+		final byte[] text = out.toByteArray();
+		final int[] consumed = new int[1];
+		InputStream in = new FilterInputStream(new ByteArrayInputStream(text)) {
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = super.read(b, off, len);
+				if (read > 0) {
+					consumed[0] += read;
+				}
+				return read;
+			}
+		};
+		Reader reader = new CharsetDetector(UTF8).createReader(in);
+		assertTrue(consumed[0] <= CharsetDetector.SAMPLE_SIZE);
+		assertEquals(new String(text, UTF8), read(reader));
+		assertEquals(text.length, consumed[0]);
+	}
+
+	private String read(Reader reader) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		char[] buf = new char[1024];
+		int read;
+		while ((read = reader.read(buf)) >= 0) {
+			sb.append(buf, 0, read);
+		}
+		reader.close();
+		return sb.toString();
+	}
+}
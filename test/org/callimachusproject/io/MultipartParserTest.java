@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MultipartParserTest {
+	private static final String BOUNDARY = "----------1234567890abcdef";
+
+	@Test
+	public void testParts() throws Exception {
+		byte[] multipart = multipart("hello", "", "--" + BOUNDARY + "x\r\n--"
+				+ BOUNDARY.substring(1) + "\r");
+		MultipartParser parser = new MultipartParser(new ByteArrayInputStream(
+				multipart));
+		assertEquals("hello", read(parser.next()));
+		assertEquals("text/plain", parser.getHeaders().get("content-type"));
+		assertEquals("", read(parser.next()));
+		assertEquals("--" + BOUNDARY + "x\r\n--" + BOUNDARY.substring(1)
+				+ "\r", read(parser.next()));
+		assertNull(parser.next());
+	}
+
+	@Test
+	public void testOneByteReads() throws Exception {
+		byte[] multipart = multipart("first\r\n", "second\r\n--");
+		InputStream in = new FilterInputStream(new ByteArrayInputStream(
+				multipart)) {
+			public int read(byte[] b, int off, int len) throws IOException {
+				return super.read(b, off, Math.min(1, len));
+			}
+		};
+		MultipartParser parser = new MultipartParser(in);
+		InputStream part = parser.next();
+		StringBuilder sb = new StringBuilder();
+		int ch;
+		while ((ch = part.read()) != -1) {
+			sb.append((char) ch);
+		}
+		assertEquals("first\r\n", sb.toString());
+		assertEquals("second\r\n--", read(parser.next()));
+		assertNull(parser.next());
+	}
+
+	@Test
+	public void testClosePart() throws Exception {
+		byte[] multipart = multipart("skipped", "read");
+		MultipartParser parser = new MultipartParser(new ByteArrayInputStream(
+				multipart));
+		parser.next().close();
+		assertEquals("read", read(parser.next()));
+		assertNull(parser.next());
+	}
+
+	@Test
+	public void testChannel() throws Exception {
+		byte[] payload = new byte[1024 * 1024];
+		new Random(42).nextBytes(payload);
+		byte[] multipart = multipart(payload);
+		MultipartParser parser = new MultipartParser(
+				Channels.newChannel(new ByteArrayInputStream(multipart)));
+		assertArrayEquals(payload, readBytes(parser.next()));
+		assertNull(parser.next());
+	}
+
+	private byte[] multipart(String... parts) throws IOException {
+		byte[][] bytes = new byte[parts.length][];
+		for (int i = 0; i < parts.length; i++) {
+			bytes[i] = parts[i].getBytes("ISO-8859-1");
+		}
+		return multipart(bytes);
+	}
+
+	private byte[] multipart(byte[]... parts) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (byte[] part : parts) {
+			out.write(("--" + BOUNDARY + "\r\n").getBytes("ISO-8859-1"));
+			out.write("Content-Type: text/plain\r\n\r\n".getBytes("ISO-8859-1"));
+			out.write(part);
+			out.write("\r\n".getBytes("ISO-8859-1"));
+		}
+		out.write(("--" + BOUNDARY + "--\r\n").getBytes("ISO-8859-1"));
+		return out.toByteArray();
+	}
+
+	private String read(InputStream in) throws IOException {
+		return new String(readBytes(in), "ISO-8859-1");
+	}
+
+	private byte[] readBytes(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[1000];
+		int read;
+		while ((read = in.read(buf)) >= 0) {
+			out.write(buf, 0, read);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+}
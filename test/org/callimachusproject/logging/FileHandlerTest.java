@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileHandlerTest {
+	private static final String PREFIX = FileHandler.class.getName();
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = File.createTempFile("log", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		LogManager.getLogManager().readConfiguration();
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void testSynchronous() throws Exception {
+		FileHandler handler = create("async=false");
+		assertTrue(!handler.isAsync());
+		publish(handler, Level.INFO, 10);
+		assertEquals(10, countLines());
+		handler.close();
+	}
+
+	@Test
+	public void testAsynchronous() throws Exception {
+		FileHandler handler = create("async=true", "flushSize=1000",
+				"flushInterval=50");
+		assertTrue(handler.isAsync());
+		publish(handler, Level.INFO, 100);
+		long until = System.currentTimeMillis() + 5000;
+		while (countLines() < 100 && System.currentTimeMillis() < until) {
+			Thread.sleep(10);
+		}
+		assertEquals(100, countLines());
+		assertEquals(0, handler.getQueueDepth());
+		assertEquals(0, handler.getDroppedRecords());
+		handler.close();
+	}
+
+	@Test
+	public void testDropAll() throws Exception {
+		FileHandler handler = create("async=true", "queue=1",
+				"overflow=drop-all");
+		BlockingFormatter formatter = new BlockingFormatter();
+		handler.setFormatter(formatter);
+		publish(handler, Level.INFO, 1);
+		assertTrue(formatter.started.await(10, TimeUnit.SECONDS));
+		publish(handler, Level.INFO, 1000);
+		formatter.release.countDown();
+		handler.close();
+		assertTrue(handler.getDroppedRecords() > 0);
+		assertEquals(1001, countLines() + handler.getDroppedRecords());
+	}
+
+	@Test
+	public void testDropDebug() throws Exception {
+		FileHandler handler = create("async=true", "queue=1",
+				"overflow=drop-debug");
+		BlockingFormatter formatter = new BlockingFormatter();
+		handler.setFormatter(formatter);
+		publish(handler, Level.FINE, 1);
+		assertTrue(formatter.started.await(10, TimeUnit.SECONDS));
+		publish(handler, Level.FINE, 1000);
+		assertTrue(handler.getDroppedRecords() > 0);
+		formatter.release.countDown();
+		publish(handler, Level.WARNING, 1000);
+		handler.close();
+		assertEquals(1000, countLines(Level.WARNING));
+		assertEquals(2001, countLines() + handler.getDroppedRecords());
+	}
+
+	/**
+	 * Holds up the writer thread on the first record it formats.
+	 */
+	private static class BlockingFormatter extends SimpleFormatter {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		@Override
+		public synchronized String format(LogRecord record) {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return super.format(record);
+		}
+	}
+
+	private FileHandler create(String... properties) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append(PREFIX).append(".pattern=");
+		sb.append(new File(dir, "test.log").getPath().replace('\\', '/'));
+		sb.append("\n").append(PREFIX).append(".formatter=");
+		sb.append(SimpleFormatter.class.getName()).append("\n");
+		sb.append(PREFIX).append(".level=ALL\n");
+		for (String property : properties) {
+			sb.append(PREFIX).append('.').append(property).append("\n");
+		}
+		byte[] bytes = sb.toString().getBytes("ISO-8859-1");
+		LogManager.getLogManager().readConfiguration(
+				new ByteArrayInputStream(bytes));
+		return new FileHandler();
+	}
+
+	private void publish(FileHandler handler, Level level, int count) {
+		for (int i = 0; i < count; i++) {
+			LogRecord record = new LogRecord(level, level.getName()
+					+ " message " + i);
+			record.setLoggerName(getClass().getName());
+			handler.publish(record);
+		}
+	}
+
+	private int countLines() throws IOException {
+		return countLines("message ");
+	}
+
+	private int countLines(Level level) throws IOException {
+		return countLines(level.getName() + " message ");
+	}
+
+	private int countLines(String text) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(new File(
+				dir, "test.log")));
+		try {
+			int lines = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.contains(text))
+					lines++;
+			}
+			return lines;
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -696,6 +696,25 @@ public class AuditingPurgeTest extends TestCase {
 				"}"));
 	}
 
+	public void testPurgeInBatches() throws Exception {
+		repo.setPurgeBatchSize(1);
+		begin(con);
+		assertTrue(con.isEmpty());
+		con.add(carmichael, knows, harris);
+		con = reopen(repo, con);
+		con.remove(carmichael, knows, null);
+		con.add(carmichael, knows, jackson);
+		con = reopen(repo, con);
+		con.remove(carmichael, knows, null);
+		con.add(carmichael, knows, lismer);
+		con = commit(repo, con);
+		assertTrue(con.hasStatement(carmichael, knows, lismer, false));
+		assertFalse(con.hasStatement(carmichael, knows, harris, false));
+		assertFalse(con.hasStatement(null, RDF.TYPE, OBSOLETE, false));
+		assertTrue(repo.getPurgedBundleCount() >= 2);
+		assertEquals(0, repo.getObsoleteBundleCount());
+	}
+
 	public void testRemoveAdd() throws Exception {
 		begin(con);
 		assertTrue(con.isEmpty());
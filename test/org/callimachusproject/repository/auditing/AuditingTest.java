@@ -422,6 +422,24 @@ public class AuditingTest extends TestCase {
 				"}"));
 	}
 
+	public void testAddBulk() throws Exception {
+		begin(con);
+		assertTrue(con.isEmpty());
+		for (int i = 0; i < 2000; i++) {
+			URI subj = vf.createURI(NS, "person" + i);
+			for (int j = 0; j < 10; j++) {
+				con.add(subj, knows, vf.createURI(NS, "person" + (i + j + 1)));
+			}
+		}
+		con = commit(repo, con);
+		assertEquals(1, asList(con.getContextIDs()).size());
+		assertTrue(con.hasStatement(null, ENDED_AT, null, false));
+		assertTrue(ask("<person0> prov:wasGeneratedBy ?provenance",
+				"<person1999> prov:wasGeneratedBy ?provenance"));
+		assertFalse(ask("?person foaf:knows ?friend",
+				"FILTER NOT EXISTS { ?person prov:wasGeneratedBy ?provenance }"));
+	}
+
 	public void testAddManyDefaultGraph() throws Exception {
 		begin(con);
 		assertTrue(con.isEmpty());
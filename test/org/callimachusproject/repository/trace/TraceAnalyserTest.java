@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.repository.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TraceAnalyserTest {
+	private static final Class<?>[] NO_TYPES = new Class<?>[0];
+	private final TraceAnalyser analyser = new TraceAnalyser();
+
+	@Test
+	public void testPruneKeepsNewAggregate() throws Exception {
+		for (int i = 0; i < 4096; i++) {
+			call(i, 1, 1);
+		}
+		TraceAggregate inserted = aggregate(4096);
+		assertSame(inserted, aggregate(4096));
+	}
+
+	@Test
+	public void testPruneEvictsLeastInvoked() throws Exception {
+		for (int i = 0; i < 4096; i++) {
+			if (i < 1024) {
+				call(i, 1, 1);
+			} else {
+				call(i, 2, 100);
+			}
+		}
+		call(4096, 1, 1);
+		int kept = 0;
+		for (int i = 1024; i < 4096; i++) {
+			if (aggregate(i).getInvocations() > 0) {
+				kept++;
+			}
+		}
+		assertTrue(kept > 3000);
+		for (int i = 0; i < 1024; i++) {
+			assertEquals(0, aggregate(i).getInvocations());
+		}
+	}
+
+	private void call(int method, int invocations, long duration) {
+		TraceAggregate aggregate = aggregate(method);
+		for (int i = 0; i < invocations; i++) {
+			aggregate.spent(duration);
+		}
+	}
+
+	private TraceAggregate aggregate(int method) {
+		return analyser.getAggregate(null, int.class, "m" + method, NO_TYPES);
+	}
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.repository.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TracerServiceTest {
+	public interface Service {
+		int work(String input) throws InterruptedException;
+
+		Service child();
+	}
+
+	public static class ServiceImpl implements Service {
+		private final CountDownLatch started;
+		private final CountDownLatch release;
+
+		public ServiceImpl() {
+			this(null, null);
+		}
+
+		public ServiceImpl(CountDownLatch started, CountDownLatch release) {
+			this.started = started;
+			this.release = release;
+		}
+
+		public int work(String input) throws InterruptedException {
+			if (started != null) {
+				started.countDown();
+				release.await();
+			}
+			int hash = 0;
+			for (int i = 0; i < 200; i++) {
+				hash = 31 * hash + (input + i).hashCode();
+			}
+			return hash;
+		}
+
+		public Service child() {
+			return new ServiceImpl();
+		}
+	}
+
+	private TracerService service;
+
+	@Before
+	public void setUp() {
+		service = new TracerService(getClass().getClassLoader());
+		service.setTracingPackages(Service.class.getName());
+	}
+
+	@Test
+	public void testConcurrentAggregation() throws Exception {
+		final Service traced = service.trace(new ServiceImpl(), Service.class);
+		final int count = 10000;
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			threads.add(new Thread(new Runnable() {
+				public void run() {
+					try {
+						for (int i = 0; i < count; i++) {
+							traced.work("a");
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Trace[] top = service.getTracesByTotalTime();
+		assertEquals(1, top.length);
+		assertEquals(8 * count, ((TraceAggregate) top[0]).getInvocations());
+		assertEquals(0, service.getActiveCallTraces().length);
+	}
+
+	@Test
+	public void testChainedTraces() throws Exception {
+		Service traced = service.trace(new ServiceImpl(), Service.class);
+		for (int i = 0; i < 100; i++) {
+			traced.work("a");
+		}
+		Service child = traced.child();
+		child.work("b");
+		Trace[] top = service.getTracesByAverageTime();
+		assertEquals(3, top.length);
+		for (Trace trace : top) {
+			if (trace.getPreviousTrace() != null) {
+				assertTrue(trace.toString().contains(".work("));
+			}
+		}
+		service.resetAnalysis();
+		assertEquals(0, service.getTracesByAverageTime().length);
+	}
+
+	@Test
+	public void testActiveCalls() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		final Service traced = service.trace(new ServiceImpl(started, release), Service.class);
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					traced.work("a");
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		thread.start();
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		Trace[] active = service.getActiveCallTraces();
+		assertEquals(1, active.length);
+		assertTrue(active[0].toString().contains("work"));
+		release.countDown();
+		thread.join();
+		assertEquals(0, service.getActiveCallTraces().length);
+	}
+
+	@Test
+	public void testIdleThreadReleased() throws Exception {
+		final CountDownLatch called = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Service traced = service.trace(new ServiceImpl(), Service.class);
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					traced.work("a");
+					called.countDown();
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		thread.start();
+		assertTrue(called.await(10, TimeUnit.SECONDS));
+		assertTrue(thread.isAlive());
+		assertEquals(0, service.getActiveThreadCount());
+		release.countDown();
+		thread.join();
+	}
+
+	@Test
+	public void testSamplingRate() throws Exception {
+		service.setSamplingRate(0);
+		Service traced = service.trace(new ServiceImpl(), Service.class);
+		traced.work("a");
+		Service child = traced.child();
+		assertFalse(Proxy.isProxyClass(child.getClass()));
+		assertEquals(0, service.getTracesByTotalTime().length);
+		service.setSamplingRate(0.5);
+		service.resetAnalysis();
+		for (int i = 0; i < 1000; i++) {
+			traced.work("a");
+		}
+		Trace[] top = service.getTracesByTotalTime();
+		assertEquals(1, top.length);
+		int invocations = ((TraceAggregate) top[0]).getInvocations();
+		assertTrue(invocations > 300 && invocations < 700);
+	}
+
+}
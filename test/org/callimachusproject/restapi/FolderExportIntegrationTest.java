@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.restapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.callimachusproject.io.CarInputStream;
+import org.callimachusproject.io.ChannelUtil;
+import org.callimachusproject.test.TemporaryServerIntegrationTestCase;
+import org.callimachusproject.test.WebResource;
+
+public class FolderExportIntegrationTest extends TemporaryServerIntegrationTestCase {
+	private static int count = 0;
+	private final List<WebResource> created = new ArrayList<WebResource>();
+	private WebResource folder;
+
+	public FolderExportIntegrationTest(String name) throws Exception {
+		super(name);
+	}
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		folder = getHomeFolder().createFolder("export" + ++count + "/");
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		for (int i = created.size() - 1; i >= 0; i--) {
+			created.get(i).link("describedby").delete();
+		}
+		created.clear();
+		if (folder != null) {
+			folder.link("describedby").delete();
+		}
+		super.tearDown();
+	}
+
+	public void testEntryOrder() throws Exception {
+		createFile(folder, "c.txt", "c");
+		createFile(folder, "a.txt", "a");
+		createFile(folder, "b.txt", "b");
+		Map<String, String> entries = export(folder.ref("?archive"));
+		assertEquals(Arrays.asList("a.txt", "b.txt", "c.txt"),
+				new ArrayList<String>(entries.keySet()));
+		assertEquals("a", entries.get("a.txt"));
+		assertEquals("c", entries.get("c.txt"));
+	}
+
+	public void testResumeAfter() throws Exception {
+		createFile(folder, "a.txt", "a");
+		createFile(folder, "b.txt", "b");
+		createFile(folder, "c.txt", "c");
+		Map<String, String> entries = export(folder.ref("?archive&after=b.txt"));
+		assertEquals(Arrays.asList("c.txt"),
+				new ArrayList<String>(entries.keySet()));
+	}
+
+	public void testResumeAfterLast() throws Exception {
+		createFile(folder, "a.txt", "a");
+		Map<String, String> entries = export(folder.ref("?archive&after=a.txt"));
+		assertTrue(entries.isEmpty());
+	}
+
+	public void testEmptyFolder() throws Exception {
+		WebResource empty = folder.createFolder("empty/");
+		created.add(empty);
+		Map<String, String> entries = export(folder.ref("?archive"));
+		assertEquals(Arrays.asList("empty/"),
+				new ArrayList<String>(entries.keySet()));
+		assertEquals("", entries.get("empty/"));
+	}
+
+	public void testLargeEntry() throws Exception {
+		char[] large = new char[512 * 1024];
+		Arrays.fill(large, 'x');
+		createFile(folder, "a.txt", "a");
+		createFile(folder, "large.txt", new String(large));
+		createFile(folder, "z.txt", "z");
+		Map<String, String> entries = export(folder.ref("?archive"));
+		assertEquals(Arrays.asList("a.txt", "large.txt", "z.txt"),
+				new ArrayList<String>(entries.keySet()));
+		assertEquals(large.length, entries.get("large.txt").length());
+	}
+
+	private void createFile(WebResource folder, String slug, String content)
+			throws IOException {
+		created.add(folder.link("contents", "application/atom+xml")
+				.getAppCollection()
+				.create(slug, "text/plain", content.getBytes("UTF-8")));
+	}
+
+	private Map<String, String> export(WebResource archive) throws IOException {
+		Map<String, String> entries = new LinkedHashMap<String, String>();
+		byte[] car = archive.get("application/zip");
+		CarInputStream in = new CarInputStream(new ByteArrayInputStream(car));
+		try {
+			String name;
+			while ((name = in.readEntryName()) != null) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				InputStream entry = in.getEntryStream();
+				if (entry != null) {
+					try {
+						ChannelUtil.transfer(entry, out);
+					} finally {
+						entry.close();
+					}
+				}
+				entries.put(name, out.toString("UTF-8"));
+			}
+		} finally {
+			in.close();
+		}
+		return entries;
+	}
+
+}
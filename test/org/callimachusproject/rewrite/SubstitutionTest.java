@@ -307,6 +307,22 @@ public class SubstitutionTest extends TestCase {
 		assertNull(substitution.replace(com, param));
 	}
 
+	public void testLiteralPrefix() throws Exception {
+		Substitution anchored = Substitution.compile("^http://example.com/(.*)", "/{1}");
+		assertEquals("/a", anchored.replace("http://example.com/a").toString());
+		assertNull(anchored.replace("http://example.org/a"));
+		assertNull(anchored.replace("x http://example.com/a"));
+		Substitution unanchored = Substitution.compile("example.com/(.*)", "/{1}");
+		assertEquals("/a", unanchored.replace("http://example.com/a").toString());
+		Substitution optional = Substitution.compile("^https?://(.*)", "/{1}");
+		assertEquals("/a", optional.replace("http://a").toString());
+		assertEquals("/a", optional.replace("https://a").toString());
+		Substitution alternate = Substitution.compile("^a/(.*)|^b/(.*)", "/{var}");
+		assertEquals("/x", alternate.replace("b/y", Collections.singletonMap("var", "x")).toString());
+		Substitution insensitive = Substitution.compile("^HTTP://(.*)", "/{1}", "i");
+		assertEquals("/a", insensitive.replace("http://a").toString());
+	}
+
 	private void assertSubstitution(String sub, String expected)
 			throws UnsupportedEncodingException {
 		String actual = Substitution.compile(sub).replace(sub, values).toString();
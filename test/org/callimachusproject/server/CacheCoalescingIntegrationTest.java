@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.callimachusproject.test.TemporaryServerIntegrationTestCase;
+import org.callimachusproject.test.WebResource;
+
+public class CacheCoalescingIntegrationTest extends
+		TemporaryServerIntegrationTestCase {
+	private static final int CONCURRENCY = 16;
+	private static final String CONTENT = "User-agent: *\nDisallow:";
+	private static int count = 0;
+	private final ExecutorService executor = Executors
+			.newFixedThreadPool(CONCURRENCY);
+	private WebResource file;
+
+	@Override
+	public void setUp() throws Exception {
+		file = null;
+		super.setUp();
+		String slug = "coalesce" + ++count + ".txt";
+		file = getHomeFolder().link("contents", "application/atom+xml")
+				.getAppCollection()
+				.create(slug, "text/plain", CONTENT.getBytes());
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+		if (file != null) {
+			file.delete();
+		}
+		super.tearDown();
+	}
+
+	public void testConcurrentMissesShareResponse() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			WebServer.resetAllCache();
+			long before = getCoalescedRequests();
+			long forwarded = getForwardedRequests();
+			for (String body : getConcurrently()) {
+				assertEquals(CONTENT, body);
+			}
+			assertTrue(getCoalescedRequests() - before > 0);
+			assertEquals(1, getForwardedRequests() - forwarded);
+		}
+	}
+
+	public void testCoalescingDisabled() throws Exception {
+		int wait = setCoalescingWait(0);
+		try {
+			WebServer.resetAllCache();
+			long before = getCoalescedRequests();
+			for (String body : getConcurrently()) {
+				assertEquals(CONTENT, body);
+			}
+			assertEquals(before, getCoalescedRequests());
+		} finally {
+			setCoalescingWait(wait);
+		}
+	}
+
+	private List<String> getConcurrently() throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<String>> futures = new ArrayList<Future<String>>();
+		for (int i = 0; i < CONCURRENCY; i++) {
+			futures.add(executor.submit(new Callable<String>() {
+				public String call() throws Exception {
+					start.await();
+					return new String(file.get("text/plain"));
+				}
+			}));
+		}
+		start.countDown();
+		List<String> bodies = new ArrayList<String>(CONCURRENCY);
+		for (Future<String> future : futures) {
+			bodies.add(future.get());
+		}
+		return bodies;
+	}
+
+	private long getCoalescedRequests() {
+		long sum = 0;
+		for (WebServer server : WebServer.getInstances()) {
+			sum += server.getCacheCoalescedRequests();
+		}
+		return sum;
+	}
+
+	private long getForwardedRequests() {
+		long sum = 0;
+		for (WebServer server : WebServer.getInstances()) {
+			sum += server.getCacheForwardedRequests();
+		}
+		return sum;
+	}
+
+	private int setCoalescingWait(int wait) {
+		int previous = 0;
+		for (WebServer server : WebServer.getInstances()) {
+			previous = server.getCacheCoalescingWait();
+			server.setCacheCoalescingWait(wait);
+		}
+		return previous;
+	}
+}
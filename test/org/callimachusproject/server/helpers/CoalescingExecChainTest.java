@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.server.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.callimachusproject.server.AsyncExecChain;
+import org.junit.After;
+import org.junit.Test;
+
+public class CoalescingExecChainTest {
+	/** Holds every request until it is completed by the test */
+	static class PendingExecChain implements AsyncExecChain {
+		final List<BasicFuture<HttpResponse>> pending = new ArrayList<BasicFuture<HttpResponse>>();
+
+		public synchronized Future<HttpResponse> execute(HttpHost target,
+				HttpRequest request, HttpContext context,
+				FutureCallback<HttpResponse> callback) {
+			BasicFuture<HttpResponse> future = new BasicFuture<HttpResponse>(callback);
+			pending.add(future);
+			return future;
+		}
+
+		synchronized int size() {
+			return pending.size();
+		}
+
+		void complete(int index, HttpResponse response) {
+			BasicFuture<HttpResponse> future;
+			synchronized (this) {
+				future = pending.get(index);
+			}
+			future.completed(response);
+		}
+	}
+
+	private final ScheduledExecutorService timer = Executors
+			.newSingleThreadScheduledExecutor();
+	private final PendingExecChain origin = new PendingExecChain();
+	private final HttpHost host = new HttpHost("example.com");
+	private final FutureCallback<HttpResponse> ignore = new FutureCallback<HttpResponse>() {
+		public void completed(HttpResponse result) {
+			// ignore
+		}
+
+		public void failed(Exception ex) {
+			// ignore
+		}
+
+		public void cancelled() {
+			// ignore
+		}
+	};
+
+	@After
+	public void tearDown() throws Exception {
+		timer.shutdownNow();
+	}
+
+	@Test
+	public void testIdenticalRequestsWait() throws Exception {
+		CoalescingExecChain chain = new CoalescingExecChain(origin, timer, 60000);
+		List<Future<HttpResponse>> futures = new ArrayList<Future<HttpResponse>>();
+		for (int i = 0; i < 10; i++) {
+			futures.add(chain.execute(host, get("/page"), null, ignore));
+		}
+		assertEquals(1, origin.size());
+		assertEquals(9, chain.getCoalesced());
+		HttpResponse first = response(200, "public");
+		origin.complete(0, first);
+		assertSame(first, futures.get(0).get());
+		assertEquals(10, origin.size());
+		HttpResponse cached = response(200, "public");
+		for (int i = 1; i < 10; i++) {
+			origin.complete(i, cached);
+			assertSame(cached, futures.get(i).get(1, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void testDifferentRequestsProceed() throws Exception {
+		CoalescingExecChain chain = new CoalescingExecChain(origin, timer, 60000);
+		chain.execute(host, get("/page"), null, ignore);
+		chain.execute(host, get("/other"), null, ignore);
+		HttpRequest xml = get("/page");
+		xml.setHeader("Accept", "application/xml");
+		chain.execute(host, xml, null, ignore);
+		HttpRequest auth = get("/page");
+		auth.setHeader("Authorization", "Basic Zm9vOmJhcg==");
+		chain.execute(host, auth, null, ignore);
+		HttpRequest noCache = get("/page");
+		noCache.setHeader("Cache-Control", "no-cache");
+		chain.execute(host, noCache, null, ignore);
+		chain.execute(host, new BasicHttpRequest("POST", "/page"), null, ignore);
+		assertEquals(6, origin.size());
+		assertEquals(0, chain.getCoalesced());
+	}
+
+	@Test
+	public void testWaitIsBounded() throws Exception {
+		CoalescingExecChain chain = new CoalescingExecChain(origin, timer, 50);
+		chain.execute(host, get("/page"), null, ignore);
+		Future<HttpResponse> second = chain.execute(host, get("/page"), null, ignore);
+		assertEquals(1, origin.size());
+		long until = System.currentTimeMillis() + 5000;
+		while (origin.size() < 2 && System.currentTimeMillis() < until) {
+			Thread.sleep(10);
+		}
+		assertEquals(2, origin.size());
+		HttpResponse response = response(200, "public");
+		origin.complete(1, response);
+		assertSame(response, second.get(1, TimeUnit.SECONDS));
+		origin.complete(0, response(200, "public"));
+		assertEquals(2, origin.size());
+	}
+
+	@Test
+	public void testUnsharedResponsesStopCoalescing() throws Exception {
+		CoalescingExecChain chain = new CoalescingExecChain(origin, timer, 60000);
+		chain.execute(host, get("/page"), null, ignore);
+		chain.execute(host, get("/page"), null, ignore);
+		origin.complete(0, response(200, "no-store"));
+		assertEquals(2, origin.size());
+		chain.execute(host, get("/page"), null, ignore);
+		chain.execute(host, get("/page"), null, ignore);
+		assertEquals(4, origin.size());
+		assertEquals(1, chain.getCoalesced());
+		chain.reset();
+		chain.execute(host, get("/page"), null, ignore);
+		chain.execute(host, get("/page"), null, ignore);
+		assertEquals(5, origin.size());
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		CoalescingExecChain chain = new CoalescingExecChain(origin, timer, 0);
+		chain.execute(host, get("/page"), null, ignore);
+		chain.execute(host, get("/page"), null, ignore);
+		assertEquals(2, origin.size());
+		assertEquals(0, chain.getCoalesced());
+	}
+
+	@Test
+	public void testFailureReleasesWaiting() throws Exception {
+		CoalescingExecChain chain = new CoalescingExecChain(origin, timer, 60000);
+		chain.execute(host, get("/page"), null, ignore);
+		Future<HttpResponse> second = chain.execute(host, get("/page"), null, ignore);
+		synchronized (origin) {
+			origin.pending.get(0).failed(new IllegalStateException());
+		}
+		assertEquals(2, origin.size());
+		HttpResponse response = response(200, "public");
+		origin.complete(1, response);
+		assertSame(response, second.get(1, TimeUnit.SECONDS));
+	}
+
+	private HttpRequest get(String uri) {
+		return new BasicHttpRequest("GET", uri);
+	}
+
+	private HttpResponse response(int code, String cacheControl) {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, code, "");
+		response.setHeader("Cache-Control", cacheControl);
+		return response;
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.server.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpExecutionAware;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.execchain.ClientExecChain;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.callimachusproject.server.AsyncExecChain;
+import org.callimachusproject.server.util.LatencyHistogram;
+import org.junit.Test;
+
+public class TimedExecChainTest {
+	static class ClosingResponse extends BasicHttpResponse implements
+			CloseableHttpResponse {
+		ClosingResponse(int code) {
+			super(HttpVersion.HTTP_1_1, code, "");
+		}
+
+		public void close() {
+			// nothing to close
+		}
+	}
+
+	private final HttpResponse ok = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+	private final CloseableHttpResponse notFound = new ClosingResponse(404);
+	private final HttpHost host = new HttpHost("example.com");
+	private final HttpRequest request = new BasicHttpRequest("GET", "/");
+	private final HttpRoute route = new HttpRoute(host);
+	private final FutureCallback<HttpResponse> ignore = new FutureCallback<HttpResponse>() {
+		public void completed(HttpResponse result) {
+			// ignore
+		}
+
+		public void failed(Exception ex) {
+			// ignore
+		}
+
+		public void cancelled() {
+			// ignore
+		}
+	};
+	private final AsyncExecChain completing = new AsyncExecChain() {
+		public Future<HttpResponse> execute(HttpHost target,
+				HttpRequest request, HttpContext context,
+				FutureCallback<HttpResponse> callback) {
+			callback.completed(ok);
+			return null;
+		}
+	};
+	private final AsyncExecChain failing = new AsyncExecChain() {
+		public Future<HttpResponse> execute(HttpHost target,
+				HttpRequest request, HttpContext context,
+				FutureCallback<HttpResponse> callback) {
+			callback.failed(null);
+			return null;
+		}
+	};
+	private final ClientExecChain blocking = new ClientExecChain() {
+		public CloseableHttpResponse execute(HttpRoute route,
+				HttpRequestWrapper request, HttpClientContext context,
+				HttpExecutionAware execAware) throws IOException,
+				HttpException {
+			return notFound;
+		}
+	};
+
+	@Test
+	public void testDisabledRecordsNothing() throws Exception {
+		TimedExecChain timed = new TimedExecChain("test", completing);
+		timed.execute(host, request, null, ignore);
+		assertEquals(0, timed.getHistogram(200).getCount());
+		assertEquals(0, timed.getSummary().length);
+	}
+
+	@Test
+	public void testByStatusClass() throws Exception {
+		TimedExecChain timed = new TimedExecChain("test", completing);
+		TimedExecChain failed = new TimedExecChain("failed", failing);
+		TimedExecChain sync = new TimedExecChain("sync", blocking);
+		timed.setEnabled(true);
+		failed.setEnabled(true);
+		sync.setEnabled(true);
+		for (int i = 0; i < 10; i++) {
+			timed.execute(host, request, null, ignore);
+			failed.execute(host, request, null, ignore);
+			sync.execute(route, null, null, null);
+		}
+		assertEquals(10, timed.getHistogram(204).getCount());
+		assertEquals(0, timed.getHistogram(0).getCount());
+		assertEquals(10, failed.getHistogram(0).getCount());
+		assertEquals(10, sync.getHistogram(404).getCount());
+		assertEquals(1, timed.getSummary().length);
+		assertTrue(timed.getSummary()[0].startsWith("test,2xx,10,"));
+		assertEquals("failed,failed,10", failed.getSummary()[0].substring(0, 16));
+		timed.reset();
+		assertEquals(0, timed.getSummary().length);
+	}
+
+	@Test
+	public void testSyncNoAllocationInSteadyState() throws Exception {
+		TimedExecChain timed = new TimedExecChain("sync", blocking);
+		timed.setEnabled(true);
+		LatencyHistogram histogram = new LatencyHistogram();
+		int count = 100000;
+		for (int i = 0; i < count; i++) {
+			timed.execute(route, null, null, null);
+			histogram.record(i, TimeUnit.NANOSECONDS);
+		}
+		long before = allocatedBytes();
+		for (int i = 0; i < count; i++) {
+			timed.execute(route, null, null, null);
+			histogram.record(i, TimeUnit.NANOSECONDS);
+		}
+		long allocated = allocatedBytes() - before;
+		assertTrue("allocated " + allocated + " bytes", allocated < count);
+		assertEquals(2 * count, timed.getHistogram(404).getCount());
+	}
+
+	@Test
+	public void testAsyncDisabledNoAllocation() throws Exception {
+		TimedExecChain timed = new TimedExecChain("async", completing);
+		int count = 100000;
+		for (int i = 0; i < count; i++) {
+			timed.execute(host, request, null, ignore);
+		}
+		long before = allocatedBytes();
+		for (int i = 0; i < count; i++) {
+			timed.execute(host, request, null, ignore);
+		}
+		long allocated = allocatedBytes() - before;
+		assertTrue("allocated " + allocated + " bytes", allocated < count);
+	}
+
+	@Test
+	public void testAsyncAllocatesOnlyCallback() throws Exception {
+		TimedExecChain timed = new TimedExecChain("async", completing);
+		timed.setEnabled(true);
+		int count = 100000;
+		for (int i = 0; i < count; i++) {
+			timed.execute(host, request, null, ignore);
+		}
+		long before = allocatedBytes();
+		for (int i = 0; i < count; i++) {
+			timed.execute(host, request, null, ignore);
+		}
+		long allocated = allocatedBytes() - before;
+		// one callback of three fields per request
+		assertTrue("allocated " + allocated + " bytes", allocated < 48L * count);
+		assertEquals(2 * count, timed.getHistogram(200).getCount());
+	}
+
+	private long allocatedBytes() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+}
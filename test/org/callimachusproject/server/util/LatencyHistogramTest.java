@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.server.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBucketBounds() throws Exception {
+		for (long v = 0; v < 1L << 36; v = v < 16 ? v + 1 : v + v / 7) {
+			int index = LatencyHistogram.indexOf(v);
+			long upper = LatencyHistogram.upperBoundOf(index);
+			assertTrue(v + " <= " + upper, v <= upper);
+			if (index > 0) {
+				assertTrue(v > LatencyHistogram.upperBoundOf(index - 1));
+			}
+			long error = upper - v;
+			assertTrue(v + " ~ " + upper, error <= v / LatencyHistogram.SUB_BUCKETS);
+		}
+	}
+
+	@Test
+	public void testPercentiles() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i, TimeUnit.MILLISECONDS);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000000, histogram.getMaximum());
+		assertEquals(500500, histogram.getMean());
+		assertNear(500000, histogram.getPercentile(50));
+		assertNear(900000, histogram.getPercentile(90));
+		assertNear(990000, histogram.getPercentile(99));
+		assertEquals(1000000, histogram.getPercentile(100));
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(50));
+	}
+
+	private void assertNear(long expected, long actual) {
+		assertTrue(expected + " ~ " + actual, actual >= expected);
+		assertTrue(expected + " ~ " + actual, actual <= expected + expected
+				/ LatencyHistogram.SUB_BUCKETS);
+	}
+
+}
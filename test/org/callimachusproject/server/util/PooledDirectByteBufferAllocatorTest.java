@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.server.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class PooledDirectByteBufferAllocatorTest {
+
+	@Test
+	public void testSizeClasses() throws Exception {
+		assertEquals(0, PooledDirectByteBufferAllocator.sizeClass(1));
+		assertEquals(0, PooledDirectByteBufferAllocator.sizeClass(1024));
+		assertEquals(1, PooledDirectByteBufferAllocator.sizeClass(1025));
+		assertEquals(3, PooledDirectByteBufferAllocator.sizeClass(8192));
+		assertEquals(6, PooledDirectByteBufferAllocator.sizeClass(64 * 1024));
+		assertEquals(7, PooledDirectByteBufferAllocator.sizeClass(64 * 1024 + 1));
+	}
+
+	@Test
+	public void testDirectSlices() throws Exception {
+		PooledDirectByteBufferAllocator allocator = new PooledDirectByteBufferAllocator(1024 * 1024);
+		ByteBuffer first = allocator.allocate(8000);
+		ByteBuffer second = allocator.allocate(8000);
+		assertTrue(first.isDirect());
+		assertEquals(8000, first.capacity());
+		assertEquals(0, first.position());
+		assertEquals(8000, first.limit());
+		while (first.hasRemaining()) {
+			first.put((byte) 1);
+		}
+		while (second.hasRemaining()) {
+			assertEquals(0, second.get());
+		}
+		assertEquals(2, allocator.getPooledCount());
+		assertEquals(2 * 8192, allocator.getUsedMemory());
+		assertEquals(256 * 1024, allocator.getReservedMemory());
+	}
+
+	@Test
+	public void testOversizedFromHeap() throws Exception {
+		PooledDirectByteBufferAllocator allocator = new PooledDirectByteBufferAllocator(1024 * 1024);
+		ByteBuffer buffer = allocator.allocate(100 * 1024);
+		assertFalse(buffer.isDirect());
+		assertEquals(100 * 1024, buffer.capacity());
+		assertEquals(1, allocator.getFallbackCount());
+		assertEquals(0, allocator.getReservedMemory());
+	}
+
+	@Test
+	public void testMemoryBudget() throws Exception {
+		PooledDirectByteBufferAllocator allocator = new PooledDirectByteBufferAllocator(256 * 1024);
+		ByteBuffer[] held = new ByteBuffer[5];
+		for (int i = 0; i < held.length; i++) {
+			held[i] = allocator.allocate(64 * 1024);
+		}
+		for (int i = 0; i < 4; i++) {
+			assertTrue(held[i].isDirect());
+		}
+		assertFalse(held[4].isDirect());
+		assertEquals(256 * 1024, allocator.getReservedMemory());
+		assertEquals(1, allocator.getFallbackCount());
+		assertFalse(allocator.allocate(1024).isDirect());
+	}
+
+	@Test
+	public void testReusedAfterCollection() throws Exception {
+		PooledDirectByteBufferAllocator allocator = new PooledDirectByteBufferAllocator(256 * 1024);
+		for (int i = 0; i < 4; i++) {
+			allocator.allocate(64 * 1024);
+		}
+		assertFalse(allocator.allocate(64 * 1024).isDirect());
+		for (int i = 0; i < 50 && allocator.getUsedMemory() > 0; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertEquals(0, allocator.getUsedMemory());
+		assertTrue(allocator.allocate(64 * 1024).isDirect());
+		assertEquals(256 * 1024, allocator.getReservedMemory());
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.ListBindingSet;
+import org.openrdf.query.impl.TupleQueryResultImpl;
+
+public class BulkLoaderTest {
+	private static final String DRIVER_JAR = "tmp/derby.jar";
+	private static final String DRIVER_CLASSNAME = "org.apache.derby.jdbc.EmbeddedDriver";
+	private static final String JDBC_URL = "jdbc:derby:memory:BulkLoaderTest;create=true";
+	private static final String INSERT = "INSERT INTO testdata (id) VALUES (?)";
+	private static final List<String> COLUMNS = Arrays.asList("ID");
+	private static final int[] TYPES = { Types.INTEGER };
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+	private Driver driver;
+	private Connection conn;
+
+	@Before
+	public void setUp() throws Exception {
+		File jar = new File(DRIVER_JAR);
+		assumeTrue(jar.exists());
+		ClassLoader cl = new URLClassLoader(new URL[] { jar.toURI().toURL() });
+		driver = (Driver) Class.forName(DRIVER_CLASSNAME, true, cl).newInstance();
+		conn = connect();
+		Statement stmt = conn.createStatement();
+		try {
+			stmt.execute("CREATE TABLE testdata (seq INTEGER GENERATED ALWAYS AS IDENTITY, id INTEGER NOT NULL PRIMARY KEY)");
+		} finally {
+			stmt.close();
+		}
+		conn.setAutoCommit(false);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (conn != null) {
+			conn.rollback();
+			conn.setAutoCommit(true);
+			Statement stmt = conn.createStatement();
+			try {
+				stmt.execute("DROP TABLE testdata");
+			} finally {
+				stmt.close();
+			}
+			conn.close();
+		}
+	}
+
+	@Test
+	public void testLoadInOrder() throws Exception {
+		BulkLoader loader = new BulkLoader("testdata", INSERT, COLUMNS, TYPES);
+		assertEquals(10000, loader.loadInTransaction(rows(10000, -1), conn));
+		conn.commit();
+		Statement stmt = conn.createStatement();
+		ResultSet rs = stmt.executeQuery("SELECT id FROM testdata ORDER BY seq");
+		try {
+			for (int i = 0; i < 10000; i++) {
+				rs.next();
+				assertEquals(i, rs.getInt(1));
+			}
+		} finally {
+			rs.close();
+			stmt.close();
+		}
+	}
+
+	@Test
+	public void testTransactionRollsBack() throws Exception {
+		BulkLoader loader = new BulkLoader("testdata", INSERT, COLUMNS, TYPES);
+		try {
+			loader.loadInTransaction(rows(5000, 4000), conn);
+			fail();
+		} catch (SQLException e) {
+			conn.rollback();
+		}
+		assertEquals(0, count());
+	}
+
+	@Test
+	public void testLoadInParallel() throws Exception {
+		BulkLoader loader = new BulkLoader("testdata", INSERT, COLUMNS, TYPES);
+		List<Connection> workers = new ArrayList<Connection>();
+		try {
+			for (int i = 0; i < 4; i++) {
+				Connection worker = connect();
+				worker.setAutoCommit(false);
+				workers.add(worker);
+			}
+			assertEquals(50000, loader.loadInParallel(rows(50000, -1), workers));
+		} finally {
+			for (Connection worker : workers) {
+				worker.close();
+			}
+		}
+		assertEquals(50000, count());
+	}
+
+	private Connection connect() throws SQLException {
+		return driver.connect(JDBC_URL, new Properties());
+	}
+
+	/**
+	 * Rows with ids 0 to n - 1, except that the row at duplicate repeats id 0.
+	 */
+	private TupleQueryResult rows(int n, int duplicate) {
+		List<BindingSet> list = new ArrayList<BindingSet>(n);
+		for (int i = 0; i < n; i++) {
+			Value id = vf.createLiteral(i == duplicate ? 0 : i);
+			list.add(new ListBindingSet(COLUMNS, id));
+		}
+		return new TupleQueryResultImpl(COLUMNS, list);
+	}
+
+	private int count() throws SQLException {
+		Statement stmt = conn.createStatement();
+		ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM testdata");
+		try {
+			rs.next();
+			return rs.getInt(1);
+		} finally {
+			rs.close();
+			stmt.close();
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.apache.commons.pool.impl.GenericObjectPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DriverConnectionPoolManagerTest {
+	private static final String DRIVER_JAR = "tmp/derby.jar";
+	private static final String DRIVER_CLASSNAME = "org.apache.derby.jdbc.EmbeddedDriver";
+	private static final String JDBC_URL = "jdbc:derby:memory:DriverConnectionPoolManagerTest;create=true";
+	private static final String NAME = "urn:test:datasource";
+	private static final String SELECT = "SELECT id FROM pooltest WHERE id < 1000 ORDER BY id";
+	private final DriverConnectionPoolManager manager = new DriverConnectionPoolManager();
+	private Driver driver;
+
+	@Before
+	public void setUp() throws Exception {
+		File jar = new File(DRIVER_JAR);
+		assumeTrue(jar.exists());
+		ClassLoader cl = new URLClassLoader(new URL[] { jar.toURI().toURL() });
+		driver = (Driver) Class.forName(DRIVER_CLASSNAME, true, cl).newInstance();
+		Connection conn = driver.connect(JDBC_URL, new Properties());
+		try {
+			Statement stmt = conn.createStatement();
+			try {
+				stmt.execute("CREATE TABLE pooltest (id INTEGER NOT NULL PRIMARY KEY)");
+				for (int i = 0; i < 5000; i++) {
+					stmt.execute("INSERT INTO pooltest (id) VALUES (" + i + ")");
+				}
+			} finally {
+				stmt.close();
+			}
+		} finally {
+			conn.close();
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (driver != null) {
+			manager.deregisterDriver(NAME);
+			Connection conn = driver.connect(JDBC_URL, new Properties());
+			try {
+				Statement stmt = conn.createStatement();
+				try {
+					stmt.execute("DROP TABLE pooltest");
+				} finally {
+					stmt.close();
+				}
+			} finally {
+				conn.close();
+			}
+		}
+	}
+
+	@Test
+	public void testStatementReused() throws Exception {
+		register(1);
+		assertEquals(1000, select());
+		assertEquals(1000, select());
+		assertEquals(1000, select());
+		assertEquals(1, manager.getStatementCacheMisses());
+		assertEquals(2, manager.getStatementCacheHits());
+		assertEquals(2.0 / 3, manager.getStatementCacheHitRatio(), 0.001);
+	}
+
+	@Test
+	public void testStatementCacheDisabled() throws Exception {
+		manager.setStatementCacheSize(0);
+		register(1);
+		assertEquals(1000, select());
+		assertEquals(1000, select());
+		assertEquals(0, manager.getStatementCacheMisses());
+		assertEquals(0, manager.getStatementCacheHits());
+	}
+
+	@Test
+	public void testStatementCacheBounded() throws Exception {
+		manager.setStatementCacheSize(2);
+		register(1);
+		for (int i = 0; i < 10; i++) {
+			Connection conn = manager.getConnection(NAME);
+			try {
+				PreparedStatement stmt = conn.prepareStatement("VALUES " + i);
+				stmt.close();
+			} finally {
+				conn.close();
+			}
+		}
+		assertEquals(1000, select());
+		assertEquals(1000, select());
+		assertEquals(11, manager.getStatementCacheMisses());
+		assertEquals(1, manager.getStatementCacheHits());
+	}
+
+	@Test
+	public void testPoolHealth() throws Exception {
+		register(2);
+		assertEquals(1, manager.getPoolCount());
+		Connection first = manager.getConnection(NAME);
+		Connection second = manager.getConnection(NAME);
+		assertEquals(2, manager.getActiveConnections());
+		first.close();
+		assertEquals(1, manager.getActiveConnections());
+		assertEquals(1, manager.getIdleConnections());
+		second.close();
+		assertEquals(NAME + ",0,2,0,0", manager.getPoolSummary()[0]);
+		manager.deregisterDriver(NAME);
+		assertEquals(0, manager.getPoolCount());
+	}
+
+	@Test
+	public void testForwardOnlyFetch() throws Exception {
+		manager.setFetchSize(16);
+		register(1);
+		Connection conn = manager.getConnection(NAME);
+		try {
+			conn.setAutoCommit(false);
+			PreparedStatement stmt = conn.prepareStatement(
+					"SELECT id FROM pooltest ORDER BY id",
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			stmt.setFetchSize(manager.getFetchSize());
+			ResultSet rs = stmt.executeQuery();
+			try {
+				int count = 0;
+				while (rs.next()) {
+					assertEquals(count++, rs.getInt(1));
+				}
+				assertEquals(5000, count);
+			} finally {
+				rs.close();
+				stmt.close();
+			}
+		} finally {
+			conn.close();
+		}
+	}
+
+	private void register(int maxActive) throws Exception {
+		GenericObjectPool.Config config = new GenericObjectPool.Config();
+		config.testOnBorrow = true;
+		config.maxActive = maxActive;
+		manager.registerDriver(NAME, driver, JDBC_URL, new Properties(),
+				config, "VALUES 1");
+	}
+
+	private int select() throws Exception {
+		Connection conn = manager.getConnection(NAME);
+		try {
+			PreparedStatement stmt = conn.prepareStatement(SELECT);
+			ResultSet rs = stmt.executeQuery();
+			try {
+				int count = 0;
+				while (rs.next()) {
+					count++;
+				}
+				return count;
+			} finally {
+				rs.close();
+				stmt.close();
+			}
+		} finally {
+			conn.close();
+		}
+	}
+}
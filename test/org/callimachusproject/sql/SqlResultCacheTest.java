@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.ListBindingSet;
+import org.openrdf.query.impl.TupleQueryResultImpl;
+
+public class SqlResultCacheTest {
+	private static final String DATASOURCE = "http://example.com/datasource";
+	private static final List<String> COLUMNS = Arrays.asList("ID");
+	private static final long MAX_AGE = 60 * 1000;
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+	private final SqlResultCache cache = new SqlResultCache();
+
+	@Test
+	public void testNormalize() throws Exception {
+		assertEquals("SELECT * FROM t WHERE a = ' x  y '",
+				SqlResultCache.normalize("  SELECT *\n\tFROM t\nWHERE a = ' x  y ' "));
+	}
+
+	@Test
+	public void testNormalizeComments() throws Exception {
+		assertEquals("SELECT a -- x  y\nFROM t /* z\n  w */ WHERE b",
+				SqlResultCache.normalize("SELECT a -- x  y\nFROM  t /* z\n  w */\tWHERE b"));
+		assertFalse(SqlResultCache.normalize("SELECT 1 --\nFROM t").equals(
+				SqlResultCache.normalize("SELECT 1 -- FROM t")));
+	}
+
+	@Test
+	public void testCachedAfterRead() throws Exception {
+		assertNull(cache.get(DATASOURCE, "SELECT * FROM t"));
+		assertEquals(3, count(cache("SELECT * FROM t", rows(3))));
+		TupleQueryResult cached = cache.get(DATASOURCE, "SELECT *\nFROM t");
+		assertNotNull(cached);
+		assertEquals(3, count(cached));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testPartialReadNotCached() throws Exception {
+		TupleQueryResult result = cache("SELECT * FROM t", rows(3));
+		result.next();
+		result.close();
+		assertNull(cache.get(DATASOURCE, "SELECT * FROM t"));
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		count(cache("SELECT * FROM t", rows(3)));
+		TupleQueryResult reading = cache("SELECT * FROM u", rows(3));
+		cache.invalidate(DATASOURCE);
+		count(reading);
+		assertNull(cache.get(DATASOURCE, "SELECT * FROM t"));
+		assertNull(cache.get(DATASOURCE, "SELECT * FROM u"));
+		assertEquals(0, cache.getEntryCount());
+	}
+
+	@Test
+	public void testInvalidateDuringExecution() throws Exception {
+		long generation = cache.getGeneration(DATASOURCE);
+		cache.invalidate(DATASOURCE);
+		count(cache.cache(DATASOURCE, "SELECT * FROM t", generation, MAX_AGE,
+				rows(3)));
+		assertNull(cache.get(DATASOURCE, "SELECT * FROM t"));
+	}
+
+	@Test
+	public void testNoMaxAgeNotCached() throws Exception {
+		long generation = cache.getGeneration(DATASOURCE);
+		count(cache.cache(DATASOURCE, "SELECT * FROM t", generation, 0, rows(3)));
+		assertNull(cache.get(DATASOURCE, "SELECT * FROM t"));
+	}
+
+	@Test
+	public void testSizeLimit() throws Exception {
+		cache.setMaxBytes(8 * 1024);
+		count(cache("SELECT * FROM large", rows(1000)));
+		assertNull(cache.get(DATASOURCE, "SELECT * FROM large"));
+		for (int i = 0; i < 30; i++) {
+			count(cache("SELECT " + i, rows(3)));
+		}
+		assertEquals(true, cache.getEstimatedBytes() <= 8 * 1024);
+		assertEquals(true, cache.getEvictionCount() > 0);
+		assertNotNull(cache.get(DATASOURCE, "SELECT 29"));
+	}
+
+	private TupleQueryResult cache(String sql, TupleQueryResult result)
+			throws QueryEvaluationException {
+		long generation = cache.getGeneration(DATASOURCE);
+		return cache.cache(DATASOURCE, sql, generation, MAX_AGE, result);
+	}
+
+	private TupleQueryResult rows(int n) {
+		List<BindingSet> list = new ArrayList<BindingSet>(n);
+		for (int i = 0; i < n; i++) {
+			list.add(new ListBindingSet(COLUMNS, vf.createLiteral(i)));
+		}
+		return new TupleQueryResultImpl(COLUMNS, list);
+	}
+
+	private int count(TupleQueryResult result) throws QueryEvaluationException {
+		try {
+			int count = 0;
+			while (result.hasNext()) {
+				result.next();
+				count++;
+			}
+			return count;
+		} finally {
+			result.close();
+		}
+	}
+}
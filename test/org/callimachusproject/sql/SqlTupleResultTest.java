@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.Literal;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.BindingSet;
+
+public class SqlTupleResultTest {
+	private static final String DRIVER_JAR = "tmp/derby.jar";
+	private static final String DRIVER_CLASSNAME = "org.apache.derby.jdbc.EmbeddedDriver";
+	private static final String JDBC_URL = "jdbc:derby:memory:SqlTupleResultTest;create=true";
+	private static final int ROWS = 5000;
+	private Driver driver;
+	private Connection conn;
+
+	@Before
+	public void setUp() throws Exception {
+		File jar = new File(DRIVER_JAR);
+		assumeTrue(jar.exists());
+		ClassLoader cl = new URLClassLoader(new URL[] { jar.toURI().toURL() });
+		driver = (Driver) Class.forName(DRIVER_CLASSNAME, true, cl).newInstance();
+		conn = driver.connect(JDBC_URL, new Properties());
+		Statement stmt = conn.createStatement();
+		try {
+			stmt.execute("CREATE TABLE testdata (id INTEGER, label VARCHAR(64), amount DECIMAL(10,2), note VARCHAR(64))");
+		} finally {
+			stmt.close();
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (conn != null) {
+			Statement stmt = conn.createStatement();
+			try {
+				stmt.execute("DROP TABLE testdata");
+			} finally {
+				stmt.close();
+			}
+			conn.close();
+		}
+	}
+
+	@Test
+	public void testColumnValues() throws Exception {
+		insert(2);
+		Connection con = driver.connect(JDBC_URL, new Properties());
+		Statement stmt = con.createStatement();
+		ResultSet rs = stmt.executeQuery("SELECT * FROM testdata ORDER BY id");
+		SqlTupleResult result = new SqlTupleResult(rs, stmt, con);
+		try {
+			assertEquals(Arrays.asList("ID", "LABEL", "AMOUNT", "NOTE"),
+					result.getBindingNames());
+			assertTrue(result.hasNext());
+			BindingSet row = result.next();
+			assertEquals(XMLSchema.INTEGER, ((Literal) row.getValue("ID")).getDatatype());
+			assertEquals("0", row.getValue("ID").stringValue());
+			assertEquals("row 0", row.getValue("LABEL").stringValue());
+			assertEquals(XMLSchema.DECIMAL, ((Literal) row.getValue("AMOUNT")).getDatatype());
+			assertNull(row.getValue("NOTE"));
+			assertFalse(row.hasBinding("NOTE"));
+			assertTrue(result.hasNext());
+			assertEquals("1", result.next().getValue("ID").stringValue());
+			assertFalse(result.hasNext());
+		} finally {
+			result.close();
+		}
+	}
+
+	@Test
+	public void testStreamRows() throws Exception {
+		insert(ROWS);
+		Connection con = driver.connect(JDBC_URL, new Properties());
+		Statement stmt = con.createStatement();
+		final ResultSet delegate = stmt.executeQuery("SELECT * FROM testdata");
+		final AtomicInteger fetched = new AtomicInteger();
+		ResultSet rs = (ResultSet) Proxy.newProxyInstance(getClass()
+				.getClassLoader(), new Class<?>[] { ResultSet.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						if ("next".equals(method.getName())) {
+							fetched.incrementAndGet();
+						}
+						try {
+							return method.invoke(delegate, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+		SqlTupleResult result = new SqlTupleResult(rs, stmt, con);
+		int count = 0;
+		try {
+			assertTrue(result.hasNext());
+			result.next();
+			count++;
+			assertTrue(fetched.get() <= 2);
+			while (result.hasNext()) {
+				result.next();
+				count++;
+			}
+		} finally {
+			result.close();
+		}
+		assertEquals(ROWS, count);
+	}
+
+	private void insert(int rows) throws Exception {
+		conn.setAutoCommit(false);
+		PreparedStatement insert = conn
+				.prepareStatement("INSERT INTO testdata (id, label, amount) VALUES (?, ?, ?)");
+		try {
+			for (int i = 0; i < rows; i++) {
+				insert.setInt(1, i);
+				insert.setString(2, "row " + i);
+				insert.setBigDecimal(3, BigDecimal.valueOf(i, 2));
+				insert.addBatch();
+				if (i % 1000 == 999) {
+					insert.executeBatch();
+				}
+			}
+			insert.executeBatch();
+			conn.commit();
+		} finally {
+			insert.close();
+			conn.setAutoCommit(true);
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BackupToolTest {
+	private File dir;
+	private File dataDir;
+	private BackupTool tool;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = File.createTempFile("backup", "test");
+		dir.delete();
+		dataDir = new File(dir, "data");
+		tool = new BackupTool(new File(dir, "backups"));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		deleteAll(dir);
+	}
+
+	@Test
+	public void testIncrementalRestore() throws Exception {
+		tool.setIncremental(true);
+		write(new File(dataDir, "blobs/a"), "alpha");
+		write(new File(dataDir, "blobs/b"), "bravo");
+		write(new File(dataDir, "triples.dat"), "charlie");
+		tool.backup("first", dataDir);
+		assertEquals(3, tool.getLastBackupFileCount());
+		assertEquals(0, tool.getLastBackupReusedFileCount());
+		File triples = new File(dataDir, "triples.dat");
+		write(triples, "charlie delta");
+		triples.setLastModified(triples.lastModified() + 2000);
+		new File(dataDir, "blobs/b").delete();
+		tool.backup("second", dataDir);
+		assertEquals(1, tool.getLastBackupFileCount());
+		assertEquals(1, tool.getLastBackupReusedFileCount());
+		assertEquals("charlie delta".length(), tool.getLastBackupBytes());
+		write(triples, "echo");
+		tool.restoreBackup("second", dataDir);
+		assertEquals("alpha", read(new File(dataDir, "blobs/a")));
+		assertEquals("charlie delta", read(triples));
+		assertFalse(new File(dataDir, "blobs/b").exists());
+		tool.restoreBackup("first", dataDir);
+		assertEquals("bravo", read(new File(dataDir, "blobs/b")));
+		assertEquals("charlie", read(triples));
+		assertTrue(tool.getBackupLabels().contains("first"));
+	}
+
+	@Test
+	public void testFullBackup() throws Exception {
+		assertFalse(tool.isIncremental());
+		write(new File(dataDir, "a"), "alpha");
+		tool.backup("first", dataDir);
+		tool.backup("second", dataDir);
+		assertEquals(1, tool.getLastBackupFileCount());
+		assertEquals(0, tool.getLastBackupReusedFileCount());
+	}
+
+	@Test
+	public void testReplaceReferencedLabel() throws Exception {
+		tool.setIncremental(true);
+		write(new File(dataDir, "a"), "alpha");
+		write(new File(dataDir, "b"), "bravo");
+		tool.backup("first", dataDir);
+		File b = new File(dataDir, "b");
+		write(b, "bravo charlie");
+		tool.backup("second", dataDir);
+		assertEquals(1, tool.getLastBackupReusedFileCount());
+		write(new File(dataDir, "a"), "delta");
+		try {
+			tool.backup("first", dataDir);
+			fail();
+		} catch (IOException e) {
+			// first is needed to restore second
+		}
+		assertFalse(tool.isBackupInProgress());
+		tool.restoreBackup("second", dataDir);
+		assertEquals("alpha", read(new File(dataDir, "a")));
+		assertEquals("bravo charlie", read(b));
+	}
+
+	@Test
+	public void testReplaceLatestLabel() throws Exception {
+		tool.setIncremental(true);
+		write(new File(dataDir, "a"), "alpha");
+		tool.backup("first", dataDir);
+		write(new File(dataDir, "b"), "bravo");
+		tool.backup("second", dataDir);
+		write(new File(dataDir, "b"), "charlie");
+		tool.backup("second", dataDir);
+		write(new File(dataDir, "b"), "delta");
+		tool.restoreBackup("second", dataDir);
+		assertEquals("alpha", read(new File(dataDir, "a")));
+		assertEquals("charlie", read(new File(dataDir, "b")));
+		tool.restoreBackup("first", dataDir);
+		assertEquals("alpha", read(new File(dataDir, "a")));
+		assertFalse(new File(dataDir, "b").exists());
+	}
+
+	@Test
+	public void testChecksumDetectsSameSizeChange() throws Exception {
+		tool.setIncremental(true);
+		File a = new File(dataDir, "a");
+		write(a, "alpha");
+		long modified = a.lastModified();
+		tool.backup("first", dataDir);
+		write(a, "omega");
+		a.setLastModified(modified);
+		tool.backup("second", dataDir);
+		assertEquals(1, tool.getLastBackupFileCount());
+		assertEquals(0, tool.getLastBackupReusedFileCount());
+		write(a, "gamma");
+		tool.restoreBackup("second", dataDir);
+		assertEquals("omega", read(a));
+	}
+
+	private void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	private String read(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buf = new byte[(int) file.length()];
+			int off = 0;
+			while (off < buf.length) {
+				int read = in.read(buf, off, buf.length - off);
+				if (read < 0)
+					break;
+				off += read;
+			}
+			return new String(buf, 0, off, "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+	private void deleteAll(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				deleteAll(f);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DomainNameSystemResolverTest {
+	private final AtomicInteger lookups = new AtomicInteger();
+	private volatile CountDownLatch resolved = new CountDownLatch(1);
+	private DomainNameSystemResolver resolver;
+
+	@Before
+	public void setUp() throws Exception {
+		resolver = new DomainNameSystemResolver() {
+			public String reverse(InetAddress netAddr) {
+				lookups.incrementAndGet();
+				try {
+					if ("192.0.2.1".equals(netAddr.getHostAddress()))
+						return "proxy.example.com";
+					return netAddr.getHostAddress();
+				} finally {
+					resolved.countDown();
+				}
+			}
+		};
+	}
+
+	@Test
+	public void testCachedReverse() throws Exception {
+		assertEquals("proxy.example.com", resolver.cachedReverse("192.0.2.1"));
+		assertEquals("proxy.example.com", resolver.cachedReverse("192.0.2.1"));
+		assertEquals(1, lookups.get());
+		assertEquals(1, resolver.getReverseCacheHitCount());
+		assertEquals(1, resolver.getReverseCacheMissCount());
+	}
+
+	@Test
+	public void testNegativeCache() throws Exception {
+		assertEquals("192.0.2.2", resolver.cachedReverse("192.0.2.2"));
+		assertEquals("192.0.2.2", resolver.cachedReverse("192.0.2.2"));
+		assertEquals(1, lookups.get());
+		assertEquals(1, resolver.getReverseLookupFailureCount());
+		resolver.setReverseCacheNegativeTimeToLive(0);
+		resolver.resetReverseCache();
+		resolver.cachedReverse("192.0.2.2");
+		resolver.cachedReverse("192.0.2.2");
+		assertEquals(3, lookups.get());
+	}
+
+	@Test
+	public void testNonBlockingReverse() throws Exception {
+		resolver.setReverseBlocking(false);
+		assertEquals("192.0.2.1", resolver.cachedReverse("192.0.2.1"));
+		resolved.await(10, TimeUnit.SECONDS);
+		for (int i = 0; i < 100 && resolver.getReverseCacheSize() == 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals("proxy.example.com", resolver.cachedReverse("192.0.2.1"));
+		assertEquals(1, lookups.get());
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2014 3 Round Stones Inc., Some Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.callimachusproject.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PrefixMapTest {
+
+	@Test
+	public void testClosest() throws Exception {
+		PrefixMap<String> map = new PrefixMap<String>();
+		map.put("http://example.com/", "root");
+		map.put("http://example.com/a/", "a");
+		map.put("http://example.com/a/b/", "b");
+		map.put("http://example.com/ab/", "ab");
+		assertEquals("b", map.getClosest("http://example.com/a/b/c"));
+		assertEquals("a", map.getClosest("http://example.com/a/c"));
+		assertEquals("root", map.getClosest("http://example.com/a"));
+		assertEquals("ab", map.getClosest("http://example.com/ab/"));
+		assertEquals("root", map.getClosest("http://example.com/ac"));
+		assertNull(map.getClosest("http://example.org/"));
+		assertEquals("http://example.com/a/",
+				map.getClosestEntry("http://example.com/a/x").getKey());
+	}
+
+	@Test
+	public void testModifications() throws Exception {
+		PrefixMap<String> map = new PrefixMap<String>();
+		map.put(".", "all");
+		assertEquals("all", map.getClosest(".com.example."));
+		map.put(".com.", "com");
+		assertEquals("com", map.getClosest(".com.example."));
+		map.put(".com.", "commercial");
+		assertEquals("commercial", map.getClosest(".com.example."));
+		Iterator<String> iter = map.keySet().iterator();
+		iter.next();
+		iter.next();
+		iter.remove();
+		assertEquals("all", map.getClosest(".com.example."));
+		for (Map.Entry<String, String> e : map.entrySet()) {
+			e.setValue("everything");
+		}
+		assertEquals("everything", map.getClosest(".com.example."));
+		map.clear();
+		assertNull(map.getClosest(".com.example."));
+	}
+
+	@Test
+	public void testAgainstLinearScan() throws Exception {
+		Random random = new Random(7);
+		List<String> keys = hostPatterns(random, 5000);
+		PrefixMap<String> map = new PrefixMap<String>();
+		for (String key : keys) {
+			map.put(key, key);
+		}
+		for (int i = 0; i < 20000; i++) {
+			String host = keys.get(random.nextInt(keys.size()))
+					+ (random.nextBoolean() ? "" : random.nextInt(20) + ".");
+			if (random.nextInt(4) == 0) {
+				host = host.substring(0, random.nextInt(host.length()));
+			}
+			assertEquals(host, linearScan(keys, host), map.getClosest(host));
+		}
+	}
+
+	private List<String> hostPatterns(Random random, int size) {
+		String[] tlds = { "com", "org", "net", "edu", "ca", "uk" };
+		List<String> keys = new ArrayList<String>(size);
+		keys.add(".");
+		for (String tld : tlds) {
+			keys.add("." + tld + ".");
+		}
+		while (keys.size() < size) {
+			String parent = keys.get(1 + random.nextInt(keys.size() - 1));
+			keys.add(parent + "d" + random.nextInt(1000) + ".");
+		}
+		return keys;
+	}
+
+	private String linearScan(List<String> keys, String string) {
+		String closest = null;
+		for (String key : keys) {
+			if (string.startsWith(key)
+					&& (closest == null || key.length() > closest.length())) {
+				closest = key;
+			}
+		}
+		return closest;
+	}
+}
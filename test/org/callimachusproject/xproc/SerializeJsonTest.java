@@ -18,6 +18,7 @@ package org.callimachusproject.xproc;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -75,6 +76,30 @@ public class SerializeJsonTest extends TestCase {
 			+ "<calli:deserialize-json encoding='base64' charset='UTF-8' flavor='jsonx' />\n"
 			+ "<calli:serialize-json/>\n" + "</p:pipeline>\n";
 
+	private static final String COUNT_ITEMS = "<p:pipeline version='1.0'\n"
+			+ "xmlns:p='http://www.w3.org/ns/xproc'\n"
+			+ "xmlns:c='http://www.w3.org/ns/xproc-step'\n"
+			+ "xmlns:json='http://www.ibm.com/xmlns/prod/2009/jsonx'\n"
+			+ "xmlns:calli='http://callimachusproject.org/rdf/2009/framework#'>\n"
+			+ "\n"
+			+ "    <p:declare-step type='calli:deserialize-json'>\n"
+			+ "        <p:input port='source' sequence='true' primary='true' />\n"
+			+ "        <p:option name='content-type'/>\n"
+			+ "        <p:option name='encoding'/>\n"
+			+ "        <p:option name='charset'/>\n"
+			+ "        <p:option name='flavor'/>\n"
+			+ "        <p:output port='result' sequence='true' />\n"
+			+ "    </p:declare-step>\n"
+			+ "\n"
+			+ "<calli:deserialize-json encoding='base64' charset='UTF-8' flavor='jsonx' />\n"
+			+ "<p:xslt>\n"
+			+ "    <p:input port='stylesheet'><p:inline>\n"
+			+ "        <xsl:stylesheet version='2.0' xmlns:xsl='http://www.w3.org/1999/XSL/Transform'>\n"
+			+ "            <xsl:template match='/'><c:result><xsl:value-of select='count(/*/json:array/json:object)'/></c:result></xsl:template>\n"
+			+ "        </xsl:stylesheet>\n"
+			+ "    </p:inline></p:input>\n"
+			+ "</p:xslt>\n" + "</p:pipeline>\n";
+
 	@Before
 	public void setUp() throws Exception {
 	}
@@ -90,6 +115,28 @@ public class SerializeJsonTest extends TestCase {
 		assertEquals(expected, new JSONObject(actual).toString());
 	}
 
+	@Test
+	public void testJsonxValues() throws Exception {
+		String json = "{\"a\":[1,2.5,-3e2,true,false,null,[],{}],"
+				+ "\"b\":\"line\\nbreak \\\"quoted\\\"\",\"c\":\"\",\"d\":null}";
+		String expected = new JSONObject(json).toString();
+		String actual = pipe(json, IDENTITY);
+		assertEquals(expected, new JSONObject(actual).toString());
+	}
+
+	@Test
+	public void testLargeDocument() throws Exception {
+		// sized to run within the -mx512m heap the build gives the tests
+		JsonArrayStream in = new JsonArrayStream(16L * 1024 * 1024);
+		PipelineFactory pf = PipelineFactory.newInstance();
+		Pipeline pipe = pf.createPipeline(new StringReader(COUNT_ITEMS),
+				"http://example.com/", client);
+		String count = pipe.pipeStreamOf(in, "http://example.com/",
+				"application/json;charset=UTF-8").asString();
+		assertTrue(in.getItemCount() > 100000);
+		assertTrue(count, count.contains(">" + in.getItemCount() + "<"));
+	}
+
 	private String pipe(String source, String pipeline) throws IOException,
 			SAXException, XProcException, ParserConfigurationException {
 		PipelineFactory pf = PipelineFactory.newInstance();
@@ -103,4 +150,56 @@ public class SerializeJsonTest extends TestCase {
 				"application/json;charset=UTF-8").asString();
 	}
 
+	/**
+	 * Generates a JSON array of small objects, one object at a time.
+	 */
+	private static class JsonArrayStream extends InputStream {
+		private final long size;
+		private long written;
+		private int item;
+		private boolean closed;
+		private byte[] buf = { '[' };
+		private int pos;
+
+		JsonArrayStream(long size) {
+			this.size = size;
+		}
+
+		public int getItemCount() {
+			return item;
+		}
+
+		public int read() throws IOException {
+			if (pos >= buf.length && !fill())
+				return -1;
+			return buf[pos++] & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (pos >= buf.length && !fill())
+				return -1;
+			int n = Math.min(len, buf.length - pos);
+			System.arraycopy(buf, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		private boolean fill() throws IOException {
+			if (closed)
+				return false;
+			pos = 0;
+			if (written >= size) {
+				closed = true;
+				buf = new byte[] { ']' };
+				return true;
+			}
+			String sep = item == 0 ? "" : ",";
+			buf = (sep + "{\"id\":" + item + ",\"name\":\"item " + item
+					+ "\",\"tags\":[\"a\",\"b\"],\"ok\":true}")
+					.getBytes("UTF-8");
+			written += buf.length;
+			item++;
+			return true;
+		}
+	}
 }